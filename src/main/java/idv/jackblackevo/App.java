@@ -2,6 +2,7 @@ package idv.jackblackevo;
 
 import idv.jackblackevo.util.ImageBuilder;
 import idv.jackblackevo.util.ImageUtil;
+import idv.jackblackevo.util.MemoryGovernor;
 
 import java.net.URL;
 import java.util.Properties;
@@ -21,10 +22,43 @@ public class App {
     float imageTargetQuality = Float.parseFloat(prop.getProperty("image.output.quality"));
 
     String imageOrientation = prop.getProperty("image.output.orientation");
+    String imageResizeQuality = prop.getProperty("image.output.resize.quality");
 
     boolean imageTargetMultipage = Boolean.parseBoolean(prop.getProperty("image.output.multipage"));
+    String imageTIFFCompression = prop.getProperty("image.output.tiff.compression", "jpeg");
 
-    ImageBuilder imageBuilder = ImageUtil.fromSrc(imageInput);
+    boolean isStreaming = Boolean.parseBoolean(prop.getProperty("image.process.streaming"));
+    boolean isTiled = Boolean.parseBoolean(prop.getProperty("image.process.tiled"));
+    boolean isReduceColorDepth = Boolean.parseBoolean(prop.getProperty("image.process.reduce.color", "false"));
+    boolean isOffHeap = Boolean.parseBoolean(prop.getProperty("image.process.offheap"));
+    int numWorkers = Integer.parseInt(prop.getProperty("image.process.workers", "1"));
+    long memoryBudget = Long.parseLong(prop.getProperty("image.process.memory.budget", "0"));
+    long memoryWaitTimeout = Long.parseLong(prop.getProperty("image.process.memory.timeout", "60"));
+
+    if (memoryBudget > 0) {
+      MemoryGovernor.setBudget(memoryBudget * 1024 * 1024);
+    }
+    MemoryGovernor.setWaitTimeout(memoryWaitTimeout * 1000);
+
+    ImageBuilder imageBuilder;
+    if (isStreaming) {
+      imageBuilder = ImageUtil.streamFromSrc(imageInput);
+    } else {
+      imageBuilder = ImageUtil.fromSrc(imageInput);
+    }
+
+    imageBuilder = imageBuilder.parallel(numWorkers);
+    if (isOffHeap) {
+      imageBuilder = imageBuilder.storePagesOffHeap();
+    }
+    imageBuilder = imageBuilder.reduceColorDepth(isReduceColorDepth);
+
+    ImageBuilder.TIFFCompression[] tiffCompressions = ImageBuilder.TIFFCompression.values();
+    for (int i = 0; i < tiffCompressions.length; i++) {
+      if (tiffCompressions[i].name().equalsIgnoreCase(imageTIFFCompression)) {
+        imageBuilder = imageBuilder.compressTIFF(tiffCompressions[i]);
+      }
+    }
 
     if ("landscape".equalsIgnoreCase(imageOrientation)) {
       imageBuilder = imageBuilder.rotate(ImageBuilder.LANDSCAPE);
@@ -32,9 +66,17 @@ public class App {
       imageBuilder = imageBuilder.rotate(ImageBuilder.PORTRAIT);
     }
 
-    imageBuilder = imageBuilder.resize(imageTargetWidth, imageTargetHeight);
+    if ("fast".equalsIgnoreCase(imageResizeQuality)) {
+      imageBuilder = imageBuilder.resize(imageTargetWidth, imageTargetHeight, ImageBuilder.FAST);
+    } else if ("balanced".equalsIgnoreCase(imageResizeQuality)) {
+      imageBuilder = imageBuilder.resize(imageTargetWidth, imageTargetHeight, ImageBuilder.BALANCED);
+    } else {
+      imageBuilder = imageBuilder.resize(imageTargetWidth, imageTargetHeight, ImageBuilder.QUALITY);
+    }
 
-    if (imageTargetMultipage) {
+    if (isTiled) {
+      imageBuilder.writeToTiledTIFFFiles(imageOutput, true);
+    } else if (imageTargetMultipage) {
       imageBuilder.combineAndWriteToMultipageTIFF(imageOutput, imageTargetQuality, true);
     } else {
       imageBuilder.writeToFiles(imageOutput, exportImageFormat, imageTargetQuality, true);
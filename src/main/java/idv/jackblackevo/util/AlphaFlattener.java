@@ -0,0 +1,164 @@
+package idv.jackblackevo.util;
+
+import java.awt.*;
+import java.awt.color.ColorSpace;
+import java.awt.image.*;
+
+/**
+ * 將透明背景合成於白色背景上，常見類型直接在 DataBuffer 陣列上處理，不經過 Graphics2D。
+ */
+class AlphaFlattener {
+  private static final int[] RGB_MASKS = {0xFF0000, 0xFF00, 0xFF};
+  private static final int[] BGR_BAND_OFFSETS = {2, 1, 0};
+
+  private AlphaFlattener() {
+  }
+
+  /**
+   * 乎略透明背景。
+   *
+   * @param image     圖片
+   * @param isInPlace 是否可直接修改此圖片的像素
+   * @param imagePool 頁面緩衝
+   * @return 不透明的圖片，可能與原圖片共用 DataBuffer；原圖片不透明時為原圖片
+   */
+  public static BufferedImage flatten(BufferedImage image, boolean isInPlace, BufferedImagePool imagePool) {
+    ColorModel colorModel = image.getColorModel();
+    if (!colorModel.hasAlpha()) {
+      return image;
+    }
+
+    // 調色盤圖片只需合成調色盤
+    if (colorModel instanceof IndexColorModel) {
+      return new BufferedImage(flattenPalette((IndexColorModel) colorModel), image.getRaster(), false, null);
+    }
+
+    int imageType = image.getType();
+    boolean isPacked = imageType == BufferedImage.TYPE_INT_ARGB || imageType == BufferedImage.TYPE_INT_ARGB_PRE;
+    boolean isInterleaved = imageType == BufferedImage.TYPE_4BYTE_ABGR || imageType == BufferedImage.TYPE_4BYTE_ABGR_PRE;
+    if ((!isPacked && !isInterleaved) || !isStandardLayout(image.getRaster())) {
+      return drawOnWhite(image, imagePool);
+    }
+
+    BufferedImage targetImage = image;
+    if (!isInPlace) {
+      targetImage = imagePool.acquire(image.getWidth(), image.getHeight(), imageType);
+      image.copyData(targetImage.getRaster());
+    }
+
+    boolean isPremultiplied = targetImage.isAlphaPremultiplied();
+    if (isPacked) {
+      return flattenIntARGB(targetImage, isPremultiplied);
+    }
+
+    return flattenByteABGR(targetImage, isPremultiplied);
+  }
+
+  private static IndexColorModel flattenPalette(IndexColorModel colorModel) {
+    int mapSize = colorModel.getMapSize();
+    int[] rgbs = new int[mapSize];
+    colorModel.getRGBs(rgbs);
+    for (int i = 0; i < mapSize; i++) {
+      rgbs[i] = compositeOnWhite(rgbs[i], false);
+    }
+
+    return new IndexColorModel(colorModel.getPixelSize(), mapSize, rgbs, 0, false, -1, colorModel.getTransferType());
+  }
+
+  /**
+   * TYPE_INT_ARGB 直接於原陣列合成，再以 TYPE_INT_RGB 的方式檢視同一個 DataBuffer。
+   */
+  private static BufferedImage flattenIntARGB(BufferedImage image, boolean isPremultiplied) {
+    DataBufferInt dataBuffer = (DataBufferInt) image.getRaster().getDataBuffer();
+    int[] data = dataBuffer.getData();
+    int offset = dataBuffer.getOffset();
+    int length = image.getWidth() * image.getHeight();
+    for (int i = offset; i < offset + length; i++) {
+      data[i] = compositeOnWhite(data[i], isPremultiplied);
+    }
+
+    WritableRaster raster = Raster.createPackedRaster(dataBuffer, image.getWidth(), image.getHeight(), image.getWidth(), RGB_MASKS, null);
+    DirectColorModel colorModel = new DirectColorModel(24, RGB_MASKS[0], RGB_MASKS[1], RGB_MASKS[2]);
+
+    return new BufferedImage(colorModel, raster, false, null);
+  }
+
+  /**
+   * TYPE_4BYTE_ABGR 直接於原陣列合成並往前壓縮成每像素 3 byte，再以 TYPE_3BYTE_BGR 的方式檢視同一個 DataBuffer。
+   */
+  private static BufferedImage flattenByteABGR(BufferedImage image, boolean isPremultiplied) {
+    DataBufferByte dataBuffer = (DataBufferByte) image.getRaster().getDataBuffer();
+    byte[] data = dataBuffer.getData();
+    int offset = dataBuffer.getOffset();
+    int length = image.getWidth() * image.getHeight();
+
+    // 寫入位置永遠不超過讀取位置，可於同一陣列中壓縮
+    int targetIndex = offset;
+    for (int index = offset; index < offset + length * 4; index += 4) {
+      int alpha = data[index] & 0xFF;
+      int blue = data[index + 1] & 0xFF;
+      int green = data[index + 2] & 0xFF;
+      int red = data[index + 3] & 0xFF;
+
+      data[targetIndex] = (byte) compositeChannelOnWhite(blue, alpha, isPremultiplied);
+      data[targetIndex + 1] = (byte) compositeChannelOnWhite(green, alpha, isPremultiplied);
+      data[targetIndex + 2] = (byte) compositeChannelOnWhite(red, alpha, isPremultiplied);
+      targetIndex += 3;
+    }
+
+    WritableRaster raster = Raster.createInterleavedRaster(dataBuffer, image.getWidth(), image.getHeight(), image.getWidth() * 3, 3, BGR_BAND_OFFSETS, null);
+    ColorModel colorModel = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+
+    return new BufferedImage(colorModel, raster, false, null);
+  }
+
+  private static BufferedImage drawOnWhite(BufferedImage image, BufferedImagePool imagePool) {
+    // 其他類型（灰階加透明、16 位元等）交由 Graphics2D 合成
+    BufferedImage newBufferedImage = imagePool.acquire(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+    Graphics2D graphics = newBufferedImage.createGraphics();
+    graphics.drawImage(image, 0, 0, Color.WHITE, null);
+    graphics.dispose();
+
+    return newBufferedImage;
+  }
+
+  private static int compositeOnWhite(int argb, boolean isPremultiplied) {
+    int alpha = argb >>> 24;
+    if (alpha == 0xFF) {
+      return argb;
+    }
+
+    int red = compositeChannelOnWhite((argb >> 16) & 0xFF, alpha, isPremultiplied);
+    int green = compositeChannelOnWhite((argb >> 8) & 0xFF, alpha, isPremultiplied);
+    int blue = compositeChannelOnWhite(argb & 0xFF, alpha, isPremultiplied);
+
+    return 0xFF000000 | (red << 16) | (green << 8) | blue;
+  }
+
+  private static int compositeChannelOnWhite(int value, int alpha, boolean isPremultiplied) {
+    if (isPremultiplied) {
+      return Math.min(0xFF, value + 0xFF - alpha);
+    }
+
+    return (value * alpha + 0xFF * (0xFF - alpha) + 0x7F) / 0xFF;
+  }
+
+  /**
+   * 檢查 Raster 是否為從 (0, 0) 開始、列與列之間無間隔的完整陣列。
+   */
+  private static boolean isStandardLayout(Raster raster) {
+    SampleModel sampleModel = raster.getSampleModel();
+    if (raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0
+      || raster.getDataBuffer().getNumBanks() != 1) {
+      return false;
+    }
+
+    if (sampleModel instanceof SinglePixelPackedSampleModel) {
+      return ((SinglePixelPackedSampleModel) sampleModel).getScanlineStride() == raster.getWidth();
+    } else if (sampleModel instanceof PixelInterleavedSampleModel) {
+      return ((PixelInterleavedSampleModel) sampleModel).getScanlineStride() == raster.getWidth() * 4;
+    }
+
+    return false;
+  }
+}
@@ -0,0 +1,136 @@
+package idv.jackblackevo.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * 將寫入的資料即時編碼為 Base64 並寫入 Writer，不需保留完整的資料或字串。
+ * <p>
+ * 結束時須呼叫 finish() 或 close() 寫入最後不足 3 byte 的資料與補位字元，兩者皆不會關閉 Writer。
+ */
+class Base64OutputStream extends OutputStream {
+  private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+  private static final int BUFFER_LENGTH = 4096;
+
+  private Writer writer;
+  private char[] charBuffer = new char[BUFFER_LENGTH];
+  private int charLength = 0;
+  private byte[] pendingBytes = new byte[3];
+  private int pendingLength = 0;
+  private boolean isFinished = false;
+
+  public Base64OutputStream(Writer writer) {
+    this.writer = writer;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    checkIsFinished();
+
+    pendingBytes[pendingLength++] = (byte) b;
+    if (pendingLength == 3) {
+      encodeGroup(pendingBytes, 0);
+      pendingLength = 0;
+    }
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    checkIsFinished();
+    if (off < 0 || len < 0 || off + len > b.length || off + len < 0) {
+      throw new IndexOutOfBoundsException();
+    }
+
+    int end = off + len;
+
+    // 先補齊上次剩下的資料
+    while (pendingLength > 0 && off < end) {
+      write(b[off++]);
+    }
+
+    for (; off + 3 <= end; off += 3) {
+      encodeGroup(b, off);
+    }
+
+    while (off < end) {
+      pendingBytes[pendingLength++] = b[off++];
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    flushCharBuffer();
+    writer.flush();
+  }
+
+  /**
+   * 寫入剩餘資料與補位字元，之後不可再寫入。
+   *
+   * @throws IOException
+   */
+  public void finish() throws IOException {
+    if (isFinished) {
+      return;
+    }
+
+    if (pendingLength > 0) {
+      int b0 = pendingBytes[0] & 0xFF;
+      int b1 = pendingLength > 1 ? pendingBytes[1] & 0xFF : 0;
+
+      ensureCharBuffer();
+      charBuffer[charLength++] = ALPHABET[b0 >>> 2];
+      charBuffer[charLength++] = ALPHABET[((b0 & 0x03) << 4) | (b1 >>> 4)];
+      charBuffer[charLength++] = pendingLength > 1 ? ALPHABET[(b1 & 0x0F) << 2] : '=';
+      charBuffer[charLength++] = '=';
+      pendingLength = 0;
+    }
+    isFinished = true;
+
+    flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    finish();
+  }
+
+  private void encodeGroup(byte[] b, int off) throws IOException {
+    int group = ((b[off] & 0xFF) << 16) | ((b[off + 1] & 0xFF) << 8) | (b[off + 2] & 0xFF);
+
+    ensureCharBuffer();
+    charBuffer[charLength++] = ALPHABET[group >>> 18];
+    charBuffer[charLength++] = ALPHABET[(group >>> 12) & 0x3F];
+    charBuffer[charLength++] = ALPHABET[(group >>> 6) & 0x3F];
+    charBuffer[charLength++] = ALPHABET[group & 0x3F];
+  }
+
+  private void ensureCharBuffer() throws IOException {
+    if (charLength + 4 > charBuffer.length) {
+      flushCharBuffer();
+    }
+  }
+
+  private void flushCharBuffer() throws IOException {
+    if (charLength > 0) {
+      writer.write(charBuffer, 0, charLength);
+      charLength = 0;
+    }
+  }
+
+  private void checkIsFinished() throws IOException {
+    if (isFinished) {
+      throw new IOException("Base64 stream is finished!");
+    }
+  }
+
+  /**
+   * 計算編碼後的字元數。
+   *
+   * @param length 資料長度
+   * @return Base64 字元數
+   */
+  public static int getEncodedLength(int length) {
+    return (length + 2) / 3 * 4;
+  }
+}
@@ -0,0 +1,97 @@
+package idv.jackblackevo.util;
+
+import java.awt.image.BufferedImage;
+import java.lang.ref.SoftReference;
+import java.util.*;
+
+/**
+ * 依尺寸與類型重複使用頁面緩衝，減少大量同尺寸頁面時的配置與 GC。
+ * <p>
+ * 只收不帶調色盤的標準類型，取出的圖片內容為上次使用時的像素，使用者必須覆寫所有像素。
+ */
+class BufferedImagePool {
+  private static final int MAX_IMAGES_PER_SIZE = 8;
+
+  private Map<String, Deque<SoftReference<BufferedImage>>> imageMap = new HashMap<>();
+
+  /**
+   * 取得指定尺寸與類型的圖片，沒有可重複使用的圖片時建立新圖片。
+   *
+   * @param width     寬
+   * @param height    高
+   * @param imageType BufferedImage 類型
+   * @return 圖片
+   */
+  public BufferedImage acquire(int width, int height, int imageType) {
+    if (isPoolable(imageType)) {
+      synchronized (this) {
+        Deque<SoftReference<BufferedImage>> imageDeque = imageMap.get(getKey(width, height, imageType));
+        while (imageDeque != null && !imageDeque.isEmpty()) {
+          BufferedImage image = imageDeque.pop().get();
+          if (image != null) {
+            return image;
+          }
+        }
+      }
+    }
+
+    return new BufferedImage(width, height, imageType);
+  }
+
+  /**
+   * 歸還不再使用的圖片，無法重複使用的類型直接釋放。
+   *
+   * @param image 圖片
+   */
+  public void release(BufferedImage image) {
+    if (!isPoolable(image.getType())) {
+      image.flush();
+
+      return;
+    }
+
+    synchronized (this) {
+      String key = getKey(image.getWidth(), image.getHeight(), image.getType());
+      Deque<SoftReference<BufferedImage>> imageDeque = imageMap.get(key);
+      if (imageDeque == null) {
+        imageDeque = new ArrayDeque<>();
+        imageMap.put(key, imageDeque);
+      }
+
+      if (imageDeque.size() < MAX_IMAGES_PER_SIZE) {
+        imageDeque.push(new SoftReference<>(image));
+      }
+    }
+  }
+
+  public synchronized void clear() {
+    imageMap.clear();
+  }
+
+  /**
+   * 檢查此類型是否可重複使用，即相同尺寸與類型的圖片之 Raster 配置必定相同。
+   *
+   * @param imageType BufferedImage 類型
+   * @return 是否可重複使用
+   */
+  public static boolean isPoolable(int imageType) {
+    switch (imageType) {
+      case BufferedImage.TYPE_INT_RGB:
+      case BufferedImage.TYPE_INT_ARGB:
+      case BufferedImage.TYPE_INT_ARGB_PRE:
+      case BufferedImage.TYPE_INT_BGR:
+      case BufferedImage.TYPE_3BYTE_BGR:
+      case BufferedImage.TYPE_4BYTE_ABGR:
+      case BufferedImage.TYPE_4BYTE_ABGR_PRE:
+      case BufferedImage.TYPE_BYTE_GRAY:
+      case BufferedImage.TYPE_USHORT_GRAY:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private static String getKey(int width, int height, int imageType) {
+    return width + "x" + height + "#" + imageType;
+  }
+}
@@ -0,0 +1,77 @@
+package idv.jackblackevo.util;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 直接讀取 ByteBuffer 內容的 ImageInputStream，不經過 ImageIO 的記憶體或暫存檔快取。
+ */
+class ByteBufferImageInputStream extends ImageInputStreamImpl {
+  private ByteBuffer buffer;
+
+  /**
+   * @param buffer 圖片資料，讀取範圍為目前 position 至 limit，不會改變此 ByteBuffer 的 position
+   */
+  public ByteBufferImageInputStream(ByteBuffer buffer) {
+    this.buffer = buffer.slice();
+  }
+
+  @Override
+  public int read() throws IOException {
+    checkClosed();
+    bitOffset = 0;
+
+    if (streamPos >= buffer.limit()) {
+      return -1;
+    }
+
+    return buffer.get((int) streamPos++) & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    checkClosed();
+    if (off < 0 || len < 0 || off + len > b.length || off + len < 0) {
+      throw new IndexOutOfBoundsException();
+    }
+    bitOffset = 0;
+
+    if (len == 0) {
+      return 0;
+    }
+
+    long remaining = buffer.limit() - streamPos;
+    if (remaining <= 0) {
+      return -1;
+    }
+
+    int length = (int) Math.min(len, remaining);
+    buffer.position((int) streamPos);
+    buffer.get(b, off, length);
+    streamPos += length;
+
+    return length;
+  }
+
+  @Override
+  public long length() {
+    return buffer.limit();
+  }
+
+  @Override
+  public boolean isCached() {
+    return true;
+  }
+
+  @Override
+  public boolean isCachedMemory() {
+    return true;
+  }
+
+  @Override
+  public void close() throws IOException {
+    super.close();
+    buffer = null;
+  }
+}
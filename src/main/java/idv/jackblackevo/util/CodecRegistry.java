@@ -0,0 +1,296 @@
+package idv.jackblackevo.util;
+
+import com.twelvemonkeys.imageio.plugins.tiff.TIFFImageReaderSpi;
+import com.twelvemonkeys.imageio.plugins.tiff.TIFFImageWriterSpi;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriter;
+import javax.imageio.spi.IIORegistry;
+import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.spi.ImageReaderWriterSpi;
+import javax.imageio.spi.ImageWriterSpi;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 快取 ImageIO 的 reader / writer SPI，並保留用過的 reader / writer，reset() 後供所有執行緒重複使用。
+ * <p>
+ * 每個 SPI 最多保留 MAX_POOLED_CODECS 個，超過時直接 dispose()。
+ * SPI 於第一次使用時載入，之後呼叫 ImageIO.scanForPlugins() 新增的外掛需呼叫 clear() 才會生效。
+ * TIFF 固定使用 TwelveMonkeys 的 reader / writer，不受 Java 9 之後內建的 TIFF 外掛影響。
+ */
+class CodecRegistry {
+  private static volatile List<ImageReaderSpi> readerSpiList;
+  private static final Map<String, ImageWriterSpi> WRITER_SPI_MAP = new ConcurrentHashMap<>();
+
+  /**
+   * 每個 SPI 保留的 reader / writer 上限，同時使用的數量不超過 worker 數
+   */
+  private static final int MAX_POOLED_CODECS = Runtime.getRuntime().availableProcessors();
+
+  private static final Map<Object, Deque<Object>> CODEC_POOL = new HashMap<>();
+
+  private CodecRegistry() {
+  }
+
+  /**
+   * 依 ImageIO 的 SPI 順序找出第一個可讀取此串流的 reader。
+   *
+   * @param iis 圖片串流
+   * @return 已設定輸入的 ImageReader
+   * @throws IOException
+   */
+  public static ImageReader getImageReader(ImageInputStream iis) throws IOException {
+    return getImageReader(iis, null);
+  }
+
+  /**
+   * 先只檢查支援指定格式的 reader，皆無法讀取時再依 ImageIO 的 SPI 順序檢查全部的 reader。
+   *
+   * @param iis        圖片串流
+   * @param formatName 已知的格式名稱，null 時檢查全部的 reader
+   * @return 已設定輸入的 ImageReader
+   * @throws IOException
+   */
+  public static ImageReader getImageReader(ImageInputStream iis, String formatName) throws IOException {
+    ImageReader imageReader = null;
+    if (formatName != null) {
+      imageReader = findImageReader(iis, formatName);
+    }
+    if (imageReader == null) {
+      imageReader = findImageReader(iis, null);
+    }
+    if (imageReader == null) {
+      throw new UnsupportedOperationException("No image reader found!");
+    }
+
+    return imageReader;
+  }
+
+  /**
+   * 取得指定格式的 writer。
+   *
+   * @param formatName 格式名稱
+   * @param ios        輸出串流
+   * @return 已設定輸出的 ImageWriter
+   * @throws IOException
+   */
+  public static ImageWriter getImageWriter(String formatName, ImageOutputStream ios) throws IOException {
+    ImageWriterSpi writerSpi = WRITER_SPI_MAP.get(formatName);
+    if (writerSpi == null) {
+      writerSpi = getPinnedWriterSpi(formatName);
+      if (writerSpi != null) {
+        WRITER_SPI_MAP.put(formatName, writerSpi);
+      }
+    }
+
+    ImageWriter imageWriter = null;
+    if (writerSpi == null) {
+      Iterator<ImageWriter> imageWriterIterator = ImageIO.getImageWritersByFormatName(formatName);
+      if (!imageWriterIterator.hasNext()) {
+        throw new UnsupportedOperationException("No image writer found!");
+      }
+
+      imageWriter = imageWriterIterator.next();
+      writerSpi = imageWriter.getOriginatingProvider();
+      if (writerSpi != null) {
+        WRITER_SPI_MAP.put(formatName, writerSpi);
+      }
+    } else {
+      imageWriter = (ImageWriter) acquire(writerSpi);
+      if (imageWriter == null) {
+        imageWriter = writerSpi.createWriterInstance();
+      }
+    }
+    imageWriter.setOutput(ios);
+
+    return imageWriter;
+  }
+
+  /**
+   * 歸還 reader，之後重複使用。
+   *
+   * @param imageReader ImageReader
+   */
+  public static void release(ImageReader imageReader) {
+    imageReader.reset();
+    if (imageReader.getOriginatingProvider() == null) {
+      imageReader.dispose();
+
+      return;
+    }
+
+    release(imageReader.getOriginatingProvider(), imageReader);
+  }
+
+  /**
+   * 歸還 writer，之後重複使用。
+   *
+   * @param imageWriter ImageWriter
+   */
+  public static void release(ImageWriter imageWriter) {
+    imageWriter.reset();
+    if (imageWriter.getOriginatingProvider() == null) {
+      imageWriter.dispose();
+
+      return;
+    }
+
+    release(imageWriter.getOriginatingProvider(), imageWriter);
+  }
+
+  /**
+   * 清除快取的 SPI 並 dispose() 保留的 reader / writer，下次使用時重新載入。
+   */
+  public static void clear() {
+    readerSpiList = null;
+    WRITER_SPI_MAP.clear();
+
+    synchronized (CODEC_POOL) {
+      Iterator<Deque<Object>> codecDequeIterator = CODEC_POOL.values().iterator();
+      while (codecDequeIterator.hasNext()) {
+        Iterator<Object> codecIterator = codecDequeIterator.next().iterator();
+        while (codecIterator.hasNext()) {
+          dispose(codecIterator.next());
+        }
+      }
+      CODEC_POOL.clear();
+    }
+  }
+
+  private static ImageReader findImageReader(ImageInputStream iis, String formatName) throws IOException {
+    Iterator<ImageReaderSpi> readerSpiIterator = getReaderSpiList().iterator();
+    while (readerSpiIterator.hasNext()) {
+      ImageReaderSpi readerSpi = readerSpiIterator.next();
+      if (formatName != null && !isFormatSupported(readerSpi, formatName)) {
+        continue;
+      }
+
+      // 與 ImageIO.getImageReaders 相同，檢查時發生錯誤視為不可讀取
+      boolean isDecodable;
+      iis.mark();
+      try {
+        isDecodable = readerSpi.canDecodeInput(iis);
+      } catch (IOException e) {
+        isDecodable = false;
+      } finally {
+        iis.reset();
+      }
+
+      if (isDecodable) {
+        ImageReader imageReader = (ImageReader) acquire(readerSpi);
+        if (imageReader == null) {
+          imageReader = readerSpi.createReaderInstance();
+        }
+        imageReader.setInput(iis);
+
+        return imageReader;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * TIFF 固定使用 TwelveMonkeys 的 writer。Java 9 之後內建的 TIFF writer 排序在前，但壓縮方式名稱（如沒有 None）與多頁的配置不同，
+   * TIFFCompressionSelector 與 TIFFPageAssembler 皆依 TwelveMonkeys 的 writer 設計。
+   */
+  private static ImageWriterSpi getPinnedWriterSpi(String formatName) {
+    ImageWriterSpi writerSpi = IIORegistry.getDefaultInstance().getServiceProviderByClass(TIFFImageWriterSpi.class);
+    if (writerSpi == null || !isFormatSupported(writerSpi, formatName)) {
+      return null;
+    }
+
+    return writerSpi;
+  }
+
+  private static boolean isFormatSupported(ImageReaderWriterSpi spi, String formatName) {
+    String[] formatNames = spi.getFormatNames();
+    if (formatNames == null) {
+      return false;
+    }
+
+    for (int i = 0; i < formatNames.length; i++) {
+      if (formatNames[i].equalsIgnoreCase(formatName)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private static List<ImageReaderSpi> getReaderSpiList() {
+    List<ImageReaderSpi> spiList = readerSpiList;
+    if (spiList == null) {
+      spiList = new ArrayList<>();
+      Iterator<ImageReaderSpi> readerSpiIterator = IIORegistry.getDefaultInstance().getServiceProviders(ImageReaderSpi.class, true);
+      while (readerSpiIterator.hasNext()) {
+        ImageReaderSpi readerSpi = readerSpiIterator.next();
+        // TIFF 與 writer 相同固定使用 TwelveMonkeys 的 reader，內建的 TIFF reader 無法解碼 TwelveMonkeys JPEG reader 處理的 JPEG 壓縮頁面
+        if (readerSpi instanceof TIFFImageReaderSpi) {
+          spiList.add(0, readerSpi);
+        } else {
+          spiList.add(readerSpi);
+        }
+      }
+
+      spiList = Collections.unmodifiableList(spiList);
+      readerSpiList = spiList;
+    }
+
+    return spiList;
+  }
+
+  private static Object acquire(Object spi) {
+    synchronized (CODEC_POOL) {
+      Deque<Object> codecDeque = CODEC_POOL.get(spi);
+      if (codecDeque == null || codecDeque.isEmpty()) {
+        return null;
+      }
+
+      return codecDeque.pop();
+    }
+  }
+
+  private static void release(Object spi, Object codec) {
+    synchronized (CODEC_POOL) {
+      Deque<Object> codecDeque = CODEC_POOL.get(spi);
+      if (codecDeque == null) {
+        codecDeque = new ArrayDeque<>();
+        CODEC_POOL.put(spi, codecDeque);
+      }
+
+      if (codecDeque.size() < MAX_POOLED_CODECS) {
+        codecDeque.push(codec);
+
+        return;
+      }
+    }
+
+    dispose(codec);
+  }
+
+  private static void dispose(Object codec) {
+    if (codec instanceof ImageReader) {
+      ((ImageReader) codec).dispose();
+    } else {
+      ((ImageWriter) codec).dispose();
+    }
+  }
+
+  /**
+   * @param spi reader / writer 的 SPI
+   * @return 目前保留的 reader / writer 數量
+   */
+  static int getPooledCodecCount(Object spi) {
+    synchronized (CODEC_POOL) {
+      Deque<Object> codecDeque = CODEC_POOL.get(spi);
+
+      return codecDeque == null ? 0 : codecDeque.size();
+    }
+  }
+}
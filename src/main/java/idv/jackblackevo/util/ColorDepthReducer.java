@@ -0,0 +1,279 @@
+package idv.jackblackevo.util;
+
+import java.awt.color.ColorSpace;
+import java.awt.image.*;
+
+/**
+ * 內容只有灰階或黑白的頁面轉換為 TYPE_BYTE_GRAY 或 TYPE_BYTE_BINARY，像素值不變，減少之後處理與寫出的資料量。
+ * <p>
+ * 直接掃描 DataBuffer 陣列，遇到彩色或透明像素即停止。
+ */
+class ColorDepthReducer {
+  private enum Content {
+    Color, Gray, Bilevel
+  }
+
+  private ColorDepthReducer() {
+  }
+
+  /**
+   * 減少頁面的色彩深度。
+   *
+   * @param image            頁面
+   * @param isBilevelAllowed 是否可轉換為黑白，之後仍需重新取樣時應只轉換為灰階
+   * @param imagePool        頁面緩衝
+   * @return 轉換後之頁面，無法減少時為原頁面
+   */
+  public static BufferedImage reduce(BufferedImage image, boolean isBilevelAllowed, BufferedImagePool imagePool) {
+    Raster raster = image.getRaster();
+    ColorModel colorModel = image.getColorModel();
+    if (colorModel instanceof IndexColorModel || colorModel.isAlphaPremultiplied()) {
+      return image;
+    }
+
+    int colorSpaceType = colorModel.getColorSpace().getType();
+    boolean isRGB = colorSpaceType == ColorSpace.TYPE_RGB && colorModel.getNumColorComponents() == 3;
+    boolean isGray = colorSpaceType == ColorSpace.TYPE_GRAY && colorModel.getNumColorComponents() == 1;
+    if (!isRGB && !isGray) {
+      return image;
+    }
+
+    // 每個 sample 在陣列中的位置，int 為位移的 bit 數，byte 為像素中的位置；透明度為最後一個
+    int[] sampleOffsets;
+    if (isIntPacked(raster)) {
+      sampleOffsets = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getBitOffsets();
+    } else if (isByteInterleaved(raster)) {
+      sampleOffsets = ((PixelInterleavedSampleModel) raster.getSampleModel()).getBandOffsets();
+    } else {
+      return image;
+    }
+
+    Content content = analyze(raster, sampleOffsets, isRGB ? 3 : 1);
+    if (content == Content.Bilevel && isBilevelAllowed) {
+      return toBilevel(raster, sampleOffsets);
+    } else if (content != Content.Color && isRGB) {
+      return toGray(raster, sampleOffsets, imagePool);
+    }
+
+    return image;
+  }
+
+  /**
+   * 將調色盤只有灰色的 1 bit 頁面展開為 8 bit 灰階，用於不支援 1 bit 的格式（如 JPEG 會改以 RGB 寫出）。
+   *
+   * @param image 頁面
+   * @return 轉換後之頁面，非 1 bit 灰色調色盤時為原頁面
+   */
+  public static BufferedImage expandBilevel(BufferedImage image) {
+    if (!(image.getColorModel() instanceof IndexColorModel) || image.getColorModel().getPixelSize() != 1) {
+      return image;
+    }
+
+    IndexColorModel indexColorModel = (IndexColorModel) image.getColorModel();
+    byte[] palette = new byte[indexColorModel.getMapSize()];
+    for (int i = 0; i < palette.length; i++) {
+      int rgb = indexColorModel.getRGB(i);
+      if ((rgb >>> 24) != 0xFF || ((rgb >> 16) & 0xFF) != (rgb & 0xFF) || ((rgb >> 8) & 0xFF) != (rgb & 0xFF)) {
+        return image;
+      }
+      palette[i] = (byte) rgb;
+    }
+
+    int width = image.getWidth();
+    int height = image.getHeight();
+    Raster raster = image.getRaster();
+    BufferedImage grayImage = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+    byte[] grayData = ((DataBufferByte) grayImage.getRaster().getDataBuffer()).getData();
+
+    int[] row = new int[width];
+    for (int y = 0; y < height; y++) {
+      raster.getSamples(raster.getMinX(), raster.getMinY() + y, width, 1, 0, row);
+      int grayIndex = y * width;
+      for (int x = 0; x < width; x++) {
+        grayData[grayIndex + x] = palette[row[x]];
+      }
+    }
+
+    return grayImage;
+  }
+
+  /**
+   * 檢查所有像素是否不透明且 R、G、B 相同，以及是否只有 0 與 255。
+   */
+  private static Content analyze(Raster raster, int[] sampleOffsets, int numColorBands) {
+    int width = raster.getWidth();
+    int height = raster.getHeight();
+    boolean hasAlpha = sampleOffsets.length > numColorBands;
+    int alphaOffset = hasAlpha ? sampleOffsets[numColorBands] : 0;
+    int offset0 = sampleOffsets[0];
+    int offset1 = numColorBands > 1 ? sampleOffsets[1] : offset0;
+    int offset2 = numColorBands > 2 ? sampleOffsets[2] : offset0;
+
+    // 0 與 255 以外的值出現時清除
+    boolean isBilevel = true;
+
+    if (raster.getDataBuffer() instanceof DataBufferInt) {
+      DataBufferInt dataBuffer = (DataBufferInt) raster.getDataBuffer();
+      int[] data = dataBuffer.getData();
+      int stride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+      int base = dataBuffer.getOffset() + getBaseY(raster) * stride + getBaseX(raster);
+      for (int y = 0; y < height; y++) {
+        int index = base + y * stride;
+        for (int x = 0; x < width; x++) {
+          int pixel = data[index + x];
+          int value = (pixel >>> offset0) & 0xFF;
+          if (((pixel >>> offset1) & 0xFF) != value || ((pixel >>> offset2) & 0xFF) != value
+            || (hasAlpha && ((pixel >>> alphaOffset) & 0xFF) != 0xFF)) {
+            return Content.Color;
+          }
+          isBilevel &= value == 0 || value == 0xFF;
+        }
+      }
+    } else {
+      DataBufferByte dataBuffer = (DataBufferByte) raster.getDataBuffer();
+      byte[] data = dataBuffer.getData();
+      int pixelStride = sampleOffsets.length;
+      int stride = ((PixelInterleavedSampleModel) raster.getSampleModel()).getScanlineStride();
+      int base = dataBuffer.getOffset() + getBaseY(raster) * stride + getBaseX(raster) * pixelStride;
+      for (int y = 0; y < height; y++) {
+        int index = base + y * stride;
+        for (int x = 0; x < width; x++, index += pixelStride) {
+          byte value = data[index + offset0];
+          if (data[index + offset1] != value || data[index + offset2] != value
+            || (hasAlpha && data[index + alphaOffset] != (byte) 0xFF)) {
+            return Content.Color;
+          }
+          isBilevel &= value == 0 || value == (byte) 0xFF;
+        }
+      }
+    }
+
+    return isBilevel ? Content.Bilevel : Content.Gray;
+  }
+
+  private static BufferedImage toGray(Raster raster, int[] sampleOffsets, BufferedImagePool imagePool) {
+    int width = raster.getWidth();
+    int height = raster.getHeight();
+    BufferedImage grayImage = imagePool.acquire(width, height, BufferedImage.TYPE_BYTE_GRAY);
+    byte[] grayData = ((DataBufferByte) grayImage.getRaster().getDataBuffer()).getData();
+
+    int grayIndex = 0;
+    if (raster.getDataBuffer() instanceof DataBufferInt) {
+      DataBufferInt dataBuffer = (DataBufferInt) raster.getDataBuffer();
+      int[] data = dataBuffer.getData();
+      int stride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+      int base = dataBuffer.getOffset() + getBaseY(raster) * stride + getBaseX(raster);
+      int offset = sampleOffsets[0];
+      for (int y = 0; y < height; y++) {
+        int index = base + y * stride;
+        for (int x = 0; x < width; x++) {
+          grayData[grayIndex++] = (byte) (data[index + x] >>> offset);
+        }
+      }
+    } else {
+      DataBufferByte dataBuffer = (DataBufferByte) raster.getDataBuffer();
+      byte[] data = dataBuffer.getData();
+      int pixelStride = sampleOffsets.length;
+      int stride = ((PixelInterleavedSampleModel) raster.getSampleModel()).getScanlineStride();
+      int base = dataBuffer.getOffset() + getBaseY(raster) * stride + getBaseX(raster) * pixelStride + sampleOffsets[0];
+      for (int y = 0; y < height; y++) {
+        int index = base + y * stride;
+        for (int x = 0; x < width; x++, index += pixelStride) {
+          grayData[grayIndex++] = data[index];
+        }
+      }
+    }
+
+    return grayImage;
+  }
+
+  /**
+   * TYPE_BYTE_BINARY 的 0 為黑、1 為白，每個 byte 由高位元開始存放 8 個像素。
+   */
+  private static BufferedImage toBilevel(Raster raster, int[] sampleOffsets) {
+    int width = raster.getWidth();
+    int height = raster.getHeight();
+    BufferedImage bilevelImage = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY);
+    byte[] bilevelData = ((DataBufferByte) bilevelImage.getRaster().getDataBuffer()).getData();
+    int bilevelStride = (width + 7) / 8;
+
+    if (raster.getDataBuffer() instanceof DataBufferInt) {
+      DataBufferInt dataBuffer = (DataBufferInt) raster.getDataBuffer();
+      int[] data = dataBuffer.getData();
+      int stride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+      int base = dataBuffer.getOffset() + getBaseY(raster) * stride + getBaseX(raster);
+      int mask = 1 << sampleOffsets[0];
+      for (int y = 0; y < height; y++) {
+        int index = base + y * stride;
+        int bilevelIndex = y * bilevelStride;
+        for (int x = 0; x < width; x++) {
+          if ((data[index + x] & mask) != 0) {
+            bilevelData[bilevelIndex + (x >> 3)] |= 0x80 >> (x & 7);
+          }
+        }
+      }
+    } else {
+      DataBufferByte dataBuffer = (DataBufferByte) raster.getDataBuffer();
+      byte[] data = dataBuffer.getData();
+      int pixelStride = sampleOffsets.length;
+      int stride = ((PixelInterleavedSampleModel) raster.getSampleModel()).getScanlineStride();
+      int base = dataBuffer.getOffset() + getBaseY(raster) * stride + getBaseX(raster) * pixelStride + sampleOffsets[0];
+      for (int y = 0; y < height; y++) {
+        int index = base + y * stride;
+        int bilevelIndex = y * bilevelStride;
+        for (int x = 0; x < width; x++, index += pixelStride) {
+          if (data[index] != 0) {
+            bilevelData[bilevelIndex + (x >> 3)] |= 0x80 >> (x & 7);
+          }
+        }
+      }
+    }
+
+    return bilevelImage;
+  }
+
+  /**
+   * 每個 sample 為 8 bit 的 TYPE_INT_RGB、TYPE_INT_ARGB 等。
+   */
+  private static boolean isIntPacked(Raster raster) {
+    if (!(raster.getSampleModel() instanceof SinglePixelPackedSampleModel)
+      || !(raster.getDataBuffer() instanceof DataBufferInt)
+      || raster.getDataBuffer().getNumBanks() != 1) {
+      return false;
+    }
+
+    SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) raster.getSampleModel();
+    int[] bitMasks = sampleModel.getBitMasks();
+    int[] bitOffsets = sampleModel.getBitOffsets();
+    for (int i = 0; i < bitMasks.length; i++) {
+      if (bitMasks[i] != 0xFF << bitOffsets[i]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * 所有 byte 都是 sample 的 TYPE_BYTE_GRAY、TYPE_3BYTE_BGR、TYPE_4BYTE_ABGR 等。
+   */
+  private static boolean isByteInterleaved(Raster raster) {
+    if (!(raster.getSampleModel() instanceof PixelInterleavedSampleModel)
+      || !(raster.getDataBuffer() instanceof DataBufferByte)
+      || raster.getDataBuffer().getNumBanks() != 1) {
+      return false;
+    }
+
+    PixelInterleavedSampleModel sampleModel = (PixelInterleavedSampleModel) raster.getSampleModel();
+
+    return sampleModel.getPixelStride() == sampleModel.getNumBands() && sampleModel.getSampleSize(0) == 8;
+  }
+
+  private static int getBaseX(Raster raster) {
+    return raster.getMinX() - raster.getSampleModelTranslateX();
+  }
+
+  private static int getBaseY(Raster raster) {
+    return raster.getMinY() - raster.getSampleModelTranslateY();
+  }
+}
@@ -0,0 +1,47 @@
+package idv.jackblackevo.util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * direct 與 memory-mapped ByteBuffer 預設要等到 GC 才會釋放，不再使用時可立即釋放。
+ */
+class DirectBuffers {
+  private DirectBuffers() {
+  }
+
+  /**
+   * 立即釋放 direct 或 mapped 緩衝，Java 8 以前使用 DirectBuffer.cleaner()，之後使用 Unsafe.invokeCleaner()；
+   * 皆無法使用時交由 GC 釋放。釋放後不可再存取此緩衝。
+   *
+   * @param buffer direct 或 mapped 緩衝
+   */
+  public static void free(ByteBuffer buffer) {
+    if (buffer == null || !buffer.isDirect()) {
+      return;
+    }
+
+    try {
+      Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+      cleanerMethod.setAccessible(true);
+      Object cleaner = cleanerMethod.invoke(buffer);
+      if (cleaner != null) {
+        cleaner.getClass().getMethod("clean").invoke(cleaner);
+      }
+
+      return;
+    } catch (Exception e) {
+      // Java 9 之後無法存取 DirectBuffer
+    }
+
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field theUnsafeField = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafeField.setAccessible(true);
+      unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafeField.get(null), buffer);
+    } catch (Exception e) {
+      // 交由 GC 釋放
+    }
+  }
+}
@@ -0,0 +1,113 @@
+package idv.jackblackevo.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 依檔案開頭的 magic bytes 判斷格式，只讀取開頭一次，不需完整開啟檔案。
+ */
+class FormatSniffer {
+  enum Format {
+    JPEG("JPEG"), PNG("PNG"), GIF("GIF"), BMP("BMP"), TIFF("TIFF"), PDF(null), UNKNOWN(null);
+
+    private String imageIOFormatName;
+
+    Format(String imageIOFormatName) {
+      this.imageIOFormatName = imageIOFormatName;
+    }
+
+    /**
+     * @return ImageIO 的格式名稱，非 ImageIO 處理的格式為 null
+     */
+    public String getImageIOFormatName() {
+      return imageIOFormatName;
+    }
+  }
+
+  /**
+   * PDF 標頭可能不在檔案最開頭，於此長度內搜尋
+   */
+  private static final int HEADER_SEARCH_LENGTH = 1024;
+
+  private static final byte[] JPEG_SIGNATURE = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF};
+  private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+  private static final byte[] GIF87A_SIGNATURE = {'G', 'I', 'F', '8', '7', 'a'};
+  private static final byte[] GIF89A_SIGNATURE = {'G', 'I', 'F', '8', '9', 'a'};
+  private static final byte[] BMP_SIGNATURE = {'B', 'M'};
+  private static final byte[] TIFF_LITTLE_ENDIAN_SIGNATURE = {'I', 'I', '*', 0};
+  private static final byte[] TIFF_BIG_ENDIAN_SIGNATURE = {'M', 'M', 0, '*'};
+  private static final String PDF_SIGNATURE = "%PDF-";
+
+  private FormatSniffer() {
+  }
+
+  /**
+   * 判斷檔案格式。
+   *
+   * @param file 檔案
+   * @return 格式
+   * @throws IOException
+   */
+  public static Format sniff(File file) throws IOException {
+    byte[] header = new byte[HEADER_SEARCH_LENGTH];
+    int length = 0;
+    try (
+      InputStream is = new FileInputStream(file)
+    ) {
+      int n;
+      while (length < header.length && (n = is.read(header, length, header.length - length)) > 0) {
+        length += n;
+      }
+    }
+
+    return sniff(header, length);
+  }
+
+  /**
+   * 判斷資料格式。
+   *
+   * @param bytes 資料
+   * @return 格式
+   */
+  public static Format sniff(byte[] bytes) {
+    return sniff(bytes, Math.min(bytes.length, HEADER_SEARCH_LENGTH));
+  }
+
+  private static Format sniff(byte[] header, int length) {
+    if (startsWith(header, length, JPEG_SIGNATURE)) {
+      return Format.JPEG;
+    } else if (startsWith(header, length, PNG_SIGNATURE)) {
+      return Format.PNG;
+    } else if (startsWith(header, length, GIF87A_SIGNATURE) || startsWith(header, length, GIF89A_SIGNATURE)) {
+      return Format.GIF;
+    } else if (startsWith(header, length, TIFF_LITTLE_ENDIAN_SIGNATURE) || startsWith(header, length, TIFF_BIG_ENDIAN_SIGNATURE)) {
+      return Format.TIFF;
+    } else if (startsWith(header, length, BMP_SIGNATURE)) {
+      return Format.BMP;
+    }
+
+    String headerString = new String(header, 0, length, StandardCharsets.ISO_8859_1);
+    if (headerString.contains(PDF_SIGNATURE)) {
+      return Format.PDF;
+    }
+
+    return Format.UNKNOWN;
+  }
+
+  private static boolean startsWith(byte[] header, int length, byte[] signature) {
+    if (length < signature.length) {
+      return false;
+    }
+
+    for (int i = 0; i < signature.length; i++) {
+      if (header[i] != signature[i]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+}
@@ -1,7 +1,11 @@
 package idv.jackblackevo.util;
 
+import java.awt.*;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.channels.WritableByteChannel;
 import java.util.List;
 
 public interface ImageBuilder {
@@ -19,6 +23,43 @@ public interface ImageBuilder {
    */
   Orientation LANDSCAPE = Orientation.Landscape;
 
+  enum ResizeQuality {
+    Fast, Balanced, Quality
+  }
+
+  /**
+   * 雙線性內插，速度最快，大幅縮小時可能出現鋸齒
+   */
+  ResizeQuality FAST = ResizeQuality.Fast;
+
+  /**
+   * 先逐次縮小一半，最後一步以 Lanczos 重新取樣
+   */
+  ResizeQuality BALANCED = ResizeQuality.Balanced;
+
+  /**
+   * 以 Lanczos 一次重新取樣至目標尺寸，品質最好
+   */
+  ResizeQuality QUALITY = ResizeQuality.Quality;
+
+  /**
+   * TIFF 的壓縮方式
+   */
+  enum TIFFCompression {
+    /**
+     * 依每頁內容選擇：黑白為 CCITT T.6、顏色少的圖形為 Deflate、照片為 JPEG
+     */
+    Auto,
+    /**
+     * CCITT T.6（Group 4），非黑白的頁面改為自動選擇
+     */
+    CCITT,
+    LZW,
+    Deflate,
+    JPEG,
+    None
+  }
+
   /**
    * 關閉 ImageBuilder，釋放快取記憶體。
    */
@@ -32,7 +73,57 @@ public interface ImageBuilder {
   boolean checkIsClosed();
 
   /**
-   * 調整圖片尺寸。
+   * 檢查 ImageBuilder 是否為串流模式（寫出時才逐一檔案解碼）。
+   *
+   * @return ImageBuilder 是否為串流模式
+   */
+  boolean checkIsStreaming();
+
+  /**
+   * 設定平行處理的 worker 數量，多個檔案與頁面會同時處理，輸出檔名與頁面順序不變。
+   *
+   * @param numWorkers worker 數量，小於等於 0 時為 CPU 核心數
+   * @return ImageBuilder
+   */
+  ImageBuilder parallel(int numWorkers);
+
+  /**
+   * 設定寫出至串流及開啟 PDF 時是否使用暫存檔作為快取，關閉時完全於記憶體中處理。
+   * 預設依 ImageIO.getUseCache()，由記憶體中的圖片建立時預設為關閉。
+   *
+   * @param isUseDiskCache 是否使用暫存檔
+   * @return ImageBuilder
+   */
+  ImageBuilder useDiskCache(boolean isUseDiskCache);
+
+  /**
+   * 將已讀取的頁面像素移至 heap 外，大量頁面常駐時不增加 GC 負擔；使用暫存檔時存放於 memory-mapped 暫存檔，否則為 direct ByteBuffer。
+   * 寫出時才逐頁複製回 heap 處理，close() 時立即釋放。串流模式不會預先讀取頁面，無作用。
+   *
+   * @return ImageBuilder
+   * @throws IOException
+   */
+  ImageBuilder storePagesOffHeap() throws IOException;
+
+  /**
+   * 設定寫出 TIFF 時的壓縮方式，預設為 JPEG；quality 只用於 JPEG 壓縮的頁面。
+   *
+   * @param compression 壓縮方式
+   * @return ImageBuilder
+   */
+  ImageBuilder compressTIFF(TIFFCompression compression);
+
+  /**
+   * 設定是否將只有灰階或黑白的頁面（如掃描文件）轉換為 8 bit 灰階或 1 bit 黑白後再處理與寫出，像素值不變，但寫出的檔案為灰階或黑白，預設為關閉。
+   * 之後仍需縮小的頁面只轉換為灰階。
+   *
+   * @param isReduceColorDepth 是否減少色彩深度
+   * @return ImageBuilder
+   */
+  ImageBuilder reduceColorDepth(boolean isReduceColorDepth);
+
+  /**
+   * 調整圖片尺寸，以 QUALITY 重新取樣。
    *
    * @param width  圖片寬
    * @param height 圖片高
@@ -41,6 +132,38 @@ public interface ImageBuilder {
    */
   ImageBuilder resize(int width, int height) throws IOException;
 
+  /**
+   * 調整圖片尺寸，多次調整尺寸時以最後一次的品質重新取樣。
+   *
+   * @param width   圖片寬
+   * @param height  圖片高
+   * @param quality 重新取樣的品質
+   * @return ImageBuilder
+   * @throws IOException
+   */
+  ImageBuilder resize(int width, int height, ResizeQuality quality) throws IOException;
+
+  /**
+   * 以一次解碼輸出多個尺寸，以 QUALITY 重新取樣。
+   *
+   * @param sizes 圖片尺寸
+   * @return ImageBuilder
+   * @throws IOException
+   * @see #resizeToSizes(ResizeQuality, Dimension...)
+   */
+  ImageBuilder resizeToSizes(Dimension... sizes) throws IOException;
+
+  /**
+   * 以一次解碼輸出多個尺寸，writeToFiles 時每個尺寸各自寫出，檔名加上尺寸（如 _1000x1500）。
+   * 最大的尺寸同 resize，其他尺寸依序由前一個尺寸的結果再縮小；其他寫出方式只輸出最大的尺寸。
+   *
+   * @param quality 重新取樣的品質
+   * @param sizes   圖片尺寸，依面積由大至小處理
+   * @return ImageBuilder
+   * @throws IOException
+   */
+  ImageBuilder resizeToSizes(ResizeQuality quality, Dimension... sizes) throws IOException;
+
   /**
    * 旋轉圖片。
    *
@@ -49,6 +172,27 @@ public interface ImageBuilder {
    */
   ImageBuilder rotate(Orientation orientation);
 
+  /**
+   * 只處理指定範圍的頁面，串流模式與 PDF 不會解碼或繪製未選取的頁面。
+   *
+   * @param firstPage 第一頁，從 1 開始
+   * @param lastPage  最後一頁（包含），超過總頁數時至最後一頁
+   * @return ImageBuilder
+   */
+  ImageBuilder selectPages(int firstPage, int lastPage);
+
+  /**
+   * 只處理頁面中的範圍，於其他操作之前套用，串流模式與 PDF 不會解碼或繪製範圍外的像素。
+   * PDF 的範圍為以預設 DPI 繪製時的像素，未與範圍重疊的頁面會被略過。
+   *
+   * @param x      範圍左上角 x
+   * @param y      範圍左上角 y
+   * @param width  範圍寬
+   * @param height 範圍高
+   * @return ImageBuilder
+   */
+  ImageBuilder selectRegion(int x, int y, int width, int height);
+
   /**
    * 合併成多頁 TIFF。
    *
@@ -91,6 +235,44 @@ public interface ImageBuilder {
    */
   File combineAndWriteToMultipageTIFF(File destLocation, float quality, boolean isCloseBuilderAfterWrote) throws IOException;
 
+  /**
+   * 合併成多頁 TIFF 並寫出至串流，不會關閉串流。
+   *
+   * @param os                       目標串流
+   * @param isCloseBuilderAfterWrote 結束時是否關閉 ImageBuilder
+   * @throws IOException
+   */
+  void combineAndWriteToMultipageTIFF(OutputStream os, boolean isCloseBuilderAfterWrote) throws IOException;
+
+  /**
+   * 合併成多頁 TIFF 並寫出至串流，不會關閉串流。
+   *
+   * @param os                       目標串流
+   * @param quality                  TIFF 品質，0.0f - 1.0f
+   * @param isCloseBuilderAfterWrote 結束時是否關閉 ImageBuilder
+   * @throws IOException
+   */
+  void combineAndWriteToMultipageTIFF(OutputStream os, float quality, boolean isCloseBuilderAfterWrote) throws IOException;
+
+  /**
+   * 合併成多頁 TIFF 並寫出至 Channel，不會關閉 Channel。
+   *
+   * @param channel                  目標 Channel
+   * @param isCloseBuilderAfterWrote 結束時是否關閉 ImageBuilder
+   * @throws IOException
+   */
+  void combineAndWriteToMultipageTIFF(WritableByteChannel channel, boolean isCloseBuilderAfterWrote) throws IOException;
+
+  /**
+   * 合併成多頁 TIFF 並寫出至 Channel，不會關閉 Channel。
+   *
+   * @param channel                  目標 Channel
+   * @param quality                  TIFF 品質，0.0f - 1.0f
+   * @param isCloseBuilderAfterWrote 結束時是否關閉 ImageBuilder
+   * @throws IOException
+   */
+  void combineAndWriteToMultipageTIFF(WritableByteChannel channel, float quality, boolean isCloseBuilderAfterWrote) throws IOException;
+
   /**
    * 寫出圖片。
    *
@@ -157,10 +339,92 @@ public interface ImageBuilder {
    */
   List<File> writeToFiles(File destLocation, String fileType, float quality, boolean isCloseBuilderAfterWrote) throws IOException;
 
+  /**
+   * 逐塊讀取、處理並寫出為 tiled TIFF（Deflate 壓縮），每個來源一個檔案，適用於無法整頁解碼的超大圖片。
+   * 一律由來源讀取，記憶體用量只與 tile 大小及圖片寬度相關；以 streamFromSrc 建立可避免建立時即解碼整張圖片。
+   *
+   * @param destLocation             目標目錄路徑
+   * @param isCloseBuilderAfterWrote 結束時是否關閉 ImageBuilder
+   * @return 產出之 TIFF List
+   * @throws IOException
+   */
+  List<File> writeToTiledTIFFFiles(String destLocation, boolean isCloseBuilderAfterWrote) throws IOException;
+
+  /**
+   * 逐塊讀取、處理並寫出為 tiled TIFF（Deflate 壓縮），每個來源一個檔案，適用於無法整頁解碼的超大圖片。
+   * 一律由來源讀取，記憶體用量只與 tile 大小及圖片寬度相關；以 streamFromSrc 建立可避免建立時即解碼整張圖片。
+   *
+   * @param destLocation             目標目錄
+   * @param isCloseBuilderAfterWrote 結束時是否關閉 ImageBuilder
+   * @return 產出之 TIFF List
+   * @throws IOException
+   */
+  List<File> writeToTiledTIFFFiles(File destLocation, boolean isCloseBuilderAfterWrote) throws IOException;
+
+  /**
+   * 寫出單一圖片至串流，不會關閉串流；多頁圖片需寫出為 TIFF 或 GIF。
+   *
+   * @param os                       目標串流
+   * @param fileType                 寫出之圖片格式
+   * @param isCloseBuilderAfterWrote 結束時是否關閉 ImageBuilder
+   * @throws IOException
+   */
+  void writeTo(OutputStream os, String fileType, boolean isCloseBuilderAfterWrote) throws IOException;
+
+  /**
+   * 寫出單一圖片至串流，不會關閉串流；多頁圖片需寫出為 TIFF 或 GIF。
+   *
+   * @param os                       目標串流
+   * @param fileType                 寫出之圖片格式
+   * @param quality                  圖片品質，0.0f - 1.0f
+   * @param isCloseBuilderAfterWrote 結束時是否關閉 ImageBuilder
+   * @throws IOException
+   */
+  void writeTo(OutputStream os, String fileType, float quality, boolean isCloseBuilderAfterWrote) throws IOException;
+
+  /**
+   * 寫出單一圖片至 Channel，不會關閉 Channel；多頁圖片需寫出為 TIFF 或 GIF。
+   *
+   * @param channel                  目標 Channel
+   * @param fileType                 寫出之圖片格式
+   * @param isCloseBuilderAfterWrote 結束時是否關閉 ImageBuilder
+   * @throws IOException
+   */
+  void writeTo(WritableByteChannel channel, String fileType, boolean isCloseBuilderAfterWrote) throws IOException;
+
+  /**
+   * 寫出單一圖片至 Channel，不會關閉 Channel；多頁圖片需寫出為 TIFF 或 GIF。
+   *
+   * @param channel                  目標 Channel
+   * @param fileType                 寫出之圖片格式
+   * @param quality                  圖片品質，0.0f - 1.0f
+   * @param isCloseBuilderAfterWrote 結束時是否關閉 ImageBuilder
+   * @throws IOException
+   */
+  void writeTo(WritableByteChannel channel, String fileType, float quality, boolean isCloseBuilderAfterWrote) throws IOException;
+
   /**
    * 轉換成 base64 字串。
    *
    * @return base64 字串 List
    */
   List<String> convertToBase64();
+
+  /**
+   * 以原格式轉換成 base64 並寫出至 Writer，不會關閉 Writer；編碼時即時寫出，不保留完整的 base64 字串。
+   *
+   * @param writer                   目標 Writer
+   * @param isCloseBuilderAfterWrote 結束時是否關閉 ImageBuilder
+   * @throws IOException
+   */
+  void writeBase64To(Writer writer, boolean isCloseBuilderAfterWrote) throws IOException;
+
+  /**
+   * 以原格式轉換成 base64 並以 ASCII 寫出至串流，不會關閉串流；編碼時即時寫出，不保留完整的 base64 字串。
+   *
+   * @param os                       目標串流
+   * @param isCloseBuilderAfterWrote 結束時是否關閉 ImageBuilder
+   * @throws IOException
+   */
+  void writeBase64To(OutputStream os, boolean isCloseBuilderAfterWrote) throws IOException;
 }
@@ -4,14 +4,61 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 
 class ImageData {
+  private File sourceFile;
+  private byte[] sourceBytes;
   private String fileName;
   private String imageType;
   private BufferedImage[] imagePages;
+  private boolean isPDF = false;
+  private MemoryGovernor.Reservation reservation;
 
-  public ImageData(String fileName, String imageType, BufferedImage[] imagePages) {
+  public ImageData(File sourceFile) {
+    this.sourceFile = sourceFile;
+    this.fileName = sourceFile.getName().replaceFirst("\\.[^.]+$", "");
+  }
+
+  /**
+   * 記憶體中的圖片，不對應任何檔案。
+   *
+   * @param fileName    寫出檔案時使用的檔名
+   * @param sourceBytes 圖片資料
+   */
+  public ImageData(String fileName, byte[] sourceBytes) {
+    this.sourceBytes = sourceBytes;
     this.fileName = fileName;
-    this.imageType = imageType;
-    this.imagePages = imagePages;
+  }
+
+  /**
+   * 建立相同來源、尚未讀取的圖片資料。
+   */
+  public ImageData copySource() {
+    if (sourceFile == null) {
+      return new ImageData(fileName, sourceBytes);
+    }
+
+    return new ImageData(sourceFile);
+  }
+
+  /**
+   * @return 來源檔案，記憶體中的圖片為 null
+   */
+  public File getSourceFile() {
+    return sourceFile;
+  }
+
+  /**
+   * @return 圖片資料，來源為檔案時為 null
+   */
+  public byte[] getSourceBytes() {
+    return sourceBytes;
+  }
+
+  public String getSourceName() {
+    if (sourceFile == null) {
+      return fileName;
+    }
+
+    return sourceFile.getPath();
   }
 
   public String getFileName() {
@@ -26,6 +73,10 @@ class ImageData {
     return imageType;
   }
 
+  public void setImageType(String imageType) {
+    this.imageType = imageType;
+  }
+
   public BufferedImage[] getImagePages() {
     return imagePages;
   }
@@ -33,4 +84,39 @@ class ImageData {
   public void setImagePages(BufferedImage[] imagePages) {
     this.imagePages = imagePages;
   }
+
+  /**
+   * PDF 不會預先繪製頁面，於寫出時才依操作決定 DPI 逐頁繪製。
+   */
+  public boolean isPDF() {
+    return isPDF;
+  }
+
+  public void setPDF(boolean isPDF) {
+    this.isPDF = isPDF;
+  }
+
+  /**
+   * 頁面所使用的記憶體預留，釋放頁面時一併釋放。
+   */
+  public void setReservation(MemoryGovernor.Reservation reservation) {
+    this.reservation = reservation;
+  }
+
+  public void retainReservation() {
+    if (reservation != null) {
+      reservation.retain();
+    }
+  }
+
+  public void releaseReservation() {
+    if (reservation != null) {
+      reservation.release();
+      reservation = null;
+    }
+  }
+
+  public boolean isLoaded() {
+    return imagePages != null;
+  }
 }
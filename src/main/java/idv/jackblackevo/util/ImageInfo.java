@@ -0,0 +1,61 @@
+package idv.jackblackevo.util;
+
+/**
+ * 只讀取檔頭取得的圖片資訊，不解碼圖片。
+ */
+public class ImageInfo {
+  private String sourceName;
+  private String format;
+  private int width;
+  private int height;
+  private int numPages;
+
+  ImageInfo(String sourceName, String format, int width, int height, int numPages) {
+    this.sourceName = sourceName;
+    this.format = format;
+    this.width = width;
+    this.height = height;
+    this.numPages = numPages;
+  }
+
+  /**
+   * @return 來源路徑，記憶體中的圖片為其名稱
+   */
+  public String getSourceName() {
+    return sourceName;
+  }
+
+  /**
+   * @return 格式名稱，為 JPEG、PNG、GIF、BMP、TIFF、PDF，其他格式為 ImageIO reader 的格式名稱
+   */
+  public String getFormat() {
+    return format;
+  }
+
+  /**
+   * @return 第一頁的寬，PDF 為以預設 DPI 繪製時的寬
+   */
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * @return 第一頁的高，PDF 為以預設 DPI 繪製時的高
+   */
+  public int getHeight() {
+    return height;
+  }
+
+  public int getNumPages() {
+    return numPages;
+  }
+
+  public boolean isPDF() {
+    return "PDF".equals(format);
+  }
+
+  @Override
+  public String toString() {
+    return sourceName + " [" + format + ", " + width + "x" + height + ", " + numPages + " page(s)]";
+  }
+}
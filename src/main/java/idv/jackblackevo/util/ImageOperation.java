@@ -0,0 +1,95 @@
+package idv.jackblackevo.util;
+
+import java.awt.*;
+
+class ImageOperation {
+  enum Type {
+    Resize, Rotate
+  }
+
+  private Type type;
+  private int width;
+  private int height;
+  private ImageBuilder.ResizeQuality resizeQuality;
+  private ImageBuilder.Orientation orientation;
+
+  private ImageOperation(Type type) {
+    this.type = type;
+  }
+
+  public static ImageOperation resize(int width, int height, ImageBuilder.ResizeQuality resizeQuality) {
+    ImageOperation operation = new ImageOperation(Type.Resize);
+    operation.width = width;
+    operation.height = height;
+    operation.resizeQuality = resizeQuality;
+
+    return operation;
+  }
+
+  public static ImageOperation rotate(ImageBuilder.Orientation orientation) {
+    ImageOperation operation = new ImageOperation(Type.Rotate);
+    operation.orientation = orientation;
+
+    return operation;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  public ImageBuilder.ResizeQuality getResizeQuality() {
+    return resizeQuality;
+  }
+
+  public ImageBuilder.Orientation getOrientation() {
+    return orientation;
+  }
+
+  /**
+   * 檢查旋轉操作是否需要旋轉此尺寸的圖片。
+   *
+   * @param imageWidth  圖片寬
+   * @param imageHeight 圖片高
+   * @return 是否需要旋轉 90 度
+   */
+  public boolean isRotateNeeded(int imageWidth, int imageHeight) {
+    if (type != Type.Rotate) {
+      return false;
+    }
+
+    if (orientation == ImageBuilder.PORTRAIT) {
+      return imageWidth > imageHeight;
+    }
+
+    return imageWidth < imageHeight;
+  }
+
+  /**
+   * 取得圖片套用此操作後的尺寸。
+   *
+   * @param imageSize 圖片尺寸
+   * @return 套用操作後的尺寸
+   */
+  public Dimension getTargetDimension(Dimension imageSize) {
+    switch (type) {
+      case Resize:
+        return ImageUtil.getScaledDimension(imageSize, new Dimension(width, height));
+      case Rotate:
+        if (isRotateNeeded(imageSize.width, imageSize.height)) {
+          return new Dimension(imageSize.height, imageSize.width);
+        }
+
+        return imageSize;
+      default:
+        return imageSize;
+    }
+  }
+}
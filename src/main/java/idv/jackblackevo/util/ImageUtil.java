@@ -1,37 +1,84 @@
 package idv.jackblackevo.util;
 
-import com.twelvemonkeys.image.ResampleOp;
-import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.encryption.InvalidPasswordException;
-import org.apache.pdfbox.rendering.ImageType;
-import org.apache.pdfbox.rendering.PDFRenderer;
 
 import javax.imageio.*;
 import javax.imageio.stream.ImageInputStream;
 import javax.imageio.stream.ImageOutputStream;
-import javax.xml.bind.DatatypeConverter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
 import java.awt.*;
-import java.awt.geom.AffineTransform;
-import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
-import java.awt.image.BufferedImageOp;
+import java.awt.image.DataBuffer;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 public class ImageUtil {
+  private static final int SUBSAMPLING_OVERSAMPLE = 2;
+  private static final String IN_MEMORY_FILE_NAME = "image_";
+
+  /**
+   * 檔案大小達此值時對應至記憶體讀取，較小的檔案對應的成本高於直接讀取
+   */
+  private static final long MAPPED_INPUT_MIN_SIZE = 1024 * 1024;
+
   private static class Builder implements ImageBuilder {
     private static final String OUTPUT_PREFIX = "output_";
     private static final String RESIZE_PREFIX = "resize_";
     private static final String ROTATE_PREFIX = "rotate_";
     private static final String COMBINE_PREFIX = "combine_";
+    private static final String CROP_PREFIX = "crop_";
+
+    /**
+     * 寫出 tiled TIFF 時的 tile 寬高
+     */
+    private static final int TILE_SIZE = 512;
 
     private boolean isClosed = false;
+    private boolean isStreaming;
+    private int numWorkers = 1;
+    private boolean isUseDiskCache = ImageIO.getUseCache();
+    private TIFFCompression tiffCompression = TIFFCompression.JPEG;
+    private boolean isReduceColorDepth = false;
     private List<ImageData> imageDataList;
+    private List<ImageOperation> operationList = new ArrayList<>();
+    private SourceSelection sourceSelection = SourceSelection.ALL;
+    private List<Dimension> outputSizeList = new ArrayList<>();
+    private ResizeQuality outputSizeQuality = QUALITY;
+    private BufferedImagePool imagePool = new BufferedImagePool();
+    private OffHeapPageStore pageStore;
+    private Set<DataBuffer> templateDataBufferSet = Collections.newSetFromMap(new IdentityHashMap<DataBuffer, Boolean>());
 
     private Builder(List<ImageData> imageDataList) {
+      this(imageDataList, false);
+    }
+
+    private Builder(List<ImageData> imageDataList, boolean isStreaming) {
       this.imageDataList = imageDataList;
+      this.isStreaming = isStreaming;
+
+      // 已讀取的頁面會重複使用於每次寫出，處理結果與其共用 DataBuffer 時不可歸還至頁面緩衝
+      Iterator<ImageData> imageDataIterator = imageDataList.iterator();
+      while (imageDataIterator.hasNext()) {
+        BufferedImage[] imagePages = imageDataIterator.next().getImagePages();
+        if (imagePages == null) {
+          continue;
+        }
+
+        for (int i = 0; i < imagePages.length; i++) {
+          templateDataBufferSet.add(imagePages[i].getRaster().getDataBuffer());
+        }
+      }
     }
 
     @Override
@@ -43,14 +90,16 @@ public class ImageUtil {
       Iterator<ImageData> imageDetailListIterator = imageDataList.iterator();
       while (imageDetailListIterator.hasNext()) {
         ImageData imageData = imageDetailListIterator.next();
-        BufferedImage[] imagePages = imageData.getImagePages();
-
-        int numImagePages = imagePages.length;
-        for (int i = 0; i < numImagePages; i++) {
-          BufferedImage imagePage = imagePages[i];
+        flushImageData(imageData);
+      }
+      imagePool.clear();
 
-          // 釋放內部緩衝的記憶體
-          imagePage.flush();
+      // 頁面已不會再被存取，立即釋放 heap 外的緩衝
+      if (pageStore != null) {
+        try {
+          pageStore.close();
+        } catch (IOException e) {
+          e.printStackTrace();
         }
       }
 
@@ -63,303 +112,1525 @@ public class ImageUtil {
     }
 
     @Override
-    public Builder resize(int width, int height) throws IOException {
+    public boolean checkIsStreaming() {
+      return isStreaming;
+    }
+
+    @Override
+    public Builder parallel(int numWorkers) {
       if (isClosed) {
         throw new UnsupportedOperationException("Builder is closed!");
       }
 
-      if (width <= 0 || height <= 0) {
-        return this;
+      this.numWorkers = TaskExecutor.getNumWorkers(numWorkers);
+
+      return this;
+    }
+
+    @Override
+    public Builder useDiskCache(boolean isUseDiskCache) {
+      if (isClosed) {
+        throw new UnsupportedOperationException("Builder is closed!");
       }
 
-      Iterator<ImageData> imageDetailListIterator = imageDataList.iterator();
-      while (imageDetailListIterator.hasNext()) {
-        ImageData imageData = imageDetailListIterator.next();
-        String fileName = imageData.getFileName();
-        BufferedImage[] imagePages = imageData.getImagePages();
+      this.isUseDiskCache = isUseDiskCache;
 
-        int numImagePages = imagePages.length;
-        BufferedImage[] newImagePages = new BufferedImage[numImagePages];
-        for (int i = 0; i < numImagePages; i++) {
-          BufferedImage imagePage = imagePages[i];
+      return this;
+    }
+
+    @Override
+    public Builder storePagesOffHeap() throws IOException {
+      if (isClosed) {
+        throw new UnsupportedOperationException("Builder is closed!");
+      }
+
+      if (isStreaming || pageStore != null) {
+        return this;
+      }
 
-          Dimension newImageSize = getScaledDimension(new Dimension(imagePage.getWidth(), imagePage.getHeight()), new Dimension(width, height));
-          BufferedImageOp reSampler = new ResampleOp(newImageSize.width, newImageSize.height, ResampleOp.FILTER_LANCZOS);
-          BufferedImage resizedImagePage = reSampler.filter(imagePage, null);
+      pageStore = new OffHeapPageStore(isUseDiskCache, ImageIO.getCacheDirectory());
 
-          // 釋放內部緩衝的記憶體
-          imagePage.flush();
+      Iterator<ImageData> imageDataIterator = imageDataList.iterator();
+      while (imageDataIterator.hasNext()) {
+        ImageData imageData = imageDataIterator.next();
+        BufferedImage[] imagePages = imageData.getImagePages();
+        if (imagePages == null) {
+          continue;
+        }
 
-          newImagePages[i] = resizedImagePage;
+        for (int i = 0; i < imagePages.length; i++) {
+          BufferedImage storedPage = pageStore.store(imagePages[i]);
+          if (storedPage != imagePages[i]) {
+            templateDataBufferSet.remove(imagePages[i].getRaster().getDataBuffer());
+            templateDataBufferSet.add(storedPage.getRaster().getDataBuffer());
+            imagePages[i] = storedPage;
+          }
         }
 
-        imageData.setFileName(RESIZE_PREFIX + fileName);
-        imageData.setImagePages(newImagePages);
+        // 像素已不在 heap 中
+        imageData.releaseReservation();
       }
 
       return this;
     }
 
     @Override
-    public Builder rotate(Orientation orientation) {
+    public Builder compressTIFF(TIFFCompression compression) {
       if (isClosed) {
         throw new UnsupportedOperationException("Builder is closed!");
       }
 
-      Iterator<ImageData> imageDetailListIterator = imageDataList.iterator();
-      while (imageDetailListIterator.hasNext()) {
-        ImageData imageData = imageDetailListIterator.next();
-        String fileName = imageData.getFileName();
-        BufferedImage[] imagePages = imageData.getImagePages();
+      this.tiffCompression = compression;
 
-        int numImagePages = imagePages.length;
-        BufferedImage[] newImagePages = new BufferedImage[numImagePages];
-        for (int i = 0; i < numImagePages; i++) {
-          BufferedImage imagePage = imagePages[i];
+      return this;
+    }
 
-          int rotate;
-          if (orientation == PORTRAIT) {
-            rotate = imagePage.getWidth() > imagePage.getHeight() ? 90 : 0;
-          } else {
-            rotate = imagePage.getWidth() < imagePage.getHeight() ? 90 : 0;
-          }
+    @Override
+    public Builder reduceColorDepth(boolean isReduceColorDepth) {
+      if (isClosed) {
+        throw new UnsupportedOperationException("Builder is closed!");
+      }
 
-          if (rotate != 0) {
-            AffineTransform affine = new AffineTransform();
-            double theta = Math.toRadians(rotate);
-            double anchor = imagePage.getHeight() / 2d;
-            affine.setToRotation(theta, anchor, anchor);
+      this.isReduceColorDepth = isReduceColorDepth;
 
-            AffineTransformOp op = new AffineTransformOp(affine, AffineTransformOp.TYPE_BICUBIC);
-            BufferedImage rotatedImagePage = new BufferedImage(imagePage.getHeight(), imagePage.getWidth(), imagePage.getType());
-            op.filter(imagePage, rotatedImagePage);
+      return this;
+    }
 
-            // 釋放內部緩衝的記憶體
-            imagePage.flush();
+    @Override
+    public Builder resize(int width, int height) throws IOException {
+      return resize(width, height, QUALITY);
+    }
 
-            newImagePages[i] = rotatedImagePage;
-          } else {
-            newImagePages[i] = imagePage;
-          }
-        }
+    @Override
+    public Builder resize(int width, int height, ResizeQuality quality) throws IOException {
+      if (isClosed) {
+        throw new UnsupportedOperationException("Builder is closed!");
+      }
 
-        imageData.setFileName(ROTATE_PREFIX + fileName);
-        imageData.setImagePages(newImagePages);
+      if (width <= 0 || height <= 0) {
+        return this;
       }
 
+      operationList.add(ImageOperation.resize(width, height, quality));
+
       return this;
     }
 
     @Override
-    public File combineAndWriteToMultipageTIFF(String destLocation, boolean isCloseBuilderAfterWrote) throws IOException {
-      return combineAndWriteToMultipageTIFF(destLocation, -1, isCloseBuilderAfterWrote);
+    public Builder resizeToSizes(Dimension... sizes) throws IOException {
+      return resizeToSizes(QUALITY, sizes);
     }
 
     @Override
-    public File combineAndWriteToMultipageTIFF(File destLocation, boolean isCloseBuilderAfterWrote) throws IOException {
-      return combineAndWriteToMultipageTIFF(destLocation, -1, isCloseBuilderAfterWrote);
+    public Builder resizeToSizes(ResizeQuality quality, Dimension... sizes) throws IOException {
+      if (isClosed) {
+        throw new UnsupportedOperationException("Builder is closed!");
+      }
+
+      if (!outputSizeList.isEmpty()) {
+        throw new UnsupportedOperationException("Output sizes are already set!");
+      }
+
+      List<Dimension> sizeList = new ArrayList<>();
+      for (int i = 0; i < sizes.length; i++) {
+        if (sizes[i].width > 0 && sizes[i].height > 0) {
+          sizeList.add(new Dimension(sizes[i]));
+        }
+      }
+
+      if (sizeList.isEmpty()) {
+        return this;
+      }
+
+      // 由大至小，較小的尺寸由前一個尺寸的結果縮小
+      Collections.sort(sizeList, new Comparator<Dimension>() {
+        @Override
+        public int compare(Dimension size1, Dimension size2) {
+          return Long.compare((long) size2.width * size2.height, (long) size1.width * size1.height);
+        }
+      });
+
+      Dimension largestSize = sizeList.get(0);
+      operationList.add(ImageOperation.resize(largestSize.width, largestSize.height, quality));
+      outputSizeList = sizeList;
+      outputSizeQuality = quality;
+
+      return this;
     }
 
     @Override
-    public File combineAndWriteToMultipageTIFF(String destLocation, float quality, boolean isCloseBuilderAfterWrote) throws IOException {
-      return combineAndWriteToMultipageTIFF(new File(destLocation), quality, isCloseBuilderAfterWrote);
+    public Builder rotate(Orientation orientation) {
+      if (isClosed) {
+        throw new UnsupportedOperationException("Builder is closed!");
+      }
+
+      operationList.add(ImageOperation.rotate(orientation));
+
+      return this;
     }
 
     @Override
-    public File combineAndWriteToMultipageTIFF(File destLocation, float quality, boolean isCloseBuilderAfterWrote) throws IOException {
+    public Builder selectPages(int firstPage, int lastPage) {
       if (isClosed) {
         throw new UnsupportedOperationException("Builder is closed!");
       }
 
-      if (checkDestLocationIsExists(destLocation)) {
-        if (!checkDestLocationIsDirectory(destLocation)) {
-          throw new UnsupportedOperationException("Destination location is not a directory!");
+      sourceSelection = sourceSelection.withPages(firstPage, lastPage);
+
+      return this;
+    }
+
+    @Override
+    public Builder selectRegion(int x, int y, int width, int height) {
+      if (isClosed) {
+        throw new UnsupportedOperationException("Builder is closed!");
+      }
+
+      sourceSelection = sourceSelection.withRegion(new Rectangle(x, y, width, height));
+
+      return this;
+    }
+
+    /**
+     * 取得可寫出之圖片資料，於此時將已記錄之操作合併為單一頁面處理流程並套用，串流模式下也會於此時解碼。
+     *
+     * @param imageData 圖片資料
+     * @param executor  處理頁面之 TaskExecutor
+     * @return 可寫出之圖片資料，無法讀取時為 null
+     * @throws IOException
+     */
+    private ImageData prepareImageData(ImageData imageData, TaskExecutor executor) throws IOException {
+      ImageData preparedImageData = imageData.copySource();
+      if (isStreaming) {
+        if (!loadImageData(preparedImageData, imageDataList, operationList, sourceSelection, isUseDiskCache)) {
+          return null;
         }
+      } else {
+        preparedImageData.setImageType(imageData.getImageType());
+        preparedImageData.setImagePages(imageData.getImagePages());
+        preparedImageData.setPDF(imageData.isPDF());
       }
 
-      SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd_hh_mm_ss");
-      File destFile = new File(destLocation.getPath() + File.separator + OUTPUT_PREFIX + COMBINE_PREFIX + sdf.format(Calendar.getInstance().getTime()) + ".tiff");
+      preparedImageData.setFileName(getTargetFileName(preparedImageData));
 
-      ImageWriter imageWriter = null;
-      try (
-        ImageOutputStream ios = ImageIO.createImageOutputStream(destFile)
-      ) {
-        imageWriter = getImageWriter("TIFF", ios);
+      // PDF 頁面為此次繪製、heap 外的頁面處理前會先複製，可直接修改
+      boolean isOriginPNG = "PNG".equalsIgnoreCase(preparedImageData.getImageType());
+      boolean isSourceDisposable = isStreaming || preparedImageData.isPDF() || pageStore != null;
+      final PagePipeline pagePipeline = new PagePipeline(operationList, isOriginPNG, isSourceDisposable, isReduceColorDepth, imagePool);
+
+      List<BufferedImage> newImagePageList;
+      try {
+        newImagePageList = processImagePages(preparedImageData, pagePipeline, executor);
+      } catch (IOException | RuntimeException e) {
+        preparedImageData.releaseReservation();
 
-        ImageWriteParam params = imageWriter.getDefaultWriteParam();
-        setImageWriteParamCompression(params, quality);
+        throw e;
+      }
+      if (newImagePageList.isEmpty()) {
+        preparedImageData.releaseReservation();
+        System.out.println("No page selected! Skipped file: " + preparedImageData.getSourceName());
 
-        imageWriter.prepareWriteSequence(null);
-        Iterator<ImageData> imageDetailIterator = imageDataList.iterator();
-        while (imageDetailIterator.hasNext()) {
-          ImageData imageData = imageDetailIterator.next();
-          String originImageType = imageData.getImageType();
-          BufferedImage[] imagePages = imageData.getImagePages();
+        return null;
+      }
+      preparedImageData.setImagePages(newImagePageList.toArray(new BufferedImage[newImagePageList.size()]));
+
+      return preparedImageData;
+    }
 
-          boolean isOriginPNG = "PNG".equalsIgnoreCase(originImageType);
+    /**
+     * 處理已讀取的頁面，PDF 於預留記憶體後逐頁繪製並處理。
+     *
+     * @return 處理後之頁面
+     */
+    private List<BufferedImage> processImagePages(ImageData imageData, final PagePipeline pagePipeline, TaskExecutor executor) throws IOException {
+      if (imageData.isPDF()) {
+        try (
+          PDFPageRenderer pdfPageRenderer = createPDFPageRenderer(imageData, isUseDiskCache)
+        ) {
+          imageData.setReservation(MemoryGovernor.reserve(imageDataList, imageData.getSourceName(), estimatePDFPageBytes(pdfPageRenderer)));
 
-          for (int i = 0; i < imagePages.length; i++) {
-            BufferedImage imagePage = imagePages[i];
-            if (isOriginPNG) {
-              BufferedImage imagePageWithWiteBG = ignoreTransparentBG(imagePage);
+          return executor.invokeAll(createRenderPDFPageTasks(pdfPageRenderer, pagePipeline));
+        }
+      }
 
-              imagePage.flush();
-              imagePage = imagePageWithWiteBG;
+      // 串流模式已於解碼時只讀取選取的部分
+      List<BufferedImage> imagePageList = isStreaming ? Arrays.asList(imageData.getImagePages()) : selectImagePages(imageData.getImagePages());
+      List<Callable<BufferedImage>> taskList = new ArrayList<>();
+      Iterator<BufferedImage> imagePageIterator = imagePageList.iterator();
+      while (imagePageIterator.hasNext()) {
+        final BufferedImage imagePage = imagePageIterator.next();
+        taskList.add(new Callable<BufferedImage>() {
+          @Override
+          public BufferedImage call() {
+            // heap 外的頁面逐頁複製回 heap 處理，複製的頁面可直接修改
+            if (pageStore != null) {
+              return pagePipeline.process(OffHeapPageStore.copyToHeap(imagePage));
             }
 
-            IIOImage iioImage = new IIOImage(imagePage, null, null);
-            imageWriter.writeToSequence(iioImage, params);
+            return pagePipeline.process(imagePage);
           }
+        });
+      }
+
+      return executor.invokeAll(taskList);
+    }
+
+    /**
+     * 從已讀取的頁面中取出選取的部分，裁切的頁面與原頁面共用 DataBuffer。
+     */
+    private List<BufferedImage> selectImagePages(BufferedImage[] imagePages) {
+      List<BufferedImage> imagePageList = new ArrayList<>();
+      int endPageIndex = sourceSelection.getEndPageIndex(imagePages.length);
+      for (int i = sourceSelection.getFirstPageIndex(); i < endPageIndex; i++) {
+        BufferedImage imagePage = imagePages[i];
+        Rectangle region = sourceSelection.getRegion(new Dimension(imagePage.getWidth(), imagePage.getHeight()));
+        if (region == null) {
+          continue;
         }
-        imageWriter.endWriteSequence();
-      } catch (IOException e) {
-        if (imageWriter != null) {
-          imageWriter.abort();
+
+        if (region.width != imagePage.getWidth() || region.height != imagePage.getHeight()) {
+          imagePage = imagePage.getSubimage(region.x, region.y, region.width, region.height);
         }
+        imagePageList.add(imagePage);
+      }
 
-        throw e;
-      } finally {
-        if (imageWriter != null) {
-          imageWriter.dispose();
+      return imagePageList;
+    }
+
+    /**
+     * 依選取的頁面與繪製 DPI 估計繪製後的大小，頁面以 TYPE_INT_RGB 繪製；
+     * 直接取出圖片的頁面依圖片解碼後的尺寸估計。
+     */
+    private long estimatePDFPageBytes(PDFPageRenderer pdfPageRenderer) throws IOException {
+      long estimatedBytes = 0;
+
+      int endPageIndex = sourceSelection.getEndPageIndex(pdfPageRenderer.getNumPages());
+      for (int i = sourceSelection.getFirstPageIndex(); i < endPageIndex; i++) {
+        Dimension pageSize = pdfPageRenderer.getPageSize(i, PDFPageRenderer.DEFAULT_DPI);
+        Rectangle region = sourceSelection.getRegion(pageSize);
+        if (region == null) {
+          continue;
         }
+
+        if (!sourceSelection.hasRegion()) {
+          PDFPageRenderer.EmbeddedImage embeddedImage = pdfPageRenderer.getEmbeddedImageInfo(i);
+          if (embeddedImage != null) {
+            estimatedBytes += estimateEmbeddedImageBytes(embeddedImage, pageSize);
+            continue;
+          }
+        }
+
+        estimatedBytes += estimatePDFPageBytes(region.getSize());
       }
 
-      if (isCloseBuilderAfterWrote) {
-        close();
+      return estimatedBytes;
+    }
+
+    private long estimateEmbeddedImageBytes(PDFPageRenderer.EmbeddedImage embeddedImage, Dimension pageSize) {
+      Dimension imageSize = embeddedImage.getSize();
+      int subsampling = 1;
+      if (embeddedImage.isJPEG()) {
+        subsampling = getEmbeddedImageSubsampling(imageSize, pageSize, operationList);
       }
 
-      return destFile;
+      int width = (imageSize.width + subsampling - 1) / subsampling;
+      int height = (imageSize.height + subsampling - 1) / subsampling;
+
+      return MemoryGovernor.estimatePageBytes(width, height, 32);
     }
 
-    @Override
-    public List<File> writeToFiles(String destLocation, boolean isCloseBuilderAfterWrote) throws IOException {
-      return writeToFiles(destLocation, null, isCloseBuilderAfterWrote);
+    private long estimatePDFPageBytes(Dimension size) {
+      double scale = getPDFRenderDPI(size, operationList) / PDFPageRenderer.DEFAULT_DPI;
+
+      return MemoryGovernor.estimatePageBytes((int) Math.ceil(size.width * scale), (int) Math.ceil(size.height * scale), 32);
     }
 
-    @Override
-    public List<File> writeToFiles(File destLocation, boolean isCloseBuilderAfterWrote) throws IOException {
-      return writeToFiles(destLocation, null, isCloseBuilderAfterWrote);
+    /**
+     * 每頁各自繪製後立即處理，只保留處理後的頁面。
+     */
+    private List<Callable<BufferedImage>> createRenderPDFPageTasks(final PDFPageRenderer pdfPageRenderer, final PagePipeline pagePipeline) throws IOException {
+      List<Callable<BufferedImage>> taskList = new ArrayList<>();
+
+      int endPageIndex = sourceSelection.getEndPageIndex(pdfPageRenderer.getNumPages());
+      for (int i = sourceSelection.getFirstPageIndex(); i < endPageIndex; i++) {
+        final int pageIndex = i;
+        final Dimension pageSize = pdfPageRenderer.getPageSize(pageIndex, PDFPageRenderer.DEFAULT_DPI);
+        final Rectangle region = sourceSelection.getRegion(pageSize);
+        if (region == null) {
+          continue;
+        }
+
+        taskList.add(new Callable<BufferedImage>() {
+          @Override
+          public BufferedImage call() throws IOException {
+            return renderPDFPage(pdfPageRenderer, pageIndex, pageSize, region, pagePipeline);
+          }
+        });
+      }
+
+      return taskList;
     }
 
-    @Override
-    public List<File> writeToFiles(String destLocation, String fileType, boolean isCloseBuilderAfterWrote) throws IOException {
-      return writeToFiles(destLocation, fileType, -1, isCloseBuilderAfterWrote);
+    private BufferedImage renderPDFPage(PDFPageRenderer pdfPageRenderer, int pageIndex, Dimension pageSize, Rectangle region, PagePipeline pagePipeline) throws IOException {
+      if (!sourceSelection.hasRegion()) {
+        // 掃描頁面直接取出原解析度的圖片
+        PDFPageRenderer.EmbeddedImage embeddedImage = pdfPageRenderer.extractEmbeddedImage(pageIndex, false);
+        if (embeddedImage != null) {
+          // 與繪製時相同依頁面尺寸計算操作結果，讓輸出尺寸不受掃描 DPI 影響
+          return pagePipeline.process(readEmbeddedImage(embeddedImage, pageSize, operationList), pageSize);
+        }
+
+        float dpi = getPDFRenderDPI(pageSize, operationList);
+
+        // 依預設 DPI 的尺寸計算操作結果，讓輸出尺寸不受繪製 DPI 影響
+        return pagePipeline.process(pdfPageRenderer.renderPage(pageIndex, dpi), pageSize);
+      }
+
+      // 只繪製選取的範圍
+      float dpi = getPDFRenderDPI(region.getSize(), operationList);
+
+      return pagePipeline.process(pdfPageRenderer.renderPage(pageIndex, dpi, region), region.getSize());
     }
 
-    @Override
-    public List<File> writeToFiles(File destLocation, String fileType, boolean isCloseBuilderAfterWrote) throws IOException {
-      return writeToFiles(destLocation, fileType, -1, isCloseBuilderAfterWrote);
+    private void releaseImageData(ImageData imageData) {
+      BufferedImage[] imagePages = imageData.getImagePages();
+      if (imagePages == null) {
+        return;
+      }
+
+      // 將處理後的頁面歸還至頁面緩衝，供之後同尺寸的頁面使用
+      for (int i = 0; i < imagePages.length; i++) {
+        BufferedImage imagePage = imagePages[i];
+        if (!templateDataBufferSet.contains(imagePage.getRaster().getDataBuffer())) {
+          imagePool.release(imagePage);
+        }
+      }
+      imageData.setImagePages(null);
+      imageData.releaseReservation();
     }
 
-    @Override
-    public List<File> writeToFiles(String destLocation, String fileType, float quality, boolean isCloseBuilderAfterWrote) throws IOException {
-      return writeToFiles(new File(destLocation), fileType, quality, isCloseBuilderAfterWrote);
+    private static void flushImageData(ImageData imageData) {
+      BufferedImage[] imagePages = imageData.getImagePages();
+      if (imagePages == null) {
+        return;
+      }
+
+      int numImagePages = imagePages.length;
+      for (int i = 0; i < numImagePages; i++) {
+        BufferedImage imagePage = imagePages[i];
+
+        // 釋放內部緩衝的記憶體
+        imagePage.flush();
+      }
+      imageData.releaseReservation();
     }
 
-    @Override
-    public List<File> writeToFiles(File destLocation, String fileType, float quality, boolean isCloseBuilderAfterWrote) throws IOException {
-      if (isClosed) {
-        throw new UnsupportedOperationException("Builder is closed!");
+    private String getTargetFileName(ImageData imageData) {
+      String fileName = imageData.getFileName();
+      if (sourceSelection.hasRegion()) {
+        fileName = CROP_PREFIX + fileName;
+      }
+      Iterator<ImageOperation> operationIterator = operationList.iterator();
+      while (operationIterator.hasNext()) {
+        fileName = getOperationPrefix(operationIterator.next()) + fileName;
       }
 
-      if (checkDestLocationIsExists(destLocation)) {
-        if (!checkDestLocationIsDirectory(destLocation)) {
-          throw new UnsupportedOperationException("Destination location is not a directory!");
-        }
+      return fileName;
+    }
+
+    /**
+     * 只有旋轉操作且來源為 JPEG 時，直接在 DCT 係數上旋轉，不經過解碼與重新壓縮；無需旋轉時原封不動複製。
+     *
+     * @param imageData 圖片資料
+     * @param destFile  目標檔案
+     * @return 是否已寫出，否則需走一般流程
+     * @throws IOException
+     */
+    private boolean writeLosslessJPEG(ImageData imageData, File destFile) throws IOException {
+      File sourceFile = imageData.getSourceFile();
+
+      int quadrants = getLosslessJPEGQuadrants(imageData);
+      if (quadrants < 0) {
+        return false;
+      } else if (quadrants == 0 && sourceFile != null) {
+        Files.copy(sourceFile.toPath(), destFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        return true;
       }
 
-      List<File> newImageFileList = new ArrayList<>();
+      byte[] jpegBytes = rotateLosslessJPEG(imageData, quadrants);
+      if (jpegBytes == null) {
+        return false;
+      }
 
-      Iterator<ImageData> imageDetailListIterator = imageDataList.iterator();
-      while (imageDetailListIterator.hasNext()) {
-        ImageData imageData = imageDetailListIterator.next();
-        String originImageType = imageData.getImageType();
-        BufferedImage[] imagePages = imageData.getImagePages();
+      Files.write(destFile.toPath(), jpegBytes);
 
-        String targetImageType = originImageType;
-        if (fileType != null && !"".equals(fileType)) {
-          targetImageType = fileType;
-        }
+      return true;
+    }
 
-        int numImagePages = imagePages.length;
+    /**
+     * 同 writeLosslessJPEG，但寫出至 OutputStream，不會關閉 OutputStream。
+     *
+     * @param imageData 圖片資料
+     * @param os        目標 OutputStream
+     * @return 是否已寫出，否則需走一般流程
+     * @throws IOException
+     */
+    private boolean writeLosslessJPEG(ImageData imageData, OutputStream os) throws IOException {
+      File sourceFile = imageData.getSourceFile();
+
+      int quadrants = getLosslessJPEGQuadrants(imageData);
+      if (quadrants < 0) {
+        return false;
+      } else if (quadrants == 0 && sourceFile != null) {
+        Files.copy(sourceFile.toPath(), os);
+
+        return true;
+      }
 
-        boolean isTargetTIFF = "TIF".equalsIgnoreCase(targetImageType) || "TIFF".equalsIgnoreCase(targetImageType);
-        if (isTargetTIFF || "GIF".equalsIgnoreCase(targetImageType)) {
-          File destFile = new File(destLocation.getPath() + File.separator + OUTPUT_PREFIX + imageData.getFileName() + "." + targetImageType);
+      byte[] jpegBytes = rotateLosslessJPEG(imageData, quadrants);
+      if (jpegBytes == null) {
+        return false;
+      }
 
-          writeImageToFile(destFile, originImageType, targetImageType, quality, imagePages);
+      os.write(jpegBytes);
 
-          newImageFileList.add(destFile);
-        } else {
-          for (int i = 0; i < numImagePages; i++) {
-            String page = "_p" + (i + 1);
-            if (numImagePages == 1) {
-              page = "";
-            }
+      return true;
+    }
+
+    /**
+     * 檔案對應至記憶體旋轉，不先將整個檔案讀入 heap。
+     */
+    private byte[] rotateLosslessJPEG(ImageData imageData, int quadrants) throws IOException {
+      byte[] sourceBytes = imageData.getSourceBytes();
+      if (sourceBytes != null) {
+        return LosslessJPEGTransformer.rotate(sourceBytes, quadrants);
+      }
 
-            File pageDestFile = new File(destLocation.getPath() + File.separator + OUTPUT_PREFIX + imageData.getFileName() + page + "." + targetImageType);
-            BufferedImage imagePage = imagePages[i];
+      return LosslessJPEGTransformer.rotate(imageData.getSourceFile(), quadrants);
+    }
+
+    private int getLosslessJPEGQuadrants(ImageData imageData) throws IOException {
+      if (!isRotateOnly() || sourceSelection.hasRegion() || !sourceSelection.isPageSelected(0)) {
+        return -1;
+      }
+
+      Dimension size;
+      try (
+        InputStream is = openSourceStream(imageData)
+      ) {
+        size = LosslessJPEGTransformer.readDimension(is);
+      }
+
+      if (size == null) {
+        return -1;
+      }
+
+      return getRotateQuadrants(size);
+    }
+
+    /**
+     * 至少有一個旋轉操作且沒有其他操作，沒有任何操作時依一般流程寫出，不需額外讀取檔頭。
+     */
+    private boolean isRotateOnly() {
+      if (operationList.isEmpty()) {
+        return false;
+      }
+
+      Iterator<ImageOperation> operationIterator = operationList.iterator();
+      while (operationIterator.hasNext()) {
+        if (operationIterator.next().getType() != ImageOperation.Type.Rotate) {
+          return false;
+        }
+      }
+
+      return true;
+    }
+
+    private int getRotateQuadrants(Dimension size) {
+      int quadrants = 0;
+      Iterator<ImageOperation> operationIterator = operationList.iterator();
+      while (operationIterator.hasNext()) {
+        ImageOperation operation = operationIterator.next();
+        if (operation.isRotateNeeded(size.width, size.height)) {
+          quadrants++;
+        }
+
+        size = operation.getTargetDimension(size);
+      }
+
+      return quadrants % 4;
+    }
+
+    /**
+     * 掃描的 PDF 每頁皆為一張 JPEG 且只有旋轉操作時，直接寫出頁面中的 JPEG（需要時於 DCT 係數上旋轉），不經過繪製與重新壓縮。
+     *
+     * @param imageData       圖片資料
+     * @param destLocation    目的地目錄
+     * @param targetImageType 目標圖片格式
+     * @return 寫出的檔案 List，需走一般流程時為 null
+     * @throws IOException
+     */
+    private List<File> writeEmbeddedJPEGs(ImageData imageData, File destLocation, String targetImageType) throws IOException {
+      List<byte[]> jpegBytesList = readEmbeddedJPEGs(imageData);
+      if (jpegBytesList == null) {
+        return null;
+      }
+
+      List<File> imageFileList = new ArrayList<>();
+
+      String fileName = getTargetFileName(imageData);
+      int numImagePages = jpegBytesList.size();
+      for (int i = 0; i < numImagePages; i++) {
+        String page = "_p" + (i + 1);
+        if (numImagePages == 1) {
+          page = "";
+        }
+
+        File pageDestFile = new File(destLocation.getPath() + File.separator + OUTPUT_PREFIX + fileName + page + "." + targetImageType);
+        Files.write(pageDestFile.toPath(), jpegBytesList.get(i));
+
+        imageFileList.add(pageDestFile);
+      }
+
+      return imageFileList;
+    }
+
+    /**
+     * 同 writeEmbeddedJPEGs，但回傳每頁的 JPEG 資料。
+     *
+     * @param imageData 圖片資料
+     * @return 每頁的 JPEG 資料，需走一般流程時為 null
+     */
+    private List<byte[]> readEmbeddedJPEGs(ImageData imageData) {
+      // 沒有任何操作時也可直接取出，省去繪製頁面
+      if (!(operationList.isEmpty() || isRotateOnly()) || sourceSelection.hasRegion() || !isPDFSource(imageData)) {
+        return null;
+      }
+
+      List<byte[]> jpegBytesList = new ArrayList<>();
+      try (
+        PDFPageRenderer pdfPageRenderer = createPDFPageRenderer(imageData, isUseDiskCache)
+      ) {
+        int endPageIndex = sourceSelection.getEndPageIndex(pdfPageRenderer.getNumPages());
+        for (int i = sourceSelection.getFirstPageIndex(); i < endPageIndex; i++) {
+          PDFPageRenderer.EmbeddedImage embeddedImage = pdfPageRenderer.extractEmbeddedImage(i, true);
+          if (embeddedImage == null) {
+            return null;
+          }
+
+          int quadrants = embeddedImage.getQuadrants() + getRotateQuadrants(embeddedImage.getSize());
+          byte[] jpegBytes = LosslessJPEGTransformer.rotate(embeddedImage.getJPEGBytes(), quadrants);
+          if (jpegBytes == null) {
+            return null;
+          }
+
+          jpegBytesList.add(jpegBytes);
+        }
+      } catch (IOException e) {
+        // 無法開啟時交由一般流程處理
+        return null;
+      }
+
+      // 未選取任何頁面時同樣交由一般流程處理
+      if (jpegBytesList.isEmpty()) {
+        return null;
+      }
+
+      return jpegBytesList;
+    }
+
+    private static boolean isLosslessJPEGTarget(String fileType, float quality) {
+      // 未指定品質或品質為 1 時才不重新壓縮
+      if (quality >= 0 && quality < 1) {
+        return false;
+      }
+
+      return fileType == null || "".equals(fileType) || "JPG".equalsIgnoreCase(fileType) || "JPEG".equalsIgnoreCase(fileType);
+    }
+
+    private static String getOperationPrefix(ImageOperation operation) {
+      switch (operation.getType()) {
+        case Resize:
+          return RESIZE_PREFIX;
+        case Rotate:
+          return ROTATE_PREFIX;
+        default:
+          throw new UnsupportedOperationException("Unknown operation!");
+      }
+    }
+
+    @Override
+    public File combineAndWriteToMultipageTIFF(String destLocation, boolean isCloseBuilderAfterWrote) throws IOException {
+      return combineAndWriteToMultipageTIFF(destLocation, -1, isCloseBuilderAfterWrote);
+    }
+
+    @Override
+    public File combineAndWriteToMultipageTIFF(File destLocation, boolean isCloseBuilderAfterWrote) throws IOException {
+      return combineAndWriteToMultipageTIFF(destLocation, -1, isCloseBuilderAfterWrote);
+    }
+
+    @Override
+    public File combineAndWriteToMultipageTIFF(String destLocation, float quality, boolean isCloseBuilderAfterWrote) throws IOException {
+      return combineAndWriteToMultipageTIFF(new File(destLocation), quality, isCloseBuilderAfterWrote);
+    }
+
+    @Override
+    public File combineAndWriteToMultipageTIFF(File destLocation, float quality, boolean isCloseBuilderAfterWrote) throws IOException {
+      if (isClosed) {
+        throw new UnsupportedOperationException("Builder is closed!");
+      }
+
+      if (checkDestLocationIsExists(destLocation)) {
+        if (!checkDestLocationIsDirectory(destLocation)) {
+          throw new UnsupportedOperationException("Destination location is not a directory!");
+        }
+      }
+
+      SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd_hh_mm_ss");
+      File destFile = new File(destLocation.getPath() + File.separator + OUTPUT_PREFIX + COMBINE_PREFIX + sdf.format(Calendar.getInstance().getTime()) + ".tiff");
+
+      try (
+        ImageOutputStream ios = ImageIO.createImageOutputStream(destFile)
+      ) {
+        combineToMultipageTIFF(ios, quality);
+      }
+
+      if (isCloseBuilderAfterWrote) {
+        close();
+      }
+
+      return destFile;
+    }
+
+    @Override
+    public void combineAndWriteToMultipageTIFF(OutputStream os, boolean isCloseBuilderAfterWrote) throws IOException {
+      combineAndWriteToMultipageTIFF(os, -1, isCloseBuilderAfterWrote);
+    }
+
+    @Override
+    public void combineAndWriteToMultipageTIFF(OutputStream os, float quality, boolean isCloseBuilderAfterWrote) throws IOException {
+      if (isClosed) {
+        throw new UnsupportedOperationException("Builder is closed!");
+      }
+
+      try (
+        ImageOutputStream ios = createImageOutputStream(os)
+      ) {
+        combineToMultipageTIFF(ios, quality);
+      }
+
+      if (isCloseBuilderAfterWrote) {
+        close();
+      }
+    }
+
+    @Override
+    public void combineAndWriteToMultipageTIFF(WritableByteChannel channel, boolean isCloseBuilderAfterWrote) throws IOException {
+      combineAndWriteToMultipageTIFF(channel, -1, isCloseBuilderAfterWrote);
+    }
+
+    @Override
+    public void combineAndWriteToMultipageTIFF(WritableByteChannel channel, float quality, boolean isCloseBuilderAfterWrote) throws IOException {
+      combineAndWriteToMultipageTIFF(Channels.newOutputStream(channel), quality, isCloseBuilderAfterWrote);
+    }
+
+    private void combineToMultipageTIFF(ImageOutputStream ios, float quality) throws IOException {
+      try (
+        TaskExecutor executor = new TaskExecutor(numWorkers)
+      ) {
+        TIFFPageAssembler tiffPageAssembler = new TIFFPageAssembler(ios);
+
+        // 依序組合，其餘 worker 預先處理並編碼後續檔案
+        Deque<Future<List<byte[]>>> prefetchQueue = new ArrayDeque<>();
+        Iterator<ImageData> imageDetailIterator = imageDataList.iterator();
+        while (imageDetailIterator.hasNext() || !prefetchQueue.isEmpty()) {
+          while (executor.isParallel() && prefetchQueue.size() < numWorkers && imageDetailIterator.hasNext()) {
+            prefetchQueue.add(executor.submit(createEncodeTIFFPagesTask(imageDetailIterator.next(), quality, executor)));
+          }
+
+          List<byte[]> tiffPageList;
+          if (prefetchQueue.isEmpty()) {
+            tiffPageList = encodeTIFFPages(imageDetailIterator.next(), quality, executor);
+          } else {
+            tiffPageList = TaskExecutor.getResult(prefetchQueue.poll());
+          }
+
+          if (tiffPageList == null) {
+            continue;
+          }
+
+          Iterator<byte[]> tiffPageIterator = tiffPageList.iterator();
+          while (tiffPageIterator.hasNext()) {
+            tiffPageAssembler.append(tiffPageIterator.next());
+          }
+        }
+      } finally {
+        imagePool.clear();
+      }
+    }
+
+    /**
+     * 處理檔案並將每頁各自編碼為單頁 TIFF，頁面由多個 worker 同時編碼。
+     *
+     * @param imageData 圖片
+     * @param quality   壓縮品質
+     * @param executor  執行工作的 TaskExecutor
+     * @return 依頁面順序之單頁 TIFF，無法讀取時為 null
+     * @throws IOException
+     */
+    private List<byte[]> encodeTIFFPages(ImageData imageData, final float quality, TaskExecutor executor) throws IOException {
+      ImageData preparedImageData = prepareImageData(imageData, executor);
+      if (preparedImageData == null) {
+        return null;
+      }
+
+      try {
+        BufferedImage[] imagePages = preparedImageData.getImagePages();
+        List<Callable<byte[]>> taskList = new ArrayList<>();
+        for (int i = 0; i < imagePages.length; i++) {
+          final BufferedImage imagePage = imagePages[i];
+          taskList.add(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws IOException {
+              return writeImageToByteArray("TIFF", quality, tiffCompression, new BufferedImage[]{imagePage});
+            }
+          });
+        }
+
+        return executor.invokeAll(taskList);
+      } finally {
+        releaseImageData(preparedImageData);
+      }
+    }
+
+    private Callable<List<byte[]>> createEncodeTIFFPagesTask(final ImageData imageData, final float quality, final TaskExecutor executor) {
+      return new Callable<List<byte[]>>() {
+        @Override
+        public List<byte[]> call() throws IOException {
+          return encodeTIFFPages(imageData, quality, executor);
+        }
+      };
+    }
+
+    @Override
+    public List<File> writeToFiles(String destLocation, boolean isCloseBuilderAfterWrote) throws IOException {
+      return writeToFiles(destLocation, null, isCloseBuilderAfterWrote);
+    }
+
+    @Override
+    public List<File> writeToFiles(File destLocation, boolean isCloseBuilderAfterWrote) throws IOException {
+      return writeToFiles(destLocation, null, isCloseBuilderAfterWrote);
+    }
+
+    @Override
+    public List<File> writeToFiles(String destLocation, String fileType, boolean isCloseBuilderAfterWrote) throws IOException {
+      return writeToFiles(destLocation, fileType, -1, isCloseBuilderAfterWrote);
+    }
+
+    @Override
+    public List<File> writeToFiles(File destLocation, String fileType, boolean isCloseBuilderAfterWrote) throws IOException {
+      return writeToFiles(destLocation, fileType, -1, isCloseBuilderAfterWrote);
+    }
+
+    @Override
+    public List<File> writeToFiles(String destLocation, String fileType, float quality, boolean isCloseBuilderAfterWrote) throws IOException {
+      return writeToFiles(new File(destLocation), fileType, quality, isCloseBuilderAfterWrote);
+    }
+
+    @Override
+    public List<File> writeToFiles(File destLocation, String fileType, float quality, boolean isCloseBuilderAfterWrote) throws IOException {
+      if (isClosed) {
+        throw new UnsupportedOperationException("Builder is closed!");
+      }
+
+      if (checkDestLocationIsExists(destLocation)) {
+        if (!checkDestLocationIsDirectory(destLocation)) {
+          throw new UnsupportedOperationException("Destination location is not a directory!");
+        }
+      }
+
+      List<List<File>> imageFileLists;
+      try (
+        TaskExecutor executor = new TaskExecutor(numWorkers)
+      ) {
+        List<Callable<List<File>>> taskList = new ArrayList<>();
+        Iterator<ImageData> imageDetailListIterator = imageDataList.iterator();
+        while (imageDetailListIterator.hasNext()) {
+          taskList.add(createWriteToFilesTask(imageDetailListIterator.next(), destLocation, fileType, quality, executor));
+        }
+
+        imageFileLists = executor.invokeAll(taskList);
+      } finally {
+        imagePool.clear();
+      }
+
+      List<File> newImageFileList = new ArrayList<>();
+      Iterator<List<File>> imageFileListsIterator = imageFileLists.iterator();
+      while (imageFileListsIterator.hasNext()) {
+        newImageFileList.addAll(imageFileListsIterator.next());
+      }
+
+      if (isCloseBuilderAfterWrote) {
+        close();
+      }
+
+      return newImageFileList;
+    }
+
+    private Callable<List<File>> createWriteToFilesTask(final ImageData imageData, final File destLocation, final String fileType, final float quality, final TaskExecutor executor) {
+      return new Callable<List<File>>() {
+        @Override
+        public List<File> call() throws IOException {
+          return writeToFiles(imageData, destLocation, fileType, quality, executor);
+        }
+      };
+    }
+
+    private List<File> writeToFiles(ImageData imageData, File destLocation, String fileType, float quality, TaskExecutor executor) throws IOException {
+      List<File> imageFileList = new ArrayList<>();
+
+      if (isLosslessJPEGTarget(fileType, quality)) {
+        String targetImageType = fileType == null || "".equals(fileType) ? "JPEG" : fileType;
+        File destFile = new File(destLocation.getPath() + File.separator + OUTPUT_PREFIX + getTargetFileName(imageData) + "." + targetImageType);
+        if (writeLosslessJPEG(imageData, destFile)) {
+          imageFileList.add(destFile);
+
+          return imageFileList;
+        }
+
+        // PDF 的原始格式為 TIFF，需明確指定 JPEG
+        if (fileType != null && !"".equals(fileType)) {
+          List<File> embeddedImageFileList = writeEmbeddedJPEGs(imageData, destLocation, targetImageType);
+          if (embeddedImageFileList != null) {
+            return embeddedImageFileList;
+          }
+        }
+      }
+
+      imageData = prepareImageData(imageData, executor);
+      if (imageData == null) {
+        return imageFileList;
+      }
+
+      try {
+        String originImageType = imageData.getImageType();
+
+        String targetImageType = originImageType;
+        if (fileType != null && !"".equals(fileType)) {
+          targetImageType = fileType;
+        }
+
+        if (outputSizeList.isEmpty()) {
+          writeImagePagesToFiles(imageData.getImagePages(), imageData.getFileName(), destLocation, targetImageType, quality, imageFileList);
+        } else {
+          Iterator<Dimension> outputSizeIterator = outputSizeList.iterator();
+          Dimension outputSize = outputSizeIterator.next();
+          writeImagePagesToFiles(imageData.getImagePages(), imageData.getFileName() + getSizeSuffix(outputSize), destLocation, targetImageType, quality, imageFileList);
+
+          while (outputSizeIterator.hasNext()) {
+            outputSize = outputSizeIterator.next();
+            resizeImagePages(imageData, outputSize, executor);
+            writeImagePagesToFiles(imageData.getImagePages(), imageData.getFileName() + getSizeSuffix(outputSize), destLocation, targetImageType, quality, imageFileList);
+          }
+        }
+      } finally {
+        releaseImageData(imageData);
+      }
+
+      return imageFileList;
+    }
+
+    private void writeImagePagesToFiles(BufferedImage[] imagePages, String fileName, File destLocation, String targetImageType, float quality, List<File> imageFileList) throws IOException {
+      int numImagePages = imagePages.length;
+
+      boolean isTargetTIFF = "TIF".equalsIgnoreCase(targetImageType) || "TIFF".equalsIgnoreCase(targetImageType);
+      if (isTargetTIFF || "GIF".equalsIgnoreCase(targetImageType)) {
+        File destFile = new File(destLocation.getPath() + File.separator + OUTPUT_PREFIX + fileName + "." + targetImageType);
+
+        writeImageToFile(destFile, targetImageType, quality, tiffCompression, imagePages);
+
+        imageFileList.add(destFile);
+      } else {
+        for (int i = 0; i < numImagePages; i++) {
+          String page = "_p" + (i + 1);
+          if (numImagePages == 1) {
+            page = "";
+          }
+
+          File pageDestFile = new File(destLocation.getPath() + File.separator + OUTPUT_PREFIX + fileName + page + "." + targetImageType);
+          BufferedImage imagePage = imagePages[i];
+
+          writeImageToFile(pageDestFile, targetImageType, quality, tiffCompression, imagePage);
+
+          imageFileList.add(pageDestFile);
+        }
+      }
+    }
+
+    /**
+     * 將已寫出的頁面縮小至下一個尺寸，取代圖片資料中的頁面並歸還原頁面。
+     */
+    private void resizeImagePages(ImageData imageData, Dimension outputSize, TaskExecutor executor) throws IOException {
+      List<ImageOperation> sizeOperationList = Collections.singletonList(ImageOperation.resize(outputSize.width, outputSize.height, outputSizeQuality));
+      final PagePipeline pagePipeline = new PagePipeline(sizeOperationList, false, false, false, imagePool);
+
+      BufferedImage[] imagePages = imageData.getImagePages();
+      List<Callable<BufferedImage>> taskList = new ArrayList<>();
+      for (int i = 0; i < imagePages.length; i++) {
+        final BufferedImage imagePage = imagePages[i];
+        taskList.add(new Callable<BufferedImage>() {
+          @Override
+          public BufferedImage call() {
+            // heap 外的頁面逐頁複製回 heap 處理，複製的頁面可直接修改
+            if (pageStore != null) {
+              return pagePipeline.process(OffHeapPageStore.copyToHeap(imagePage));
+            }
+
+            return pagePipeline.process(imagePage);
+          }
+        });
+      }
+
+      List<BufferedImage> resizedImagePageList = executor.invokeAll(taskList);
+      for (int i = 0; i < imagePages.length; i++) {
+        BufferedImage imagePage = imagePages[i];
+        if (imagePage != resizedImagePageList.get(i) && !templateDataBufferSet.contains(imagePage.getRaster().getDataBuffer())) {
+          imagePool.release(imagePage);
+        }
+      }
+      imageData.setImagePages(resizedImagePageList.toArray(new BufferedImage[imagePages.length]));
+    }
+
+    private static String getSizeSuffix(Dimension outputSize) {
+      return "_" + outputSize.width + "x" + outputSize.height;
+    }
+
+    @Override
+    public List<File> writeToTiledTIFFFiles(String destLocation, boolean isCloseBuilderAfterWrote) throws IOException {
+      return writeToTiledTIFFFiles(new File(destLocation), isCloseBuilderAfterWrote);
+    }
+
+    @Override
+    public List<File> writeToTiledTIFFFiles(File destLocation, boolean isCloseBuilderAfterWrote) throws IOException {
+      if (isClosed) {
+        throw new UnsupportedOperationException("Builder is closed!");
+      }
+
+      if (checkDestLocationIsExists(destLocation)) {
+        if (!checkDestLocationIsDirectory(destLocation)) {
+          throw new UnsupportedOperationException("Destination location is not a directory!");
+        }
+      }
+
+      List<File> imageFiles;
+      try (
+        TaskExecutor executor = new TaskExecutor(numWorkers)
+      ) {
+        List<Callable<File>> taskList = new ArrayList<>();
+        Iterator<ImageData> imageDetailListIterator = imageDataList.iterator();
+        while (imageDetailListIterator.hasNext()) {
+          taskList.add(createWriteToTiledTIFFTask(imageDetailListIterator.next(), destLocation));
+        }
+
+        imageFiles = executor.invokeAll(taskList);
+      } finally {
+        imagePool.clear();
+      }
+
+      List<File> newImageFileList = new ArrayList<>();
+      Iterator<File> imageFileIterator = imageFiles.iterator();
+      while (imageFileIterator.hasNext()) {
+        File imageFile = imageFileIterator.next();
+        if (imageFile != null) {
+          newImageFileList.add(imageFile);
+        }
+      }
+
+      if (isCloseBuilderAfterWrote) {
+        close();
+      }
+
+      return newImageFileList;
+    }
+
+    private Callable<File> createWriteToTiledTIFFTask(final ImageData imageData, final File destLocation) {
+      return new Callable<File>() {
+        @Override
+        public File call() throws IOException {
+          return writeToTiledTIFF(imageData, destLocation);
+        }
+      };
+    }
+
+    /**
+     * 一律由來源逐塊讀取，不使用已讀取的頁面。
+     *
+     * @return 寫出的檔案，無法讀取或未選取任何頁面時為 null
+     */
+    private File writeToTiledTIFF(ImageData imageData, File destLocation) throws IOException {
+      ImageData sourceImageData = imageData.copySource();
+      File destFile = new File(destLocation.getPath() + File.separator + OUTPUT_PREFIX + getTargetFileName(sourceImageData) + ".tif");
+
+      FormatSniffer.Format format = sniffFormat(sourceImageData);
+      int numWrotePages;
+      try (
+        ImageOutputStream ios = ImageIO.createImageOutputStream(destFile)
+      ) {
+        TiledTIFFWriter tiledTIFFWriter = new TiledTIFFWriter(ios, TILE_SIZE);
+        TiledPageProcessor tiledPageProcessor = new TiledPageProcessor(tiledTIFFWriter);
+        if (format == FormatSniffer.Format.PDF) {
+          numWrotePages = writeTiledPDFPages(sourceImageData, tiledPageProcessor);
+        } else {
+          numWrotePages = writeTiledImagePages(sourceImageData, format, tiledPageProcessor);
+        }
+        tiledTIFFWriter.finish();
+      } catch (UnsupportedOperationException e) {
+        destFile.delete();
+        System.out.println(e.getMessage() + " Skipped file: " + sourceImageData.getSourceName());
+
+        return null;
+      }
+
+      if (numWrotePages == 0) {
+        destFile.delete();
+        System.out.println("No page selected! Skipped file: " + sourceImageData.getSourceName());
+
+        return null;
+      }
+
+      return destFile;
+    }
+
+    private int writeTiledImagePages(ImageData imageData, FormatSniffer.Format format, TiledPageProcessor tiledPageProcessor) throws IOException {
+      PagePipeline pagePipeline = new PagePipeline(operationList, false, true, isReduceColorDepth, imagePool);
+
+      int numWrotePages = 0;
+      ImageReader imageReader = null;
+      try (
+        ImageInputStream iis = createImageInputStream(imageData)
+      ) {
+        imageReader = CodecRegistry.getImageReader(iis, format.getImageIOFormatName());
+
+        int endPageIndex = sourceSelection.getEndPageIndex(imageReader.getNumImages(true));
+        for (int i = sourceSelection.getFirstPageIndex(); i < endPageIndex; i++) {
+          Rectangle region = sourceSelection.getRegion(new Dimension(imageReader.getWidth(i), imageReader.getHeight(i)));
+          if (region == null) {
+            continue;
+          }
+
+          Dimension regionSize = region.getSize();
+          int subsampling = getSourceSubsampling(regionSize, operationList);
+          tiledPageProcessor.writePage(imageReader, i, region, pagePipeline.getUnrotatedTargetDimension(regionSize), pagePipeline.getRotateQuadrants(regionSize), subsampling);
+          numWrotePages++;
+        }
+      } catch (IOException e) {
+        if (imageReader != null) {
+          imageReader.abort();
+        }
+
+        throw e;
+      } finally {
+        if (imageReader != null) {
+          CodecRegistry.release(imageReader);
+        }
+      }
+
+      return numWrotePages;
+    }
+
+    /**
+     * PDF 頁面的尺寸受繪製 DPI 限制，每頁處理完成後再逐塊寫出。
+     */
+    private int writeTiledPDFPages(ImageData imageData, TiledPageProcessor tiledPageProcessor) throws IOException {
+      PagePipeline pagePipeline = new PagePipeline(operationList, false, true, isReduceColorDepth, imagePool);
+
+      int numWrotePages = 0;
+      try (
+        PDFPageRenderer pdfPageRenderer = createPDFPageRenderer(imageData, isUseDiskCache)
+      ) {
+        int endPageIndex = sourceSelection.getEndPageIndex(pdfPageRenderer.getNumPages());
+        for (int i = sourceSelection.getFirstPageIndex(); i < endPageIndex; i++) {
+          Dimension pageSize = pdfPageRenderer.getPageSize(i, PDFPageRenderer.DEFAULT_DPI);
+          Rectangle region = sourceSelection.getRegion(pageSize);
+          if (region == null) {
+            continue;
+          }
+
+          // 一次只保留一頁
+          MemoryGovernor.Reservation reservation = MemoryGovernor.reserve(imageDataList, imageData.getSourceName(), estimatePDFPageBytes(region.getSize()));
+          try {
+            BufferedImage imagePage = renderPDFPage(pdfPageRenderer, i, pageSize, region, pagePipeline);
+            tiledPageProcessor.writePage(imagePage);
+            imagePool.release(imagePage);
+          } finally {
+            reservation.release();
+          }
+          numWrotePages++;
+        }
+      } catch (InvalidPasswordException e) {
+        throw new UnsupportedOperationException(e.getMessage());
+      }
+
+      return numWrotePages;
+    }
+
+    @Override
+    public void writeTo(OutputStream os, String fileType, boolean isCloseBuilderAfterWrote) throws IOException {
+      writeTo(os, fileType, -1, isCloseBuilderAfterWrote);
+    }
+
+    @Override
+    public void writeTo(OutputStream os, String fileType, float quality, boolean isCloseBuilderAfterWrote) throws IOException {
+      if (isClosed) {
+        throw new UnsupportedOperationException("Builder is closed!");
+      }
+
+      if (imageDataList.size() != 1) {
+        throw new UnsupportedOperationException("Only support to write a single image to the stream!");
+      }
+
+      try (
+        TaskExecutor executor = new TaskExecutor(numWorkers)
+      ) {
+        writeTo(imageDataList.get(0), os, fileType, quality, executor);
+      } finally {
+        imagePool.clear();
+      }
+
+      if (isCloseBuilderAfterWrote) {
+        close();
+      }
+    }
+
+    @Override
+    public void writeTo(WritableByteChannel channel, String fileType, boolean isCloseBuilderAfterWrote) throws IOException {
+      writeTo(channel, fileType, -1, isCloseBuilderAfterWrote);
+    }
+
+    @Override
+    public void writeTo(WritableByteChannel channel, String fileType, float quality, boolean isCloseBuilderAfterWrote) throws IOException {
+      writeTo(Channels.newOutputStream(channel), fileType, quality, isCloseBuilderAfterWrote);
+    }
+
+    private void writeTo(ImageData imageData, OutputStream os, String fileType, float quality, TaskExecutor executor) throws IOException {
+      if (isLosslessJPEGTarget(fileType, quality)) {
+        if (writeLosslessJPEG(imageData, os)) {
+          return;
+        }
+
+        // PDF 的原始格式為 TIFF，需明確指定 JPEG
+        if (fileType != null && !"".equals(fileType)) {
+          List<byte[]> jpegBytesList = readEmbeddedJPEGs(imageData);
+          if (jpegBytesList != null && jpegBytesList.size() == 1) {
+            os.write(jpegBytesList.get(0));
+
+            return;
+          }
+        }
+      }
+
+      imageData = prepareImageData(imageData, executor);
+      if (imageData == null) {
+        throw new IIOException("Can not read image!");
+      }
+
+      try {
+        String targetImageType = imageData.getImageType();
+        if (fileType != null && !"".equals(fileType)) {
+          targetImageType = fileType;
+        }
+
+        writeImage(createImageOutputStream(os), targetImageType, quality, tiffCompression, imageData.getImagePages());
+      } finally {
+        releaseImageData(imageData);
+      }
+    }
+
+    /**
+     * 建立寫出至 OutputStream 的 ImageOutputStream，依設定使用暫存檔或記憶體作為快取。
+     */
+    private ImageOutputStream createImageOutputStream(OutputStream os) throws IOException {
+      if (isUseDiskCache) {
+        return TempFileImageOutputStream.create(os, ImageIO.getCacheDirectory());
+      }
+
+      return new MemoryCacheImageOutputStream(os);
+    }
+
+    @Override
+    public List<String> convertToBase64() {
+      if (isClosed) {
+        throw new UnsupportedOperationException("Builder is closed!");
+      }
+
+      return convertImageToBase64String(this);
+    }
+
+    @Override
+    public void writeBase64To(Writer writer, boolean isCloseBuilderAfterWrote) throws IOException {
+      if (isClosed) {
+        throw new UnsupportedOperationException("Builder is closed!");
+      }
+
+      if (imageDataList.size() != 1) {
+        throw new UnsupportedOperationException("Only support to write a single image to the stream!");
+      }
+
+      try (
+        TaskExecutor executor = new TaskExecutor(numWorkers)
+      ) {
+        if (!writeBase64(imageDataList.get(0), writer, executor)) {
+          throw new IIOException("Can not read image!");
+        }
+      } finally {
+        imagePool.clear();
+      }
+
+      if (isCloseBuilderAfterWrote) {
+        close();
+      }
+    }
+
+    @Override
+    public void writeBase64To(OutputStream os, boolean isCloseBuilderAfterWrote) throws IOException {
+      writeBase64To(new OutputStreamWriter(os, StandardCharsets.US_ASCII), isCloseBuilderAfterWrote);
+    }
+
+    /**
+     * 以原格式寫出並即時編碼為 Base64 寫入 Writer，不保留完整的圖片資料。
+     *
+     * @param imageData 圖片資料
+     * @param writer    目標 Writer
+     * @param executor  處理頁面之 TaskExecutor
+     * @return 是否已寫出，無法讀取時為 false
+     * @throws IOException
+     */
+    private boolean writeBase64(ImageData imageData, Writer writer, TaskExecutor executor) throws IOException {
+      Base64OutputStream b64os = new Base64OutputStream(writer);
+
+      if (!writeLosslessJPEG(imageData, b64os)) {
+        imageData = prepareImageData(imageData, executor);
+        if (imageData == null) {
+          return false;
+        }
+
+        try {
+          writeImage(createImageOutputStream(b64os), imageData.getImageType(), -1, tiffCompression, imageData.getImagePages());
+        } finally {
+          releaseImageData(imageData);
+        }
+      }
+      b64os.finish();
+
+      return true;
+    }
+  }
+
+  /**
+   * 讀取圖片建立 ImageBuilder。
+   *
+   * @param src  圖片路徑
+   * @param srcs 更多圖片路徑
+   * @return ImageBuilder
+   */
+  public static ImageBuilder fromSrc(String src, String... srcs) {
+    File imageSource = new File(src);
+    File[] imageSources = new File[srcs.length];
+    for (int i = 0; i < srcs.length; i++) {
+      imageSources[i] = new File(srcs[i]);
+    }
+
+    return fromSrc(imageSource, imageSources);
+  }
+
+  /**
+   * 讀取圖片建立 ImageBuilder。
+   *
+   * @param imageFile  圖片
+   * @param imageFiles 更多圖片
+   * @return ImageBuilder
+   */
+  public static ImageBuilder fromSrc(File imageFile, File... imageFiles) {
+    List<File> imageFileList = new ArrayList(Arrays.asList(imageFiles));
+    imageFileList.add(0, imageFile);
+
+    Builder builder = null;
+    try {
+      builder = getImagesDetail(imageFileList);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+
+    return builder;
+  }
+
+  /**
+   * 建立串流模式的 ImageBuilder，僅列舉圖片來源，待寫出時才逐一檔案解碼、轉換並寫出。
+   *
+   * @param src  圖片路徑
+   * @param srcs 更多圖片路徑
+   * @return ImageBuilder
+   */
+  public static ImageBuilder streamFromSrc(String src, String... srcs) {
+    File imageSource = new File(src);
+    File[] imageSources = new File[srcs.length];
+    for (int i = 0; i < srcs.length; i++) {
+      imageSources[i] = new File(srcs[i]);
+    }
+
+    return streamFromSrc(imageSource, imageSources);
+  }
+
+  /**
+   * 建立串流模式的 ImageBuilder，僅列舉圖片來源，待寫出時才逐一檔案解碼、轉換並寫出。
+   *
+   * @param imageFile  圖片
+   * @param imageFiles 更多圖片
+   * @return ImageBuilder
+   */
+  public static ImageBuilder streamFromSrc(File imageFile, File... imageFiles) {
+    List<File> imageFileList = new ArrayList<>(Arrays.asList(imageFiles));
+    imageFileList.add(0, imageFile);
+
+    List<ImageData> imageDataList = new ArrayList<>();
+
+    Iterator<File> filesIterator = listImageFiles(imageFileList).iterator();
+    while (filesIterator.hasNext()) {
+      imageDataList.add(new ImageData(filesIterator.next()));
+    }
+
+    if (imageDataList.isEmpty()) {
+      throw new UnsupportedOperationException("No image!");
+    }
+
+    return new Builder(imageDataList, true);
+  }
+
+  /**
+   * 讀取圖片建立 ImageBuilder。
+   *
+   * @param imagePath  圖片路徑
+   * @param imagePaths 更多圖片路徑
+   * @return ImageBuilder
+   */
+  public static ImageBuilder fromSrc(Path imagePath, Path... imagePaths) {
+    return fromSrc(imagePath.toFile(), toFiles(imagePaths));
+  }
+
+  /**
+   * 建立串流模式的 ImageBuilder，僅列舉圖片來源，待寫出時才逐一檔案解碼、轉換並寫出。
+   *
+   * @param imagePath  圖片路徑
+   * @param imagePaths 更多圖片路徑
+   * @return ImageBuilder
+   */
+  public static ImageBuilder streamFromSrc(Path imagePath, Path... imagePaths) {
+    return streamFromSrc(imagePath.toFile(), toFiles(imagePaths));
+  }
 
-            writeImageToFile(pageDestFile, originImageType, targetImageType, quality, imagePage);
+  /**
+   * 讀取記憶體中的圖片建立 ImageBuilder，預設不使用暫存檔。
+   *
+   * @param imageBytes     圖片資料
+   * @param moreImageBytes 更多圖片資料
+   * @return ImageBuilder
+   * @throws IOException
+   */
+  public static ImageBuilder fromBytes(byte[] imageBytes, byte[]... moreImageBytes) throws IOException {
+    List<byte[]> imageBytesList = new ArrayList<>(Arrays.asList(moreImageBytes));
+    imageBytesList.add(0, imageBytes);
 
-            newImageFileList.add(pageDestFile);
-          }
-        }
-      }
+    List<ImageData> imageDataList = new ArrayList<>();
+    for (int i = 0; i < imageBytesList.size(); i++) {
+      imageDataList.add(new ImageData(IN_MEMORY_FILE_NAME + (i + 1), imageBytesList.get(i)));
+    }
 
-      if (isCloseBuilderAfterWrote) {
-        close();
-      }
+    Builder builder = loadImagesDetail(imageDataList, false);
+    builder.isUseDiskCache = false;
 
-      return newImageFileList;
-    }
+    return builder;
+  }
 
-    @Override
-    public List<String> convertToBase64() {
-      if (isClosed) {
-        throw new UnsupportedOperationException("Builder is closed!");
-      }
+  /**
+   * 讀取 ByteBuffer 中的圖片建立 ImageBuilder，讀取範圍為目前 position 至 limit，不會改變 position。
+   *
+   * @param imageBuffer 圖片資料
+   * @return ImageBuilder
+   * @throws IOException
+   */
+  public static ImageBuilder fromBuffer(ByteBuffer imageBuffer) throws IOException {
+    ByteBuffer buffer = imageBuffer.duplicate();
+    byte[] imageBytes = new byte[buffer.remaining()];
+    buffer.get(imageBytes);
 
-      return convertImageToBase64String(this);
-    }
+    return fromBytes(imageBytes);
   }
 
   /**
-   * 讀取圖片建立 ImageBuilder。
+   * 讀取串流中的圖片建立 ImageBuilder，讀取至串流結束，不會關閉串流。
    *
-   * @param src  圖片路徑
-   * @param srcs 更多圖片路徑
+   * @param is 圖片串流
    * @return ImageBuilder
+   * @throws IOException
    */
-  public static ImageBuilder fromSrc(String src, String... srcs) {
-    File imageSource = new File(src);
-    File[] imageSources = new File[srcs.length];
-    for (int i = 0; i < srcs.length; i++) {
-      imageSources[i] = new File(srcs[i]);
+  public static ImageBuilder fromStream(InputStream is) throws IOException {
+    ByteArrayOutputStream bao = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int n;
+    while ((n = is.read(buffer)) != -1) {
+      bao.write(buffer, 0, n);
     }
 
-    return fromSrc(imageSource, imageSources);
+    return fromBytes(bao.toByteArray());
   }
 
   /**
-   * 讀取圖片建立 ImageBuilder。
+   * 只讀取檔頭取得圖片格式、尺寸與頁數，不解碼圖片。
    *
-   * @param imageFile  圖片
-   * @param imageFiles 更多圖片
-   * @return ImageBuilder
+   * @param src 圖片路徑
+   * @return 圖片資訊，不支援的格式為 null
+   * @throws IOException
    */
-  public static ImageBuilder fromSrc(File imageFile, File... imageFiles) {
-    List<File> imageFileList = new ArrayList(Arrays.asList(imageFiles));
-    imageFileList.add(0, imageFile);
+  public static ImageInfo probe(String src) throws IOException {
+    return probe(new File(src));
+  }
 
-    Builder builder = null;
-    try {
-      builder = getImagesDetail(imageFileList);
-    } catch (IOException e) {
-      e.printStackTrace();
+  /**
+   * 只讀取檔頭取得圖片格式、尺寸與頁數，不解碼圖片。
+   *
+   * @param src 圖片
+   * @return 圖片資訊，不支援的格式為 null
+   * @throws IOException
+   */
+  public static ImageInfo probe(File src) throws IOException {
+    if (!src.isFile()) {
+      throw new FileNotFoundException(src.getPath());
     }
 
-    return builder;
+    return probe(new ImageData(src), ImageIO.getUseCache());
+  }
+
+  /**
+   * 只讀取檔頭取得圖片格式、尺寸與頁數，不解碼圖片。
+   *
+   * @param src 圖片
+   * @return 圖片資訊，不支援的格式為 null
+   * @throws IOException
+   */
+  public static ImageInfo probe(Path src) throws IOException {
+    return probe(src.toFile());
+  }
+
+  /**
+   * 只讀取檔頭取得記憶體中圖片的格式、尺寸與頁數，不解碼圖片。
+   *
+   * @param imageBytes 圖片資料
+   * @return 圖片資訊，不支援的格式為 null
+   * @throws IOException
+   */
+  public static ImageInfo probe(byte[] imageBytes) throws IOException {
+    return probe(new ImageData(IN_MEMORY_FILE_NAME + 1, imageBytes), false);
   }
 
   /**
@@ -399,32 +1670,82 @@ public class ImageUtil {
     return base64String;
   }
 
-  private static List<String> convertImageToBase64String(Builder imagesDetail) {
+  /**
+   * 讀取圖片轉換成 base64 並寫出至 Writer，不會關閉 Writer。
+   *
+   * @param src    圖片路徑
+   * @param writer 目標 Writer
+   * @throws IOException
+   */
+  public static void convertImageToBase64String(String src, Writer writer) throws IOException {
+    convertImageToBase64String(new File(src), writer);
+  }
+
+  /**
+   * 讀取圖片轉換成 base64 並寫出至 Writer，不會關閉 Writer。
+   *
+   * @param src    圖片
+   * @param writer 目標 Writer
+   * @throws IOException
+   */
+  public static void convertImageToBase64String(File src, Writer writer) throws IOException {
+    if (!src.exists()) {
+      throw new FileNotFoundException(src.getPath());
+    }
+
+    getImagesDetail(new File[]{src}).writeBase64To(writer, true);
+  }
+
+  private static List<String> convertImageToBase64String(final Builder imagesDetail) {
     List<String> base64StringList = new ArrayList<>();
 
     List<ImageData> imageDataList = imagesDetail.imageDataList;
 
-    Iterator<ImageData> imageDetailListIterator = imageDataList.iterator();
-    while (imageDetailListIterator.hasNext()) {
-      ImageData imageData = imageDetailListIterator.next();
-      String imageType = imageData.getImageType();
-      BufferedImage[] imagePages = imageData.getImagePages();
-
-      byte[] imageBytes = new byte[0];
-      try {
-        imageBytes = writeImageToByteArray(imageType, imagePages);
-      } catch (IOException e) {
-        e.printStackTrace();
+    try (
+      final TaskExecutor executor = new TaskExecutor(imagesDetail.numWorkers)
+    ) {
+      List<Callable<String>> taskList = new ArrayList<>();
+      Iterator<ImageData> imageDetailListIterator = imageDataList.iterator();
+      while (imageDetailListIterator.hasNext()) {
+        final ImageData imageData = imageDetailListIterator.next();
+        taskList.add(new Callable<String>() {
+          @Override
+          public String call() {
+            return convertImageToBase64String(imagesDetail, imageData, executor);
+          }
+        });
       }
-      String base64StringPage = DatatypeConverter.printBase64Binary(imageBytes);
 
-      base64StringList.add(base64StringPage);
+      Iterator<String> base64StringIterator = executor.invokeAll(taskList).iterator();
+      while (base64StringIterator.hasNext()) {
+        String base64StringPage = base64StringIterator.next();
+        if (base64StringPage != null) {
+          base64StringList.add(base64StringPage);
+        }
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
     }
     imagesDetail.close();
 
     return base64StringList;
   }
 
+  private static String convertImageToBase64String(Builder imagesDetail, ImageData imageData, TaskExecutor executor) {
+    StringWriter writer = new StringWriter();
+    try {
+      if (!imagesDetail.writeBase64(imageData, writer, executor)) {
+        return null;
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+
+      return "";
+    }
+
+    return writer.toString();
+  }
+
   private static Builder getImagesDetail(File[] files) throws IOException {
     List<File> fileList = Arrays.asList(files);
 
@@ -434,77 +1755,245 @@ public class ImageUtil {
   private static Builder getImagesDetail(List<File> fileList) throws IOException {
     List<ImageData> imageDataList = new ArrayList<>();
 
+    Iterator<File> filesIterator = listImageFiles(fileList).iterator();
+    while (filesIterator.hasNext()) {
+      imageDataList.add(new ImageData(filesIterator.next()));
+    }
+
+    return loadImagesDetail(imageDataList, ImageIO.getUseCache());
+  }
+
+  private static Builder loadImagesDetail(List<ImageData> imageDataList, boolean isUseDiskCache) throws IOException {
+    List<ImageData> loadedImageDataList = new ArrayList<>();
+
+    Iterator<ImageData> imageDataIterator = imageDataList.iterator();
+    while (imageDataIterator.hasNext()) {
+      ImageData imageData = imageDataIterator.next();
+      // 預留以 Builder 的圖片清單識別，已讀取的頁面保留至 Builder 關閉
+      if (loadImageData(imageData, loadedImageDataList, Collections.<ImageOperation>emptyList(), SourceSelection.ALL, isUseDiskCache)) {
+        imageData.retainReservation();
+        loadedImageDataList.add(imageData);
+      }
+    }
+
+    if (loadedImageDataList.isEmpty()) {
+      throw new UnsupportedOperationException("No image!");
+    }
+
+    return new Builder(loadedImageDataList);
+  }
+
+  private static File[] toFiles(Path[] paths) {
+    File[] files = new File[paths.length];
+    for (int i = 0; i < paths.length; i++) {
+      files[i] = paths[i].toFile();
+    }
+
+    return files;
+  }
+
+  private static List<File> listImageFiles(List<File> fileList) {
+    List<File> imageFileList = new ArrayList<>();
+
     Iterator<File> filesIterator = fileList.iterator();
     while (filesIterator.hasNext()) {
       File imageFile = filesIterator.next();
-      try {
-        if (imageFile.isDirectory()) {
-          if (imageFile.listFiles().length == 0) {
-            continue;
-          }
-          Builder tempImagesDetail = getImagesDetail(imageFile.listFiles());
-
-          imageDataList.addAll(tempImagesDetail.imageDataList);
-        } else if (imageFile.exists()) {
-          ImageData imageData = readImage(imageFile);
-          imageDataList.add(imageData);
+      if (imageFile.isDirectory()) {
+        File[] subFiles = imageFile.listFiles();
+        if (subFiles == null || subFiles.length == 0) {
+          continue;
         }
-      } catch (UnsupportedOperationException e) {
-        System.out.println(e.getMessage() + " Try to read as PDF...");
 
-        // PDF
-        try (
-          PDDocument document = PDDocument.load(imageFile)
-        ) {
-          PDFRenderer pdfRenderer = new PDFRenderer(document);
+        // 依檔名排序，確保輸出順序固定
+        Arrays.sort(subFiles);
 
-          int numPDFPages = document.getNumberOfPages();
-          BufferedImage[] imagePages = new BufferedImage[numPDFPages];
-          for (int i = 0; i < numPDFPages; i++) {
-            BufferedImage imagePage = pdfRenderer.renderImageWithDPI(i, 150, ImageType.RGB);
-            imagePages[i] = imagePage;
-          }
+        imageFileList.addAll(listImageFiles(Arrays.asList(subFiles)));
+      } else if (imageFile.exists()) {
+        imageFileList.add(imageFile);
+      }
+    }
+
+    return imageFileList;
+  }
+
+  private static boolean loadImageData(ImageData imageData, Object reservationOwner, List<ImageOperation> operationList, SourceSelection sourceSelection, boolean isUseDiskCache) throws IOException {
+    // 依檔頭直接交給對應的解碼器，不需先以 ImageIO 開啟失敗後再改讀 PDF
+    FormatSniffer.Format format = sniffFormat(imageData);
+    if (format == FormatSniffer.Format.PDF) {
+      // PDF，只確認可開啟，頁面於寫出時才繪製
+      try (
+        PDFPageRenderer pdfPageRenderer = createPDFPageRenderer(imageData, isUseDiskCache)
+      ) {
+        pdfPageRenderer.getNumPages();
+
+        imageData.setImageType("TIFF");
+        imageData.setPDF(true);
+      } catch (InvalidPasswordException e) {
+        System.out.println(e.getMessage() + " Skipped file: " + imageData.getSourceName());
+
+        return false;
+      } catch (IOException e) {
+        System.out.println(e.getMessage() + " Skipped file: " + imageData.getSourceName());
+
+        return false;
+      }
+
+      return true;
+    }
+
+    try {
+      readImage(imageData, reservationOwner, format, operationList, sourceSelection);
+    } catch (UnsupportedOperationException e) {
+      System.out.println(e.getMessage() + " Skipped file: " + imageData.getSourceName());
+
+      return false;
+    }
+
+    if (imageData.getImagePages().length == 0) {
+      imageData.releaseReservation();
+      System.out.println("No page selected! Skipped file: " + imageData.getSourceName());
+
+      return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * 與 loadImageData 使用相同的格式判斷與 reader，但只讀取檔頭、IFD 或 PDF 的頁面樹。
+   */
+  private static ImageInfo probe(ImageData imageData, boolean isUseDiskCache) throws IOException {
+    FormatSniffer.Format format = sniffFormat(imageData);
+    if (format == FormatSniffer.Format.PDF) {
+      try (
+        PDFPageRenderer pdfPageRenderer = createPDFPageRenderer(imageData, isUseDiskCache)
+      ) {
+        int numPDFPages = pdfPageRenderer.getNumPages();
+        Dimension pageSize = numPDFPages > 0 ? pdfPageRenderer.getPageSize(0, PDFPageRenderer.DEFAULT_DPI) : new Dimension();
+
+        return new ImageInfo(imageData.getSourceName(), "PDF", pageSize.width, pageSize.height, numPDFPages);
+      } catch (IOException e) {
+        // 與 loadImageData 相同，無法開啟的 PDF 視為不支援
+        return null;
+      }
+    }
+
+    ImageReader imageReader = null;
+    try (
+      ImageInputStream iis = createImageInputStream(imageData)
+    ) {
+      imageReader = CodecRegistry.getImageReader(iis, format.getImageIOFormatName());
+
+      String formatName = format.getImageIOFormatName();
+      if (formatName == null) {
+        formatName = imageReader.getFormatName();
+      }
 
-          ImageData imageData = new ImageData(imageFile.getName().replaceFirst("\\.[^.]+$", ""), "TIFF", imagePages);
-          imageDataList.add(imageData);
-        } catch (InvalidPasswordException ee) {
-          System.out.println(ee.getMessage() + " Skipped file: " + imageFile.getPath());
-        } catch (IOException ee) {
-          System.out.println(ee.getMessage() + " Skipped file: " + imageFile.getPath());
+      // 不允許掃描時無法得知頁數的格式，只有 GIF 等可能有多頁的格式才掃描
+      int numImagePages = imageReader.getNumImages(false);
+      if (numImagePages < 0) {
+        if (format == FormatSniffer.Format.JPEG || format == FormatSniffer.Format.PNG || format == FormatSniffer.Format.BMP) {
+          numImagePages = 1;
+        } else {
+          numImagePages = imageReader.getNumImages(true);
         }
+      }
 
-        continue;
+      return new ImageInfo(imageData.getSourceName(), formatName, imageReader.getWidth(0), imageReader.getHeight(0), numImagePages);
+    } catch (UnsupportedOperationException e) {
+      return null;
+    } finally {
+      if (imageReader != null) {
+        CodecRegistry.release(imageReader);
       }
     }
+  }
 
-    if (imageDataList.isEmpty()) {
-      throw new UnsupportedOperationException("No image!");
+  /**
+   * 解碼 PDF 中取出的圖片並依頁面設定轉正，JPEG 依之後的操作於解碼時跳過不需要的像素。
+   *
+   * @param embeddedImage 取出的圖片
+   * @param pageSize      以預設 DPI 繪製時的頁面尺寸
+   * @param operationList 之後的操作
+   */
+  private static BufferedImage readEmbeddedImage(PDFPageRenderer.EmbeddedImage embeddedImage, Dimension pageSize, List<ImageOperation> operationList) throws IOException {
+    BufferedImage image = embeddedImage.getImage();
+    if (image == null) {
+      ImageReader imageReader = null;
+      try (
+        ImageInputStream iis = new ByteBufferImageInputStream(ByteBuffer.wrap(embeddedImage.getJPEGBytes()))
+      ) {
+        imageReader = CodecRegistry.getImageReader(iis, FormatSniffer.Format.JPEG.getImageIOFormatName());
+
+        ImageReadParam imageReadParam = imageReader.getDefaultReadParam();
+        int subsampling = getEmbeddedImageSubsampling(embeddedImage.getSize(), pageSize, operationList);
+        if (subsampling > 1) {
+          imageReadParam.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        }
+
+        image = imageReader.read(0, imageReadParam);
+      } finally {
+        if (imageReader != null) {
+          CodecRegistry.release(imageReader);
+        }
+      }
     }
 
-    return new Builder(imageDataList);
+    return OrthogonalRotator.rotate(image, embeddedImage.getQuadrants());
   }
 
-  private static ImageData readImage(File imageFile) throws IOException {
-    String fileName = imageFile.getName().replaceFirst("\\.[^.]+$", "");
+  private static void readImage(ImageData imageData, Object reservationOwner, FormatSniffer.Format format, List<ImageOperation> operationList, SourceSelection sourceSelection) throws IOException {
     String formatName;
-    BufferedImage[] imagePages;
+    List<BufferedImage> imagePageList = new ArrayList<>();
 
     ImageReader imageReader = null;
     try (
-      FileInputStream fis = new FileInputStream(imageFile);
+      ImageInputStream iis = createImageInputStream(imageData)
     ) {
-      imageReader = getImageReader(fis);
+      imageReader = CodecRegistry.getImageReader(iis, format.getImageIOFormatName());
 
       formatName = imageReader.getFormatName();
 
-      // 取得多頁圖片頁數
-      int numImagePages = imageReader.getNumImages(true);
-      imagePages = new BufferedImage[numImagePages];
-      for (int i = 0; i < numImagePages; i++) {
-        BufferedImage imagePage = imageReader.read(i);
-        imagePages[i] = imagePage;
+      // 取得多頁圖片頁數，只解碼選取的頁面
+      int endPageIndex = sourceSelection.getEndPageIndex(imageReader.getNumImages(true));
+
+      // 依檔頭估計解碼後的大小，預留記憶體後才開始解碼
+      long estimatedBytes = 0;
+      for (int i = sourceSelection.getFirstPageIndex(); i < endPageIndex; i++) {
+        Rectangle region = sourceSelection.getRegion(new Dimension(imageReader.getWidth(i), imageReader.getHeight(i)));
+        if (region == null) {
+          continue;
+        }
+
+        int subsampling = getSourceSubsampling(region.getSize(), operationList);
+        int width = (region.width + subsampling - 1) / subsampling;
+        int height = (region.height + subsampling - 1) / subsampling;
+        estimatedBytes += MemoryGovernor.estimatePageBytes(width, height, getDecodedBitsPerPixel(imageReader, i));
       }
-    } catch (IOException e) {
+      imageData.setReservation(MemoryGovernor.reserve(reservationOwner, imageData.getSourceName(), estimatedBytes));
+
+      for (int i = sourceSelection.getFirstPageIndex(); i < endPageIndex; i++) {
+        Rectangle region = sourceSelection.getRegion(new Dimension(imageReader.getWidth(i), imageReader.getHeight(i)));
+        if (region == null) {
+          continue;
+        }
+
+        ImageReadParam imageReadParam = imageReader.getDefaultReadParam();
+        if (sourceSelection.hasRegion()) {
+          imageReadParam.setSourceRegion(region);
+        }
+
+        // 已知之後會縮小時，於解碼時即跳過不需要的像素
+        int subsampling = getSourceSubsampling(region.getSize(), operationList);
+        if (subsampling > 1) {
+          imageReadParam.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        }
+
+        BufferedImage imagePage = imageReader.read(i, imageReadParam);
+        imagePageList.add(imagePage);
+      }
+    } catch (IOException | RuntimeException e) {
+      imageData.releaseReservation();
       if (imageReader != null) {
         imageReader.abort();
       }
@@ -512,26 +2001,39 @@ public class ImageUtil {
       throw e;
     } finally {
       if (imageReader != null) {
-        imageReader.dispose();
+        CodecRegistry.release(imageReader);
       }
     }
 
-    return new ImageData(fileName, formatName, imagePages);
+    imageData.setImageType(formatName);
+    imageData.setImagePages(imagePageList.toArray(new BufferedImage[imagePageList.size()]));
+  }
+
+  /**
+   * 取得解碼後每個像素的 bit 數，無法得知時以 ARGB 計算。
+   */
+  private static int getDecodedBitsPerPixel(ImageReader imageReader, int pageIndex) throws IOException {
+    ImageTypeSpecifier imageType = imageReader.getRawImageType(pageIndex);
+    if (imageType == null) {
+      return 32;
+    }
+
+    return imageType.getColorModel().getPixelSize();
   }
 
-  private static byte[] writeImageToByteArray(String originImageType, BufferedImage[] imagePages) throws IOException {
+  private static byte[] writeImageToByteArray(String imageType, float quality, ImageBuilder.TIFFCompression tiffCompression, BufferedImage[] imagePages) throws IOException {
     ByteArrayOutputStream bao = new ByteArrayOutputStream();
-    ImageOutputStream ios = ImageIO.createImageOutputStream(bao);
-    writeImage(ios, originImageType, originImageType, -1, imagePages);
+    ImageOutputStream ios = new MemoryCacheImageOutputStream(bao);
+    writeImage(ios, imageType, quality, tiffCompression, imagePages);
 
     return bao.toByteArray();
   }
 
-  private static void writeImageToFile(File destFile, String originImageType, String targetImageType, float quality, BufferedImage imagePage) throws IOException {
-    writeImageToFile(destFile, originImageType, targetImageType, quality, new BufferedImage[]{imagePage});
+  private static void writeImageToFile(File destFile, String targetImageType, float quality, ImageBuilder.TIFFCompression tiffCompression, BufferedImage imagePage) throws IOException {
+    writeImageToFile(destFile, targetImageType, quality, tiffCompression, new BufferedImage[]{imagePage});
   }
 
-  private static void writeImageToFile(File destFile, String originImageType, String targetImageType, float quality, BufferedImage[] imagePages) throws IOException {
+  private static void writeImageToFile(File destFile, String targetImageType, float quality, ImageBuilder.TIFFCompression tiffCompression, BufferedImage[] imagePages) throws IOException {
     File destLocation = destFile.getParentFile();
     if (!destLocation.exists()) {
       if (destLocation.mkdirs()) {
@@ -542,30 +2044,28 @@ public class ImageUtil {
     }
 
     ImageOutputStream ios = ImageIO.createImageOutputStream(destFile);
-    writeImage(ios, originImageType, targetImageType, quality, imagePages);
+    writeImage(ios, targetImageType, quality, tiffCompression, imagePages);
   }
 
-  private static void writeImage(ImageOutputStream ios, String originImageType, String targetImageType, float quality, BufferedImage[] imagePages) throws IOException {
+  private static void writeImage(ImageOutputStream ios, String targetImageType, float quality, ImageBuilder.TIFFCompression tiffCompression, BufferedImage[] imagePages) throws IOException {
     boolean isWriteMultipage = imagePages.length > 1;
     boolean isTargetTIFF = "TIF".equalsIgnoreCase(targetImageType) || "TIFF".equalsIgnoreCase(targetImageType);
-    boolean isOriginPNG = "PNG".equalsIgnoreCase(originImageType);
+    boolean isTargetJPEG = "JPG".equalsIgnoreCase(targetImageType) || "JPEG".equalsIgnoreCase(targetImageType);
 
     ImageWriter imageWriter = null;
     try {
-      imageWriter = getImageWriter(targetImageType, ios);
+      imageWriter = CodecRegistry.getImageWriter(targetImageType, ios);
 
       ImageWriteParam imageWriteParam = imageWriter.getDefaultWriteParam();
-      if (isTargetTIFF && imageWriteParam.canWriteCompressed()) {
-        setImageWriteParamCompression(imageWriteParam, quality);
-      }
+      boolean isCompressTIFF = isTargetTIFF && imageWriteParam.canWriteCompressed();
 
       if (!isWriteMultipage) {
         BufferedImage imagePage = imagePages[0];
-        if (isOriginPNG) {
-          BufferedImage imagePageWithWiteBG = ignoreTransparentBG(imagePage);
-
-          imagePage.flush();
-          imagePage = imagePageWithWiteBG;
+        if (isCompressTIFF) {
+          imagePage = TIFFCompressionSelector.apply(imagePage, tiffCompression, quality, imageWriteParam);
+        } else if (isTargetJPEG) {
+          // JPEG 不支援 1 bit，以灰階寫出
+          imagePage = ColorDepthReducer.expandBilevel(imagePage);
         }
 
         IIOImage iioImage = new IIOImage(imagePage, null, null);
@@ -575,12 +2075,10 @@ public class ImageUtil {
 
         imageWriter.prepareWriteSequence(null);
         for (int i = 0; i < numImagePages; i++) {
+          // 每頁各自選擇壓縮方式
           BufferedImage imagePage = imagePages[i];
-          if (isOriginPNG) {
-            BufferedImage imagePageWithWiteBG = ignoreTransparentBG(imagePage);
-
-            imagePage.flush();
-            imagePage = imagePageWithWiteBG;
+          if (isCompressTIFF) {
+            imagePage = TIFFCompressionSelector.apply(imagePage, tiffCompression, quality, imageWriteParam);
           }
 
           IIOImage iioImage = new IIOImage(imagePage, null, null);
@@ -598,7 +2096,7 @@ public class ImageUtil {
       throw e;
     } finally {
       if (imageWriter != null) {
-        imageWriter.dispose();
+        CodecRegistry.release(imageWriter);
       }
 
       if (ios != null) {
@@ -611,64 +2109,144 @@ public class ImageUtil {
     }
   }
 
-  private static BufferedImage ignoreTransparentBG(BufferedImage image) {
-    // 乎略 PNG 透明背景
-    BufferedImage newBufferedImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
-    Graphics2D graphics = newBufferedImage.createGraphics();
-    graphics.drawImage(image, 0, 0, Color.WHITE, null);
-    graphics.dispose();
+  /**
+   * 開啟圖片來源，較大的檔案對應至記憶體、其他檔案以隨機存取方式讀取，記憶體中的圖片直接讀取原陣列，皆不經過 ImageIO 的快取。
+   */
+  private static ImageInputStream createImageInputStream(ImageData imageData) throws IOException {
+    byte[] sourceBytes = imageData.getSourceBytes();
+    if (sourceBytes != null) {
+      return new ByteBufferImageInputStream(ByteBuffer.wrap(sourceBytes));
+    }
+
+    if (imageData.getSourceFile().length() >= MAPPED_INPUT_MIN_SIZE) {
+      return new MappedImageInputStream(imageData.getSourceFile());
+    }
+
+    ImageInputStream iis = ImageIO.createImageInputStream(imageData.getSourceFile());
+    if (iis == null) {
+      throw new FileNotFoundException(imageData.getSourceName());
+    }
 
-    return newBufferedImage;
+    return iis;
   }
 
-  private static ImageReader getImageReader(FileInputStream fis) throws IOException {
-    List<ImageReader> imageReaderList = getImageReaderList(new InputStream[]{fis});
-    return imageReaderList.get(0);
+  private static InputStream openSourceStream(ImageData imageData) throws IOException {
+    byte[] sourceBytes = imageData.getSourceBytes();
+    if (sourceBytes != null) {
+      return new ByteArrayInputStream(sourceBytes);
+    }
+
+    return new FileInputStream(imageData.getSourceFile());
   }
 
-  private static List<ImageReader> getImageReaderList(InputStream[] iss) throws IOException {
-    List<ImageReader> imageReaderList = new ArrayList<>();
-    for (int i = 0; i < iss.length; i++) {
-      InputStream is = iss[i];
-      ImageInputStream iis = ImageIO.createImageInputStream(is);
-      // Test
-//      ImageIO.scanForPlugins();
-      Iterator<ImageReader> imageReaderIterator = ImageIO.getImageReaders(iis);
+  private static FormatSniffer.Format sniffFormat(ImageData imageData) throws IOException {
+    byte[] sourceBytes = imageData.getSourceBytes();
+    if (sourceBytes != null) {
+      return FormatSniffer.sniff(sourceBytes);
+    }
 
-      if (!imageReaderIterator.hasNext()) {
-        throw new UnsupportedOperationException("No image reader found!");
-      }
+    return FormatSniffer.sniff(imageData.getSourceFile());
+  }
 
-      ImageReader imageReader = imageReaderIterator.next();
-      imageReader.setInput(iis);
+  private static boolean isPDFSource(ImageData imageData) {
+    try {
+      return sniffFormat(imageData) == FormatSniffer.Format.PDF;
+    } catch (IOException e) {
+      return false;
+    }
+  }
 
-      imageReaderList.add(imageReader);
+  private static PDFPageRenderer createPDFPageRenderer(ImageData imageData, boolean isUseDiskCache) {
+    byte[] sourceBytes = imageData.getSourceBytes();
+    if (sourceBytes != null) {
+      return new PDFPageRenderer(sourceBytes, isUseDiskCache);
     }
 
-    return imageReaderList;
+    return new PDFPageRenderer(imageData.getSourceFile(), isUseDiskCache);
   }
 
-  private static ImageWriter getImageWriter(String imageType, ImageOutputStream ios) throws IOException {
-    Iterator<ImageWriter> imageWriterIterator = ImageIO.getImageWritersByFormatName(imageType);
+  /**
+   * 依之後的操作計算解碼時可使用的取樣間隔，保留最小中間尺寸的 SUBSAMPLING_OVERSAMPLE 倍像素供重新取樣使用。
+   *
+   * @param imageSize     原始圖片尺寸
+   * @param operationList 之後的操作
+   * @return 取樣間隔，1 為不跳過像素
+   */
+  private static int getSourceSubsampling(Dimension imageSize, List<ImageOperation> operationList) {
+    double minScale = getMinResizeScale(imageSize, operationList);
+
+    return Math.max(1, (int) Math.floor(1 / (minScale * SUBSAMPLING_OVERSAMPLE)));
+  }
 
-    if (!imageWriterIterator.hasNext()) {
-      throw new UnsupportedOperationException("No image writer found!");
+  /**
+   * 依之後的操作計算 PDF 中取出的圖片解碼時可使用的取樣間隔，操作依頁面尺寸計算，圖片解析度高於頁面時一併跳過多餘的像素。
+   *
+   * @param imageSize     轉正後的圖片尺寸
+   * @param pageSize      以預設 DPI 繪製時的頁面尺寸
+   * @param operationList 之後的操作
+   * @return 取樣間隔，1 為不跳過像素
+   */
+  private static int getEmbeddedImageSubsampling(Dimension imageSize, Dimension pageSize, List<ImageOperation> operationList) {
+    if (imageSize.width <= 0 || imageSize.height <= 0) {
+      return 1;
     }
-    ImageWriter imageWriter = imageWriterIterator.next();
-    imageWriter.setOutput(ios);
 
-    return imageWriter;
+    double pageScale = Math.max((double) pageSize.width / imageSize.width, (double) pageSize.height / imageSize.height);
+    double minScale = pageScale * getMinResizeScale(pageSize, operationList);
+
+    return Math.max(1, (int) Math.floor(1 / (minScale * SUBSAMPLING_OVERSAMPLE)));
+  }
+
+  /**
+   * 依之後的操作決定 PDF 繪製的 DPI，同樣保留最小中間尺寸的 SUBSAMPLING_OVERSAMPLE 倍像素，但不超過預設 DPI。
+   *
+   * @param pageSize      以預設 DPI 繪製時的頁面尺寸
+   * @param operationList 之後的操作
+   * @return DPI
+   */
+  private static float getPDFRenderDPI(Dimension pageSize, List<ImageOperation> operationList) {
+    double minScale = getMinResizeScale(pageSize, operationList);
+
+    return (float) (PDFPageRenderer.DEFAULT_DPI * Math.min(1, minScale * SUBSAMPLING_OVERSAMPLE));
   }
 
-  private static void setImageWriteParamCompression(ImageWriteParam writerParam, float quality) {
-    writerParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-    writerParam.setCompressionType("JPEG");
-    if (quality >= 0 && quality <= 1) {
-      writerParam.setCompressionQuality(quality);
+  /**
+   * 計算之後的調整尺寸操作中，相對於原始尺寸最小的縮放比例。
+   *
+   * @param imageSize     原始圖片尺寸
+   * @param operationList 之後的操作
+   * @return 縮放比例，不超過 1
+   */
+  private static double getMinResizeScale(Dimension imageSize, List<ImageOperation> operationList) {
+    if (imageSize.width <= 0 || imageSize.height <= 0) {
+      return 1;
+    }
+
+    Dimension size = imageSize;
+    double scale = 1;
+    double minScale = 1;
+
+    Iterator<ImageOperation> operationIterator = operationList.iterator();
+    while (operationIterator.hasNext()) {
+      ImageOperation operation = operationIterator.next();
+      Dimension targetSize = operation.getTargetDimension(size);
+
+      if (operation.getType() == ImageOperation.Type.Resize) {
+        if (targetSize.width <= 0 || targetSize.height <= 0) {
+          return 1;
+        }
+
+        scale *= Math.max((double) targetSize.width / size.width, (double) targetSize.height / size.height);
+        minScale = Math.min(minScale, scale);
+      }
+
+      size = targetSize;
     }
+
+    return minScale;
   }
 
-  private static Dimension getScaledDimension(Dimension imageSize, Dimension boundary) {
+  static Dimension getScaledDimension(Dimension imageSize, Dimension boundary) {
     double widthRatio = boundary.getWidth() / imageSize.getWidth();
     double heightRatio = boundary.getHeight() / imageSize.getHeight();
     double ratio = Math.min(widthRatio, heightRatio);
@@ -0,0 +1,422 @@
+package idv.jackblackevo.util;
+
+import java.awt.image.*;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 可分離的 Lanczos3 重新取樣，以整張圖片的座標計算權重，只處理部分範圍時結果與處理整張圖片相同，可用於逐塊處理。
+ * <p>
+ * 直接處理每個 sample 8 bit 的 byte 或 int 陣列，不經過 Raster 的逐像素存取。
+ */
+class LanczosResampler {
+  private static final int RADIUS = 3;
+  private static final int MAX_CACHED_CONTRIBUTIONS = 64;
+
+  /**
+   * 依來源與目標長度快取的整個目標長度權重，計算完成後不再修改，可跨執行緒共用
+   */
+  private static final Map<Long, Contributions> CONTRIBUTIONS_CACHE = new ConcurrentHashMap<>();
+
+  /**
+   * 目標範圍中每個像素使用的來源像素與權重，來源索引相對於來源範圍的起點。
+   */
+  static class Contributions {
+    private int[] starts;
+    private int[] lengths;
+    private float[] weights;
+    private int maxLength;
+
+    private Contributions(int numPixels, int maxLength) {
+      this.starts = new int[numPixels];
+      this.lengths = new int[numPixels];
+      this.weights = new float[numPixels * maxLength];
+      this.maxLength = maxLength;
+    }
+  }
+
+  private LanczosResampler() {
+  }
+
+  /**
+   * 計算目標範圍需要的來源範圍。
+   *
+   * @param srcSize 來源總長度
+   * @param dstSize 目標總長度
+   * @param dst0    目標範圍起點
+   * @param dst1    目標範圍終點（不包含）
+   * @return 來源範圍的起點與終點（不包含）
+   */
+  public static int[] getSourceRange(int srcSize, int dstSize, int dst0, int dst1) {
+    double scale = (double) srcSize / dstSize;
+    double support = RADIUS * Math.max(1, scale);
+
+    int src0 = (int) Math.floor(getCenter(dst0, scale) - support) + 1;
+    int src1 = (int) Math.floor(getCenter(dst1 - 1, scale) + support) + 1;
+
+    return new int[]{Math.max(0, src0), Math.min(srcSize, src1)};
+  }
+
+  /**
+   * 計算目標範圍的權重，超出來源邊界的像素以邊界像素代替。
+   *
+   * @param srcSize 來源總長度
+   * @param dstSize 目標總長度
+   * @param dst0    目標範圍起點
+   * @param dst1    目標範圍終點（不包含）
+   * @param src0    來源範圍起點，須為 getSourceRange 的結果
+   * @return 權重
+   */
+  public static Contributions computeContributions(int srcSize, int dstSize, int dst0, int dst1, int src0) {
+    double scale = (double) srcSize / dstSize;
+    double filterScale = Math.max(1, scale);
+    double support = RADIUS * filterScale;
+    int maxLength = (int) Math.ceil(support * 2) + 1;
+
+    Contributions contributions = new Contributions(dst1 - dst0, maxLength);
+    for (int i = 0; i < dst1 - dst0; i++) {
+      double center = getCenter(dst0 + i, scale);
+      int left = (int) Math.floor(center - support) + 1;
+      int right = (int) Math.floor(center + support);
+
+      int start = clamp(left, srcSize);
+      int end = clamp(right, srcSize);
+      int offset = i * maxLength;
+
+      double sum = 0;
+      double[] pixelWeights = new double[end - start + 1];
+      for (int j = left; j <= right; j++) {
+        double weight = lanczos((j - center) / filterScale);
+        pixelWeights[clamp(j, srcSize) - start] += weight;
+        sum += weight;
+      }
+
+      for (int j = 0; j < pixelWeights.length; j++) {
+        contributions.weights[offset + j] = (float) (pixelWeights[j] / sum);
+      }
+      contributions.starts[i] = start - src0;
+      contributions.lengths[i] = pixelWeights.length;
+    }
+
+    return contributions;
+  }
+
+  /**
+   * 取得整個目標長度的權重，相同來源與目標長度的權重只計算一次，批次處理相同尺寸的頁面時可直接重複使用。
+   *
+   * @param srcSize 來源總長度
+   * @param dstSize 目標總長度
+   * @return 權重
+   */
+  public static Contributions getContributions(int srcSize, int dstSize) {
+    Long key = ((long) srcSize << 32) | dstSize;
+    Contributions contributions = CONTRIBUTIONS_CACHE.get(key);
+    if (contributions == null) {
+      contributions = computeContributions(srcSize, dstSize, 0, dstSize, 0);
+      if (CONTRIBUTIONS_CACHE.size() >= MAX_CACHED_CONTRIBUTIONS) {
+        CONTRIBUTIONS_CACHE.clear();
+      }
+      CONTRIBUTIONS_CACHE.put(key, contributions);
+    }
+
+    return contributions;
+  }
+
+  /**
+   * 重新取樣。
+   *
+   * @param src       來源資料
+   * @param srcWidth  來源寬
+   * @param numBands  每個像素的 sample 數
+   * @param xContribs 水平權重，目標寬為其像素數
+   * @param yContribs 垂直權重，目標高為其像素數
+   * @return 目標資料
+   */
+  public static byte[] resample(byte[] src, int srcWidth, int numBands, Contributions xContribs, Contributions yContribs) {
+    int rowLength = xContribs.starts.length * numBands;
+    byte[] dst = new byte[rowLength * yContribs.starts.length];
+    resample(src, 0, srcWidth * numBands, numBands, dst, 0, rowLength, xContribs, yContribs);
+
+    return dst;
+  }
+
+  /**
+   * 檢查是否可直接處理此 Raster 的 DataBuffer 陣列。
+   *
+   * @param raster Raster
+   * @return 是否支援
+   */
+  public static boolean isSupported(Raster raster) {
+    return isIntPacked(raster) || isByteInterleaved(raster);
+  }
+
+  /**
+   * 直接處理 DataBuffer 陣列，來源與目標的 Raster 配置須相同。
+   *
+   * @param raster       來源
+   * @param targetRaster 目標，尺寸即為重新取樣的目標尺寸
+   * @return 是否支援此配置，不支援時不會修改目標
+   */
+  public static boolean resample(Raster raster, WritableRaster targetRaster) {
+    if (isIntPacked(raster) && isIntPacked(targetRaster)) {
+      SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) raster.getSampleModel();
+      SinglePixelPackedSampleModel targetSampleModel = (SinglePixelPackedSampleModel) targetRaster.getSampleModel();
+      if (!Arrays.equals(sampleModel.getBitOffsets(), targetSampleModel.getBitOffsets())) {
+        return false;
+      }
+
+      DataBufferInt dataBuffer = (DataBufferInt) raster.getDataBuffer();
+      DataBufferInt targetDataBuffer = (DataBufferInt) targetRaster.getDataBuffer();
+      int stride = sampleModel.getScanlineStride();
+      int base = dataBuffer.getOffset() + getBaseY(raster) * stride + getBaseX(raster);
+      int targetStride = targetSampleModel.getScanlineStride();
+      int targetBase = targetDataBuffer.getOffset() + getBaseY(targetRaster) * targetStride + getBaseX(targetRaster);
+
+      Contributions xContribs = getContributions(raster.getWidth(), targetRaster.getWidth());
+      Contributions yContribs = getContributions(raster.getHeight(), targetRaster.getHeight());
+      resample(dataBuffer.getData(), base, stride, sampleModel.getBitOffsets(), targetDataBuffer.getData(), targetBase, targetStride, xContribs, yContribs);
+
+      return true;
+    }
+
+    if (isByteInterleaved(raster) && isByteInterleaved(targetRaster)) {
+      PixelInterleavedSampleModel sampleModel = (PixelInterleavedSampleModel) raster.getSampleModel();
+      PixelInterleavedSampleModel targetSampleModel = (PixelInterleavedSampleModel) targetRaster.getSampleModel();
+      int numBands = sampleModel.getPixelStride();
+      if (targetSampleModel.getPixelStride() != numBands
+        || !Arrays.equals(sampleModel.getBandOffsets(), targetSampleModel.getBandOffsets())) {
+        return false;
+      }
+
+      DataBufferByte dataBuffer = (DataBufferByte) raster.getDataBuffer();
+      DataBufferByte targetDataBuffer = (DataBufferByte) targetRaster.getDataBuffer();
+      int stride = sampleModel.getScanlineStride();
+      int base = dataBuffer.getOffset() + getBaseY(raster) * stride + getBaseX(raster) * numBands;
+      int targetStride = targetSampleModel.getScanlineStride();
+      int targetBase = targetDataBuffer.getOffset() + getBaseY(targetRaster) * targetStride + getBaseX(targetRaster) * numBands;
+
+      Contributions xContribs = getContributions(raster.getWidth(), targetRaster.getWidth());
+      Contributions yContribs = getContributions(raster.getHeight(), targetRaster.getHeight());
+      resample(dataBuffer.getData(), base, stride, numBands, targetDataBuffer.getData(), targetBase, targetStride, xContribs, yContribs);
+
+      return true;
+    }
+
+    return false;
+  }
+
+  /**
+   * 每個 sample 一個 byte 的資料。
+   * <p>
+   * 水平方向處理過的來源列保留在環狀緩衝中，每列只處理一次，垂直方向逐列累加，只需保留濾波器長度的列。
+   */
+  private static void resample(byte[] src, int srcBase, int srcStride, int numBands, byte[] dst, int dstBase, int dstStride, Contributions xContribs, Contributions yContribs) {
+    int rowLength = xContribs.starts.length * numBands;
+    int ringSize = yContribs.maxLength;
+    float[][] ring = new float[ringSize][rowLength];
+    float[] row = new float[rowLength];
+
+    int nextSrcY = 0;
+    for (int y = 0; y < yContribs.starts.length; y++) {
+      int start = yContribs.starts[y];
+      int end = start + yContribs.lengths[y];
+      for (int srcY = Math.max(nextSrcY, start); srcY < end; srcY++) {
+        filterRow(src, srcBase + srcY * srcStride, numBands, xContribs, ring[srcY % ringSize]);
+      }
+      nextSrcY = Math.max(nextSrcY, end);
+
+      accumulateRows(ring, yContribs, y, row);
+
+      int dstIndex = dstBase + y * dstStride;
+      for (int i = 0; i < rowLength; i++) {
+        dst[dstIndex + i] = (byte) toSample(row[i]);
+      }
+    }
+  }
+
+  /**
+   * 每個像素一個 int、每個 sample 8 bit 的資料。
+   */
+  private static void resample(int[] src, int srcBase, int srcStride, int[] bitOffsets, int[] dst, int dstBase, int dstStride, Contributions xContribs, Contributions yContribs) {
+    int dstWidth = xContribs.starts.length;
+    int numBands = bitOffsets.length;
+    int rowLength = dstWidth * numBands;
+    int ringSize = yContribs.maxLength;
+    float[][] ring = new float[ringSize][rowLength];
+    float[] row = new float[rowLength];
+
+    int nextSrcY = 0;
+    for (int y = 0; y < yContribs.starts.length; y++) {
+      int start = yContribs.starts[y];
+      int end = start + yContribs.lengths[y];
+      for (int srcY = Math.max(nextSrcY, start); srcY < end; srcY++) {
+        filterRow(src, srcBase + srcY * srcStride, bitOffsets, xContribs, ring[srcY % ringSize]);
+      }
+      nextSrcY = Math.max(nextSrcY, end);
+
+      accumulateRows(ring, yContribs, y, row);
+
+      int dstIndex = dstBase + y * dstStride;
+      for (int x = 0, i = 0; x < dstWidth; x++) {
+        int pixel = 0;
+        for (int b = 0; b < numBands; b++, i++) {
+          pixel |= toSample(row[i]) << bitOffsets[b];
+        }
+        dst[dstIndex + x] = pixel;
+      }
+    }
+  }
+
+  private static void filterRow(byte[] src, int srcIndex, int numBands, Contributions xContribs, float[] ringRow) {
+    float[] weights = xContribs.weights;
+    for (int x = 0, i = 0; x < xContribs.starts.length; x++) {
+      int start = srcIndex + xContribs.starts[x] * numBands;
+      int length = xContribs.lengths[x];
+      int weightOffset = x * xContribs.maxLength;
+      for (int b = 0; b < numBands; b++, i++) {
+        float value = 0;
+        int index = start + b;
+        for (int k = 0; k < length; k++, index += numBands) {
+          value += (src[index] & 0xFF) * weights[weightOffset + k];
+        }
+        ringRow[i] = value;
+      }
+    }
+  }
+
+  private static void filterRow(int[] src, int srcIndex, int[] bitOffsets, Contributions xContribs, float[] ringRow) {
+    float[] weights = xContribs.weights;
+    int numBands = bitOffsets.length;
+    // 一次取出像素後同時累加所有 sample，最多 4 個
+    int shift0 = bitOffsets[0];
+    int shift1 = numBands > 1 ? bitOffsets[1] : 0;
+    int shift2 = numBands > 2 ? bitOffsets[2] : 0;
+    int shift3 = numBands > 3 ? bitOffsets[3] : 0;
+    for (int x = 0, i = 0; x < xContribs.starts.length; x++) {
+      int index = srcIndex + xContribs.starts[x];
+      int length = xContribs.lengths[x];
+      int weightOffset = x * xContribs.maxLength;
+      float value0 = 0;
+      float value1 = 0;
+      float value2 = 0;
+      float value3 = 0;
+      for (int k = 0; k < length; k++) {
+        int pixel = src[index + k];
+        float weight = weights[weightOffset + k];
+        value0 += ((pixel >>> shift0) & 0xFF) * weight;
+        value1 += ((pixel >>> shift1) & 0xFF) * weight;
+        value2 += ((pixel >>> shift2) & 0xFF) * weight;
+        value3 += ((pixel >>> shift3) & 0xFF) * weight;
+      }
+
+      ringRow[i++] = value0;
+      if (numBands > 1) {
+        ringRow[i++] = value1;
+      }
+      if (numBands > 2) {
+        ringRow[i++] = value2;
+      }
+      if (numBands > 3) {
+        ringRow[i++] = value3;
+      }
+    }
+  }
+
+  private static void accumulateRows(float[][] ring, Contributions yContribs, int y, float[] row) {
+    int start = yContribs.starts[y];
+    int length = yContribs.lengths[y];
+    int weightOffset = y * yContribs.maxLength;
+
+    Arrays.fill(row, 0);
+    for (int k = 0; k < length; k++) {
+      float weight = yContribs.weights[weightOffset + k];
+      float[] ringRow = ring[(start + k) % ring.length];
+      for (int i = 0; i < row.length; i++) {
+        row[i] += ringRow[i] * weight;
+      }
+    }
+  }
+
+  private static int toSample(float value) {
+    return Math.min(255, Math.max(0, Math.round(value)));
+  }
+
+  /**
+   * 每個 sample 為 8 bit 的 TYPE_INT_RGB、TYPE_INT_ARGB 等。
+   */
+  private static boolean isIntPacked(Raster raster) {
+    if (!(raster.getSampleModel() instanceof SinglePixelPackedSampleModel)
+      || !(raster.getDataBuffer() instanceof DataBufferInt)
+      || raster.getDataBuffer().getNumBanks() != 1) {
+      return false;
+    }
+
+    SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) raster.getSampleModel();
+    int[] bitMasks = sampleModel.getBitMasks();
+    int[] bitOffsets = sampleModel.getBitOffsets();
+    if (bitMasks.length > 4) {
+      return false;
+    }
+    for (int i = 0; i < bitMasks.length; i++) {
+      if (bitMasks[i] != 0xFF << bitOffsets[i]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * 所有 byte 都是 sample 的 TYPE_BYTE_GRAY、TYPE_3BYTE_BGR、TYPE_4BYTE_ABGR 等。
+   */
+  private static boolean isByteInterleaved(Raster raster) {
+    if (!(raster.getSampleModel() instanceof PixelInterleavedSampleModel)
+      || !(raster.getDataBuffer() instanceof DataBufferByte)
+      || raster.getDataBuffer().getNumBanks() != 1) {
+      return false;
+    }
+
+    PixelInterleavedSampleModel sampleModel = (PixelInterleavedSampleModel) raster.getSampleModel();
+    if (sampleModel.getPixelStride() != sampleModel.getNumBands()) {
+      return false;
+    }
+
+    int[] bandOffsets = sampleModel.getBandOffsets();
+    for (int i = 0; i < bandOffsets.length; i++) {
+      if (bandOffsets[i] < 0 || bandOffsets[i] >= bandOffsets.length) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private static int getBaseX(Raster raster) {
+    return raster.getMinX() - raster.getSampleModelTranslateX();
+  }
+
+  private static int getBaseY(Raster raster) {
+    return raster.getMinY() - raster.getSampleModelTranslateY();
+  }
+
+  private static double getCenter(int dst, double scale) {
+    return (dst + 0.5) * scale - 0.5;
+  }
+
+  private static int clamp(int index, int size) {
+    return Math.min(size - 1, Math.max(0, index));
+  }
+
+  private static double lanczos(double x) {
+    if (x == 0) {
+      return 1;
+    } else if (x <= -RADIUS || x >= RADIUS) {
+      return 0;
+    }
+
+    double px = Math.PI * x;
+
+    return RADIUS * Math.sin(px) * Math.sin(px / RADIUS) / (px * px);
+  }
+}
@@ -0,0 +1,1155 @@
+package idv.jackblackevo.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.awt.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 在 DCT 係數上以 90 度為單位旋轉 baseline JPEG（與 jpegtran 相同做法），不需解碼成像素也不會重新壓縮失真。
+ * <p>
+ * 只支援單一 scan 的 baseline／extended Huffman 8 位元 JPEG，旋轉後被移到左側或上方的邊緣必須對齊 MCU，
+ * 否則回傳 null 交由一般流程處理。
+ */
+class LosslessJPEGTransformer {
+  /**
+   * ZIGZAG[i] 為第 i 個 zigzag 係數在 8x8 區塊中的位置
+   */
+  private static final int[] ZIGZAG = {
+    0, 1, 8, 16, 9, 2, 3, 10,
+    17, 24, 32, 25, 18, 11, 4, 5,
+    12, 19, 26, 33, 40, 48, 41, 34,
+    27, 20, 13, 6, 7, 14, 21, 28,
+    35, 42, 49, 56, 57, 50, 43, 36,
+    29, 22, 15, 23, 30, 37, 44, 51,
+    58, 59, 52, 45, 38, 31, 39, 46,
+    53, 60, 61, 54, 47, 55, 62, 63
+  };
+
+  private static final int SOF0 = 0xC0;
+  private static final int SOF1 = 0xC1;
+  private static final int DHT = 0xC4;
+  private static final int RST0 = 0xD0;
+  private static final int SOI = 0xD8;
+  private static final int EOI = 0xD9;
+  private static final int SOS = 0xDA;
+  private static final int DQT = 0xDB;
+  private static final int DRI = 0xDD;
+  private static final int APP0 = 0xE0;
+  private static final int APP15 = 0xEF;
+  private static final int COM = 0xFE;
+
+  private static class Component {
+    private int id;
+    private int h;
+    private int v;
+    private int quantTableId;
+    private int dcTableId;
+    private int acTableId;
+    private int blocksPerRow;
+    private int blocksPerColumn;
+    private short[] coefficients;
+  }
+
+  private static class HuffmanTable {
+    private int[] bits = new int[17];
+    private int[] values;
+
+    private int[] maxCode = new int[18];
+    private int[] valueOffset = new int[17];
+    private int[] lookupLength = new int[1 << LOOKAHEAD_BITS];
+    private int[] lookupValue = new int[1 << LOOKAHEAD_BITS];
+
+    private int[] codes = new int[256];
+    private int[] codeLengths = new int[256];
+
+    private static final int LOOKAHEAD_BITS = 9;
+
+    private HuffmanTable(int[] bits, int[] values) {
+      this.bits = bits;
+      this.values = values;
+
+      // JPEG 規格 Annex C 產生標準 Huffman 碼
+      int code = 0;
+      int k = 0;
+      Arrays.fill(lookupLength, 0);
+      for (int length = 1; length <= 16; length++) {
+        valueOffset[length] = k - code;
+        for (int i = 0; i < bits[length]; i++) {
+          int value = values[k];
+          codes[value] = code;
+          codeLengths[value] = length;
+
+          if (length <= LOOKAHEAD_BITS) {
+            int shift = LOOKAHEAD_BITS - length;
+            int start = code << shift;
+            for (int j = 0; j < (1 << shift); j++) {
+              lookupLength[start + j] = length;
+              lookupValue[start + j] = value;
+            }
+          }
+
+          k++;
+          code++;
+        }
+        maxCode[length] = bits[length] > 0 ? code - 1 : -1;
+        code <<= 1;
+      }
+      maxCode[17] = Integer.MAX_VALUE;
+    }
+  }
+
+  private static class BitReader {
+    private ByteBuffer data;
+    private int position;
+    private long bitBuffer;
+    private int bitCount;
+    private boolean isMarkerReached;
+
+    private BitReader(ByteBuffer data, int position) {
+      this.data = data;
+      this.position = position;
+    }
+
+    private void fill() {
+      while (bitCount <= 56) {
+        int b = 0;
+        if (!isMarkerReached && position < data.limit()) {
+          b = data.get(position) & 0xFF;
+          if (b == 0xFF) {
+            int next = position + 1 < data.limit() ? data.get(position + 1) & 0xFF : EOI;
+            if (next == 0) {
+              position += 2;
+            } else {
+              // 遇到標記時停在 0xFF 上，之後補 0
+              isMarkerReached = true;
+              b = 0;
+            }
+          } else {
+            position++;
+          }
+        }
+
+        bitBuffer |= ((long) b) << (56 - bitCount);
+        bitCount += 8;
+      }
+    }
+
+    private int peek(int n) {
+      if (bitCount < n) {
+        fill();
+      }
+
+      return (int) (bitBuffer >>> (64 - n));
+    }
+
+    private void skip(int n) {
+      bitBuffer <<= n;
+      bitCount -= n;
+    }
+
+    private int read(int n) {
+      if (n == 0) {
+        return 0;
+      }
+
+      int value = peek(n);
+      skip(n);
+
+      return value;
+    }
+
+    private int decode(HuffmanTable table) throws IOException {
+      int lookahead = peek(16);
+      int index = lookahead >>> (16 - HuffmanTable.LOOKAHEAD_BITS);
+      int length = table.lookupLength[index];
+      if (length > 0) {
+        skip(length);
+
+        return table.lookupValue[index];
+      }
+
+      for (length = HuffmanTable.LOOKAHEAD_BITS + 1; length <= 16; length++) {
+        int code = lookahead >>> (16 - length);
+        if (code <= table.maxCode[length]) {
+          skip(length);
+
+          return table.values[table.valueOffset[length] + code];
+        }
+      }
+
+      throw new IOException("Corrupt JPEG Huffman code!");
+    }
+
+    private void restart() throws IOException {
+      bitBuffer = 0;
+      bitCount = 0;
+      isMarkerReached = false;
+
+      if (position + 1 >= data.limit() || (data.get(position) & 0xFF) != 0xFF
+        || ((data.get(position + 1) & 0xFF) & 0xF8) != RST0) {
+        throw new IOException("Missing JPEG restart marker!");
+      }
+      position += 2;
+    }
+  }
+
+  private static class BitWriter {
+    private ByteArrayOutputStream out;
+    private long bitBuffer;
+    private int bitCount;
+
+    private BitWriter(ByteArrayOutputStream out) {
+      this.out = out;
+    }
+
+    private void write(int code, int length) {
+      if (length == 0) {
+        return;
+      }
+
+      bitBuffer = (bitBuffer << length) | (code & ((1L << length) - 1));
+      bitCount += length;
+      while (bitCount >= 8) {
+        int b = (int) (bitBuffer >>> (bitCount - 8)) & 0xFF;
+        out.write(b);
+        if (b == 0xFF) {
+          out.write(0);
+        }
+        bitCount -= 8;
+      }
+    }
+
+    private void flush() {
+      if (bitCount > 0) {
+        write(0x7F, 8 - bitCount);
+      }
+    }
+  }
+
+  private ByteBuffer data;
+  private List<byte[]> segmentList = new ArrayList<>();
+  private int frameMarker;
+  private int width;
+  private int height;
+  private Component[] components;
+  private Component[] scanComponents;
+  private int[][] quantTables = new int[4][];
+  private int[] quantPrecisions = new int[4];
+  private HuffmanTable[] dcTables = new HuffmanTable[4];
+  private HuffmanTable[] acTables = new HuffmanTable[4];
+  private int restartInterval;
+  private int scanDataOffset;
+  private boolean isSupported = true;
+
+  private LosslessJPEGTransformer(ByteBuffer data) {
+    this.data = data;
+  }
+
+  /**
+   * 只讀取 JPEG 標頭取得圖片尺寸，不會關閉串流。
+   *
+   * @param is 圖片
+   * @return 圖片尺寸，非 JPEG 時為 null
+   * @throws IOException
+   */
+  public static Dimension readDimension(InputStream is) throws IOException {
+    DataInputStream dis = new DataInputStream(is);
+    try {
+      if (dis.readUnsignedByte() != 0xFF || dis.readUnsignedByte() != SOI) {
+        return null;
+      }
+
+      while (true) {
+        int marker = readMarker(dis);
+        if (marker == SOS || marker == EOI) {
+          return null;
+        }
+
+        int length = dis.readUnsignedShort();
+        if (isFrameMarker(marker)) {
+          dis.readUnsignedByte();
+          int frameHeight = dis.readUnsignedShort();
+          int frameWidth = dis.readUnsignedShort();
+
+          return new Dimension(frameWidth, frameHeight);
+        }
+
+        skipFully(dis, length - 2);
+      }
+    } catch (EOFException e) {
+      return null;
+    }
+  }
+
+  /**
+   * 以 90 度為單位順時針旋轉 JPEG。
+   *
+   * @param jpegBytes JPEG 資料
+   * @param quadrants 旋轉次數，每次 90 度
+   * @return 旋轉後之 JPEG 資料，不支援此 JPEG 時為 null
+   * @throws IOException
+   */
+  public static byte[] rotate(byte[] jpegBytes, int quadrants) throws IOException {
+    quadrants = ((quadrants % 4) + 4) % 4;
+
+    LosslessJPEGTransformer transformer = new LosslessJPEGTransformer(ByteBuffer.wrap(jpegBytes));
+    if (!transformer.parse() || !transformer.isAligned(quadrants)) {
+      return null;
+    }
+
+    if (quadrants == 0) {
+      return jpegBytes;
+    }
+
+    return transformer.transform(quadrants);
+  }
+
+  /**
+   * 以 90 度為單位順時針旋轉 JPEG 檔案，檔案對應至記憶體讀取，不會整個讀入 heap。
+   *
+   * @param jpegFile  JPEG 檔案
+   * @param quadrants 旋轉次數，每次 90 度
+   * @return 旋轉後之 JPEG 資料，不支援此 JPEG 時為 null
+   * @throws IOException
+   */
+  public static byte[] rotate(File jpegFile, int quadrants) throws IOException {
+    quadrants = ((quadrants % 4) + 4) % 4;
+
+    MappedByteBuffer buffer;
+    try (
+      FileChannel channel = new RandomAccessFile(jpegFile, "r").getChannel()
+    ) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        return null;
+      }
+
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    try {
+      LosslessJPEGTransformer transformer = new LosslessJPEGTransformer(buffer);
+      if (!transformer.parse() || !transformer.isAligned(quadrants)) {
+        return null;
+      }
+
+      if (quadrants == 0) {
+        byte[] jpegBytes = new byte[buffer.limit()];
+        buffer.duplicate().get(jpegBytes);
+
+        return jpegBytes;
+      }
+
+      return transformer.transform(quadrants);
+    } finally {
+      DirectBuffers.free(buffer);
+    }
+  }
+
+  private byte[] transform(int quadrants) throws IOException {
+    decodeCoefficients();
+
+    return encode(quadrants);
+  }
+
+  private boolean parse() throws IOException {
+    if (data.limit() < 4 || (data.get(0) & 0xFF) != 0xFF || (data.get(1) & 0xFF) != SOI) {
+      return false;
+    }
+
+    int position = 2;
+    while (position + 4 <= data.limit()) {
+      if ((data.get(position) & 0xFF) != 0xFF) {
+        return false;
+      }
+
+      int marker = data.get(position + 1) & 0xFF;
+      if (marker == 0xFF) {
+        position++;
+        continue;
+      }
+
+      int length = readUnsignedShort(position + 2);
+      int segmentStart = position + 4;
+      int segmentEnd = position + 2 + length;
+      if (length < 2 || segmentEnd > data.limit()) {
+        return false;
+      }
+
+      if ((marker >= APP0 && marker <= APP15) || marker == COM) {
+        byte[] segment = new byte[segmentEnd - position];
+        ((ByteBuffer) data.duplicate().position(position)).get(segment);
+        segmentList.add(segment);
+      } else if (marker == DQT) {
+        parseQuantTables(segmentStart, segmentEnd);
+      } else if (marker == DHT) {
+        parseHuffmanTables(segmentStart, segmentEnd);
+      } else if (marker == DRI) {
+        restartInterval = readUnsignedShort(segmentStart);
+      } else if (marker == SOF0 || marker == SOF1) {
+        parseFrame(marker, segmentStart);
+      } else if (isFrameMarker(marker)) {
+        // 漸進式、無損或算術編碼
+        return false;
+      } else if (marker == SOS) {
+        if (components == null) {
+          return false;
+        }
+
+        parseScan(segmentStart);
+        scanDataOffset = segmentEnd;
+
+        return isSupported;
+      } else {
+        return false;
+      }
+
+      position = segmentEnd;
+    }
+
+    return false;
+  }
+
+  private void parseQuantTables(int position, int end) {
+    while (position < end) {
+      int precision = (data.get(position) & 0xFF) >> 4;
+      int id = data.get(position) & 0x0F;
+      position++;
+
+      if (id > 3) {
+        isSupported = false;
+        return;
+      }
+
+      int[] table = new int[64];
+      for (int i = 0; i < 64; i++) {
+        if (precision == 0) {
+          table[ZIGZAG[i]] = data.get(position) & 0xFF;
+          position++;
+        } else {
+          table[ZIGZAG[i]] = readUnsignedShort(position);
+          position += 2;
+        }
+      }
+
+      quantTables[id] = table;
+      quantPrecisions[id] = precision;
+    }
+  }
+
+  private void parseHuffmanTables(int position, int end) {
+    while (position < end) {
+      int tableClass = (data.get(position) & 0xFF) >> 4;
+      int id = data.get(position) & 0x0F;
+      position++;
+
+      int[] bits = new int[17];
+      int numValues = 0;
+      for (int i = 1; i <= 16; i++) {
+        bits[i] = data.get(position) & 0xFF;
+        numValues += bits[i];
+        position++;
+      }
+
+      int[] values = new int[numValues];
+      for (int i = 0; i < numValues; i++) {
+        values[i] = data.get(position) & 0xFF;
+        position++;
+      }
+
+      if (id > 3 || tableClass > 1) {
+        isSupported = false;
+        return;
+      }
+
+      if (tableClass == 0) {
+        dcTables[id] = new HuffmanTable(bits, values);
+      } else {
+        acTables[id] = new HuffmanTable(bits, values);
+      }
+    }
+  }
+
+  private void parseFrame(int marker, int position) {
+    frameMarker = marker;
+
+    int precision = data.get(position) & 0xFF;
+    height = readUnsignedShort(position + 1);
+    width = readUnsignedShort(position + 3);
+    int numComponents = data.get(position + 5) & 0xFF;
+    position += 6;
+
+    if (precision != 8 || width == 0 || height == 0 || numComponents == 0) {
+      isSupported = false;
+      return;
+    }
+
+    components = new Component[numComponents];
+    for (int i = 0; i < numComponents; i++) {
+      Component component = new Component();
+      component.id = data.get(position) & 0xFF;
+      component.h = (data.get(position + 1) & 0xFF) >> 4;
+      component.v = data.get(position + 1) & 0x0F;
+      component.quantTableId = data.get(position + 2) & 0xFF;
+      position += 3;
+
+      if (component.h < 1 || component.h > 4 || component.v < 1 || component.v > 4 || component.quantTableId > 3) {
+        isSupported = false;
+        return;
+      }
+
+      components[i] = component;
+    }
+  }
+
+  private void parseScan(int position) {
+    int numScanComponents = data.get(position) & 0xFF;
+    position++;
+
+    // 只支援包含所有色彩成分的單一 scan
+    if (numScanComponents != components.length) {
+      isSupported = false;
+      return;
+    }
+
+    scanComponents = new Component[numScanComponents];
+    for (int i = 0; i < numScanComponents; i++) {
+      int id = data.get(position) & 0xFF;
+      int tables = data.get(position + 1) & 0xFF;
+      position += 2;
+
+      Component component = null;
+      for (int j = 0; j < components.length; j++) {
+        if (components[j].id == id) {
+          component = components[j];
+        }
+      }
+
+      if (component == null) {
+        isSupported = false;
+        return;
+      }
+
+      component.dcTableId = tables >> 4;
+      component.acTableId = tables & 0x0F;
+      if (component.dcTableId > 3 || component.acTableId > 3
+        || dcTables[component.dcTableId] == null || acTables[component.acTableId] == null
+        || quantTables[component.quantTableId] == null) {
+        isSupported = false;
+        return;
+      }
+
+      scanComponents[i] = component;
+    }
+
+    int spectralStart = data.get(position) & 0xFF;
+    int spectralEnd = data.get(position + 1) & 0xFF;
+    int approximation = data.get(position + 2) & 0xFF;
+    if (spectralStart != 0 || spectralEnd != 63 || approximation != 0) {
+      isSupported = false;
+    }
+  }
+
+  private boolean isAligned(int quadrants) {
+    int mcuWidth = 8 * getMaxH(components);
+    int mcuHeight = 8 * getMaxV(components);
+
+    // 旋轉後會移到左側或上方的邊緣必須是完整的 MCU
+    switch (quadrants) {
+      case 1:
+        return height % mcuHeight == 0;
+      case 2:
+        return width % mcuWidth == 0 && height % mcuHeight == 0;
+      case 3:
+        return width % mcuWidth == 0;
+      default:
+        return true;
+    }
+  }
+
+  private void decodeCoefficients() throws IOException {
+    int maxH = getMaxH(components);
+    int maxV = getMaxV(components);
+    int mcusPerRow = ceilDiv(width, 8 * maxH);
+    int mcusPerColumn = ceilDiv(height, 8 * maxV);
+
+    for (int i = 0; i < components.length; i++) {
+      Component component = components[i];
+      component.blocksPerRow = mcusPerRow * component.h;
+      component.blocksPerColumn = mcusPerColumn * component.v;
+      component.coefficients = new short[component.blocksPerRow * component.blocksPerColumn * 64];
+    }
+
+    BitReader reader = new BitReader(data, scanDataOffset);
+    int[] predictors = new int[scanComponents.length];
+
+    if (scanComponents.length == 1) {
+      // 單一色彩成分時不交錯，依實際區塊數逐一讀取
+      Component component = scanComponents[0];
+      int blocksPerRow = ceilDiv(ceilDiv(width * component.h, maxH), 8);
+      int blocksPerColumn = ceilDiv(ceilDiv(height * component.v, maxV), 8);
+
+      int numUnits = 0;
+      for (int blockY = 0; blockY < blocksPerColumn; blockY++) {
+        for (int blockX = 0; blockX < blocksPerRow; blockX++) {
+          if (restartInterval > 0 && numUnits > 0 && numUnits % restartInterval == 0) {
+            reader.restart();
+            predictors[0] = 0;
+          }
+
+          predictors[0] = decodeBlock(reader, component, blockX, blockY, predictors[0]);
+          numUnits++;
+        }
+      }
+
+      return;
+    }
+
+    int numUnits = 0;
+    for (int mcuY = 0; mcuY < mcusPerColumn; mcuY++) {
+      for (int mcuX = 0; mcuX < mcusPerRow; mcuX++) {
+        if (restartInterval > 0 && numUnits > 0 && numUnits % restartInterval == 0) {
+          reader.restart();
+          Arrays.fill(predictors, 0);
+        }
+
+        for (int i = 0; i < scanComponents.length; i++) {
+          Component component = scanComponents[i];
+          for (int v = 0; v < component.v; v++) {
+            for (int h = 0; h < component.h; h++) {
+              predictors[i] = decodeBlock(reader, component, mcuX * component.h + h, mcuY * component.v + v, predictors[i]);
+            }
+          }
+        }
+        numUnits++;
+      }
+    }
+  }
+
+  private int decodeBlock(BitReader reader, Component component, int blockX, int blockY, int predictor) throws IOException {
+    short[] coefficients = component.coefficients;
+    int offset = (blockY * component.blocksPerRow + blockX) * 64;
+
+    int size = reader.decode(dcTables[component.dcTableId]);
+    predictor += extend(reader.read(size), size);
+    coefficients[offset] = (short) predictor;
+
+    HuffmanTable acTable = acTables[component.acTableId];
+    for (int k = 1; k < 64; k++) {
+      int runSize = reader.decode(acTable);
+      int run = runSize >> 4;
+      size = runSize & 0x0F;
+      if (size == 0) {
+        if (run != 15) {
+          break;
+        }
+
+        k += 15;
+        continue;
+      }
+
+      k += run;
+      if (k > 63) {
+        throw new IOException("Corrupt JPEG coefficient data!");
+      }
+      coefficients[offset + ZIGZAG[k]] = (short) extend(reader.read(size), size);
+    }
+
+    return predictor;
+  }
+
+  private byte[] encode(int quadrants) throws IOException {
+    boolean isTransposed = quadrants % 2 == 1;
+
+    Component[] targetComponents = new Component[components.length];
+    for (int i = 0; i < components.length; i++) {
+      Component component = components[i];
+      Component targetComponent = new Component();
+      targetComponent.id = component.id;
+      targetComponent.h = isTransposed ? component.v : component.h;
+      targetComponent.v = isTransposed ? component.h : component.v;
+      targetComponent.quantTableId = component.quantTableId;
+      targetComponent.dcTableId = component.dcTableId;
+      targetComponent.acTableId = component.acTableId;
+      targetComponents[i] = targetComponent;
+    }
+
+    int targetWidth = isTransposed ? height : width;
+    int targetHeight = isTransposed ? width : height;
+    int maxH = getMaxH(components);
+    int maxV = getMaxV(components);
+    int targetMaxH = getMaxH(targetComponents);
+    int targetMaxV = getMaxV(targetComponents);
+    int targetMcusPerRow = ceilDiv(targetWidth, 8 * targetMaxH);
+    int targetMcusPerColumn = ceilDiv(targetHeight, 8 * targetMaxV);
+
+    for (int i = 0; i < components.length; i++) {
+      Component component = components[i];
+      Component targetComponent = targetComponents[i];
+      targetComponent.blocksPerRow = targetMcusPerRow * targetComponent.h;
+      targetComponent.blocksPerColumn = targetMcusPerColumn * targetComponent.v;
+      targetComponent.coefficients = new short[targetComponent.blocksPerRow * targetComponent.blocksPerColumn * 64];
+
+      // 原圖中有效的區塊數（已確認需要對齊的邊為完整 MCU）
+      int blocksPerRow = width * component.h / (8 * maxH);
+      int blocksPerColumn = height * component.v / (8 * maxV);
+      transformBlocks(component, targetComponent, blocksPerRow, blocksPerColumn, quadrants);
+      component.coefficients = null;
+    }
+
+    Component[] targetScanComponents = new Component[scanComponents.length];
+    for (int i = 0; i < scanComponents.length; i++) {
+      for (int j = 0; j < components.length; j++) {
+        if (components[j] == scanComponents[i]) {
+          targetScanComponents[i] = targetComponents[j];
+        }
+      }
+    }
+
+    // 第一次統計符號出現次數以產生最佳 Huffman 表，第二次實際編碼
+    int[][] dcFrequencies = new int[4][257];
+    int[][] acFrequencies = new int[4][257];
+    encodeScan(targetScanComponents, targetWidth, targetHeight, null, dcFrequencies, acFrequencies, null, null);
+
+    HuffmanTable[] targetDCTables = new HuffmanTable[4];
+    HuffmanTable[] targetACTables = new HuffmanTable[4];
+    for (int i = 0; i < targetScanComponents.length; i++) {
+      Component component = targetScanComponents[i];
+      if (targetDCTables[component.dcTableId] == null) {
+        targetDCTables[component.dcTableId] = createOptimalTable(dcFrequencies[component.dcTableId]);
+      }
+      if (targetACTables[component.acTableId] == null) {
+        targetACTables[component.acTableId] = createOptimalTable(acFrequencies[component.acTableId]);
+      }
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream(data.limit() + 1024);
+    out.write(0xFF);
+    out.write(SOI);
+
+    Iterator<byte[]> segmentIterator = segmentList.iterator();
+    while (segmentIterator.hasNext()) {
+      out.write(segmentIterator.next());
+    }
+
+    writeQuantTables(out, isTransposed);
+    writeFrame(out, targetComponents, targetWidth, targetHeight);
+    writeHuffmanTables(out, 0, targetDCTables);
+    writeHuffmanTables(out, 1, targetACTables);
+    writeScanHeader(out, targetScanComponents);
+
+    BitWriter writer = new BitWriter(out);
+    encodeScan(targetScanComponents, targetWidth, targetHeight, writer, null, null, targetDCTables, targetACTables);
+    writer.flush();
+
+    out.write(0xFF);
+    out.write(EOI);
+
+    return out.toByteArray();
+  }
+
+  private static void transformBlocks(Component component, Component targetComponent, int blocksPerRow, int blocksPerColumn, int quadrants) {
+    short[] coefficients = component.coefficients;
+    short[] targetCoefficients = targetComponent.coefficients;
+
+    // 預先算出目標區塊每個係數對應的來源係數與正負號
+    // k 為垂直頻率、l 為水平頻率；轉置後再依鏡射方向將奇數頻率變號
+    int[] sourceIndexes = new int[64];
+    boolean[] isNegated = new boolean[64];
+    for (int k = 0; k < 8; k++) {
+      for (int l = 0; l < 8; l++) {
+        int index = k * 8 + l;
+        if (quadrants == 1) {
+          sourceIndexes[index] = l * 8 + k;
+          isNegated[index] = (l & 1) == 1;
+        } else if (quadrants == 2) {
+          sourceIndexes[index] = index;
+          isNegated[index] = ((k + l) & 1) == 1;
+        } else {
+          sourceIndexes[index] = l * 8 + k;
+          isNegated[index] = (k & 1) == 1;
+        }
+      }
+    }
+
+    for (int targetY = 0; targetY < targetComponent.blocksPerColumn; targetY++) {
+      for (int targetX = 0; targetX < targetComponent.blocksPerRow; targetX++) {
+        int sourceX;
+        int sourceY;
+        if (quadrants == 1) {
+          sourceX = targetY;
+          sourceY = blocksPerColumn - 1 - targetX;
+        } else if (quadrants == 2) {
+          sourceX = blocksPerRow - 1 - targetX;
+          sourceY = blocksPerColumn - 1 - targetY;
+        } else {
+          sourceX = blocksPerRow - 1 - targetY;
+          sourceY = targetX;
+        }
+
+        // 超出原圖的區塊只是補齊 MCU 用的邊緣，保持全 0
+        if (sourceX < 0 || sourceY < 0 || sourceX >= component.blocksPerRow || sourceY >= component.blocksPerColumn) {
+          continue;
+        }
+
+        int offset = (sourceY * component.blocksPerRow + sourceX) * 64;
+        int targetOffset = (targetY * targetComponent.blocksPerRow + targetX) * 64;
+        for (int i = 0; i < 64; i++) {
+          short coefficient = coefficients[offset + sourceIndexes[i]];
+          targetCoefficients[targetOffset + i] = isNegated[i] ? (short) -coefficient : coefficient;
+        }
+      }
+    }
+  }
+
+  private void encodeScan(Component[] scanComponents, int imageWidth, int imageHeight, BitWriter writer, int[][] dcFrequencies, int[][] acFrequencies, HuffmanTable[] dcTables, HuffmanTable[] acTables) {
+    int[] predictors = new int[scanComponents.length];
+
+    if (scanComponents.length == 1) {
+      Component component = scanComponents[0];
+      int blocksPerRow = ceilDiv(imageWidth, 8);
+      int blocksPerColumn = ceilDiv(imageHeight, 8);
+      for (int blockY = 0; blockY < blocksPerColumn; blockY++) {
+        for (int blockX = 0; blockX < blocksPerRow; blockX++) {
+          predictors[0] = encodeBlock(component, blockX, blockY, predictors[0], writer, dcFrequencies, acFrequencies, dcTables, acTables);
+        }
+      }
+
+      return;
+    }
+
+    int maxH = getMaxH(scanComponents);
+    int maxV = getMaxV(scanComponents);
+    int mcusPerRow = ceilDiv(imageWidth, 8 * maxH);
+    int mcusPerColumn = ceilDiv(imageHeight, 8 * maxV);
+    for (int mcuY = 0; mcuY < mcusPerColumn; mcuY++) {
+      for (int mcuX = 0; mcuX < mcusPerRow; mcuX++) {
+        for (int i = 0; i < scanComponents.length; i++) {
+          Component component = scanComponents[i];
+          for (int v = 0; v < component.v; v++) {
+            for (int h = 0; h < component.h; h++) {
+              predictors[i] = encodeBlock(component, mcuX * component.h + h, mcuY * component.v + v, predictors[i], writer, dcFrequencies, acFrequencies, dcTables, acTables);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private static int encodeBlock(Component component, int blockX, int blockY, int predictor, BitWriter writer, int[][] dcFrequencies, int[][] acFrequencies, HuffmanTable[] dcTables, HuffmanTable[] acTables) {
+    short[] coefficients = component.coefficients;
+    int offset = (blockY * component.blocksPerRow + blockX) * 64;
+
+    int dc = coefficients[offset];
+    int diff = dc - predictor;
+    int size = getBitLength(diff);
+    if (writer == null) {
+      dcFrequencies[component.dcTableId][size]++;
+    } else {
+      HuffmanTable dcTable = dcTables[component.dcTableId];
+      writer.write(dcTable.codes[size], dcTable.codeLengths[size]);
+      writer.write(diff < 0 ? diff - 1 : diff, size);
+    }
+
+    int[] acFrequency = writer == null ? acFrequencies[component.acTableId] : null;
+    HuffmanTable acTable = writer == null ? null : acTables[component.acTableId];
+    int run = 0;
+    for (int k = 1; k < 64; k++) {
+      int coefficient = coefficients[offset + ZIGZAG[k]];
+      if (coefficient == 0) {
+        run++;
+        continue;
+      }
+
+      while (run > 15) {
+        if (writer == null) {
+          acFrequency[0xF0]++;
+        } else {
+          writer.write(acTable.codes[0xF0], acTable.codeLengths[0xF0]);
+        }
+        run -= 16;
+      }
+
+      size = getBitLength(coefficient);
+      int runSize = (run << 4) | size;
+      if (writer == null) {
+        acFrequency[runSize]++;
+      } else {
+        writer.write(acTable.codes[runSize], acTable.codeLengths[runSize]);
+        writer.write(coefficient < 0 ? coefficient - 1 : coefficient, size);
+      }
+      run = 0;
+    }
+
+    if (run > 0) {
+      if (writer == null) {
+        acFrequency[0x00]++;
+      } else {
+        writer.write(acTable.codes[0x00], acTable.codeLengths[0x00]);
+      }
+    }
+
+    return dc;
+  }
+
+  /**
+   * 依 JPEG 規格 Annex K.2 產生最長 16 位元的最佳 Huffman 表。
+   */
+  private static HuffmanTable createOptimalTable(int[] symbolFrequencies) {
+    int[] frequencies = Arrays.copyOf(symbolFrequencies, 257);
+    int[] codeSizes = new int[257];
+    int[] others = new int[257];
+    Arrays.fill(others, -1);
+
+    // 保留一個不會使用的碼，避免出現全為 1 的碼
+    frequencies[256] = 1;
+
+    while (true) {
+      int c1 = -1;
+      long minFrequency = Long.MAX_VALUE;
+      for (int i = 0; i <= 256; i++) {
+        if (frequencies[i] > 0 && frequencies[i] <= minFrequency) {
+          minFrequency = frequencies[i];
+          c1 = i;
+        }
+      }
+
+      int c2 = -1;
+      minFrequency = Long.MAX_VALUE;
+      for (int i = 0; i <= 256; i++) {
+        if (frequencies[i] > 0 && frequencies[i] <= minFrequency && i != c1) {
+          minFrequency = frequencies[i];
+          c2 = i;
+        }
+      }
+
+      if (c2 < 0) {
+        break;
+      }
+
+      frequencies[c1] += frequencies[c2];
+      frequencies[c2] = 0;
+
+      codeSizes[c1]++;
+      while (others[c1] >= 0) {
+        c1 = others[c1];
+        codeSizes[c1]++;
+      }
+      others[c1] = c2;
+
+      codeSizes[c2]++;
+      while (others[c2] >= 0) {
+        c2 = others[c2];
+        codeSizes[c2]++;
+      }
+    }
+
+    int[] bitCounts = new int[258];
+    for (int i = 0; i <= 256; i++) {
+      if (codeSizes[i] > 0) {
+        bitCounts[codeSizes[i]]++;
+      }
+    }
+
+    // 將超過 16 位元的碼調整為 16 位元以內（Annex K.3）
+    for (int i = bitCounts.length - 1; i > 16; i--) {
+      while (bitCounts[i] > 0) {
+        int j = i - 2;
+        while (bitCounts[j] == 0) {
+          j--;
+        }
+
+        bitCounts[i] -= 2;
+        bitCounts[i - 1]++;
+        bitCounts[j + 1] += 2;
+        bitCounts[j]--;
+      }
+    }
+
+    int maxLength = 16;
+    while (bitCounts[maxLength] == 0) {
+      maxLength--;
+    }
+    bitCounts[maxLength]--;
+
+    int[] bits = new int[17];
+    int numValues = 0;
+    for (int i = 1; i <= 16; i++) {
+      bits[i] = bitCounts[i];
+      numValues += bits[i];
+    }
+
+    int[] values = new int[numValues];
+    int k = 0;
+    for (int size = 1; size < bitCounts.length && k < numValues; size++) {
+      for (int i = 0; i < 256; i++) {
+        if (codeSizes[i] == size) {
+          values[k] = i;
+          k++;
+        }
+      }
+    }
+
+    return new HuffmanTable(bits, values);
+  }
+
+  private void writeQuantTables(ByteArrayOutputStream out, boolean isTransposed) {
+    for (int id = 0; id < 4; id++) {
+      if (quantTables[id] == null) {
+        continue;
+      }
+
+      int[] table = quantTables[id];
+      int precision = quantPrecisions[id];
+      writeMarker(out, DQT, 1 + 64 * (precision == 0 ? 1 : 2));
+      out.write((precision << 4) | id);
+      for (int i = 0; i < 64; i++) {
+        int index = ZIGZAG[i];
+        if (isTransposed) {
+          index = (index % 8) * 8 + index / 8;
+        }
+
+        if (precision == 0) {
+          out.write(table[index]);
+        } else {
+          out.write(table[index] >> 8);
+          out.write(table[index] & 0xFF);
+        }
+      }
+    }
+  }
+
+  private void writeFrame(ByteArrayOutputStream out, Component[] targetComponents, int targetWidth, int targetHeight) {
+    writeMarker(out, frameMarker, 6 + 3 * targetComponents.length);
+    out.write(8);
+    out.write(targetHeight >> 8);
+    out.write(targetHeight & 0xFF);
+    out.write(targetWidth >> 8);
+    out.write(targetWidth & 0xFF);
+    out.write(targetComponents.length);
+    for (int i = 0; i < targetComponents.length; i++) {
+      Component component = targetComponents[i];
+      out.write(component.id);
+      out.write((component.h << 4) | component.v);
+      out.write(component.quantTableId);
+    }
+  }
+
+  private static void writeHuffmanTables(ByteArrayOutputStream out, int tableClass, HuffmanTable[] tables) {
+    for (int id = 0; id < tables.length; id++) {
+      HuffmanTable table = tables[id];
+      if (table == null) {
+        continue;
+      }
+
+      writeMarker(out, DHT, 1 + 16 + table.values.length);
+      out.write((tableClass << 4) | id);
+      for (int i = 1; i <= 16; i++) {
+        out.write(table.bits[i]);
+      }
+      for (int i = 0; i < table.values.length; i++) {
+        out.write(table.values[i]);
+      }
+    }
+  }
+
+  private static void writeScanHeader(ByteArrayOutputStream out, Component[] targetScanComponents) {
+    writeMarker(out, SOS, 4 + 2 * targetScanComponents.length);
+    out.write(targetScanComponents.length);
+    for (int i = 0; i < targetScanComponents.length; i++) {
+      Component component = targetScanComponents[i];
+      out.write(component.id);
+      out.write((component.dcTableId << 4) | component.acTableId);
+    }
+    out.write(0);
+    out.write(63);
+    out.write(0);
+  }
+
+  private static void writeMarker(ByteArrayOutputStream out, int marker, int payloadLength) {
+    int length = payloadLength + 2;
+    out.write(0xFF);
+    out.write(marker);
+    out.write(length >> 8);
+    out.write(length & 0xFF);
+  }
+
+  private int readUnsignedShort(int position) {
+    return ((data.get(position) & 0xFF) << 8) | (data.get(position + 1) & 0xFF);
+  }
+
+  private static int readMarker(DataInputStream dis) throws IOException {
+    int b = dis.readUnsignedByte();
+    if (b != 0xFF) {
+      throw new EOFException();
+    }
+
+    int marker = dis.readUnsignedByte();
+    while (marker == 0xFF) {
+      marker = dis.readUnsignedByte();
+    }
+
+    return marker;
+  }
+
+  private static void skipFully(InputStream is, long n) throws IOException {
+    while (n > 0) {
+      long skipped = is.skip(n);
+      if (skipped <= 0) {
+        throw new EOFException();
+      }
+      n -= skipped;
+    }
+  }
+
+  private static boolean isFrameMarker(int marker) {
+    return marker >= 0xC0 && marker <= 0xCF && marker != DHT && marker != 0xC8 && marker != 0xCC;
+  }
+
+  private static int getMaxH(Component[] components) {
+    int maxH = 1;
+    for (int i = 0; i < components.length; i++) {
+      maxH = Math.max(maxH, components[i].h);
+    }
+
+    return maxH;
+  }
+
+  private static int getMaxV(Component[] components) {
+    int maxV = 1;
+    for (int i = 0; i < components.length; i++) {
+      maxV = Math.max(maxV, components[i].v);
+    }
+
+    return maxV;
+  }
+
+  private static int extend(int value, int size) {
+    if (size == 0) {
+      return 0;
+    }
+
+    return value < (1 << (size - 1)) ? value - (1 << size) + 1 : value;
+  }
+
+  private static int getBitLength(int value) {
+    value = Math.abs(value);
+
+    return 32 - Integer.numberOfLeadingZeros(value);
+  }
+
+  private static int ceilDiv(int a, int b) {
+    return (a + b - 1) / b;
+  }
+}
@@ -0,0 +1,110 @@
+package idv.jackblackevo.util;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 將檔案對應至記憶體的 ImageInputStream，reader 跳躍讀取時直接由對應的位置複製，不經過系統呼叫與 ImageIO 的快取。
+ * <p>
+ * 單一 MappedByteBuffer 最大為 2 GB，檔案依 SEGMENT_SIZE 分段，於第一次讀取該段時才對應，close() 時立即解除對應。
+ */
+class MappedImageInputStream extends ImageInputStreamImpl {
+  private static final int SEGMENT_SIZE = 1 << 30;
+
+  private FileChannel channel;
+  private long length;
+  private MappedByteBuffer[] segments;
+
+  /**
+   * @param file 圖片檔案
+   * @throws IOException
+   */
+  public MappedImageInputStream(File file) throws IOException {
+    this.channel = new RandomAccessFile(file, "r").getChannel();
+    try {
+      this.length = channel.size();
+    } catch (IOException e) {
+      channel.close();
+
+      throw e;
+    }
+    this.segments = new MappedByteBuffer[(int) ((length + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+  }
+
+  @Override
+  public int read() throws IOException {
+    checkClosed();
+    bitOffset = 0;
+
+    if (streamPos >= length) {
+      return -1;
+    }
+
+    int value = getSegment(streamPos).get((int) (streamPos % SEGMENT_SIZE)) & 0xFF;
+    streamPos++;
+
+    return value;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    checkClosed();
+    if (off < 0 || len < 0 || off + len > b.length || off + len < 0) {
+      throw new IndexOutOfBoundsException();
+    }
+    bitOffset = 0;
+
+    if (len == 0) {
+      return 0;
+    }
+
+    if (streamPos >= length) {
+      return -1;
+    }
+
+    // 跨越分段時分次複製
+    int numReadBytes = 0;
+    while (numReadBytes < len && streamPos < length) {
+      MappedByteBuffer segment = getSegment(streamPos);
+      int segmentOffset = (int) (streamPos % SEGMENT_SIZE);
+      int n = Math.min(len - numReadBytes, segment.limit() - segmentOffset);
+
+      segment.position(segmentOffset);
+      segment.get(b, off + numReadBytes, n);
+      numReadBytes += n;
+      streamPos += n;
+    }
+
+    return numReadBytes;
+  }
+
+  @Override
+  public long length() {
+    return length;
+  }
+
+  @Override
+  public void close() throws IOException {
+    super.close();
+
+    for (int i = 0; i < segments.length; i++) {
+      DirectBuffers.free(segments[i]);
+      segments[i] = null;
+    }
+    channel.close();
+  }
+
+  private MappedByteBuffer getSegment(long position) throws IOException {
+    int index = (int) (position / SEGMENT_SIZE);
+    if (segments[index] == null) {
+      long segmentStart = (long) index * SEGMENT_SIZE;
+      segments[index] = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, Math.min(SEGMENT_SIZE, length - segmentStart));
+    }
+
+    return segments[index];
+  }
+}
@@ -0,0 +1,287 @@
+package idv.jackblackevo.util;
+
+import javax.imageio.IIOException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 依檔頭的尺寸與頁數估計解碼後的記憶體用量，於解碼圖片或繪製 PDF 前預留，預算不足時等待其他圖片釋放。
+ * <p>
+ * 預算由同一個 JVM 中所有的 ImageBuilder 共用，預設為最大 heap 的一半。
+ * 預留依所屬的 ImageBuilder 區分，不等待同一個 ImageBuilder 保留至關閉的預留（避免等待自己釋放）；
+ * 超過整個預算的圖片等待其他預留全部釋放後單獨處理。
+ * <p>
+ * 未關閉的 ImageBuilder 被 GC 回收後，其預留自動釋放；等待超過 setWaitTimeout() 設定的時間時丟出 IIOException，不超出預算預留。
+ */
+public class MemoryGovernor {
+  private static final Object LOCK = new Object();
+  private static final List<Reservation> RESERVATION_LIST = new ArrayList<>();
+  private static final ReferenceQueue<Object> OWNER_QUEUE = new ReferenceQueue<>();
+
+  /**
+   * 等待期間檢查已回收的 ImageBuilder 的間隔，單位為 millisecond
+   */
+  private static final long COLLECTED_OWNER_CHECK_INTERVAL = 1000;
+
+  private static long budget = Runtime.getRuntime().maxMemory() / 2;
+  private static long waitTimeout = 60 * 1000;
+  private static long reservedBytes = 0;
+
+  private MemoryGovernor() {
+  }
+
+  /**
+   * @return 預算，單位為 byte
+   */
+  public static long getBudget() {
+    synchronized (LOCK) {
+      return budget;
+    }
+  }
+
+  /**
+   * 設定所有 ImageBuilder 共用的預算，已預留的部分不受影響。
+   *
+   * @param budget 預算，單位為 byte
+   */
+  public static void setBudget(long budget) {
+    if (budget <= 0) {
+      throw new UnsupportedOperationException("Memory budget must be positive!");
+    }
+
+    synchronized (LOCK) {
+      MemoryGovernor.budget = budget;
+      LOCK.notifyAll();
+    }
+  }
+
+  /**
+   * @return 等待預算的上限，單位為 millisecond，0 為不限制
+   */
+  public static long getWaitTimeout() {
+    synchronized (LOCK) {
+      return waitTimeout;
+    }
+  }
+
+  /**
+   * 設定等待預算的上限，超過時丟出 IIOException。
+   *
+   * @param waitTimeout 等待上限，單位為 millisecond，0 為不限制
+   */
+  public static void setWaitTimeout(long waitTimeout) {
+    if (waitTimeout < 0) {
+      throw new UnsupportedOperationException("Wait timeout must not be negative!");
+    }
+
+    synchronized (LOCK) {
+      MemoryGovernor.waitTimeout = waitTimeout;
+      LOCK.notifyAll();
+    }
+  }
+
+  /**
+   * @return 目前已預留的總量，單位為 byte
+   */
+  public static long getReservedBytes() {
+    synchronized (LOCK) {
+      releaseCollectedOwners();
+
+      return reservedBytes;
+    }
+  }
+
+  /**
+   * @return 目前所有預留的快照，依預留順序排列
+   */
+  public static List<Reservation> getReservations() {
+    synchronized (LOCK) {
+      releaseCollectedOwners();
+
+      return Collections.unmodifiableList(new ArrayList<>(RESERVATION_LIST));
+    }
+  }
+
+  /**
+   * 預留記憶體，預算不足時等待其他預留釋放。
+   *
+   * @param owner      所屬的 ImageBuilder 的識別物件
+   * @param sourceName 來源名稱
+   * @param bytes      估計用量，單位為 byte
+   * @return 預留，使用完畢後須呼叫 release()
+   * @throws IOException 等待超過上限時丟出 IIOException
+   */
+  static Reservation reserve(Object owner, String sourceName, long bytes) throws IOException {
+    synchronized (LOCK) {
+      long startTime = System.currentTimeMillis();
+      try {
+        releaseCollectedOwners();
+        while (reservedBytes > getRetainedBytes(owner) && reservedBytes + bytes > budget) {
+          long waitTime = COLLECTED_OWNER_CHECK_INTERVAL;
+          if (waitTimeout > 0) {
+            long remainingTime = startTime + waitTimeout - System.currentTimeMillis();
+            if (remainingTime <= 0) {
+              throw new IIOException("Memory budget is not released in time for: " + sourceName);
+            }
+
+            waitTime = Math.min(waitTime, remainingTime);
+          }
+
+          LOCK.wait(waitTime);
+          releaseCollectedOwners();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+
+        throw new InterruptedIOException("Interrupted while waiting for memory budget!");
+      }
+
+      Reservation reservation = new Reservation(owner, sourceName, bytes);
+      RESERVATION_LIST.add(reservation);
+      reservedBytes += bytes;
+
+      return reservation;
+    }
+  }
+
+  /**
+   * 估計解碼後的頁面大小。
+   *
+   * @param width        頁面寬
+   * @param height       頁面高
+   * @param bitsPerPixel 每個像素的 bit 數
+   * @return 估計用量，單位為 byte
+   */
+  static long estimatePageBytes(int width, int height, int bitsPerPixel) {
+    return ((long) width * height * bitsPerPixel + 7) / 8;
+  }
+
+  /**
+   * 釋放 owner 已被 GC 回收的預留，未關閉的 ImageBuilder 不會永久佔用預算。
+   */
+  private static void releaseCollectedOwners() {
+    Reference<?> ownerReference;
+    while ((ownerReference = OWNER_QUEUE.poll()) != null) {
+      ((OwnerReference) ownerReference).reservation.release();
+    }
+  }
+
+  /**
+   * 同一個 ImageBuilder 保留至關閉的預留總量，這些預留不會在等待期間釋放。
+   */
+  private static long getRetainedBytes(Object owner) {
+    long retainedBytes = 0;
+    Iterator<Reservation> reservationIterator = RESERVATION_LIST.iterator();
+    while (reservationIterator.hasNext()) {
+      Reservation reservation = reservationIterator.next();
+      if (reservation.ownerReference.get() == owner && reservation.isRetained) {
+        retainedBytes += reservation.bytes;
+      }
+    }
+
+    return retainedBytes;
+  }
+
+  private static long toMB(long bytes) {
+    return (bytes + (1 << 20) - 1) >> 20;
+  }
+
+  /**
+   * 單一圖片的預留。
+   */
+  public static class Reservation {
+    private String sourceName;
+    private long bytes;
+    private long reservedTime;
+    private OwnerReference ownerReference;
+    private String threadName;
+    private boolean isRetained = false;
+    private boolean isReleased = false;
+
+    private Reservation(Object owner, String sourceName, long bytes) {
+      this.ownerReference = new OwnerReference(owner, this);
+      this.sourceName = sourceName;
+      this.bytes = bytes;
+      this.reservedTime = System.currentTimeMillis();
+      this.threadName = Thread.currentThread().getName();
+    }
+
+    /**
+     * @return 來源路徑，記憶體中的圖片為其名稱
+     */
+    public String getSourceName() {
+      return sourceName;
+    }
+
+    /**
+     * @return 預留量，單位為 byte
+     */
+    public long getBytes() {
+      return bytes;
+    }
+
+    /**
+     * @return 預留的時間，單位為 millisecond
+     */
+    public long getReservedTime() {
+      return reservedTime;
+    }
+
+    /**
+     * @return 預留的執行緒名稱
+     */
+    public String getThreadName() {
+      return threadName;
+    }
+
+    /**
+     * 標記為保留至 ImageBuilder 關閉，同一個 ImageBuilder 之後的預留不會等待此預留釋放。
+     */
+    void retain() {
+      synchronized (LOCK) {
+        isRetained = true;
+      }
+    }
+
+    /**
+     * 釋放預留，重複呼叫時不會有作用。
+     */
+    void release() {
+      synchronized (LOCK) {
+        if (isReleased) {
+          return;
+        }
+
+        isReleased = true;
+        ownerReference.clear();
+        RESERVATION_LIST.remove(this);
+        reservedBytes -= bytes;
+        LOCK.notifyAll();
+      }
+    }
+
+    @Override
+    public String toString() {
+      return sourceName + " [" + toMB(bytes) + " MB, " + threadName + "]";
+    }
+  }
+
+  /**
+   * 不阻止 owner 被 GC 回收，回收後由 releaseCollectedOwners() 釋放對應的預留。
+   */
+  private static class OwnerReference extends WeakReference<Object> {
+    private Reservation reservation;
+
+    OwnerReference(Object owner, Reservation reservation) {
+      super(owner, OWNER_QUEUE);
+      this.reservation = reservation;
+    }
+  }
+}
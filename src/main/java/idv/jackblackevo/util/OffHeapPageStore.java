@@ -0,0 +1,276 @@
+package idv.jackblackevo.util;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 將已讀取的頁面像素移至 heap 外，大量頁面常駐時 heap 只保留頁面的外殼，不增加 GC 負擔。
+ * <p>
+ * 像素存放於 direct ByteBuffer，或依序寫入 memory-mapped 暫存檔，頁面以自訂 DataBuffer 的 BufferedImage 呈現；
+ * 處理時再以 copyToHeap() 逐頁複製回 heap。close() 時等待進行中的存取結束後釋放所有緩衝並刪除暫存檔，
+ * 之後存取頁面會丟出 UnsupportedOperationException。
+ */
+class OffHeapPageStore implements Closeable {
+  private File spillFile;
+  private FileChannel spillChannel;
+  private long spillPosition = 0;
+  private List<ByteBuffer> bufferList = new ArrayList<>();
+  private long storedBytes = 0;
+  private volatile boolean isClosed = false;
+  private final AtomicInteger activeAccessCount = new AtomicInteger();
+
+  /**
+   * @param isUseSpillFile 是否使用 memory-mapped 暫存檔，否則使用 direct ByteBuffer
+   * @param cacheDirectory 暫存檔目錄，null 時為系統暫存目錄
+   * @throws IOException
+   */
+  public OffHeapPageStore(boolean isUseSpillFile, File cacheDirectory) throws IOException {
+    if (isUseSpillFile) {
+      spillFile = File.createTempFile("imageutil", ".pages", cacheDirectory);
+      spillFile.deleteOnExit();
+      spillChannel = new RandomAccessFile(spillFile, "rw").getChannel();
+    }
+  }
+
+  /**
+   * 將頁面像素複製至 heap 外。
+   *
+   * @param imagePage 頁面
+   * @return 像素位於 heap 外的頁面，無法存放的配置（如 16 bit）為原頁面
+   * @throws IOException
+   */
+  public synchronized BufferedImage store(BufferedImage imagePage) throws IOException {
+    if (isClosed) {
+      throw new UnsupportedOperationException("Page store is closed!");
+    }
+
+    WritableRaster raster = imagePage.getRaster();
+    DataBuffer dataBuffer = raster.getDataBuffer();
+    if (dataBuffer.getNumBanks() != 1
+      || raster.getMinX() != 0 || raster.getMinY() != 0
+      || raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0) {
+      return imagePage;
+    }
+
+    int size = dataBuffer.getSize();
+    long numBytes;
+    if (dataBuffer instanceof DataBufferInt) {
+      numBytes = (long) size * 4;
+    } else if (dataBuffer instanceof DataBufferByte) {
+      numBytes = size;
+    } else {
+      return imagePage;
+    }
+    if (numBytes > Integer.MAX_VALUE) {
+      return imagePage;
+    }
+
+    ByteBuffer buffer = allocate((int) numBytes);
+    if (dataBuffer instanceof DataBufferInt) {
+      buffer.asIntBuffer().put(((DataBufferInt) dataBuffer).getData(), dataBuffer.getOffset(), size);
+    } else {
+      buffer.duplicate().put(((DataBufferByte) dataBuffer).getData(), dataBuffer.getOffset(), size);
+    }
+    bufferList.add(buffer);
+    storedBytes += numBytes;
+
+    PageDataBuffer pageDataBuffer = new PageDataBuffer(this, dataBuffer.getDataType(), size, buffer);
+    WritableRaster pageRaster = new PageRaster(raster.getSampleModel(), pageDataBuffer);
+
+    return new BufferedImage(imagePage.getColorModel(), pageRaster, imagePage.isAlphaPremultiplied(), null);
+  }
+
+  /**
+   * @return 已存放的像素總量，單位為 byte
+   */
+  public synchronized long getStoredBytes() {
+    return storedBytes;
+  }
+
+  /**
+   * 等待進行中的存取結束後釋放所有緩衝並刪除暫存檔。
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (isClosed) {
+      return;
+    }
+    isClosed = true;
+
+    // 釋放後再存取緩衝會使 JVM crash
+    boolean isInterrupted = false;
+    while (activeAccessCount.get() > 0) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        isInterrupted = true;
+      }
+    }
+    if (isInterrupted) {
+      Thread.currentThread().interrupt();
+    }
+
+    Iterator<ByteBuffer> bufferIterator = bufferList.iterator();
+    while (bufferIterator.hasNext()) {
+      DirectBuffers.free(bufferIterator.next());
+    }
+    bufferList.clear();
+    storedBytes = 0;
+
+    if (spillChannel != null) {
+      spillChannel.close();
+      spillFile.delete();
+    }
+  }
+
+  /**
+   * 將頁面複製為 heap 中的新頁面，呼叫端可直接修改或歸還至頁面緩衝。
+   * 裁切的頁面只複製選取的範圍。
+   *
+   * @param imagePage 頁面
+   * @return 新頁面
+   */
+  public static BufferedImage copyToHeap(BufferedImage imagePage) {
+    WritableRaster raster = imagePage.getRaster();
+    ColorModel colorModel = imagePage.getColorModel();
+    if (!(raster.getDataBuffer() instanceof PageDataBuffer)) {
+      // 未移至 heap 外的頁面逐列複製
+      WritableRaster heapRaster = raster.createCompatibleWritableRaster(raster.getWidth(), raster.getHeight());
+      heapRaster.setRect(-raster.getMinX(), -raster.getMinY(), raster);
+
+      return new BufferedImage(colorModel, heapRaster, imagePage.isAlphaPremultiplied(), null);
+    }
+
+    // 整頁複製為標準配置的 DataBuffer，BufferedImage 可辨識為 TYPE_INT_RGB 等標準類型
+    DataBuffer heapDataBuffer = ((PageDataBuffer) raster.getDataBuffer()).copyToHeap();
+    WritableRaster heapRaster = Raster.createWritableRaster(raster.getSampleModel(), heapDataBuffer, null);
+
+    int baseX = raster.getMinX() - raster.getSampleModelTranslateX();
+    int baseY = raster.getMinY() - raster.getSampleModelTranslateY();
+    if (baseX != 0 || baseY != 0 || raster.getWidth() != heapRaster.getWidth() || raster.getHeight() != heapRaster.getHeight()) {
+      heapRaster = heapRaster.createWritableChild(baseX, baseY, raster.getWidth(), raster.getHeight(), 0, 0, null);
+    }
+
+    return new BufferedImage(colorModel, heapRaster, imagePage.isAlphaPremultiplied(), null);
+  }
+
+  private void beginAccess() {
+    activeAccessCount.incrementAndGet();
+    if (isClosed) {
+      endAccess();
+
+      throw new UnsupportedOperationException("Page store is closed!");
+    }
+  }
+
+  private void endAccess() {
+    if (activeAccessCount.decrementAndGet() == 0 && isClosed) {
+      synchronized (this) {
+        notifyAll();
+      }
+    }
+  }
+
+  private ByteBuffer allocate(int numBytes) throws IOException {
+    ByteBuffer buffer;
+    if (spillChannel != null) {
+      buffer = spillChannel.map(FileChannel.MapMode.READ_WRITE, spillPosition, numBytes);
+      spillPosition += numBytes;
+    } else {
+      buffer = ByteBuffer.allocateDirect(numBytes);
+    }
+
+    return buffer.order(ByteOrder.nativeOrder());
+  }
+
+  /**
+   * Java 8 的 Raster.createWritableRaster() 依 SampleModel 建立只接受標準 DataBuffer 的 Raster，自訂 DataBuffer 須使用一般的 WritableRaster。
+   */
+  private static class PageRaster extends WritableRaster {
+    PageRaster(SampleModel sampleModel, DataBuffer dataBuffer) {
+      super(sampleModel, dataBuffer, new Point(0, 0));
+    }
+  }
+
+  /**
+   * 以 ByteBuffer 存放像素的 DataBuffer，int 依 native byte order 存放。
+   * 每次存取前檢查 page store 是否已關閉。
+   */
+  static class PageDataBuffer extends DataBuffer {
+    private OffHeapPageStore pageStore;
+    private ByteBuffer buffer;
+    private IntBuffer intBuffer;
+
+    PageDataBuffer(OffHeapPageStore pageStore, int dataType, int size, ByteBuffer buffer) {
+      super(dataType, size);
+      this.pageStore = pageStore;
+      this.buffer = buffer;
+      if (dataType == TYPE_INT) {
+        this.intBuffer = buffer.asIntBuffer();
+      }
+    }
+
+    @Override
+    public int getElem(int bank, int i) {
+      pageStore.beginAccess();
+      try {
+        if (intBuffer != null) {
+          return intBuffer.get(i);
+        }
+
+        return buffer.get(i) & 0xFF;
+      } finally {
+        pageStore.endAccess();
+      }
+    }
+
+    @Override
+    public void setElem(int bank, int i, int val) {
+      pageStore.beginAccess();
+      try {
+        if (intBuffer != null) {
+          intBuffer.put(i, val);
+        } else {
+          buffer.put(i, (byte) val);
+        }
+      } finally {
+        pageStore.endAccess();
+      }
+    }
+
+    /**
+     * 一次複製全部像素至新的 DataBufferInt 或 DataBufferByte。
+     */
+    DataBuffer copyToHeap() {
+      int size = getSize();
+      pageStore.beginAccess();
+      try {
+        if (intBuffer != null) {
+          int[] data = new int[size];
+          intBuffer.duplicate().get(data);
+
+          return new DataBufferInt(data, size);
+        }
+
+        byte[] data = new byte[size];
+        buffer.duplicate().get(data);
+
+        return new DataBufferByte(data, size);
+      } finally {
+        pageStore.endAccess();
+      }
+    }
+  }
+}
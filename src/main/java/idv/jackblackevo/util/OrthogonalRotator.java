@@ -0,0 +1,325 @@
+package idv.jackblackevo.util;
+
+import java.awt.image.*;
+import java.util.Arrays;
+
+/**
+ * 以 90 度為單位順時針旋轉圖片，直接搬移 DataBuffer 陣列中的像素，結果與原圖像素完全一致。
+ */
+class OrthogonalRotator {
+  /**
+   * 轉置時每次處理的區塊邊長，讓來源與目標陣列的存取都留在 CPU 快取中
+   */
+  private static final int TILE_SIZE = 64;
+
+  private OrthogonalRotator() {
+  }
+
+  /**
+   * 順時針旋轉圖片。
+   *
+   * @param image     圖片
+   * @param quadrants 旋轉次數，每次 90 度
+   * @return 旋轉後之圖片，無需旋轉時為原圖片
+   */
+  public static BufferedImage rotate(BufferedImage image, int quadrants) {
+    return rotate(image, quadrants, null);
+  }
+
+  /**
+   * 順時針旋轉圖片，目標圖片優先取自頁面緩衝。
+   *
+   * @param image     圖片
+   * @param quadrants 旋轉次數，每次 90 度
+   * @param imagePool 頁面緩衝，可為 null
+   * @return 旋轉後之圖片，無需旋轉時為原圖片
+   */
+  public static BufferedImage rotate(BufferedImage image, int quadrants, BufferedImagePool imagePool) {
+    quadrants = ((quadrants % 4) + 4) % 4;
+    if (quadrants == 0) {
+      return image;
+    }
+
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int targetWidth = quadrants == 2 ? width : height;
+    int targetHeight = quadrants == 2 ? height : width;
+
+    WritableRaster raster = image.getRaster();
+
+    // 標準類型的 Raster 配置固定，可直接使用緩衝中的圖片，所有像素都會被覆寫
+    BufferedImage targetImage = null;
+    WritableRaster targetRaster;
+    if (imagePool != null && BufferedImagePool.isPoolable(image.getType())) {
+      targetImage = imagePool.acquire(targetWidth, targetHeight, image.getType());
+      targetRaster = targetImage.getRaster();
+    } else {
+      targetRaster = raster.createCompatibleWritableRaster(targetWidth, targetHeight);
+    }
+
+    if (!rotateIntPacked(raster, targetRaster, quadrants)
+      && !rotateByteInterleaved(raster, targetRaster, quadrants)
+      && !rotateBytePacked(raster, targetRaster, quadrants)) {
+      rotateGeneric(raster, targetRaster, quadrants);
+    }
+
+    if (targetImage != null) {
+      return targetImage;
+    }
+
+    return new BufferedImage(image.getColorModel(), targetRaster, image.isAlphaPremultiplied(), null);
+  }
+
+  /**
+   * TYPE_INT_RGB、TYPE_INT_ARGB、TYPE_INT_BGR 等每像素一個 int 的圖片。
+   */
+  private static boolean rotateIntPacked(Raster raster, WritableRaster targetRaster, int quadrants) {
+    if (!(raster.getSampleModel() instanceof SinglePixelPackedSampleModel)
+      || !(raster.getDataBuffer() instanceof DataBufferInt)
+      || raster.getDataBuffer().getNumBanks() != 1) {
+      return false;
+    }
+
+    SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) raster.getSampleModel();
+    SinglePixelPackedSampleModel targetSampleModel = (SinglePixelPackedSampleModel) targetRaster.getSampleModel();
+    DataBufferInt dataBuffer = (DataBufferInt) raster.getDataBuffer();
+    DataBufferInt targetDataBuffer = (DataBufferInt) targetRaster.getDataBuffer();
+
+    int[] data = dataBuffer.getData();
+    int[] targetData = targetDataBuffer.getData();
+    int stride = sampleModel.getScanlineStride();
+    int targetStride = targetSampleModel.getScanlineStride();
+    int base = dataBuffer.getOffset() + getBaseY(raster) * stride + getBaseX(raster);
+    int targetBase = targetDataBuffer.getOffset();
+
+    int width = raster.getWidth();
+    int height = raster.getHeight();
+
+    if (quadrants == 2) {
+      for (int y = 0; y < height; y++) {
+        int index = base + y * stride;
+        int targetIndex = targetBase + (height - 1 - y) * targetStride + width - 1;
+        for (int x = 0; x < width; x++) {
+          targetData[targetIndex - x] = data[index + x];
+        }
+      }
+
+      return true;
+    }
+
+    for (int tileY = 0; tileY < height; tileY += TILE_SIZE) {
+      int tileYEnd = Math.min(tileY + TILE_SIZE, height);
+      for (int tileX = 0; tileX < width; tileX += TILE_SIZE) {
+        int tileXEnd = Math.min(tileX + TILE_SIZE, width);
+        for (int y = tileY; y < tileYEnd; y++) {
+          int index = base + y * stride;
+          if (quadrants == 1) {
+            // (x, y) -> (height - 1 - y, x)
+            int targetIndex = targetBase + height - 1 - y;
+            for (int x = tileX; x < tileXEnd; x++) {
+              targetData[targetIndex + x * targetStride] = data[index + x];
+            }
+          } else {
+            // (x, y) -> (y, width - 1 - x)
+            int targetIndex = targetBase + (width - 1) * targetStride + y;
+            for (int x = tileX; x < tileXEnd; x++) {
+              targetData[targetIndex - x * targetStride] = data[index + x];
+            }
+          }
+        }
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * TYPE_BYTE_GRAY、TYPE_3BYTE_BGR、TYPE_4BYTE_ABGR 等像素以 byte 交錯排列的圖片。
+   */
+  private static boolean rotateByteInterleaved(Raster raster, WritableRaster targetRaster, int quadrants) {
+    if (!(raster.getSampleModel() instanceof PixelInterleavedSampleModel)
+      || !(raster.getDataBuffer() instanceof DataBufferByte)
+      || raster.getDataBuffer().getNumBanks() != 1) {
+      return false;
+    }
+
+    PixelInterleavedSampleModel sampleModel = (PixelInterleavedSampleModel) raster.getSampleModel();
+    PixelInterleavedSampleModel targetSampleModel = (PixelInterleavedSampleModel) targetRaster.getSampleModel();
+
+    // 整個像素一起搬移，來源與目標的像素排列方式必須相同
+    int pixelStride = sampleModel.getPixelStride();
+    if (targetSampleModel.getPixelStride() != pixelStride
+      || !Arrays.equals(sampleModel.getBandOffsets(), targetSampleModel.getBandOffsets())) {
+      return false;
+    }
+
+    int[] bandOffsets = sampleModel.getBandOffsets();
+    for (int i = 0; i < bandOffsets.length; i++) {
+      if (bandOffsets[i] < 0 || bandOffsets[i] >= pixelStride) {
+        return false;
+      }
+    }
+
+    DataBufferByte dataBuffer = (DataBufferByte) raster.getDataBuffer();
+    DataBufferByte targetDataBuffer = (DataBufferByte) targetRaster.getDataBuffer();
+
+    byte[] data = dataBuffer.getData();
+    byte[] targetData = targetDataBuffer.getData();
+    int stride = sampleModel.getScanlineStride();
+    int targetStride = targetSampleModel.getScanlineStride();
+    int base = dataBuffer.getOffset() + getBaseY(raster) * stride + getBaseX(raster) * pixelStride;
+    int targetBase = targetDataBuffer.getOffset();
+
+    int width = raster.getWidth();
+    int height = raster.getHeight();
+
+    if (quadrants == 2) {
+      for (int y = 0; y < height; y++) {
+        int index = base + y * stride;
+        int targetIndex = targetBase + (height - 1 - y) * targetStride + (width - 1) * pixelStride;
+        for (int x = 0; x < width; x++) {
+          System.arraycopy(data, index + x * pixelStride, targetData, targetIndex - x * pixelStride, pixelStride);
+        }
+      }
+
+      return true;
+    }
+
+    int targetPixelStep = quadrants == 1 ? targetStride : -targetStride;
+    for (int tileY = 0; tileY < height; tileY += TILE_SIZE) {
+      int tileYEnd = Math.min(tileY + TILE_SIZE, height);
+      for (int tileX = 0; tileX < width; tileX += TILE_SIZE) {
+        int tileXEnd = Math.min(tileX + TILE_SIZE, width);
+        for (int y = tileY; y < tileYEnd; y++) {
+          int index = base + y * stride + tileX * pixelStride;
+          int targetIndex;
+          if (quadrants == 1) {
+            targetIndex = targetBase + tileX * targetStride + (height - 1 - y) * pixelStride;
+          } else {
+            targetIndex = targetBase + (width - 1 - tileX) * targetStride + y * pixelStride;
+          }
+
+          if (pixelStride == 1) {
+            for (int x = tileX; x < tileXEnd; x++) {
+              targetData[targetIndex] = data[index];
+              index++;
+              targetIndex += targetPixelStep;
+            }
+          } else {
+            for (int x = tileX; x < tileXEnd; x++) {
+              for (int b = 0; b < pixelStride; b++) {
+                targetData[targetIndex + b] = data[index + b];
+              }
+              index += pixelStride;
+              targetIndex += targetPixelStep;
+            }
+          }
+        }
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * TYPE_BYTE_BINARY 等多個像素共用一個 byte 的圖片。
+   */
+  private static boolean rotateBytePacked(Raster raster, WritableRaster targetRaster, int quadrants) {
+    if (!(raster.getSampleModel() instanceof MultiPixelPackedSampleModel)
+      || !(raster.getDataBuffer() instanceof DataBufferByte)) {
+      return false;
+    }
+
+    MultiPixelPackedSampleModel sampleModel = (MultiPixelPackedSampleModel) raster.getSampleModel();
+    MultiPixelPackedSampleModel targetSampleModel = (MultiPixelPackedSampleModel) targetRaster.getSampleModel();
+
+    int bitsPerPixel = sampleModel.getPixelBitStride();
+    if (targetSampleModel.getPixelBitStride() != bitsPerPixel || 8 % bitsPerPixel != 0) {
+      return false;
+    }
+
+    DataBufferByte dataBuffer = (DataBufferByte) raster.getDataBuffer();
+    DataBufferByte targetDataBuffer = (DataBufferByte) targetRaster.getDataBuffer();
+
+    byte[] data = dataBuffer.getData();
+    byte[] targetData = targetDataBuffer.getData();
+    int stride = sampleModel.getScanlineStride();
+    int targetStride = targetSampleModel.getScanlineStride();
+    int base = dataBuffer.getOffset() + getBaseY(raster) * stride;
+    int bitBase = sampleModel.getDataBitOffset() + getBaseX(raster) * bitsPerPixel;
+    int targetBase = targetDataBuffer.getOffset();
+    int targetBitBase = targetSampleModel.getDataBitOffset();
+    int pixelMask = (1 << bitsPerPixel) - 1;
+
+    int width = raster.getWidth();
+    int height = raster.getHeight();
+    int targetWidth = targetRaster.getWidth();
+
+    // 目標陣列為新建立，全為 0，只需設定非 0 的像素
+    for (int tileY = 0; tileY < height; tileY += TILE_SIZE) {
+      int tileYEnd = Math.min(tileY + TILE_SIZE, height);
+      for (int tileX = 0; tileX < width; tileX += TILE_SIZE) {
+        int tileXEnd = Math.min(tileX + TILE_SIZE, width);
+        for (int y = tileY; y < tileYEnd; y++) {
+          int row = base + y * stride;
+          for (int x = tileX; x < tileXEnd; x++) {
+            int bit = bitBase + x * bitsPerPixel;
+            int pixel = (data[row + (bit >> 3)] >> (8 - bitsPerPixel - (bit & 7))) & pixelMask;
+            if (pixel == 0) {
+              continue;
+            }
+
+            int targetX;
+            int targetY;
+            if (quadrants == 1) {
+              targetX = height - 1 - y;
+              targetY = x;
+            } else if (quadrants == 2) {
+              targetX = targetWidth - 1 - x;
+              targetY = height - 1 - y;
+            } else {
+              targetX = y;
+              targetY = width - 1 - x;
+            }
+
+            int targetBit = targetBitBase + targetX * bitsPerPixel;
+            targetData[targetBase + targetY * targetStride + (targetBit >> 3)] |= pixel << (8 - bitsPerPixel - (targetBit & 7));
+          }
+        }
+      }
+    }
+
+    return true;
+  }
+
+  private static void rotateGeneric(Raster raster, WritableRaster targetRaster, int quadrants) {
+    int width = raster.getWidth();
+    int height = raster.getHeight();
+    int minX = raster.getMinX();
+    int minY = raster.getMinY();
+    int targetMinX = targetRaster.getMinX();
+    int targetMinY = targetRaster.getMinY();
+
+    Object pixel = null;
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        pixel = raster.getDataElements(minX + x, minY + y, pixel);
+        if (quadrants == 1) {
+          targetRaster.setDataElements(targetMinX + height - 1 - y, targetMinY + x, pixel);
+        } else if (quadrants == 2) {
+          targetRaster.setDataElements(targetMinX + width - 1 - x, targetMinY + height - 1 - y, pixel);
+        } else {
+          targetRaster.setDataElements(targetMinX + y, targetMinY + width - 1 - x, pixel);
+        }
+      }
+    }
+  }
+
+  private static int getBaseX(Raster raster) {
+    return raster.getMinX() - raster.getSampleModelTranslateX();
+  }
+
+  private static int getBaseY(Raster raster) {
+    return raster.getMinY() - raster.getSampleModelTranslateY();
+  }
+}
@@ -0,0 +1,480 @@
+package idv.jackblackevo.util;
+
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdfparser.PDFStreamParser;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColorSpace;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.pdmodel.graphics.color.PDICCBased;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.apache.pdfbox.util.Matrix;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.*;
+import java.util.List;
+
+/**
+ * 逐頁繪製 PDF，每個同時繪製的執行緒使用各自開啟的 PDDocument（PDFBox 的文件物件不可跨執行緒共用）。
+ */
+class PDFPageRenderer implements Closeable {
+  public static final float DEFAULT_DPI = 150;
+
+  /**
+   * 每份開啟的文件最多使用的記憶體，超過時改存於暫存檔
+   */
+  private static final long MAX_MAIN_MEMORY_BYTES = 16 * 1024 * 1024;
+
+  private static class DocumentHandle {
+    private PDDocument document;
+    private PDFRenderer renderer;
+
+    private DocumentHandle(PDDocument document) {
+      this.document = document;
+      this.renderer = new PDFRenderer(document);
+    }
+  }
+
+  /**
+   * 頁面中直接取出的圖片，JPEG 保留原始資料，其他格式為解碼後的圖片。
+   */
+  public static class EmbeddedImage {
+    private byte[] jpegBytes;
+    private BufferedImage image;
+    private int width;
+    private int height;
+    private int quadrants;
+    private boolean isJPEG;
+
+    public byte[] getJPEGBytes() {
+      return jpegBytes;
+    }
+
+    public BufferedImage getImage() {
+      return image;
+    }
+
+    /**
+     * 取得依頁面旋轉角度轉正後的尺寸。
+     */
+    public Dimension getSize() {
+      if (quadrants % 2 == 1) {
+        return new Dimension(height, width);
+      }
+
+      return new Dimension(width, height);
+    }
+
+    /**
+     * 取得頁面設定的順時針旋轉次數，每次 90 度。
+     */
+    public int getQuadrants() {
+      return quadrants;
+    }
+
+    /**
+     * 是否為可直接使用的 JPEG。
+     */
+    public boolean isJPEG() {
+      return isJPEG;
+    }
+  }
+
+  private File file;
+  private byte[] pdfBytes;
+  private boolean isUseDiskCache;
+  private boolean isClosed = false;
+  private Deque<DocumentHandle> idleHandleDeque = new ArrayDeque<>();
+  private List<DocumentHandle> handleList = new ArrayList<>();
+
+  /**
+   * @param file           PDF
+   * @param isUseDiskCache 文件超過 MAX_MAIN_MEMORY_BYTES 時是否改存於暫存檔
+   */
+  public PDFPageRenderer(File file, boolean isUseDiskCache) {
+    this.file = file;
+    this.isUseDiskCache = isUseDiskCache;
+  }
+
+  /**
+   * @param pdfBytes       PDF 資料
+   * @param isUseDiskCache 文件超過 MAX_MAIN_MEMORY_BYTES 時是否改存於暫存檔
+   */
+  public PDFPageRenderer(byte[] pdfBytes, boolean isUseDiskCache) {
+    this.pdfBytes = pdfBytes;
+    this.isUseDiskCache = isUseDiskCache;
+  }
+
+  public int getNumPages() throws IOException {
+    DocumentHandle handle = acquireHandle();
+    try {
+      return handle.document.getNumberOfPages();
+    } finally {
+      releaseHandle(handle);
+    }
+  }
+
+  /**
+   * 取得頁面以指定 DPI 繪製時的尺寸。
+   *
+   * @param pageIndex 頁碼，從 0 開始
+   * @param dpi       DPI
+   * @return 尺寸
+   * @throws IOException
+   */
+  public Dimension getPageSize(int pageIndex, float dpi) throws IOException {
+    DocumentHandle handle = acquireHandle();
+    try {
+      PDPage page = handle.document.getPage(pageIndex);
+      PDRectangle cropBox = page.getCropBox();
+
+      // 與 PDFRenderer 計算繪製尺寸的方式相同
+      float scale = dpi / 72f;
+      int width = Math.round(cropBox.getWidth() * scale);
+      int height = Math.round(cropBox.getHeight() * scale);
+
+      int rotation = page.getRotation();
+      if (rotation == 90 || rotation == 270) {
+        return new Dimension(height, width);
+      }
+
+      return new Dimension(width, height);
+    } finally {
+      releaseHandle(handle);
+    }
+  }
+
+  /**
+   * 繪製頁面。
+   *
+   * @param pageIndex 頁碼，從 0 開始
+   * @param dpi       DPI
+   * @return 頁面
+   * @throws IOException
+   */
+  public BufferedImage renderPage(int pageIndex, float dpi) throws IOException {
+    DocumentHandle handle = acquireHandle();
+    try {
+      return handle.renderer.renderImageWithDPI(pageIndex, dpi, ImageType.RGB);
+    } finally {
+      releaseHandle(handle);
+    }
+  }
+
+  /**
+   * 只繪製頁面中的範圍，結果相當於繪製整個頁面後裁切（圖形邊緣的反鋸齒可能略有差異）。
+   *
+   * @param pageIndex 頁碼，從 0 開始
+   * @param dpi       DPI
+   * @param region    以預設 DPI 繪製時的像素範圍
+   * @return 範圍內的頁面
+   * @throws IOException
+   */
+  public BufferedImage renderPage(int pageIndex, float dpi, Rectangle region) throws IOException {
+    float scale = dpi / DEFAULT_DPI;
+    int x = (int) Math.floor(region.x * scale);
+    int y = (int) Math.floor(region.y * scale);
+    int width = Math.max(1, Math.round(region.width * scale));
+    int height = Math.max(1, Math.round(region.height * scale));
+
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = image.createGraphics();
+    DocumentHandle handle = acquireHandle();
+    try {
+      // 與 renderImageWithDPI 相同以白色為背景，再平移使範圍對齊圖片原點
+      g.setBackground(Color.WHITE);
+      g.clearRect(0, 0, width, height);
+      g.translate(-x, -y);
+      handle.renderer.renderPageToGraphics(pageIndex, g, dpi / 72f);
+    } finally {
+      releaseHandle(handle);
+      g.dispose();
+    }
+
+    return image;
+  }
+
+  /**
+   * 頁面僅由一張圖片填滿時（如掃描檔）直接取出該圖片，不經過繪製。
+   *
+   * @param pageIndex  頁碼，從 0 開始
+   * @param isJPEGOnly 是否只取出可直接使用的 JPEG
+   * @return 頁面圖片，不符合時為 null
+   * @throws IOException
+   */
+  public EmbeddedImage extractEmbeddedImage(int pageIndex, boolean isJPEGOnly) throws IOException {
+    DocumentHandle handle = acquireHandle();
+    try {
+      PDPage page = handle.document.getPage(pageIndex);
+      PDImageXObject imageXObject = getEmbeddedImageXObject(page);
+      if (imageXObject == null) {
+        return null;
+      }
+
+      EmbeddedImage embeddedImage = createEmbeddedImage(page, imageXObject);
+      if (embeddedImage.isJPEG) {
+        try (
+          InputStream is = imageXObject.createInputStream(Collections.singletonList(COSName.DCT_DECODE.getName()))
+        ) {
+          embeddedImage.jpegBytes = IOUtils.toByteArray(is);
+        }
+      } else if (isJPEGOnly) {
+        return null;
+      } else {
+        embeddedImage.image = imageXObject.getImage();
+      }
+
+      return embeddedImage;
+    } finally {
+      releaseHandle(handle);
+    }
+  }
+
+  /**
+   * 取得可直接取出的圖片的尺寸與旋轉角度，不讀取圖片資料，供估計記憶體用量使用。
+   *
+   * @param pageIndex 頁碼，從 0 開始
+   * @return 不含圖片資料的 EmbeddedImage，不符合時為 null
+   * @throws IOException
+   */
+  public EmbeddedImage getEmbeddedImageInfo(int pageIndex) throws IOException {
+    DocumentHandle handle = acquireHandle();
+    try {
+      PDPage page = handle.document.getPage(pageIndex);
+      PDImageXObject imageXObject = getEmbeddedImageXObject(page);
+      if (imageXObject == null) {
+        return null;
+      }
+
+      return createEmbeddedImage(page, imageXObject);
+    } finally {
+      releaseHandle(handle);
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    isClosed = true;
+
+    IOException exception = null;
+    Iterator<DocumentHandle> handleIterator = handleList.iterator();
+    while (handleIterator.hasNext()) {
+      try {
+        handleIterator.next().document.close();
+      } catch (IOException e) {
+        exception = e;
+      }
+    }
+    handleList.clear();
+    idleHandleDeque.clear();
+
+    if (exception != null) {
+      throw exception;
+    }
+  }
+
+  private DocumentHandle acquireHandle() throws IOException {
+    synchronized (this) {
+      if (isClosed) {
+        throw new UnsupportedOperationException("PDF renderer is closed!");
+      }
+
+      if (!idleHandleDeque.isEmpty()) {
+        return idleHandleDeque.pop();
+      }
+    }
+
+    // 沒有閒置的文件時另外開啟一份，於鎖外載入以免阻擋其他執行緒
+    MemoryUsageSetting memoryUsageSetting = isUseDiskCache ? MemoryUsageSetting.setupMixed(MAX_MAIN_MEMORY_BYTES) : MemoryUsageSetting.setupMainMemoryOnly();
+    PDDocument document;
+    if (pdfBytes == null) {
+      document = PDDocument.load(file, memoryUsageSetting);
+    } else {
+      document = PDDocument.load(pdfBytes, "", null, null, memoryUsageSetting);
+    }
+    DocumentHandle handle = new DocumentHandle(document);
+    synchronized (this) {
+      if (isClosed) {
+        document.close();
+
+        throw new UnsupportedOperationException("PDF renderer is closed!");
+      }
+
+      handleList.add(handle);
+    }
+
+    return handle;
+  }
+
+  private synchronized void releaseHandle(DocumentHandle handle) {
+    if (!isClosed) {
+      idleHandleDeque.push(handle);
+    }
+  }
+
+  private static PDImageXObject getEmbeddedImageXObject(PDPage page) throws IOException {
+    if (page.getRotation() % 90 != 0) {
+      return null;
+    }
+
+    return getFullPageImage(page);
+  }
+
+  private static EmbeddedImage createEmbeddedImage(PDPage page, PDImageXObject imageXObject) throws IOException {
+    EmbeddedImage embeddedImage = new EmbeddedImage();
+    embeddedImage.width = imageXObject.getWidth();
+    embeddedImage.height = imageXObject.getHeight();
+    embeddedImage.quadrants = ((page.getRotation() / 90) % 4 + 4) % 4;
+    embeddedImage.isJPEG = isPlainJPEG(imageXObject);
+
+    return embeddedImage;
+  }
+
+  /**
+   * 取得填滿整個頁面的唯一圖片，頁面內容只能有 q、Q、cm 與一次 Do，且圖片未經旋轉或翻轉。
+   */
+  private static PDImageXObject getFullPageImage(PDPage page) throws IOException {
+    PDResources resources = page.getResources();
+    if (resources == null) {
+      return null;
+    }
+
+    COSName imageName = null;
+    Iterator<COSName> xObjectNameIterator = resources.getXObjectNames().iterator();
+    while (xObjectNameIterator.hasNext()) {
+      COSName xObjectName = xObjectNameIterator.next();
+      if (imageName != null || !resources.isImageXObject(xObjectName)) {
+        return null;
+      }
+
+      imageName = xObjectName;
+    }
+
+    if (imageName == null) {
+      return null;
+    }
+
+    PDFStreamParser parser = new PDFStreamParser(page);
+    parser.parse();
+
+    Matrix matrix = new Matrix();
+    Deque<Matrix> matrixDeque = new ArrayDeque<>();
+    Matrix imageMatrix = null;
+    List<COSBase> operandList = new ArrayList<>();
+
+    Iterator<Object> tokenIterator = parser.getTokens().iterator();
+    while (tokenIterator.hasNext()) {
+      Object token = tokenIterator.next();
+      if (token instanceof COSBase) {
+        operandList.add((COSBase) token);
+        continue;
+      }
+
+      if (!(token instanceof Operator)) {
+        return null;
+      }
+
+      String operatorName = ((Operator) token).getName();
+      if ("q".equals(operatorName)) {
+        matrixDeque.push(matrix);
+      } else if ("Q".equals(operatorName)) {
+        if (matrixDeque.isEmpty()) {
+          return null;
+        }
+
+        matrix = matrixDeque.pop();
+      } else if ("cm".equals(operatorName)) {
+        if (operandList.size() != 6) {
+          return null;
+        }
+
+        float[] values = new float[6];
+        for (int i = 0; i < 6; i++) {
+          if (!(operandList.get(i) instanceof COSNumber)) {
+            return null;
+          }
+
+          values[i] = ((COSNumber) operandList.get(i)).floatValue();
+        }
+        matrix = new Matrix(values[0], values[1], values[2], values[3], values[4], values[5]).multiply(matrix);
+      } else if ("Do".equals(operatorName)) {
+        if (imageMatrix != null || operandList.size() != 1 || !imageName.equals(operandList.get(0))) {
+          return null;
+        }
+
+        imageMatrix = matrix;
+      } else {
+        return null;
+      }
+
+      operandList.clear();
+    }
+
+    if (imageMatrix == null || !isFullPage(imageMatrix, page.getCropBox())) {
+      return null;
+    }
+
+    PDImageXObject imageXObject = (PDImageXObject) resources.getXObject(imageName);
+    if (imageXObject.isStencil()) {
+      return null;
+    }
+
+    return imageXObject;
+  }
+
+  private static boolean isFullPage(Matrix imageMatrix, PDRectangle cropBox) {
+    if (Math.abs(imageMatrix.getShearX()) > 0.001 || Math.abs(imageMatrix.getShearY()) > 0.001
+      || imageMatrix.getScaleX() <= 0 || imageMatrix.getScaleY() <= 0) {
+      return false;
+    }
+
+    // 容許 1 pt 或 0.5% 的誤差
+    float toleranceX = Math.max(1, cropBox.getWidth() * 0.005f);
+    float toleranceY = Math.max(1, cropBox.getHeight() * 0.005f);
+    float lowerLeftX = imageMatrix.getTranslateX();
+    float lowerLeftY = imageMatrix.getTranslateY();
+    float upperRightX = lowerLeftX + imageMatrix.getScaleX();
+    float upperRightY = lowerLeftY + imageMatrix.getScaleY();
+
+    return Math.abs(lowerLeftX - cropBox.getLowerLeftX()) <= toleranceX
+      && Math.abs(lowerLeftY - cropBox.getLowerLeftY()) <= toleranceY
+      && Math.abs(upperRightX - cropBox.getUpperRightX()) <= toleranceX
+      && Math.abs(upperRightY - cropBox.getUpperRightY()) <= toleranceY;
+  }
+
+  /**
+   * 檢查圖片是否為不需 PDF 額外設定即可正確顯示的 JPEG（灰階或 RGB、無遮罩與 Decode 陣列）。
+   */
+  private static boolean isPlainJPEG(PDImageXObject imageXObject) throws IOException {
+    List<COSName> filterList = imageXObject.getStream().getFilters();
+    if (filterList == null || filterList.isEmpty() || !COSName.DCT_DECODE.equals(filterList.get(filterList.size() - 1))) {
+      return false;
+    }
+
+    if (imageXObject.getDecode() != null || imageXObject.getBitsPerComponent() != 8
+      || imageXObject.getSoftMask() != null || imageXObject.getMask() != null || imageXObject.getColorKeyMask() != null) {
+      return false;
+    }
+
+    PDColorSpace colorSpace = imageXObject.getColorSpace();
+    if (colorSpace instanceof PDICCBased) {
+      int numComponents = colorSpace.getNumberOfComponents();
+
+      return numComponents == 1 || numComponents == 3;
+    }
+
+    return colorSpace instanceof PDDeviceGray || colorSpace instanceof PDDeviceRGB;
+  }
+}
@@ -0,0 +1,246 @@
+package idv.jackblackevo.util;
+
+import com.twelvemonkeys.image.ResampleOp;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.WritableRaster;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 將記錄的旋轉、調整尺寸、去除透明背景與減少色彩深度合併為單一頁面處理流程。
+ */
+class PagePipeline {
+  private List<ImageOperation> operationList;
+  private boolean isFlattenAlpha;
+  private boolean isSourceDisposable;
+  private boolean isReduceColorDepth;
+  private BufferedImagePool imagePool;
+
+  /**
+   * @param operationList      記錄的操作
+   * @param isFlattenAlpha     是否去除透明背景
+   * @param isSourceDisposable 原頁面處理後是否即丟棄，是則可直接修改或重複使用原頁面
+   * @param isReduceColorDepth 是否將只有灰階或黑白的頁面轉換為灰階或黑白
+   * @param imagePool          頁面緩衝
+   */
+  public PagePipeline(List<ImageOperation> operationList, boolean isFlattenAlpha, boolean isSourceDisposable, boolean isReduceColorDepth, BufferedImagePool imagePool) {
+    this.operationList = operationList;
+    this.isFlattenAlpha = isFlattenAlpha;
+    this.isSourceDisposable = isSourceDisposable;
+    this.isReduceColorDepth = isReduceColorDepth;
+    this.imagePool = imagePool;
+  }
+
+  /**
+   * 處理單一頁面，原頁面非可丟棄時不會修改原頁面。
+   *
+   * @param imagePage 原頁面
+   * @return 處理後之頁面，無需處理時為原頁面
+   */
+  public BufferedImage process(BufferedImage imagePage) {
+    return process(imagePage, new Dimension(imagePage.getWidth(), imagePage.getHeight()));
+  }
+
+  /**
+   * 處理單一頁面，依指定的原始尺寸計算操作結果，用於以較低解析度取得的頁面（如依目標尺寸繪製的 PDF）。
+   *
+   * @param imagePage  原頁面
+   * @param sourceSize 計算操作時使用的原始尺寸
+   * @return 處理後之頁面，無需處理時為原頁面
+   */
+  public BufferedImage process(BufferedImage imagePage, Dimension sourceSize) {
+    // 先算出最終尺寸與旋轉次數，只對原圖重新取樣一次，再於縮小後的圖上旋轉
+    int quadrants = getRotateQuadrants(sourceSize);
+    Dimension unrotatedSize = getUnrotatedTargetDimension(sourceSize);
+
+    BufferedImage resultPage = imagePage;
+    boolean isResampleNeeded = unrotatedSize.width != imagePage.getWidth() || unrotatedSize.height != imagePage.getHeight();
+
+    // 先減少色彩深度讓重新取樣處理較少的資料，之後仍需重新取樣時只轉換為灰階，避免縮小黑白頁面時失去灰階邊緣
+    boolean isColorDepthReduced = false;
+    if (isReduceColorDepth) {
+      BufferedImage reducedPage = ColorDepthReducer.reduce(resultPage, !isResampleNeeded, imagePool);
+      isColorDepthReduced = reducedPage != resultPage;
+      resultPage = replacePage(imagePage, resultPage, reducedPage);
+    }
+
+    if (isResampleNeeded) {
+      BufferedImage resampledPage = resample(resultPage, unrotatedSize);
+      resultPage = replacePage(imagePage, resultPage, resampledPage);
+    }
+
+    if (isFlattenAlpha) {
+      // 重新取樣後的頁面為新建立，可直接修改
+      boolean isInPlace = resultPage != imagePage || isSourceDisposable;
+      boolean hasAlpha = resultPage.getColorModel().hasAlpha();
+      BufferedImage flattenedPage = AlphaFlattener.flatten(resultPage, isInPlace, imagePool);
+      resultPage = replacePage(imagePage, resultPage, flattenedPage);
+
+      // 有透明度的頁面去除透明背景後才能判斷
+      if (isReduceColorDepth && !isColorDepthReduced && hasAlpha) {
+        BufferedImage reducedPage = ColorDepthReducer.reduce(resultPage, true, imagePool);
+        resultPage = replacePage(imagePage, resultPage, reducedPage);
+      }
+    }
+
+    if (quadrants != 0) {
+      BufferedImage rotatedPage = OrthogonalRotator.rotate(resultPage, quadrants, imagePool);
+      resultPage = replacePage(imagePage, resultPage, rotatedPage);
+    }
+
+    return resultPage;
+  }
+
+  /**
+   * 取得套用所有操作後的順時針旋轉次數，每次 90 度。
+   *
+   * @param sourceSize 原始尺寸
+   * @return 旋轉次數，0 - 3
+   */
+  public int getRotateQuadrants(Dimension sourceSize) {
+    Dimension size = sourceSize;
+    int quadrants = 0;
+
+    Iterator<ImageOperation> operationIterator = operationList.iterator();
+    while (operationIterator.hasNext()) {
+      ImageOperation operation = operationIterator.next();
+      if (operation.isRotateNeeded(size.width, size.height)) {
+        quadrants++;
+      }
+
+      size = operation.getTargetDimension(size);
+    }
+
+    return quadrants % 4;
+  }
+
+  /**
+   * 取得套用所有操作後、旋轉前的尺寸，即重新取樣的目標尺寸。
+   *
+   * @param sourceSize 原始尺寸
+   * @return 旋轉前的尺寸
+   */
+  public Dimension getUnrotatedTargetDimension(Dimension sourceSize) {
+    Dimension size = sourceSize;
+
+    Iterator<ImageOperation> operationIterator = operationList.iterator();
+    while (operationIterator.hasNext()) {
+      size = operationIterator.next().getTargetDimension(size);
+    }
+
+    return getRotateQuadrants(sourceSize) % 2 == 0 ? size : new Dimension(size.height, size.width);
+  }
+
+  private BufferedImage resample(BufferedImage imagePage, Dimension size) {
+    ImageBuilder.ResizeQuality resizeQuality = getResizeQuality();
+    if (resizeQuality == ImageBuilder.FAST) {
+      return scale(imagePage, size);
+    }
+
+    BufferedImage sourcePage = imagePage;
+    if (resizeQuality == ImageBuilder.BALANCED && LanczosResampler.isSupported(imagePage.getRaster())) {
+      // 每次縮小一半時雙線性內插即為 2x2 像素平均，縮小至目標尺寸兩倍內再以 Lanczos 處理
+      while (sourcePage.getWidth() / 2 >= size.width && sourcePage.getHeight() / 2 >= size.height) {
+        BufferedImage halvedPage = scale(sourcePage, new Dimension(sourcePage.getWidth() / 2, sourcePage.getHeight() / 2));
+        if (sourcePage != imagePage) {
+          imagePool.release(sourcePage);
+        }
+        sourcePage = halvedPage;
+      }
+
+      if (sourcePage.getWidth() == size.width && sourcePage.getHeight() == size.height) {
+        return sourcePage;
+      }
+    }
+
+    BufferedImage resampledPage = resampleLanczos(sourcePage, size);
+    if (sourcePage != imagePage) {
+      imagePool.release(sourcePage);
+    }
+
+    return resampledPage;
+  }
+
+  private BufferedImage resampleLanczos(BufferedImage imagePage, Dimension size) {
+    BufferedImage resampledPage = null;
+    if (BufferedImagePool.isPoolable(imagePage.getType())) {
+      resampledPage = imagePool.acquire(size.width, size.height, imagePage.getType());
+    }
+
+    // 8 bit 的 int 或 byte 配置直接處理陣列，權重依尺寸快取
+    if (LanczosResampler.isSupported(imagePage.getRaster())) {
+      WritableRaster targetRaster = resampledPage != null ? resampledPage.getRaster() : imagePage.getRaster().createCompatibleWritableRaster(size.width, size.height);
+      if (LanczosResampler.resample(imagePage.getRaster(), targetRaster)) {
+        if (resampledPage != null) {
+          return resampledPage;
+        }
+
+        return new BufferedImage(imagePage.getColorModel(), targetRaster, imagePage.isAlphaPremultiplied(), null);
+      }
+    }
+
+    // 調色盤、1 bit 或 16 bit 等其他配置
+    BufferedImageOp reSampler = new ResampleOp(size.width, size.height, ResampleOp.FILTER_LANCZOS);
+
+    return reSampler.filter(imagePage, resampledPage);
+  }
+
+  /**
+   * 以雙線性內插縮放，目標圖片與原頁面的類型相同。
+   */
+  private BufferedImage scale(BufferedImage imagePage, Dimension size) {
+    BufferedImage scaledPage;
+    if (BufferedImagePool.isPoolable(imagePage.getType())) {
+      scaledPage = imagePool.acquire(size.width, size.height, imagePage.getType());
+    } else {
+      WritableRaster targetRaster = imagePage.getRaster().createCompatibleWritableRaster(size.width, size.height);
+      scaledPage = new BufferedImage(imagePage.getColorModel(), targetRaster, imagePage.isAlphaPremultiplied(), null);
+    }
+
+    Graphics2D g = scaledPage.createGraphics();
+    try {
+      // 緩衝中的圖片保留上次的像素，直接覆寫包含透明度在內的所有像素
+      g.setComposite(AlphaComposite.Src);
+      g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      g.drawImage(imagePage, 0, 0, size.width, size.height, null);
+    } finally {
+      g.dispose();
+    }
+
+    return scaledPage;
+  }
+
+  /**
+   * 多次調整尺寸時以最後一次的品質為準。
+   */
+  private ImageBuilder.ResizeQuality getResizeQuality() {
+    ImageBuilder.ResizeQuality resizeQuality = ImageBuilder.QUALITY;
+
+    Iterator<ImageOperation> operationIterator = operationList.iterator();
+    while (operationIterator.hasNext()) {
+      ImageOperation operation = operationIterator.next();
+      if (operation.getType() == ImageOperation.Type.Resize && operation.getResizeQuality() != null) {
+        resizeQuality = operation.getResizeQuality();
+      }
+    }
+
+    return resizeQuality;
+  }
+
+  private BufferedImage replacePage(BufferedImage imagePage, BufferedImage resultPage, BufferedImage newResultPage) {
+    // 新頁面仍使用舊頁面的 DataBuffer 時不可歸還
+    if (newResultPage == resultPage || newResultPage.getRaster().getDataBuffer() == resultPage.getRaster().getDataBuffer()) {
+      return newResultPage;
+    }
+
+    // 歸還中間結果，但不動到非可丟棄的原頁面
+    if (resultPage != imagePage || isSourceDisposable) {
+      imagePool.release(resultPage);
+    }
+
+    return newResultPage;
+  }
+}
@@ -0,0 +1,96 @@
+package idv.jackblackevo.util;
+
+import java.awt.*;
+
+/**
+ * 要讀取的頁面範圍與頁面中的範圍，讀取時只解碼或繪製選取的部分。
+ */
+class SourceSelection {
+  public static final SourceSelection ALL = new SourceSelection(1, Integer.MAX_VALUE, null);
+
+  private int firstPage;
+  private int lastPage;
+  private Rectangle region;
+
+  private SourceSelection(int firstPage, int lastPage, Rectangle region) {
+    this.firstPage = firstPage;
+    this.lastPage = lastPage;
+    this.region = region;
+  }
+
+  /**
+   * @param firstPage 第一頁，從 1 開始
+   * @param lastPage  最後一頁（包含）
+   * @return 新的選取範圍
+   */
+  public SourceSelection withPages(int firstPage, int lastPage) {
+    if (firstPage < 1 || lastPage < firstPage) {
+      throw new UnsupportedOperationException("Invalid page range!");
+    }
+
+    return new SourceSelection(firstPage, lastPage, region);
+  }
+
+  /**
+   * @param region 頁面中的範圍，PDF 為以預設 DPI 繪製時的像素
+   * @return 新的選取範圍
+   */
+  public SourceSelection withRegion(Rectangle region) {
+    if (region.x < 0 || region.y < 0 || region.width <= 0 || region.height <= 0) {
+      throw new UnsupportedOperationException("Invalid source region!");
+    }
+
+    return new SourceSelection(firstPage, lastPage, new Rectangle(region));
+  }
+
+  public boolean isAll() {
+    return firstPage == 1 && lastPage == Integer.MAX_VALUE && region == null;
+  }
+
+  public boolean hasRegion() {
+    return region != null;
+  }
+
+  /**
+   * @param pageIndex 頁碼，從 0 開始
+   * @return 是否選取此頁
+   */
+  public boolean isPageSelected(int pageIndex) {
+    return pageIndex >= firstPage - 1 && pageIndex <= lastPage - 1;
+  }
+
+  /**
+   * @return 第一個選取的頁碼，從 0 開始
+   */
+  public int getFirstPageIndex() {
+    return firstPage - 1;
+  }
+
+  /**
+   * @param numPages 總頁數
+   * @return 最後一個選取的頁碼（不包含），從 0 開始
+   */
+  public int getEndPageIndex(int numPages) {
+    return (int) Math.min((long) lastPage, numPages);
+  }
+
+  /**
+   * 取得選取範圍於此頁面中的部分。
+   *
+   * @param pageSize 頁面尺寸
+   * @return 頁面中的範圍，未選取範圍時為整個頁面，選取範圍不在此頁面中時為 null
+   */
+  public Rectangle getRegion(Dimension pageSize) {
+    Rectangle pageBounds = new Rectangle(pageSize);
+    if (region == null) {
+      return pageBounds;
+    }
+
+    Rectangle pageRegion = region.intersection(pageBounds);
+    if (pageRegion.isEmpty()) {
+      return null;
+    }
+
+    return pageRegion;
+  }
+}
@@ -0,0 +1,196 @@
+package idv.jackblackevo.util;
+
+import javax.imageio.ImageWriteParam;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+
+/**
+ * 依頁面內容決定 TIFF 的壓縮方式，多頁 TIFF 的每頁可使用不同的壓縮方式。
+ * <p>
+ * 只有黑白的頁面使用 CCITT T.6，顏色數不超過 MAX_FLAT_COLORS 的圖形使用 Deflate，其他（照片）使用 JPEG，有透明度時不使用 JPEG。
+ */
+class TIFFCompressionSelector {
+  private static final String COMPRESSION_CCITT_T6 = "CCITT T.6";
+  private static final String COMPRESSION_LZW = "LZW";
+  private static final String COMPRESSION_DEFLATE = "Deflate";
+  private static final String COMPRESSION_JPEG = "JPEG";
+  private static final String COMPRESSION_NONE = "None";
+
+  private static final int MAX_FLAT_COLORS = 256;
+
+  private static final int BLACK = 0xFF000000;
+  private static final int WHITE = 0xFFFFFFFF;
+
+  private TIFFCompressionSelector() {
+  }
+
+  /**
+   * 設定頁面的壓縮方式，像素只有黑白的頁面於使用 CCITT T.6 時轉換為 1 bit。
+   *
+   * @param imagePage   頁面
+   * @param compression 壓縮方式，頁面無法使用時（如非黑白的頁面使用 CCITT）改為自動選擇
+   * @param quality     JPEG 壓縮品質，範圍為 0.0~1.0，超出範圍時使用預設值
+   * @param writeParam  寫出參數
+   * @return 要寫出的頁面
+   */
+  public static BufferedImage apply(BufferedImage imagePage, ImageBuilder.TIFFCompression compression, float quality, ImageWriteParam writeParam) {
+    writeParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+
+    BufferedImage targetPage = imagePage;
+    String compressionType;
+    switch (compression) {
+      case LZW:
+        compressionType = COMPRESSION_LZW;
+        break;
+      case Deflate:
+        compressionType = COMPRESSION_DEFLATE;
+        break;
+      case JPEG:
+        compressionType = COMPRESSION_JPEG;
+        break;
+      case None:
+        compressionType = COMPRESSION_NONE;
+        break;
+      case CCITT:
+        // 非黑白的頁面改為自動選擇
+      default:
+        if (isBilevel(imagePage)) {
+          compressionType = COMPRESSION_CCITT_T6;
+          break;
+        }
+
+        int numColors = countColors(imagePage);
+        if (numColors <= 2 && isBlackAndWhite(imagePage)) {
+          targetPage = toBilevel(imagePage);
+          compressionType = COMPRESSION_CCITT_T6;
+        } else if (numColors <= MAX_FLAT_COLORS || imagePage.getColorModel().hasAlpha()) {
+          compressionType = COMPRESSION_DEFLATE;
+        } else {
+          compressionType = COMPRESSION_JPEG;
+        }
+        break;
+    }
+
+    // 沒有 None 的 writer（如 JDK 內建的 TIFF writer）以停用壓縮表示不壓縮
+    if (COMPRESSION_NONE.equals(compressionType) && !isCompressionTypeSupported(writeParam, COMPRESSION_NONE)) {
+      writeParam.setCompressionMode(ImageWriteParam.MODE_DISABLED);
+
+      return targetPage;
+    }
+
+    writeParam.setCompressionType(compressionType);
+    if (COMPRESSION_JPEG.equals(compressionType) && quality >= 0 && quality <= 1) {
+      writeParam.setCompressionQuality(quality);
+    }
+
+    return targetPage;
+  }
+
+  private static boolean isCompressionTypeSupported(ImageWriteParam writeParam, String compressionType) {
+    String[] compressionTypes = writeParam.getCompressionTypes();
+    for (int i = 0; i < compressionTypes.length; i++) {
+      if (compressionTypes[i].equals(compressionType)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * 1 bit 且調色盤只有黑白。
+   */
+  private static boolean isBilevel(BufferedImage imagePage) {
+    if (!(imagePage.getColorModel() instanceof IndexColorModel) || imagePage.getColorModel().getPixelSize() != 1) {
+      return false;
+    }
+
+    IndexColorModel indexColorModel = (IndexColorModel) imagePage.getColorModel();
+    for (int i = 0; i < indexColorModel.getMapSize(); i++) {
+      int rgb = indexColorModel.getRGB(i);
+      if (rgb != BLACK && rgb != WHITE) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * 計算顏色數（包含透明度），超過 MAX_FLAT_COLORS 時即停止。
+   *
+   * @return 顏色數，超過時為 MAX_FLAT_COLORS + 1
+   */
+  private static int countColors(BufferedImage imagePage) {
+    int width = imagePage.getWidth();
+    int height = imagePage.getHeight();
+
+    // 以開放定址的雜湊表記錄顏色，大小為 2 的次方且至少為上限的兩倍
+    int[] colorTable = new int[MAX_FLAT_COLORS * 4];
+    boolean[] isUsed = new boolean[colorTable.length];
+    int mask = colorTable.length - 1;
+    int numColors = 0;
+
+    int[] row = new int[width];
+    for (int y = 0; y < height; y++) {
+      imagePage.getRGB(0, y, width, 1, row, 0, width);
+      int lastRGB = ~row[0];
+      for (int x = 0; x < width; x++) {
+        int rgb = row[x];
+        if (rgb == lastRGB) {
+          continue;
+        }
+        lastRGB = rgb;
+
+        int index = (rgb * 0x9E3779B1) >>> 22 & mask;
+        while (isUsed[index] && colorTable[index] != rgb) {
+          index = (index + 1) & mask;
+        }
+
+        if (!isUsed[index]) {
+          if (++numColors > MAX_FLAT_COLORS) {
+            return numColors;
+          }
+          isUsed[index] = true;
+          colorTable[index] = rgb;
+        }
+      }
+    }
+
+    return numColors;
+  }
+
+  private static boolean isBlackAndWhite(BufferedImage imagePage) {
+    int width = imagePage.getWidth();
+    int height = imagePage.getHeight();
+
+    int[] row = new int[width];
+    for (int y = 0; y < height; y++) {
+      imagePage.getRGB(0, y, width, 1, row, 0, width);
+      for (int x = 0; x < width; x++) {
+        if (row[x] != BLACK && row[x] != WHITE) {
+          return false;
+        }
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * 轉換像素只有黑白的頁面，結果與原頁面完全一致。
+   */
+  private static BufferedImage toBilevel(BufferedImage imagePage) {
+    int width = imagePage.getWidth();
+    int height = imagePage.getHeight();
+    BufferedImage bilevelPage = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY);
+
+    int[] row = new int[width];
+    for (int y = 0; y < height; y++) {
+      imagePage.getRGB(0, y, width, 1, row, 0, width);
+      bilevelPage.setRGB(0, y, width, 1, row, 0, width);
+    }
+
+    return bilevelPage;
+  }
+}
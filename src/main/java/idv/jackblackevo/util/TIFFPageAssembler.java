@@ -0,0 +1,265 @@
+package idv.jackblackevo.util;
+
+import javax.imageio.IIOException;
+import javax.imageio.stream.ImageOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 將各自編碼完成的單頁 TIFF 依序串接為多頁 TIFF。
+ * <p>
+ * 每頁除檔頭外原樣寫入，只重新計算 IFD 中的位移並串接 IFD 鏈，頁面可由多個執行緒同時編碼。
+ */
+class TIFFPageAssembler {
+  private static final int HEADER_LENGTH = 8;
+  private static final int PAGE_GAP_LENGTH = 4;
+
+  private static final int TAG_STRIP_OFFSETS = 273;
+  private static final int TAG_FREE_OFFSETS = 288;
+  private static final int TAG_TILE_OFFSETS = 324;
+  private static final int TAG_SUB_IFDS = 330;
+  private static final int TAG_JPEG_INTERCHANGE_FORMAT = 513;
+  private static final int TAG_JPEG_Q_TABLES = 519;
+  private static final int TAG_JPEG_DC_TABLES = 520;
+  private static final int TAG_JPEG_AC_TABLES = 521;
+  private static final int TAG_EXIF_IFD = 34665;
+  private static final int TAG_GPS_IFD = 34853;
+  private static final int TAG_INTEROPERABILITY_IFD = 40965;
+
+  private static final int TYPE_LONG = 4;
+  private static final int TYPE_IFD = 13;
+
+  private ImageOutputStream ios;
+  private ByteOrder byteOrder;
+  private long nextIFDPointerPosition = -1;
+  private long endPosition = 0;
+
+  public TIFFPageAssembler(ImageOutputStream ios) {
+    this.ios = ios;
+  }
+
+  /**
+   * 附加一個單頁 TIFF，此陣列的內容會被修改。
+   *
+   * @param tiffBytes 單頁 TIFF
+   * @throws IOException
+   */
+  public void append(byte[] tiffBytes) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(tiffBytes);
+    ByteOrder pageByteOrder = readByteOrder(buffer);
+    if (byteOrder == null) {
+      byteOrder = pageByteOrder;
+      ios.setByteOrder(byteOrder);
+    } else if (byteOrder != pageByteOrder) {
+      throw new IIOException("TIFF pages have different byte orders!");
+    }
+    buffer.order(byteOrder);
+
+    long firstIFDOffset = buffer.getInt(4) & 0xFFFFFFFFL;
+
+    // 第一頁連同檔頭寫入，之後的頁面只寫入檔頭之後的內容，並與 writeToSequence 相同於頁面之間保留 4 byte
+    long pagePosition = endPosition;
+    long delta = 0;
+    if (nextIFDPointerPosition >= 0) {
+      ios.seek(pagePosition);
+      ios.writeInt(0);
+      pagePosition += PAGE_GAP_LENGTH;
+      delta = pagePosition - HEADER_LENGTH;
+    }
+
+    relocateIFDOffsetCopy(buffer, firstIFDOffset, delta);
+    long lastNextIFDPointer = relocateIFDChain(buffer, firstIFDOffset, delta);
+
+    ios.seek(pagePosition);
+    if (nextIFDPointerPosition < 0) {
+      ios.write(tiffBytes);
+    } else {
+      ios.write(tiffBytes, HEADER_LENGTH, tiffBytes.length - HEADER_LENGTH);
+
+      // 將上一頁最後一個 IFD 指向此頁
+      ios.seek(nextIFDPointerPosition);
+      ios.writeInt(toUnsignedInt(firstIFDOffset + delta));
+    }
+    nextIFDPointerPosition = lastNextIFDPointer + delta;
+
+    endPosition = pagePosition + tiffBytes.length - (delta == 0 ? 0 : HEADER_LENGTH);
+    ios.seek(endPosition);
+  }
+
+  /**
+   * 重新計算 IFD 鏈中所有位移。
+   *
+   * @return 最後一個 IFD 之下一個 IFD 位移欄位於此頁中的位置
+   */
+  private static long relocateIFDChain(ByteBuffer buffer, long ifdOffset, long delta) throws IOException {
+    long nextIFDPointer = -1;
+    while (ifdOffset != 0) {
+      nextIFDPointer = relocateIFD(buffer, ifdOffset, delta);
+
+      ifdOffset = buffer.getInt((int) nextIFDPointer) & 0xFFFFFFFFL;
+      if (ifdOffset != 0) {
+        buffer.putInt((int) nextIFDPointer, toUnsignedInt(ifdOffset + delta));
+      }
+    }
+
+    if (nextIFDPointer < 0) {
+      throw new IIOException("TIFF page has no IFD!");
+    }
+
+    return nextIFDPointer;
+  }
+
+  private static long relocateIFD(ByteBuffer buffer, long ifdOffset, long delta) throws IOException {
+    int ifdPosition = checkPosition(buffer, ifdOffset, 2);
+    int numEntries = buffer.getShort(ifdPosition) & 0xFFFF;
+    int entryPosition = ifdPosition + 2;
+    checkPosition(buffer, entryPosition, numEntries * 12 + 4);
+
+    for (int i = 0; i < numEntries; i++, entryPosition += 12) {
+      int tag = buffer.getShort(entryPosition) & 0xFFFF;
+      int type = buffer.getShort(entryPosition + 2) & 0xFFFF;
+      long count = buffer.getInt(entryPosition + 4) & 0xFFFFFFFFL;
+
+      long valueLength = getTypeLength(type) * count;
+      int valuePosition = entryPosition + 8;
+      if (valueLength > 4) {
+        // 資料不在欄位內時，此欄位即為資料的位移
+        long valueOffset = buffer.getInt(valuePosition) & 0xFFFFFFFFL;
+        buffer.putInt(valuePosition, toUnsignedInt(valueOffset + delta));
+        valuePosition = checkPosition(buffer, valueOffset, valueLength);
+      }
+
+      boolean isIFDPointer = isIFDPointerTag(tag);
+      if (isIFDPointer || isOffsetTag(tag)) {
+        if (type != TYPE_LONG && type != TYPE_IFD) {
+          throw new IIOException("Unsupported TIFF offset type: " + type);
+        }
+
+        for (int j = 0; j < count; j++) {
+          int position = valuePosition + j * 4;
+          long offset = buffer.getInt(position) & 0xFFFFFFFFL;
+          if (isIFDPointer) {
+            relocateIFDChain(buffer, offset, delta);
+          }
+          buffer.putInt(position, toUnsignedInt(offset + delta));
+        }
+      }
+    }
+
+    return entryPosition;
+  }
+
+  /**
+   * ImageWriter 會在 IFD 及其資料之前另寫入一份 IFD 位移，一併重新計算以維持與 writeToSequence 相同的輸出。
+   */
+  private static void relocateIFDOffsetCopy(ByteBuffer buffer, long ifdOffset, long delta) throws IOException {
+    int ifdPosition = checkPosition(buffer, ifdOffset, 2);
+    int numEntries = buffer.getShort(ifdPosition) & 0xFFFF;
+    checkPosition(buffer, ifdPosition + 2, numEntries * 12 + 4);
+
+    long blockOffset = ifdOffset;
+    for (int i = 0; i < numEntries; i++) {
+      int entryPosition = ifdPosition + 2 + i * 12;
+      int type = buffer.getShort(entryPosition + 2) & 0xFFFF;
+      long count = buffer.getInt(entryPosition + 4) & 0xFFFFFFFFL;
+      if (getTypeLength(type) * count > 4) {
+        blockOffset = Math.min(blockOffset, buffer.getInt(entryPosition + 8) & 0xFFFFFFFFL);
+      }
+    }
+
+    int copyPosition = (int) blockOffset - 4;
+    if (copyPosition >= HEADER_LENGTH && (buffer.getInt(copyPosition) & 0xFFFFFFFFL) == ifdOffset) {
+      buffer.putInt(copyPosition, toUnsignedInt(ifdOffset + delta));
+    }
+  }
+
+  private static ByteOrder readByteOrder(ByteBuffer buffer) throws IOException {
+    if (buffer.limit() < HEADER_LENGTH) {
+      throw new IIOException("Invalid TIFF page!");
+    }
+
+    ByteOrder pageByteOrder;
+    if (buffer.get(0) == 'I' && buffer.get(1) == 'I') {
+      pageByteOrder = ByteOrder.LITTLE_ENDIAN;
+    } else if (buffer.get(0) == 'M' && buffer.get(1) == 'M') {
+      pageByteOrder = ByteOrder.BIG_ENDIAN;
+    } else {
+      throw new IIOException("Invalid TIFF page!");
+    }
+
+    // 不支援 BigTIFF
+    if (buffer.order(pageByteOrder).getShort(2) != 42) {
+      throw new IIOException("Unsupported TIFF version!");
+    }
+
+    return pageByteOrder;
+  }
+
+  private static boolean isOffsetTag(int tag) {
+    switch (tag) {
+      case TAG_STRIP_OFFSETS:
+      case TAG_FREE_OFFSETS:
+      case TAG_TILE_OFFSETS:
+      case TAG_JPEG_INTERCHANGE_FORMAT:
+      case TAG_JPEG_Q_TABLES:
+      case TAG_JPEG_DC_TABLES:
+      case TAG_JPEG_AC_TABLES:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private static boolean isIFDPointerTag(int tag) {
+    switch (tag) {
+      case TAG_SUB_IFDS:
+      case TAG_EXIF_IFD:
+      case TAG_GPS_IFD:
+      case TAG_INTEROPERABILITY_IFD:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private static long getTypeLength(int type) throws IOException {
+    switch (type) {
+      case 1: // BYTE
+      case 2: // ASCII
+      case 6: // SBYTE
+      case 7: // UNDEFINED
+        return 1;
+      case 3: // SHORT
+      case 8: // SSHORT
+        return 2;
+      case 4: // LONG
+      case 9: // SLONG
+      case 11: // FLOAT
+      case 13: // IFD
+        return 4;
+      case 5: // RATIONAL
+      case 10: // SRATIONAL
+      case 12: // DOUBLE
+        return 8;
+      default:
+        throw new IIOException("Unsupported TIFF field type: " + type);
+    }
+  }
+
+  private static int checkPosition(ByteBuffer buffer, long offset, long length) throws IOException {
+    if (offset < HEADER_LENGTH || offset + length > buffer.limit()) {
+      throw new IIOException("Invalid TIFF offset: " + offset);
+    }
+
+    return (int) offset;
+  }
+
+  private static int toUnsignedInt(long offset) throws IOException {
+    if (offset > 0xFFFFFFFFL) {
+      throw new IIOException("TIFF file is larger than 4 GB!");
+    }
+
+    return (int) offset;
+  }
+}
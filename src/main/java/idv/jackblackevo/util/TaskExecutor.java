@@ -0,0 +1,197 @@
+package idv.jackblackevo.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class TaskExecutor implements Closeable {
+  private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+  private ExecutorService executorService;
+
+  public TaskExecutor(int numWorkers) {
+    // 單一 worker 時直接於呼叫端執行緒執行，不建立執行緒池
+    if (numWorkers > 1) {
+      executorService = Executors.newFixedThreadPool(numWorkers, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "ImageUtil-worker-" + THREAD_COUNTER.incrementAndGet());
+          thread.setDaemon(true);
+
+          return thread;
+        }
+      });
+    }
+  }
+
+  public boolean isParallel() {
+    return executorService != null;
+  }
+
+  public <T> Future<T> submit(Callable<T> task) {
+    TaskFuture<T> futureTask = new TaskFuture<>(task);
+    if (executorService == null) {
+      futureTask.run();
+    } else {
+      executorService.execute(futureTask);
+    }
+
+    return futureTask;
+  }
+
+  /**
+   * 執行所有工作，並依工作順序回傳結果。
+   *
+   * @param tasks 工作 List
+   * @return 結果 List
+   * @throws IOException
+   */
+  public <T> List<T> invokeAll(List<Callable<T>> tasks) throws IOException {
+    List<Future<T>> futureList = new ArrayList<>();
+    Iterator<Callable<T>> taskIterator = tasks.iterator();
+    while (taskIterator.hasNext()) {
+      futureList.add(submit(taskIterator.next()));
+    }
+
+    List<T> resultList = new ArrayList<>();
+    try {
+      Iterator<Future<T>> futureIterator = futureList.iterator();
+      while (futureIterator.hasNext()) {
+        resultList.add(getResult(futureIterator.next()));
+      }
+    } catch (IOException | RuntimeException | Error e) {
+      Iterator<Future<T>> futureIterator = futureList.iterator();
+      while (futureIterator.hasNext()) {
+        futureIterator.next().cancel(true);
+      }
+
+      // 等待執行中的工作結束，避免之後釋放的資源仍被使用
+      futureIterator = futureList.iterator();
+      while (futureIterator.hasNext()) {
+        ((TaskFuture<T>) futureIterator.next()).awaitFinished();
+      }
+
+      throw e;
+    }
+
+    return resultList;
+  }
+
+  /**
+   * 中斷所有工作，並等待執行中的工作結束。
+   */
+  @Override
+  public void close() {
+    if (executorService == null) {
+      return;
+    }
+
+    executorService.shutdownNow();
+
+    boolean isInterrupted = false;
+    while (true) {
+      try {
+        if (executorService.awaitTermination(1, TimeUnit.SECONDS)) {
+          break;
+        }
+      } catch (InterruptedException e) {
+        isInterrupted = true;
+      }
+    }
+    if (isInterrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * 取得工作結果，工作尚未開始時由呼叫端執行緒直接執行，避免巢狀等待造成死結。
+   *
+   * @param future 工作
+   * @return 結果
+   * @throws IOException
+   */
+  public static <T> T getResult(Future<T> future) throws IOException {
+    if (future instanceof FutureTask) {
+      ((FutureTask<T>) future).run();
+    }
+
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+
+      throw new InterruptedIOException("Interrupted while waiting for image task!");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+
+      throw new IOException(cause);
+    }
+  }
+
+  public static int getNumWorkers(int numWorkers) {
+    if (numWorkers <= 0) {
+      return Runtime.getRuntime().availableProcessors();
+    }
+
+    return numWorkers;
+  }
+
+  /**
+   * 記錄是否執行中的 FutureTask，取消後仍可等待執行中的工作結束。
+   */
+  private static class TaskFuture<T> extends FutureTask<T> {
+    private boolean isRunning;
+
+    public TaskFuture(Callable<T> callable) {
+      super(callable);
+    }
+
+    @Override
+    public void run() {
+      synchronized (this) {
+        if (isDone() || isRunning) {
+          return;
+        }
+        isRunning = true;
+      }
+
+      try {
+        super.run();
+      } finally {
+        synchronized (this) {
+          isRunning = false;
+          notifyAll();
+        }
+      }
+    }
+
+    /**
+     * 等待執行中的工作結束，等待時不中斷。
+     */
+    public synchronized void awaitFinished() {
+      boolean isInterrupted = false;
+      while (isRunning) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          isInterrupted = true;
+        }
+      }
+      if (isInterrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
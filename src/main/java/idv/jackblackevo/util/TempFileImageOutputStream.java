@@ -0,0 +1,57 @@
+package idv.jackblackevo.util;
+
+import javax.imageio.stream.FileImageOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+
+/**
+ * 先寫入暫存檔，關閉時再複製至目標串流並刪除暫存檔。
+ * <p>
+ * 取代 FileCacheImageOutputStream：TIFF writer 於其上以 writeToSequence 寫出多頁時，第二頁之後的資料位移會錯誤。
+ */
+class TempFileImageOutputStream extends FileImageOutputStream {
+  private File tempFile;
+  private OutputStream os;
+
+  private TempFileImageOutputStream(File tempFile, OutputStream os) throws IOException {
+    super(tempFile);
+    this.tempFile = tempFile;
+    this.os = os;
+  }
+
+  /**
+   * @param os       目標串流，關閉時不會關閉此串流
+   * @param cacheDir 暫存檔目錄，null 時為系統預設
+   * @return ImageOutputStream
+   * @throws IOException
+   */
+  public static TempFileImageOutputStream create(OutputStream os, File cacheDir) throws IOException {
+    File tempFile = File.createTempFile("imageio", ".tmp", cacheDir);
+    try {
+      return new TempFileImageOutputStream(tempFile, os);
+    } catch (IOException e) {
+      tempFile.delete();
+
+      throw e;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (tempFile == null) {
+      return;
+    }
+
+    try {
+      super.close();
+
+      Files.copy(tempFile.toPath(), os);
+      os.flush();
+    } finally {
+      tempFile.delete();
+      tempFile = null;
+    }
+  }
+}
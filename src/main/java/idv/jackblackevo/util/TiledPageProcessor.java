@@ -0,0 +1,271 @@
+package idv.jackblackevo.util;
+
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import java.awt.*;
+import java.awt.color.ColorSpace;
+import java.awt.image.*;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * 逐塊處理頁面並寫出為 tiled TIFF，不需將整頁解碼。
+ * <p>
+ * 來源依輸出 tile 對應的範圍逐段讀取（同一段的 tile 於旋轉前位於相同的列），重新取樣時以整頁座標計算權重並多讀取濾波器需要的列，
+ * 接縫處與整頁處理的結果相同。縮小時再分段讀取，記憶體用量只與 tile 大小及頁面寬度相關。
+ */
+class TiledPageProcessor {
+  private TiledTIFFWriter writer;
+  private int tileSize;
+
+  public TiledPageProcessor(TiledTIFFWriter writer) {
+    this.writer = writer;
+    this.tileSize = writer.getTileSize();
+  }
+
+  /**
+   * 逐段讀取來源頁面，重新取樣並旋轉後逐塊寫出。
+   *
+   * @param imageReader   已設定輸入的 ImageReader
+   * @param pageIndex     頁碼，從 0 開始
+   * @param region        頁面中要處理的範圍
+   * @param unrotatedSize 旋轉前的目標尺寸
+   * @param quadrants     順時針旋轉次數，每次 90 度
+   * @param subsampling   解碼時的取樣間隔
+   * @throws IOException
+   */
+  public void writePage(ImageReader imageReader, int pageIndex, Rectangle region, Dimension unrotatedSize, int quadrants, int subsampling) throws IOException {
+    int numBands = isGray(getImageType(imageReader, pageIndex)) ? 1 : 3;
+
+    // 解碼時跳過像素後的來源尺寸
+    int srcWidth = (region.width + subsampling - 1) / subsampling;
+    int srcHeight = (region.height + subsampling - 1) / subsampling;
+    int width = unrotatedSize.width;
+    int height = unrotatedSize.height;
+    boolean isResampleNeeded = srcWidth != width || srcHeight != height;
+
+    LanczosResampler.Contributions xContribs = null;
+    if (isResampleNeeded) {
+      xContribs = LanczosResampler.getContributions(srcWidth, width);
+    }
+
+    Dimension targetSize = quadrants % 2 == 0 ? new Dimension(width, height) : new Dimension(height, width);
+    int numTilesAcross = (targetSize.width + tileSize - 1) / tileSize;
+    int numTilesDown = (targetSize.height + tileSize - 1) / tileSize;
+
+    writer.beginPage(targetSize.width, targetSize.height, numBands);
+
+    // 同一組的 tile 於旋轉前位於相同的列，旋轉次數為奇數時為同一欄的 tile
+    int numGroups = quadrants % 2 == 0 ? numTilesDown : numTilesAcross;
+    int numTilesPerGroup = quadrants % 2 == 0 ? numTilesAcross : numTilesDown;
+    byte[] tileData = new byte[tileSize * tileSize * numBands];
+    for (int group = 0; group < numGroups; group++) {
+      Rectangle groupRect = toUnrotated(getTileRect(group, 0, quadrants, targetSize), quadrants, width, height);
+      int dstY0 = groupRect.y;
+      int dstY1 = groupRect.y + groupRect.height;
+
+      byte[] rowsData;
+      if (isResampleNeeded) {
+        rowsData = new byte[width * (dstY1 - dstY0) * numBands];
+        // 縮小時一次讀取的來源列數接近 tile 大小，分段重新取樣
+        int stripHeight = Math.max(1, Math.min(dstY1 - dstY0, (int) ((long) tileSize * height / srcHeight)));
+        for (int stripY0 = dstY0; stripY0 < dstY1; stripY0 += stripHeight) {
+          int stripY1 = Math.min(dstY1, stripY0 + stripHeight);
+          int[] srcRange = LanczosResampler.getSourceRange(srcHeight, height, stripY0, stripY1);
+          byte[] srcData = readRows(imageReader, pageIndex, region, subsampling, srcRange[0], srcRange[1], srcWidth, numBands);
+          LanczosResampler.Contributions yContribs = LanczosResampler.computeContributions(srcHeight, height, stripY0, stripY1, srcRange[0]);
+          byte[] stripData = LanczosResampler.resample(srcData, srcWidth, numBands, xContribs, yContribs);
+          System.arraycopy(stripData, 0, rowsData, width * (stripY0 - dstY0) * numBands, stripData.length);
+        }
+      } else {
+        rowsData = readRows(imageReader, pageIndex, region, subsampling, dstY0, dstY1, srcWidth, numBands);
+      }
+
+      for (int i = 0; i < numTilesPerGroup; i++) {
+        Rectangle tileRect = getTileRect(group, i, quadrants, targetSize);
+        Rectangle unrotatedRect = toUnrotated(tileRect, quadrants, width, height);
+        copyToTile(rowsData, dstY0, numBands, unrotatedRect, tileRect, quadrants, width, height, tileData);
+        writer.writeTile(tileRect.x / tileSize, tileRect.y / tileSize, tileData);
+      }
+    }
+
+    writer.endPage();
+  }
+
+  /**
+   * 將已處理完成的頁面逐塊寫出。
+   *
+   * @param imagePage 頁面
+   * @throws IOException
+   */
+  public void writePage(BufferedImage imagePage) throws IOException {
+    int width = imagePage.getWidth();
+    int height = imagePage.getHeight();
+    int numBands = isGray(new ImageTypeSpecifier(imagePage)) ? 1 : 3;
+
+    writer.beginPage(width, height, numBands);
+
+    BufferedImage tileImage = createImage(tileSize, tileSize, numBands);
+    byte[] tileData = ((DataBufferByte) tileImage.getRaster().getDataBuffer()).getData();
+    Graphics2D g = tileImage.createGraphics();
+    try {
+      g.setBackground(Color.WHITE);
+      for (int y = 0; y < height; y += tileSize) {
+        for (int x = 0; x < width; x += tileSize) {
+          g.clearRect(0, 0, tileSize, tileSize);
+          g.drawImage(imagePage.getSubimage(x, y, Math.min(tileSize, width - x), Math.min(tileSize, height - y)), 0, 0, null);
+          writer.writeTile(x / tileSize, y / tileSize, tileData);
+        }
+      }
+    } finally {
+      g.dispose();
+    }
+
+    writer.endPage();
+  }
+
+  /**
+   * 讀取來源範圍中的列，轉換為白色背景的 8 bit 灰階或 RGB。
+   */
+  private static byte[] readRows(ImageReader imageReader, int pageIndex, Rectangle region, int subsampling, int srcY0, int srcY1, int srcWidth, int numBands) throws IOException {
+    ImageReadParam imageReadParam = imageReader.getDefaultReadParam();
+    imageReadParam.setSourceRegion(new Rectangle(region.x, region.y + srcY0 * subsampling, region.width, (srcY1 - srcY0 - 1) * subsampling + 1));
+    if (subsampling > 1) {
+      imageReadParam.setSourceSubsampling(subsampling, subsampling, 0, 0);
+    }
+
+    BufferedImage rows = imageReader.read(pageIndex, imageReadParam);
+
+    BufferedImage normalizedRows = createImage(srcWidth, srcY1 - srcY0, numBands);
+    Graphics2D g = normalizedRows.createGraphics();
+    try {
+      g.setBackground(Color.WHITE);
+      g.clearRect(0, 0, normalizedRows.getWidth(), normalizedRows.getHeight());
+      g.drawImage(rows, 0, 0, null);
+    } finally {
+      g.dispose();
+    }
+    rows.flush();
+
+    return ((DataBufferByte) normalizedRows.getRaster().getDataBuffer()).getData();
+  }
+
+  /**
+   * 建立 pixel interleaved、順序為 RGB 的圖片（TYPE_3BYTE_BGR 為 BGR 順序，不符合 TIFF）。
+   */
+  private static BufferedImage createImage(int width, int height, int numBands) {
+    if (numBands == 1) {
+      return new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+    }
+
+    ColorModel colorModel = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+    WritableRaster raster = Raster.createInterleavedRaster(DataBuffer.TYPE_BYTE, width, height, width * 3, 3, new int[]{0, 1, 2}, null);
+
+    return new BufferedImage(colorModel, raster, false, null);
+  }
+
+  /**
+   * 取得旋轉後的 tile 範圍，已裁切至頁面內。
+   */
+  private Rectangle getTileRect(int group, int index, int quadrants, Dimension targetSize) {
+    int tileX = quadrants % 2 == 0 ? index : group;
+    int tileY = quadrants % 2 == 0 ? group : index;
+
+    Rectangle tileRect = new Rectangle(tileX * tileSize, tileY * tileSize, tileSize, tileSize);
+
+    return tileRect.intersection(new Rectangle(targetSize));
+  }
+
+  /**
+   * 將旋轉後的範圍換算為旋轉前的範圍。
+   */
+  private static Rectangle toUnrotated(Rectangle rect, int quadrants, int width, int height) {
+    switch (quadrants) {
+      case 1:
+        return new Rectangle(rect.y, height - rect.x - rect.width, rect.height, rect.width);
+      case 2:
+        return new Rectangle(width - rect.x - rect.width, height - rect.y - rect.height, rect.width, rect.height);
+      case 3:
+        return new Rectangle(width - rect.y - rect.height, rect.x, rect.height, rect.width);
+      default:
+        return rect;
+    }
+  }
+
+  /**
+   * 將旋轉前的範圍旋轉後複製至 tile，rowsData 為旋轉前自 rowsY 開始、寬為 width 的列。
+   */
+  private void copyToTile(byte[] rowsData, int rowsY, int numBands, Rectangle unrotatedRect, Rectangle tileRect, int quadrants, int width, int height, byte[] tileData) {
+    for (int uy = unrotatedRect.y; uy < unrotatedRect.y + unrotatedRect.height; uy++) {
+      int srcIndex = ((uy - rowsY) * width + unrotatedRect.x) * numBands;
+      for (int ux = unrotatedRect.x; ux < unrotatedRect.x + unrotatedRect.width; ux++) {
+        int fx;
+        int fy;
+        switch (quadrants) {
+          case 1:
+            fx = height - 1 - uy;
+            fy = ux;
+            break;
+          case 2:
+            fx = width - 1 - ux;
+            fy = height - 1 - uy;
+            break;
+          case 3:
+            fx = uy;
+            fy = width - 1 - ux;
+            break;
+          default:
+            fx = ux;
+            fy = uy;
+            break;
+        }
+
+        int tileIndex = ((fy - tileRect.y) * tileSize + (fx - tileRect.x)) * numBands;
+        for (int b = 0; b < numBands; b++) {
+          tileData[tileIndex + b] = rowsData[srcIndex++];
+        }
+      }
+    }
+  }
+
+  private static ImageTypeSpecifier getImageType(ImageReader imageReader, int pageIndex) throws IOException {
+    ImageTypeSpecifier imageType = imageReader.getRawImageType(pageIndex);
+    if (imageType == null) {
+      Iterator<ImageTypeSpecifier> imageTypeIterator = imageReader.getImageTypes(pageIndex);
+      if (imageTypeIterator.hasNext()) {
+        imageType = imageTypeIterator.next();
+      }
+    }
+
+    return imageType;
+  }
+
+  /**
+   * 灰階或調色盤只有灰色且無透明時以灰階寫出。
+   */
+  private static boolean isGray(ImageTypeSpecifier imageType) {
+    if (imageType == null) {
+      return false;
+    }
+
+    ColorModel colorModel = imageType.getColorModel();
+    if (colorModel.hasAlpha()) {
+      return false;
+    }
+
+    if (colorModel instanceof IndexColorModel) {
+      IndexColorModel indexColorModel = (IndexColorModel) colorModel;
+      for (int i = 0; i < indexColorModel.getMapSize(); i++) {
+        int rgb = indexColorModel.getRGB(i);
+        if (((rgb >> 16) & 0xFF) != (rgb & 0xFF) || ((rgb >> 8) & 0xFF) != (rgb & 0xFF)) {
+          return false;
+        }
+      }
+
+      return true;
+    }
+
+    return colorModel.getColorSpace().getType() == ColorSpace.TYPE_GRAY;
+  }
+}
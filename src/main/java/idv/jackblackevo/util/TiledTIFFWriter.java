@@ -0,0 +1,224 @@
+package idv.jackblackevo.util;
+
+import javax.imageio.IIOException;
+import javax.imageio.stream.ImageOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.zip.Deflater;
+
+/**
+ * 逐塊寫出 tiled TIFF，每個 tile 以 Deflate 壓縮後立即寫出，只保留各 tile 的位移與長度。
+ * <p>
+ * tile 可依任意順序寫出，每頁的 IFD 於該頁結束時寫在資料之後，頁面依序串接為多頁 TIFF。
+ */
+class TiledTIFFWriter {
+  private static final int TAG_IMAGE_WIDTH = 256;
+  private static final int TAG_IMAGE_LENGTH = 257;
+  private static final int TAG_BITS_PER_SAMPLE = 258;
+  private static final int TAG_COMPRESSION = 259;
+  private static final int TAG_PHOTOMETRIC_INTERPRETATION = 262;
+  private static final int TAG_SAMPLES_PER_PIXEL = 277;
+  private static final int TAG_PLANAR_CONFIGURATION = 284;
+  private static final int TAG_TILE_WIDTH = 322;
+  private static final int TAG_TILE_LENGTH = 323;
+  private static final int TAG_TILE_OFFSETS = 324;
+  private static final int TAG_TILE_BYTE_COUNTS = 325;
+
+  private static final int TYPE_SHORT = 3;
+  private static final int TYPE_LONG = 4;
+
+  private static final int COMPRESSION_DEFLATE = 8;
+  private static final int PHOTOMETRIC_BLACK_IS_ZERO = 1;
+  private static final int PHOTOMETRIC_RGB = 2;
+
+  private ImageOutputStream ios;
+  private int tileSize;
+  private Deflater deflater = new Deflater();
+  private byte[] deflateBuffer = new byte[64 * 1024];
+  private long nextIFDPointerPosition = -1;
+
+  private int width;
+  private int height;
+  private int numBands;
+  private int numTilesAcross;
+  private long[] tileOffsets;
+  private long[] tileByteCounts;
+
+  /**
+   * @param ios      輸出串流
+   * @param tileSize tile 寬高，須為 16 的倍數
+   */
+  public TiledTIFFWriter(ImageOutputStream ios, int tileSize) {
+    if (tileSize <= 0 || tileSize % 16 != 0) {
+      throw new UnsupportedOperationException("Tile size must be a multiple of 16!");
+    }
+
+    this.ios = ios;
+    this.tileSize = tileSize;
+  }
+
+  public int getTileSize() {
+    return tileSize;
+  }
+
+  /**
+   * 開始新的一頁。
+   *
+   * @param width    頁面寬
+   * @param height   頁面高
+   * @param numBands 1 為灰階，3 為 RGB
+   * @throws IOException
+   */
+  public void beginPage(int width, int height, int numBands) throws IOException {
+    if (numBands != 1 && numBands != 3) {
+      throw new UnsupportedOperationException("Only support gray or RGB pages!");
+    }
+
+    if (nextIFDPointerPosition < 0) {
+      ios.setByteOrder(ByteOrder.BIG_ENDIAN);
+      ios.seek(0);
+      ios.writeShort(0x4D4D);
+      ios.writeShort(42);
+      nextIFDPointerPosition = ios.getStreamPosition();
+      ios.writeInt(0);
+    }
+
+    this.width = width;
+    this.height = height;
+    this.numBands = numBands;
+    this.numTilesAcross = (width + tileSize - 1) / tileSize;
+    int numTiles = numTilesAcross * ((height + tileSize - 1) / tileSize);
+    this.tileOffsets = new long[numTiles];
+    this.tileByteCounts = new long[numTiles];
+  }
+
+  /**
+   * 寫出一個 tile。
+   *
+   * @param tileX    tile 欄位置
+   * @param tileY    tile 列位置
+   * @param tileData tile 資料，tileSize x tileSize 個像素、pixel interleaved，超出頁面的部分會被忽略
+   * @throws IOException
+   */
+  public void writeTile(int tileX, int tileY, byte[] tileData) throws IOException {
+    int tileIndex = tileY * numTilesAcross + tileX;
+    if (tileOffsets[tileIndex] != 0) {
+      throw new IIOException("Tile is already written!");
+    }
+
+    long offset = ios.getStreamPosition();
+    deflater.reset();
+    deflater.setInput(tileData, 0, tileSize * tileSize * numBands);
+    deflater.finish();
+    while (!deflater.finished()) {
+      int n = deflater.deflate(deflateBuffer);
+      ios.write(deflateBuffer, 0, n);
+    }
+
+    tileOffsets[tileIndex] = offset;
+    tileByteCounts[tileIndex] = ios.getStreamPosition() - offset;
+  }
+
+  /**
+   * 結束此頁，寫出 IFD 並串接至上一頁。
+   *
+   * @throws IOException
+   */
+  public void endPage() throws IOException {
+    for (int i = 0; i < tileOffsets.length; i++) {
+      if (tileOffsets[i] == 0) {
+        throw new IIOException("Tile " + i + " is not written!");
+      }
+    }
+
+    // IFD 與其資料須從 word 邊界開始
+    if (ios.getStreamPosition() % 2 != 0) {
+      ios.writeByte(0);
+    }
+
+    long bitsPerSampleOffset = ios.getStreamPosition();
+    if (numBands > 1) {
+      for (int i = 0; i < numBands; i++) {
+        ios.writeShort(8);
+      }
+    }
+
+    long tileOffsetsOffset = writeLongArray(tileOffsets);
+    long tileByteCountsOffset = writeLongArray(tileByteCounts);
+
+    long ifdOffset = ios.getStreamPosition();
+    ios.writeShort(11);
+    writeEntry(TAG_IMAGE_WIDTH, TYPE_LONG, 1, width);
+    writeEntry(TAG_IMAGE_LENGTH, TYPE_LONG, 1, height);
+    if (numBands > 1) {
+      writeEntry(TAG_BITS_PER_SAMPLE, TYPE_SHORT, numBands, bitsPerSampleOffset);
+    } else {
+      writeShortEntry(TAG_BITS_PER_SAMPLE, 8);
+    }
+    writeShortEntry(TAG_COMPRESSION, COMPRESSION_DEFLATE);
+    writeShortEntry(TAG_PHOTOMETRIC_INTERPRETATION, numBands > 1 ? PHOTOMETRIC_RGB : PHOTOMETRIC_BLACK_IS_ZERO);
+    writeShortEntry(TAG_SAMPLES_PER_PIXEL, numBands);
+    writeShortEntry(TAG_PLANAR_CONFIGURATION, 1);
+    writeEntry(TAG_TILE_WIDTH, TYPE_LONG, 1, tileSize);
+    writeEntry(TAG_TILE_LENGTH, TYPE_LONG, 1, tileSize);
+    writeEntry(TAG_TILE_OFFSETS, TYPE_LONG, tileOffsets.length, tileOffsetsOffset);
+    writeEntry(TAG_TILE_BYTE_COUNTS, TYPE_LONG, tileByteCounts.length, tileByteCountsOffset);
+    ios.writeInt(0);
+    long endPosition = ios.getStreamPosition();
+
+    ios.seek(nextIFDPointerPosition);
+    ios.writeInt(toUnsignedInt(ifdOffset));
+    nextIFDPointerPosition = endPosition - 4;
+
+    ios.seek(endPosition);
+    tileOffsets = null;
+    tileByteCounts = null;
+  }
+
+  /**
+   * 結束寫出，不會關閉輸出串流。
+   */
+  public void finish() throws IOException {
+    deflater.end();
+    ios.flush();
+  }
+
+  /**
+   * 只有一個值時直接寫在欄位中。
+   */
+  private long writeLongArray(long[] values) throws IOException {
+    if (values.length == 1) {
+      return values[0];
+    }
+
+    long offset = ios.getStreamPosition();
+    for (int i = 0; i < values.length; i++) {
+      ios.writeInt(toUnsignedInt(values[i]));
+    }
+
+    return offset;
+  }
+
+  private void writeShortEntry(int tag, int value) throws IOException {
+    ios.writeShort(tag);
+    ios.writeShort(TYPE_SHORT);
+    ios.writeInt(1);
+    ios.writeShort(value);
+    ios.writeShort(0);
+  }
+
+  private void writeEntry(int tag, int type, int count, long value) throws IOException {
+    ios.writeShort(tag);
+    ios.writeShort(type);
+    ios.writeInt(count);
+    ios.writeInt(toUnsignedInt(value));
+  }
+
+  private static int toUnsignedInt(long offset) throws IOException {
+    if (offset > 0xFFFFFFFFL) {
+      throw new IIOException("TIFF file is larger than 4 GB!");
+    }
+
+    return (int) offset;
+  }
+}
@@ -0,0 +1,134 @@
+package idv.jackblackevo.util;
+
+import junit.framework.TestCase;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.util.Arrays;
+
+public class AlphaFlattenerTest extends TestCase {
+  private static final int[] ALPHA_TYPES = {
+    BufferedImage.TYPE_INT_ARGB,
+    BufferedImage.TYPE_INT_ARGB_PRE,
+    BufferedImage.TYPE_4BYTE_ABGR,
+    BufferedImage.TYPE_4BYTE_ABGR_PRE
+  };
+
+  public void testMatchesGraphics2DOnWhite() {
+    for (int i = 0; i < ALPHA_TYPES.length; i++) {
+      BufferedImage image = createTranslucentImage(ALPHA_TYPES[i]);
+      BufferedImage expectedImage = drawOnWhite(image);
+
+      BufferedImage flattenedImage = AlphaFlattener.flatten(image, false, new BufferedImagePool());
+      assertFalse(flattenedImage.getColorModel().hasAlpha());
+      assertTrue("type " + ALPHA_TYPES[i], TestImages.getMaxDifference(expectedImage, flattenedImage) <= 1);
+    }
+  }
+
+  public void testInPlaceSharesDataBuffer() {
+    BufferedImage image = createTranslucentImage(BufferedImage.TYPE_INT_ARGB);
+
+    BufferedImage flattenedImage = AlphaFlattener.flatten(image, true, new BufferedImagePool());
+
+    assertSame(image.getRaster().getDataBuffer(), flattenedImage.getRaster().getDataBuffer());
+    assertEquals(0xFFFFFFFF, flattenedImage.getRGB(0, 0));
+  }
+
+  public void testNotInPlaceKeepsSource() {
+    for (int i = 0; i < ALPHA_TYPES.length; i++) {
+      BufferedImage image = createTranslucentImage(ALPHA_TYPES[i]);
+      int[] originPixels = image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+
+      BufferedImage flattenedImage = AlphaFlattener.flatten(image, false, new BufferedImagePool());
+
+      assertNotSame(image.getRaster().getDataBuffer(), flattenedImage.getRaster().getDataBuffer());
+      assertTrue(Arrays.equals(originPixels, image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth())));
+    }
+  }
+
+  public void testCompositeValues() {
+    BufferedImage image = new BufferedImage(3, 1, BufferedImage.TYPE_INT_ARGB);
+    image.setRGB(0, 0, 0x00000000);
+    image.setRGB(1, 0, 0x80FF0000);
+    image.setRGB(2, 0, 0xFF123456);
+
+    BufferedImage flattenedImage = AlphaFlattener.flatten(image, true, new BufferedImagePool());
+
+    assertEquals(0xFFFFFFFF, flattenedImage.getRGB(0, 0));
+    assertEquals(0xFFFF7F7F, flattenedImage.getRGB(1, 0));
+    assertEquals(0xFF123456, flattenedImage.getRGB(2, 0));
+  }
+
+  public void testPaletteIsFlattened() {
+    byte[] red = {(byte) 0xFF, 0};
+    byte[] green = {0, 0};
+    byte[] blue = {0, (byte) 0xFF};
+    IndexColorModel colorModel = new IndexColorModel(1, 2, red, green, blue, 1);
+    BufferedImage image = new BufferedImage(2, 1, BufferedImage.TYPE_BYTE_BINARY, colorModel);
+    image.getRaster().setSample(1, 0, 0, 1);
+
+    BufferedImage flattenedImage = AlphaFlattener.flatten(image, false, new BufferedImagePool());
+
+    assertSame(image.getRaster(), flattenedImage.getRaster());
+    assertEquals(0xFFFF0000, flattenedImage.getRGB(0, 0));
+    assertEquals(0xFFFFFFFF, flattenedImage.getRGB(1, 0));
+  }
+
+  public void testOpaqueImageIsReturned() {
+    BufferedImage image = TestImages.createImage(4, 4, BufferedImage.TYPE_INT_RGB);
+
+    assertSame(image, AlphaFlattener.flatten(image, false, new BufferedImagePool()));
+  }
+
+  public void testPoolReusesReleasedImage() {
+    BufferedImagePool imagePool = new BufferedImagePool();
+    BufferedImage image = imagePool.acquire(10, 20, BufferedImage.TYPE_INT_RGB);
+    imagePool.release(image);
+
+    assertSame(image, imagePool.acquire(10, 20, BufferedImage.TYPE_INT_RGB));
+    assertNotSame(image, imagePool.acquire(10, 20, BufferedImage.TYPE_INT_RGB));
+
+    // 尺寸或類型不同時不共用
+    imagePool.release(image);
+    assertNotSame(image, imagePool.acquire(20, 10, BufferedImage.TYPE_INT_RGB));
+    assertNotSame(image, imagePool.acquire(10, 20, BufferedImage.TYPE_INT_ARGB));
+
+    imagePool.clear();
+    assertNotSame(image, imagePool.acquire(10, 20, BufferedImage.TYPE_INT_RGB));
+  }
+
+  public void testPoolIgnoresIndexedImages() {
+    assertFalse(BufferedImagePool.isPoolable(BufferedImage.TYPE_BYTE_BINARY));
+    assertFalse(BufferedImagePool.isPoolable(BufferedImage.TYPE_BYTE_INDEXED));
+    assertFalse(BufferedImagePool.isPoolable(BufferedImage.TYPE_CUSTOM));
+
+    BufferedImagePool imagePool = new BufferedImagePool();
+    BufferedImage image = new BufferedImage(8, 8, BufferedImage.TYPE_BYTE_BINARY);
+    imagePool.release(image);
+
+    assertNotSame(image, imagePool.acquire(8, 8, BufferedImage.TYPE_BYTE_BINARY));
+  }
+
+  private static BufferedImage createTranslucentImage(int imageType) {
+    BufferedImage image = new BufferedImage(32, 16, imageType);
+    Graphics2D g = image.createGraphics();
+    g.setComposite(AlphaComposite.Src);
+    for (int x = 0; x < 32; x++) {
+      g.setColor(new Color(x * 8, 255 - x * 8, 128, x * 8));
+      g.fillRect(x, 0, 1, 16);
+    }
+    g.dispose();
+
+    return image;
+  }
+
+  private static BufferedImage drawOnWhite(BufferedImage image) {
+    BufferedImage whiteImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = whiteImage.createGraphics();
+    g.drawImage(image, 0, 0, Color.WHITE, null);
+    g.dispose();
+
+    return whiteImage;
+  }
+}
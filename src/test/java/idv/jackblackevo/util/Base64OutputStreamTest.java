@@ -0,0 +1,129 @@
+package idv.jackblackevo.util;
+
+import junit.framework.TestCase;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+public class Base64OutputStreamTest extends TestCase {
+  private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+  public void testRFC4648Vectors() throws Exception {
+    String[] inputs = {"", "f", "fo", "foo", "foob", "fooba", "foobar"};
+    String[] outputs = {"", "Zg==", "Zm8=", "Zm9v", "Zm9vYg==", "Zm9vYmE=", "Zm9vYmFy"};
+    for (int i = 0; i < inputs.length; i++) {
+      assertEquals(outputs[i], encode(inputs[i].getBytes(StandardCharsets.US_ASCII)));
+    }
+  }
+
+  public void testSameAsReferenceEncoder() throws Exception {
+    // 涵蓋各種補位長度與超過字元緩衝區的資料
+    int[] lengths = {0, 1, 2, 3, 4, 5, 3071, 3072, 3073, 100000};
+    Random random = new Random(0);
+    for (int i = 0; i < lengths.length; i++) {
+      byte[] data = new byte[lengths[i]];
+      random.nextBytes(data);
+
+      String expected = encodeByBits(data);
+      assertEquals("length " + lengths[i], expected, encode(data));
+      assertEquals(expected.length(), Base64OutputStream.getEncodedLength(lengths[i]));
+    }
+  }
+
+  public void testMixedWrites() throws Exception {
+    byte[] data = new byte[1000];
+    new Random(1).nextBytes(data);
+
+    // 單一 byte 與不同長度的陣列交錯寫入
+    StringWriter writer = new StringWriter();
+    Base64OutputStream b64os = new Base64OutputStream(writer);
+    int offset = 0;
+    int chunkLength = 1;
+    while (offset < data.length) {
+      int length = Math.min(chunkLength, data.length - offset);
+      if (length == 1) {
+        b64os.write(data[offset]);
+      } else {
+        b64os.write(data, offset, length);
+      }
+      offset += length;
+      chunkLength = chunkLength % 7 + 1;
+    }
+    b64os.finish();
+
+    assertEquals(encodeByBits(data), writer.toString());
+  }
+
+  public void testWriteAfterFinish() throws Exception {
+    Base64OutputStream b64os = new Base64OutputStream(new StringWriter());
+    b64os.write(1);
+    b64os.finish();
+    b64os.finish();
+
+    try {
+      b64os.write(2);
+      fail("Should not write after finished");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  public void testConvertImageToBase64String() throws Exception {
+    File sourceDir = TestImages.createTempDir("source");
+    File pngFile = TestImages.write(TestImages.createImage(80, 60, BufferedImage.TYPE_INT_RGB), "png", new File(sourceDir, "a.png"));
+
+    String base64String = ImageUtil.convertImageToBase64String(pngFile);
+    assertFalse(base64String.isEmpty());
+
+    // 串流寫出與字串結果相同
+    StringWriter writer = new StringWriter();
+    ImageUtil.convertImageToBase64String(pngFile, writer);
+    assertEquals(base64String, writer.toString());
+
+    ByteArrayOutputStream bao = new ByteArrayOutputStream();
+    ImageUtil.fromSrc(pngFile).writeBase64To(bao, true);
+    assertEquals(base64String, new String(bao.toByteArray(), StandardCharsets.US_ASCII));
+
+    assertEquals(base64String, ImageUtil.fromSrc(pngFile).convertToBase64().get(0));
+  }
+
+  private static String encode(byte[] data) throws IOException {
+    StringWriter writer = new StringWriter();
+    try (
+      Base64OutputStream b64os = new Base64OutputStream(writer)
+    ) {
+      b64os.write(data);
+    }
+
+    return writer.toString();
+  }
+
+  /**
+   * 逐 bit 取出每 6 bit 編碼的參考實作，Java 8 以前沒有 java.util.Base64，Java 11 之後沒有 DatatypeConverter。
+   */
+  private static String encodeByBits(byte[] data) {
+    StringBuilder sb = new StringBuilder();
+    int numBits = data.length * 8;
+    for (int bitIndex = 0; bitIndex < numBits; bitIndex += 6) {
+      int value = 0;
+      for (int i = bitIndex; i < bitIndex + 6; i++) {
+        int bit = 0;
+        if (i < numBits) {
+          bit = (data[i / 8] >> (7 - i % 8)) & 1;
+        }
+        value = value << 1 | bit;
+      }
+      sb.append(ALPHABET[value]);
+    }
+    while (sb.length() % 4 != 0) {
+      sb.append('=');
+    }
+
+    return sb.toString();
+  }
+}
@@ -0,0 +1,78 @@
+package idv.jackblackevo.util;
+
+import junit.framework.TestCase;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class CodecRegistryTest extends TestCase {
+  private byte[] pngBytes;
+
+  @Override
+  protected void setUp() throws Exception {
+    CodecRegistry.clear();
+
+    ByteArrayOutputStream bao = new ByteArrayOutputStream();
+    ImageIO.write(new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB), "png", bao);
+    pngBytes = bao.toByteArray();
+  }
+
+  @Override
+  protected void tearDown() {
+    CodecRegistry.clear();
+  }
+
+  public void testReaderIsSharedAcrossThreads() throws Exception {
+    ImageReader imageReader = openReader();
+    assertEquals(8, imageReader.getWidth(0));
+    CodecRegistry.release(imageReader);
+
+    ExecutorService executorService = Executors.newSingleThreadExecutor();
+    try {
+      ImageReader reusedReader = executorService.submit(new Callable<ImageReader>() {
+        @Override
+        public ImageReader call() throws Exception {
+          return openReader();
+        }
+      }).get();
+
+      assertSame(imageReader, reusedReader);
+      assertEquals(8, reusedReader.getHeight(0));
+      CodecRegistry.release(reusedReader);
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  public void testPoolIsBounded() throws Exception {
+    int maxPooledCodecs = Runtime.getRuntime().availableProcessors();
+
+    List<ImageReader> imageReaderList = new ArrayList<>();
+    for (int i = 0; i < maxPooledCodecs + 2; i++) {
+      imageReaderList.add(openReader());
+    }
+    for (int i = 0; i < imageReaderList.size(); i++) {
+      CodecRegistry.release(imageReaderList.get(i));
+    }
+
+    assertEquals(maxPooledCodecs, CodecRegistry.getPooledCodecCount(imageReaderList.get(0).getOriginatingProvider()));
+
+    CodecRegistry.clear();
+    assertEquals(0, CodecRegistry.getPooledCodecCount(imageReaderList.get(0).getOriginatingProvider()));
+  }
+
+  private ImageReader openReader() throws Exception {
+    ImageInputStream iis = ImageIO.createImageInputStream(new ByteArrayInputStream(pngBytes));
+
+    return CodecRegistry.getImageReader(iis, "png");
+  }
+}
@@ -0,0 +1,124 @@
+package idv.jackblackevo.util;
+
+import junit.framework.TestCase;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.List;
+
+public class ColorDepthReducerTest extends TestCase {
+  private static final int[] RGB_TYPES = {BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR};
+
+  public void testReduceGray() {
+    for (int i = 0; i < RGB_TYPES.length; i++) {
+      BufferedImage image = createGrayImage(RGB_TYPES[i]);
+      BufferedImage reducedImage = ColorDepthReducer.reduce(image, true, new BufferedImagePool());
+
+      // 灰階的 sample 即為原本的 R、G、B
+      assertEquals(BufferedImage.TYPE_BYTE_GRAY, reducedImage.getType());
+      for (int y = 0; y < image.getHeight(); y++) {
+        for (int x = 0; x < image.getWidth(); x++) {
+          assertEquals("type " + RGB_TYPES[i], image.getRGB(x, y) & 0xFF, reducedImage.getRaster().getSample(x, y, 0));
+        }
+      }
+    }
+  }
+
+  public void testReduceBilevel() {
+    for (int i = 0; i < RGB_TYPES.length; i++) {
+      BufferedImage image = createBlackAndWhiteImage(RGB_TYPES[i]);
+      BufferedImage reducedImage = ColorDepthReducer.reduce(image, true, new BufferedImagePool());
+      assertEquals(BufferedImage.TYPE_BYTE_BINARY, reducedImage.getType());
+      assertEquals("type " + RGB_TYPES[i], 0, TestImages.getMaxDifference(image, reducedImage));
+
+      // 之後仍需重新取樣時只轉換為灰階
+      BufferedImage grayImage = ColorDepthReducer.reduce(image, false, new BufferedImagePool());
+      assertEquals(BufferedImage.TYPE_BYTE_GRAY, grayImage.getType());
+    }
+
+    BufferedImage grayImage = new BufferedImage(33, 17, BufferedImage.TYPE_BYTE_GRAY);
+    grayImage.getRaster().setSample(5, 5, 0, 255);
+    BufferedImage reducedImage = ColorDepthReducer.reduce(grayImage, true, new BufferedImagePool());
+    assertEquals(BufferedImage.TYPE_BYTE_BINARY, reducedImage.getType());
+    assertEquals(1, reducedImage.getRaster().getSample(5, 5, 0));
+    assertEquals(0, reducedImage.getRaster().getSample(6, 5, 0));
+  }
+
+  public void testColorIsNotReduced() {
+    BufferedImage colorImage = TestImages.createImage(40, 30, BufferedImage.TYPE_INT_RGB);
+    assertSame(colorImage, ColorDepthReducer.reduce(colorImage, true, new BufferedImagePool()));
+
+    // 有透明像素時不轉換
+    BufferedImage translucentImage = createGrayImage(BufferedImage.TYPE_INT_ARGB);
+    translucentImage.setRGB(3, 3, 0x80808080);
+    assertSame(translucentImage, ColorDepthReducer.reduce(translucentImage, true, new BufferedImagePool()));
+
+    BufferedImage indexedImage = new BufferedImage(40, 30, BufferedImage.TYPE_BYTE_INDEXED);
+    assertSame(indexedImage, ColorDepthReducer.reduce(indexedImage, true, new BufferedImagePool()));
+  }
+
+  public void testExpandBilevel() {
+    BufferedImage bilevelImage = ColorDepthReducer.reduce(createBlackAndWhiteImage(BufferedImage.TYPE_INT_RGB), true, new BufferedImagePool());
+
+    BufferedImage expandedImage = ColorDepthReducer.expandBilevel(bilevelImage);
+    assertEquals(BufferedImage.TYPE_BYTE_GRAY, expandedImage.getType());
+    for (int y = 0; y < bilevelImage.getHeight(); y++) {
+      for (int x = 0; x < bilevelImage.getWidth(); x++) {
+        assertEquals(bilevelImage.getRaster().getSample(x, y, 0) * 255, expandedImage.getRaster().getSample(x, y, 0));
+      }
+    }
+
+    BufferedImage rgbImage = new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB);
+    assertSame(rgbImage, ColorDepthReducer.expandBilevel(rgbImage));
+  }
+
+  public void testReduceColorDepth() throws Exception {
+    File sourceDir = TestImages.createTempDir("source");
+    BufferedImage blackAndWhiteImage = createBlackAndWhiteImage(BufferedImage.TYPE_INT_RGB);
+    File pngFile = TestImages.write(blackAndWhiteImage, "png", new File(sourceDir, "a.png"));
+
+    List<File> wroteFiles = ImageUtil.fromSrc(pngFile).reduceColorDepth(true).writeToFiles(TestImages.createTempDir("target"), "PNG", true);
+    BufferedImage wroteImage = ImageIO.read(wroteFiles.get(0));
+    assertEquals(1, wroteImage.getColorModel().getPixelSize());
+    assertEquals(0, TestImages.getMaxDifference(blackAndWhiteImage, wroteImage));
+
+    // 預設為關閉
+    BufferedImage defaultImage = ImageIO.read(ImageUtil.fromSrc(pngFile).writeToFiles(TestImages.createTempDir("target"), "PNG", true).get(0));
+    assertTrue(defaultImage.getColorModel().getPixelSize() > 1);
+
+    // JPEG 不支援 1 bit，改以灰階寫出
+    BufferedImage jpegImage = ImageIO.read(ImageUtil.fromSrc(pngFile).reduceColorDepth(true).writeToFiles(TestImages.createTempDir("target"), "JPEG", true).get(0));
+    assertEquals(1, jpegImage.getColorModel().getNumComponents());
+  }
+
+  private static BufferedImage createGrayImage(int imageType) {
+    BufferedImage image = new BufferedImage(37, 21, imageType);
+    for (int y = 0; y < image.getHeight(); y++) {
+      for (int x = 0; x < image.getWidth(); x++) {
+        int gray = (x * 7 + y * 3) & 0xFF;
+        image.setRGB(x, y, 0xFF000000 | gray << 16 | gray << 8 | gray);
+      }
+    }
+
+    return image;
+  }
+
+  private static BufferedImage createBlackAndWhiteImage(int imageType) {
+    BufferedImage image = new BufferedImage(37, 21, imageType);
+    Graphics2D g = image.createGraphics();
+    try {
+      g.setColor(Color.WHITE);
+      g.fillRect(0, 0, 37, 21);
+      g.setColor(Color.BLACK);
+      g.fillRect(3, 4, 10, 9);
+      g.drawLine(0, 20, 36, 0);
+    } finally {
+      g.dispose();
+    }
+
+    return image;
+  }
+}
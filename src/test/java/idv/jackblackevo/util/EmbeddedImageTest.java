@@ -0,0 +1,203 @@
+package idv.jackblackevo.util;
+
+import junit.framework.TestCase;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+public class EmbeddedImageTest extends TestCase {
+  private BufferedImage image;
+  private byte[] jpegBytes;
+  private File sourceDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    // 寬高為 MCU 的倍數才能無損旋轉
+    image = TestImages.createImage(64, 48, BufferedImage.TYPE_INT_RGB);
+    jpegBytes = TestImages.toBytes(image, "jpg");
+    sourceDir = TestImages.createTempDir("source");
+  }
+
+  public void testExtractJPEG() throws Exception {
+    File pdfFile = new File(sourceDir, "jpeg.pdf");
+    try (
+      PDDocument document = new PDDocument()
+    ) {
+      addImagePage(document, JPEGFactory.createFromByteArray(document, jpegBytes), 0);
+      addImagePage(document, JPEGFactory.createFromByteArray(document, jpegBytes), 90);
+      document.save(pdfFile);
+    }
+
+    try (
+      PDFPageRenderer pdfPageRenderer = new PDFPageRenderer(pdfFile, false)
+    ) {
+      PDFPageRenderer.EmbeddedImage embeddedImage = pdfPageRenderer.extractEmbeddedImage(0, true);
+      assertNotNull(embeddedImage);
+      assertTrue(Arrays.equals(jpegBytes, embeddedImage.getJPEGBytes()));
+      assertNull(embeddedImage.getImage());
+      assertEquals(0, embeddedImage.getQuadrants());
+      assertEquals(new Dimension(64, 48), embeddedImage.getSize());
+
+      // 旋轉 90 度的頁面寬高對調
+      PDFPageRenderer.EmbeddedImage rotatedImage = pdfPageRenderer.extractEmbeddedImage(1, true);
+      assertNotNull(rotatedImage);
+      assertTrue(Arrays.equals(jpegBytes, rotatedImage.getJPEGBytes()));
+      assertEquals(1, rotatedImage.getQuadrants());
+      assertEquals(new Dimension(48, 64), rotatedImage.getSize());
+    }
+  }
+
+  public void testExtractLosslessImage() throws Exception {
+    File pdfFile = new File(sourceDir, "lossless.pdf");
+    try (
+      PDDocument document = new PDDocument()
+    ) {
+      addImagePage(document, LosslessFactory.createFromImage(document, image), 0);
+      document.save(pdfFile);
+    }
+
+    try (
+      PDFPageRenderer pdfPageRenderer = new PDFPageRenderer(Files.readAllBytes(pdfFile.toPath()), false)
+    ) {
+      assertNull(pdfPageRenderer.extractEmbeddedImage(0, true));
+
+      // 以原始解析度取出，不經過繪製
+      PDFPageRenderer.EmbeddedImage embeddedImage = pdfPageRenderer.extractEmbeddedImage(0, false);
+      assertNotNull(embeddedImage);
+      assertNull(embeddedImage.getJPEGBytes());
+      assertEquals(0, TestImages.getMaxDifference(image, embeddedImage.getImage()));
+    }
+  }
+
+  public void testVectorPageIsNotExtracted() throws Exception {
+    File pdfFile = new File(sourceDir, "vector.pdf");
+    try (
+      PDDocument document = new PDDocument()
+    ) {
+      PDPage page = new PDPage(PDRectangle.A6);
+      document.addPage(page);
+      try (
+        PDPageContentStream contentStream = new PDPageContentStream(document, page)
+      ) {
+        contentStream.setNonStrokingColor(Color.BLACK);
+        contentStream.addRect(0, 0, 50, 50);
+        contentStream.fill();
+      }
+      document.save(pdfFile);
+    }
+
+    try (
+      PDFPageRenderer pdfPageRenderer = new PDFPageRenderer(pdfFile, false)
+    ) {
+      assertNull(pdfPageRenderer.extractEmbeddedImage(0, false));
+    }
+  }
+
+  public void testWriteEmbeddedJPEGs() throws Exception {
+    File pdfFile = new File(sourceDir, "scan.pdf");
+    try (
+      PDDocument document = new PDDocument()
+    ) {
+      addImagePage(document, JPEGFactory.createFromByteArray(document, jpegBytes), 0);
+      addImagePage(document, JPEGFactory.createFromByteArray(document, jpegBytes), 90);
+      document.save(pdfFile);
+    }
+
+    // 沒有任何操作時直接寫出頁面中的 JPEG，旋轉過的頁面於 DCT 係數上轉正
+    File targetDir = TestImages.createTempDir("target");
+    List<File> wroteFiles = ImageUtil.fromSrc(pdfFile).writeToFiles(targetDir, "JPEG", true);
+    assertEquals(2, wroteFiles.size());
+    assertTrue(Arrays.equals(jpegBytes, Files.readAllBytes(wroteFiles.get(0).toPath())));
+    assertTrue(Arrays.equals(LosslessJPEGTransformer.rotate(jpegBytes, 1), Files.readAllBytes(wroteFiles.get(1).toPath())));
+
+    // 轉為直式時第一頁旋轉，第二頁已是直式
+    File portraitDir = TestImages.createTempDir("portrait");
+    List<File> portraitFiles = ImageUtil.fromSrc(pdfFile).rotate(ImageBuilder.PORTRAIT).writeToFiles(portraitDir, "JPEG", true);
+    assertEquals(2, portraitFiles.size());
+    assertTrue(Arrays.equals(LosslessJPEGTransformer.rotate(jpegBytes, 1), Files.readAllBytes(portraitFiles.get(0).toPath())));
+    assertTrue(Arrays.equals(LosslessJPEGTransformer.rotate(jpegBytes, 1), Files.readAllBytes(portraitFiles.get(1).toPath())));
+  }
+
+  public void testScanDPIDoesNotChangeOutputSize() throws Exception {
+    // 300 DPI 掃描：600x800 的圖片填滿 144x192 pt 的頁面，預設 DPI 的頁面尺寸為 300x400
+    File pdfFile = new File(sourceDir, "scan300.pdf");
+    try (
+      PDDocument document = new PDDocument()
+    ) {
+      byte[] scanBytes = TestImages.toBytes(TestImages.createImage(600, 800, BufferedImage.TYPE_INT_RGB), "jpg");
+      addImagePage(document, JPEGFactory.createFromByteArray(document, scanBytes), new PDRectangle(144, 192), 0);
+      document.addPage(new PDPage(new PDRectangle(144, 192)));
+      document.save(pdfFile);
+    }
+
+    // 取出的圖片與繪製的空白頁面輸出相同尺寸
+    List<File> wroteFiles = ImageUtil.fromSrc(pdfFile).writeToFiles(TestImages.createTempDir("target"), "PNG", true);
+    assertEquals(2, wroteFiles.size());
+    for (int i = 0; i < wroteFiles.size(); i++) {
+      BufferedImage wroteImage = ImageIO.read(wroteFiles.get(i));
+      assertEquals(300, wroteImage.getWidth());
+      assertEquals(400, wroteImage.getHeight());
+    }
+
+    List<File> resizedFiles = ImageUtil.fromSrc(pdfFile).resize(150, 150).writeToFiles(TestImages.createTempDir("target"), "PNG", true);
+    BufferedImage resizedImage = ImageIO.read(resizedFiles.get(0));
+    BufferedImage resizedBlankImage = ImageIO.read(resizedFiles.get(1));
+    assertEquals(150, resizedImage.getHeight());
+    assertEquals(resizedBlankImage.getWidth(), resizedImage.getWidth());
+    assertEquals(resizedBlankImage.getHeight(), resizedImage.getHeight());
+  }
+
+  public void testReservationUsesEmbeddedImageSize() throws Exception {
+    File pdfFile = new File(sourceDir, "scan300.pdf");
+    try (
+      PDDocument document = new PDDocument()
+    ) {
+      byte[] scanBytes = TestImages.toBytes(TestImages.createImage(600, 800, BufferedImage.TYPE_INT_RGB), "jpg");
+      addImagePage(document, JPEGFactory.createFromByteArray(document, scanBytes), new PDRectangle(144, 192), 0);
+      document.save(pdfFile);
+    }
+
+    // 預留依解碼的圖片尺寸估計，而非預設 DPI 的頁面尺寸
+    ReservationRecordingOutputStream os = new ReservationRecordingOutputStream();
+    ImageUtil.streamFromSrc(pdfFile).writeTo(os, "PNG", true);
+    assertTrue(os.getMaxReservedBytes() >= MemoryGovernor.estimatePageBytes(600, 800, 32));
+
+    // 縮小時解碼跳過的像素不預留
+    ReservationRecordingOutputStream resizedOs = new ReservationRecordingOutputStream();
+    ImageUtil.streamFromSrc(pdfFile).resize(50, 50).writeTo(resizedOs, "PNG", true);
+    assertTrue(resizedOs.getMaxReservedBytes() > 0);
+    assertTrue(resizedOs.getMaxReservedBytes() < MemoryGovernor.estimatePageBytes(600, 800, 32) / 16);
+  }
+
+  private static void addImagePage(PDDocument document, PDImageXObject imageXObject, int rotation) throws Exception {
+    addImagePage(document, imageXObject, new PDRectangle(imageXObject.getWidth(), imageXObject.getHeight()), rotation);
+  }
+
+  /**
+   * 圖片填滿整個頁面。
+   */
+  private static void addImagePage(PDDocument document, PDImageXObject imageXObject, PDRectangle mediaBox, int rotation) throws Exception {
+    PDPage page = new PDPage(mediaBox);
+    page.setRotation(rotation);
+    document.addPage(page);
+
+    try (
+      PDPageContentStream contentStream = new PDPageContentStream(document, page)
+    ) {
+      contentStream.drawImage(imageXObject, 0, 0, mediaBox.getWidth(), mediaBox.getHeight());
+    }
+  }
+}
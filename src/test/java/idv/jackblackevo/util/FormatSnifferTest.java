@@ -0,0 +1,71 @@
+package idv.jackblackevo.util;
+
+import junit.framework.TestCase;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class FormatSnifferTest extends TestCase {
+  private File sourceDir;
+  private BufferedImage image;
+
+  @Override
+  protected void setUp() throws Exception {
+    sourceDir = TestImages.createTempDir("source");
+    image = TestImages.createImage(20, 10, BufferedImage.TYPE_INT_RGB);
+  }
+
+  public void testImageFormats() throws Exception {
+    assertFormat(FormatSniffer.Format.JPEG, TestImages.toBytes(image, "jpg"));
+    assertFormat(FormatSniffer.Format.PNG, TestImages.toBytes(image, "png"));
+    assertFormat(FormatSniffer.Format.GIF, TestImages.toBytes(image, "gif"));
+    assertFormat(FormatSniffer.Format.BMP, TestImages.toBytes(image, "bmp"));
+    assertFormat(FormatSniffer.Format.TIFF, TestImages.toBytes(image, "tiff"));
+
+    // 兩種 byte order 的 TIFF 檔頭
+    assertFormat(FormatSniffer.Format.TIFF, new byte[]{'I', 'I', '*', 0, 8, 0, 0, 0});
+    assertFormat(FormatSniffer.Format.TIFF, new byte[]{'M', 'M', 0, '*', 0, 0, 0, 8});
+  }
+
+  public void testPDF() throws Exception {
+    File pdfFile = TestImages.writePDF(new File(sourceDir, "a.pdf"), 1);
+    byte[] pdfBytes = Files.readAllBytes(pdfFile.toPath());
+    assertFormat(FormatSniffer.Format.PDF, pdfBytes);
+    assertEquals(FormatSniffer.Format.PDF, FormatSniffer.sniff(pdfFile));
+
+    // PDF 標頭前可能有其他資料
+    assertFormat(FormatSniffer.Format.PDF, "garbage\n%PDF-1.4\n".getBytes(StandardCharsets.ISO_8859_1));
+  }
+
+  public void testUnknown() throws Exception {
+    assertFormat(FormatSniffer.Format.UNKNOWN, new byte[0]);
+    assertFormat(FormatSniffer.Format.UNKNOWN, new byte[]{(byte) 0xFF, (byte) 0xD8});
+    assertFormat(FormatSniffer.Format.UNKNOWN, "plain text".getBytes(StandardCharsets.US_ASCII));
+
+    // 超過搜尋長度之後才出現的 PDF 標頭不算
+    byte[] lateHeaderBytes = new byte[2048];
+    byte[] pdfHeader = "%PDF-1.4".getBytes(StandardCharsets.US_ASCII);
+    System.arraycopy(pdfHeader, 0, lateHeaderBytes, 1500, pdfHeader.length);
+    assertFormat(FormatSniffer.Format.UNKNOWN, lateHeaderBytes);
+  }
+
+  public void testImageIOFormatName() {
+    assertEquals("JPEG", FormatSniffer.Format.JPEG.getImageIOFormatName());
+    assertEquals("TIFF", FormatSniffer.Format.TIFF.getImageIOFormatName());
+    assertNull(FormatSniffer.Format.PDF.getImageIOFormatName());
+    assertNull(FormatSniffer.Format.UNKNOWN.getImageIOFormatName());
+  }
+
+  /**
+   * 資料與寫出的檔案判斷結果皆相同。
+   */
+  private void assertFormat(FormatSniffer.Format expected, byte[] bytes) throws Exception {
+    assertEquals(expected, FormatSniffer.sniff(bytes));
+
+    File file = File.createTempFile("sniff", "", sourceDir);
+    Files.write(file.toPath(), bytes);
+    assertEquals(expected, FormatSniffer.sniff(file));
+  }
+}
@@ -0,0 +1,78 @@
+package idv.jackblackevo.util;
+
+import junit.framework.TestCase;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+
+public class InMemoryImageTest extends TestCase {
+  public void testFromBytesWritesToStream() throws Exception {
+    ByteArrayOutputStream bao = new ByteArrayOutputStream();
+    ImageUtil.fromBytes(createPNG(40, 20)).rotate(ImageBuilder.PORTRAIT).writeTo(bao, "PNG", true);
+
+    BufferedImage image = ImageIO.read(new ByteArrayInputStream(bao.toByteArray()));
+    assertEquals(20, image.getWidth());
+    assertEquals(40, image.getHeight());
+  }
+
+  public void testFromBufferKeepsPosition() throws Exception {
+    byte[] pngBytes = createPNG(30, 10);
+    ByteBuffer imageBuffer = ByteBuffer.allocate(pngBytes.length + 4);
+    imageBuffer.putInt(0xCAFEBABE);
+    imageBuffer.put(pngBytes);
+    imageBuffer.position(4);
+
+    ByteArrayOutputStream bao = new ByteArrayOutputStream();
+    ImageUtil.fromBuffer(imageBuffer).writeTo(Channels.newChannel(bao), "BMP", true);
+
+    assertEquals(4, imageBuffer.position());
+    BufferedImage image = ImageIO.read(new ByteArrayInputStream(bao.toByteArray()));
+    assertEquals(30, image.getWidth());
+    assertEquals(10, image.getHeight());
+  }
+
+  public void testFromStreamReadsToEnd() throws Exception {
+    ByteArrayOutputStream bao = new ByteArrayOutputStream();
+    ImageUtil.fromStream(new ByteArrayInputStream(createPNG(16, 16))).writeTo(bao, "GIF", true);
+
+    assertEquals(16, ImageIO.read(new ByteArrayInputStream(bao.toByteArray())).getWidth());
+  }
+
+  public void testFromStreamThrowsReadError() {
+    InputStream brokenStream = new InputStream() {
+      @Override
+      public int read() throws IOException {
+        throw new IOException("Broken stream");
+      }
+    };
+
+    try {
+      ImageUtil.fromStream(brokenStream);
+      fail("IOException should be thrown");
+    } catch (IOException e) {
+      assertEquals("Broken stream", e.getMessage());
+    }
+  }
+
+  public void testFromBytesWithoutImage() throws Exception {
+    try {
+      ImageUtil.fromBytes(new byte[]{1, 2, 3, 4});
+      fail("UnsupportedOperationException should be thrown");
+    } catch (UnsupportedOperationException e) {
+      assertEquals("No image!", e.getMessage());
+    }
+  }
+
+  private static byte[] createPNG(int width, int height) throws IOException {
+    ByteArrayOutputStream bao = new ByteArrayOutputStream();
+    ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", bao);
+
+    return bao.toByteArray();
+  }
+}
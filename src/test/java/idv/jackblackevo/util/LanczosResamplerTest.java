@@ -0,0 +1,95 @@
+package idv.jackblackevo.util;
+
+import junit.framework.TestCase;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.Arrays;
+
+public class LanczosResamplerTest extends TestCase {
+  public void testConstantImageStaysConstant() {
+    // 權重總和為 1，縮小與放大皆不改變單色圖片
+    int[][] sizes = {{100, 37}, {37, 100}, {64, 64}, {5, 1}};
+    for (int i = 0; i < sizes.length; i++) {
+      int srcSize = sizes[i][0];
+      int dstSize = sizes[i][1];
+      byte[] src = new byte[srcSize * srcSize * 3];
+      Arrays.fill(src, (byte) 173);
+
+      LanczosResampler.Contributions contributions = LanczosResampler.getContributions(srcSize, dstSize);
+      byte[] dst = LanczosResampler.resample(src, srcSize, 3, contributions, contributions);
+      assertEquals(dstSize * dstSize * 3, dst.length);
+      for (int j = 0; j < dst.length; j++) {
+        assertEquals(srcSize + " -> " + dstSize, 173, dst[j] & 0xFF);
+      }
+    }
+  }
+
+  public void testSameSizeKeepsPixels() {
+    BufferedImage image = TestImages.createImage(40, 30, BufferedImage.TYPE_INT_RGB);
+    BufferedImage targetImage = new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB);
+
+    assertTrue(LanczosResampler.resample(image.getRaster(), targetImage.getRaster()));
+    assertEquals(0, TestImages.getMaxDifference(image, targetImage));
+  }
+
+  public void testCachedContributions() {
+    assertSame(LanczosResampler.getContributions(123, 45), LanczosResampler.getContributions(123, 45));
+  }
+
+  public void testStripSameAsWholeImage() {
+    int srcWidth = 90;
+    int srcHeight = 70;
+    int width = 40;
+    int height = 31;
+    byte[] src = ((DataBufferByte) TestImages.createImage(srcWidth, srcHeight, BufferedImage.TYPE_BYTE_GRAY).getRaster().getDataBuffer()).getData();
+
+    LanczosResampler.Contributions xContribs = LanczosResampler.getContributions(srcWidth, width);
+    byte[] dst = LanczosResampler.resample(src, srcWidth, 1, xContribs, LanczosResampler.getContributions(srcHeight, height));
+
+    // 分段處理時只讀取需要的來源列，結果與整張處理相同
+    int[][] strips = {{0, 10}, {10, 11}, {11, 31}};
+    for (int i = 0; i < strips.length; i++) {
+      int dst0 = strips[i][0];
+      int dst1 = strips[i][1];
+      int[] srcRange = LanczosResampler.getSourceRange(srcHeight, height, dst0, dst1);
+      byte[] srcRows = Arrays.copyOfRange(src, srcRange[0] * srcWidth, srcRange[1] * srcWidth);
+      LanczosResampler.Contributions yContribs = LanczosResampler.computeContributions(srcHeight, height, dst0, dst1, srcRange[0]);
+
+      byte[] strip = LanczosResampler.resample(srcRows, srcWidth, 1, xContribs, yContribs);
+      assertTrue("strip " + i, Arrays.equals(Arrays.copyOfRange(dst, dst0 * width, dst1 * width), strip));
+    }
+  }
+
+  public void testIntAndByteLayoutsAgree() {
+    BufferedImage intImage = TestImages.createImage(120, 80, BufferedImage.TYPE_INT_RGB);
+    BufferedImage byteImage = new BufferedImage(120, 80, BufferedImage.TYPE_3BYTE_BGR);
+    byteImage.getGraphics().drawImage(intImage, 0, 0, null);
+
+    BufferedImage intTarget = new BufferedImage(50, 33, BufferedImage.TYPE_INT_RGB);
+    BufferedImage byteTarget = new BufferedImage(50, 33, BufferedImage.TYPE_3BYTE_BGR);
+    assertTrue(LanczosResampler.resample(intImage.getRaster(), intTarget.getRaster()));
+    assertTrue(LanczosResampler.resample(byteImage.getRaster(), byteTarget.getRaster()));
+
+    assertTrue(TestImages.getMaxDifference(intTarget, byteTarget) <= 1);
+  }
+
+  public void testIsSupported() {
+    assertTrue(LanczosResampler.isSupported(new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB).getRaster()));
+    assertTrue(LanczosResampler.isSupported(new BufferedImage(4, 4, BufferedImage.TYPE_INT_ARGB).getRaster()));
+    assertTrue(LanczosResampler.isSupported(new BufferedImage(4, 4, BufferedImage.TYPE_3BYTE_BGR).getRaster()));
+    assertTrue(LanczosResampler.isSupported(new BufferedImage(4, 4, BufferedImage.TYPE_BYTE_GRAY).getRaster()));
+    assertFalse(LanczosResampler.isSupported(new BufferedImage(4, 4, BufferedImage.TYPE_BYTE_BINARY).getRaster()));
+    assertFalse(LanczosResampler.isSupported(new BufferedImage(4, 4, BufferedImage.TYPE_USHORT_GRAY).getRaster()));
+    assertFalse(LanczosResampler.isSupported(new BufferedImage(4, 4, BufferedImage.TYPE_USHORT_565_RGB).getRaster()));
+  }
+
+  public void testDifferentLayoutsAreNotResampled() {
+    BufferedImage image = TestImages.createImage(20, 20, BufferedImage.TYPE_INT_RGB);
+    BufferedImage targetImage = new BufferedImage(10, 10, BufferedImage.TYPE_3BYTE_BGR);
+
+    assertFalse(LanczosResampler.resample(image.getRaster(), targetImage.getRaster()));
+    byte[] targetData = ((DataBufferByte) targetImage.getRaster().getDataBuffer()).getData();
+    assertTrue(Arrays.equals(new byte[targetData.length], targetData));
+  }
+}
@@ -0,0 +1,136 @@
+package idv.jackblackevo.util;
+
+import junit.framework.TestCase;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+public class LosslessJPEGTransformerTest extends TestCase {
+  public void testReadDimension() throws Exception {
+    byte[] jpegBytes = createJPEG(64, 48);
+
+    assertEquals(new Dimension(64, 48), LosslessJPEGTransformer.readDimension(new ByteArrayInputStream(jpegBytes)));
+    assertNull(LosslessJPEGTransformer.readDimension(new ByteArrayInputStream(new byte[]{(byte) 0x89, 'P', 'N', 'G'})));
+  }
+
+  public void testRotateMatchesGraphics2D() throws Exception {
+    byte[] jpegBytes = createJPEG(64, 48);
+    BufferedImage decodedImage = ImageIO.read(new ByteArrayInputStream(jpegBytes));
+
+    for (int quadrants = 1; quadrants < 4; quadrants++) {
+      byte[] rotatedBytes = LosslessJPEGTransformer.rotate(jpegBytes, quadrants);
+      assertNotNull(rotatedBytes);
+
+      BufferedImage rotatedImage = ImageIO.read(new ByteArrayInputStream(rotatedBytes));
+      BufferedImage expectedImage = rotate(decodedImage, quadrants);
+      assertEquals(expectedImage.getWidth(), rotatedImage.getWidth());
+      assertEquals(expectedImage.getHeight(), rotatedImage.getHeight());
+      assertTrue("quadrants " + quadrants, getMaxDifference(expectedImage, rotatedImage) <= 4);
+    }
+  }
+
+  public void testRotateFullCircleKeepsPixels() throws Exception {
+    byte[] jpegBytes = createJPEG(64, 48);
+
+    byte[] rotatedBytes = jpegBytes;
+    for (int i = 0; i < 4; i++) {
+      rotatedBytes = LosslessJPEGTransformer.rotate(rotatedBytes, 1);
+    }
+
+    // 係數只搬移位置，轉一圈後解碼結果完全相同
+    assertEquals(0, getMaxDifference(ImageIO.read(new ByteArrayInputStream(jpegBytes)), ImageIO.read(new ByteArrayInputStream(rotatedBytes))));
+  }
+
+  public void testRotateFileMatchesBytes() throws Exception {
+    byte[] jpegBytes = createJPEG(64, 48);
+    File jpegFile = File.createTempFile("lossless", ".jpg");
+    jpegFile.deleteOnExit();
+    Files.write(jpegFile.toPath(), jpegBytes);
+
+    assertTrue(Arrays.equals(LosslessJPEGTransformer.rotate(jpegBytes, 1), LosslessJPEGTransformer.rotate(jpegFile, 1)));
+    assertTrue(Arrays.equals(jpegBytes, LosslessJPEGTransformer.rotate(jpegFile, 0)));
+  }
+
+  public void testUnalignedEdgeIsNotSupported() throws Exception {
+    // 高度不是 MCU 的倍數，旋轉後不完整的 MCU 會移到左側
+    byte[] jpegBytes = createJPEG(64, 40);
+
+    assertNull(LosslessJPEGTransformer.rotate(jpegBytes, 1));
+    assertNotNull(LosslessJPEGTransformer.rotate(jpegBytes, 0));
+  }
+
+  public void testBuilderWritesLosslessRotation() throws Exception {
+    byte[] jpegBytes = createJPEG(64, 48);
+    File sourceDir = Files.createTempDirectory("source").toFile();
+    File targetDir = Files.createTempDirectory("target").toFile();
+    File jpegFile = new File(sourceDir, "landscape.jpg");
+    Files.write(jpegFile.toPath(), jpegBytes);
+
+    List<File> wroteFiles = ImageUtil.fromSrc(jpegFile).rotate(ImageBuilder.PORTRAIT).writeToFiles(targetDir, true);
+    assertEquals(1, wroteFiles.size());
+    byte[] expectedBytes = LosslessJPEGTransformer.rotate(jpegBytes, 1);
+    assertTrue(Arrays.equals(expectedBytes, Files.readAllBytes(wroteFiles.get(0).toPath())));
+
+    ByteArrayOutputStream bao = new ByteArrayOutputStream();
+    ImageUtil.fromSrc(jpegFile).rotate(ImageBuilder.PORTRAIT).writeTo(bao, "JPEG", true);
+    assertTrue(Arrays.equals(expectedBytes, bao.toByteArray()));
+  }
+
+  private static byte[] createJPEG(int width, int height) throws Exception {
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        image.setRGB(x, y, (x * 255 / width) << 16 | (y * 255 / height) << 8 | ((x + y) * 2 & 0xFF));
+      }
+    }
+
+    ByteArrayOutputStream bao = new ByteArrayOutputStream();
+    ImageIO.write(image, "jpeg", bao);
+
+    return bao.toByteArray();
+  }
+
+  /**
+   * 以 Graphics2D 順時針旋轉
+   */
+  private static BufferedImage rotate(BufferedImage image, int quadrants) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    boolean isTransposed = quadrants % 2 == 1;
+    BufferedImage rotatedImage = new BufferedImage(isTransposed ? height : width, isTransposed ? width : height, BufferedImage.TYPE_INT_RGB);
+
+    AffineTransform transform = new AffineTransform();
+    transform.translate(rotatedImage.getWidth() / 2.0, rotatedImage.getHeight() / 2.0);
+    transform.quadrantRotate(quadrants);
+    transform.translate(-width / 2.0, -height / 2.0);
+
+    Graphics2D g = rotatedImage.createGraphics();
+    g.drawImage(image, transform, null);
+    g.dispose();
+
+    return rotatedImage;
+  }
+
+  private static int getMaxDifference(BufferedImage a, BufferedImage b) {
+    int maxDifference = 0;
+    for (int y = 0; y < a.getHeight(); y++) {
+      for (int x = 0; x < a.getWidth(); x++) {
+        int rgbA = a.getRGB(x, y);
+        int rgbB = b.getRGB(x, y);
+        for (int shift = 0; shift < 24; shift += 8) {
+          maxDifference = Math.max(maxDifference, Math.abs((rgbA >> shift & 0xFF) - (rgbB >> shift & 0xFF)));
+        }
+      }
+    }
+
+    return maxDifference;
+  }
+}
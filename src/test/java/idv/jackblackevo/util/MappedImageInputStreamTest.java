@@ -0,0 +1,124 @@
+package idv.jackblackevo.util;
+
+import junit.framework.TestCase;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class MappedImageInputStreamTest extends TestCase {
+  private File sourceDir;
+  private File dataFile;
+  private byte[] data;
+
+  @Override
+  protected void setUp() throws Exception {
+    sourceDir = TestImages.createTempDir("source");
+    data = new byte[100000];
+    new Random(0).nextBytes(data);
+    dataFile = new File(sourceDir, "data.bin");
+    Files.write(dataFile.toPath(), data);
+  }
+
+  public void testRead() throws Exception {
+    try (
+      MappedImageInputStream mis = new MappedImageInputStream(dataFile)
+    ) {
+      assertEquals(data.length, mis.length());
+
+      for (int i = 0; i < 100; i++) {
+        assertEquals(data[i] & 0xFF, mis.read());
+      }
+
+      // 分次讀取剩下的資料
+      byte[] readBytes = new byte[data.length];
+      System.arraycopy(data, 0, readBytes, 0, 100);
+      int offset = 100;
+      int chunkLength = 1;
+      while (offset < data.length) {
+        int n = mis.read(readBytes, offset, Math.min(chunkLength, data.length - offset));
+        assertTrue(n > 0);
+        offset += n;
+        chunkLength = chunkLength * 3 % 10007;
+      }
+      assertTrue(Arrays.equals(data, readBytes));
+      assertEquals(data.length, mis.getStreamPosition());
+
+      assertEquals(0, mis.read(readBytes, 0, 0));
+      assertEquals(-1, mis.read());
+      assertEquals(-1, mis.read(readBytes, 0, 10));
+    }
+  }
+
+  public void testSeek() throws Exception {
+    try (
+      MappedImageInputStream mis = new MappedImageInputStream(dataFile)
+    ) {
+      ByteBuffer buffer = ByteBuffer.wrap(data);
+
+      mis.seek(50000);
+      assertEquals(buffer.getInt(50000), mis.readInt());
+
+      // 跳回前面並改變 byte order
+      mis.setByteOrder(ByteOrder.LITTLE_ENDIAN);
+      mis.seek(12);
+      assertEquals(buffer.order(ByteOrder.LITTLE_ENDIAN).getShort(12), mis.readShort());
+      assertEquals(14, mis.getStreamPosition());
+
+      // 讀取超過結尾的部分只回傳剩下的資料
+      mis.seek(data.length - 5);
+      byte[] tailBytes = new byte[10];
+      assertEquals(5, mis.read(tailBytes, 0, 10));
+      assertTrue(Arrays.equals(Arrays.copyOfRange(data, data.length - 5, data.length), Arrays.copyOf(tailBytes, 5)));
+    }
+  }
+
+  public void testReadAfterClose() throws Exception {
+    MappedImageInputStream mis = new MappedImageInputStream(dataFile);
+    mis.read();
+    mis.close();
+
+    try {
+      mis.read();
+      fail("Should not read after closed");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  public void testDecodeImage() throws Exception {
+    BufferedImage image = TestImages.createImage(120, 80, BufferedImage.TYPE_INT_RGB);
+    File pngFile = TestImages.write(image, "png", new File(sourceDir, "a.png"));
+
+    ImageReader imageReader = ImageIO.getImageReadersByFormatName("png").next();
+    try (
+      MappedImageInputStream mis = new MappedImageInputStream(pngFile)
+    ) {
+      imageReader.setInput(mis);
+      assertEquals(0, TestImages.getMaxDifference(image, imageReader.read(0)));
+    } finally {
+      imageReader.dispose();
+    }
+  }
+
+  public void testReadLargeFile() throws Exception {
+    // 超過 1 MB 的檔案改以 memory-mapped 讀取
+    BufferedImage image = TestImages.createImage(700, 600, BufferedImage.TYPE_INT_RGB);
+    File bmpFile = TestImages.write(image, "bmp", new File(sourceDir, "large.bmp"));
+    assertTrue(bmpFile.length() > 1024 * 1024);
+
+    List<File> wroteFiles = ImageUtil.fromSrc(bmpFile).writeToFiles(TestImages.createTempDir("target"), "PNG", true);
+    assertEquals(0, TestImages.getMaxDifference(image, ImageIO.read(wroteFiles.get(0))));
+
+    List<File> streamedFiles = ImageUtil.streamFromSrc(bmpFile).writeToFiles(TestImages.createTempDir("target"), "PNG", true);
+    assertEquals(0, TestImages.getMaxDifference(image, ImageIO.read(streamedFiles.get(0))));
+  }
+}
@@ -0,0 +1,188 @@
+package idv.jackblackevo.util;
+
+import junit.framework.TestCase;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class MemoryGovernorTest extends TestCase {
+  private long originBudget;
+  private long originWaitTimeout;
+  private ExecutorService executorService;
+
+  @Override
+  protected void setUp() {
+    originBudget = MemoryGovernor.getBudget();
+    originWaitTimeout = MemoryGovernor.getWaitTimeout();
+    executorService = Executors.newCachedThreadPool();
+  }
+
+  @Override
+  protected void tearDown() {
+    executorService.shutdownNow();
+    MemoryGovernor.setBudget(originBudget);
+    MemoryGovernor.setWaitTimeout(originWaitTimeout);
+  }
+
+  public void testWaitTimeoutDoesNotExceedBudget() throws Exception {
+    MemoryGovernor.setBudget(100);
+    MemoryGovernor.setWaitTimeout(200);
+
+    MemoryGovernor.Reservation reservation = MemoryGovernor.reserve(new Object(), "first", 100);
+    try {
+      MemoryGovernor.reserve(new Object(), "second", 50);
+      fail("Reservation should fail after timeout");
+    } catch (IIOException e) {
+      // 逾時不超出預算預留
+      assertEquals(100, MemoryGovernor.getReservedBytes());
+    } finally {
+      reservation.release();
+    }
+
+    assertEquals(0, MemoryGovernor.getReservedBytes());
+  }
+
+  public void testReservationOfCollectedOwnerIsReleased() throws Exception {
+    MemoryGovernor.setBudget(100);
+    MemoryGovernor.setWaitTimeout(0);
+
+    // 未釋放預留的 owner 被回收後，等待中的預留可繼續
+    MemoryGovernor.reserve(new Object(), "leaked", 100).retain();
+    Future<MemoryGovernor.Reservation> waitingReservation = reserveAsync(new Object(), "waiting", 50);
+    for (int i = 0; i < 50 && !waitingReservation.isDone(); i++) {
+      System.gc();
+      Thread.sleep(100);
+    }
+
+    MemoryGovernor.Reservation reservation = waitingReservation.get(5, TimeUnit.SECONDS);
+    assertEquals(50, MemoryGovernor.getReservedBytes());
+    reservation.release();
+  }
+
+  public void testRetainedReservationDoesNotBlockSameOwner() throws Exception {
+    MemoryGovernor.setBudget(100);
+
+    Object owner = new Object();
+    final MemoryGovernor.Reservation retained = MemoryGovernor.reserve(owner, "retained", 100);
+    retained.retain();
+
+    // 其他執行緒以同一個 owner 預留時不等待
+    Future<MemoryGovernor.Reservation> sameOwner = reserveAsync(owner, "same owner", 50);
+    MemoryGovernor.Reservation sameOwnerReservation = sameOwner.get(5, TimeUnit.SECONDS);
+
+    // 其他 owner 等待釋放
+    Future<MemoryGovernor.Reservation> otherOwner = reserveAsync(new Object(), "other owner", 50);
+    try {
+      otherOwner.get(300, TimeUnit.MILLISECONDS);
+      fail("Reservation of other owner should wait");
+    } catch (TimeoutException e) {
+      // expected
+    }
+
+    retained.release();
+    sameOwnerReservation.release();
+    otherOwner.get(5, TimeUnit.SECONDS).release();
+
+    assertEquals(0, MemoryGovernor.getReservedBytes());
+  }
+
+  public void testUnretainedReservationOfSameOwnerIsWaited() throws Exception {
+    MemoryGovernor.setBudget(100);
+
+    Object owner = new Object();
+    MemoryGovernor.Reservation first = MemoryGovernor.reserve(owner, "first", 80);
+
+    Future<MemoryGovernor.Reservation> second = reserveAsync(owner, "second", 80);
+    try {
+      second.get(300, TimeUnit.MILLISECONDS);
+      fail("Reservation should wait until the budget is available");
+    } catch (TimeoutException e) {
+      // expected
+    }
+
+    first.release();
+    second.get(5, TimeUnit.SECONDS).release();
+
+    assertEquals(0, MemoryGovernor.getReservedBytes());
+  }
+
+  public void testOversizedReservationWaitsForOthers() throws Exception {
+    MemoryGovernor.setBudget(100);
+
+    MemoryGovernor.Reservation small = MemoryGovernor.reserve(new Object(), "small", 10);
+
+    Future<MemoryGovernor.Reservation> oversized = reserveAsync(new Object(), "oversized", 1000);
+    try {
+      oversized.get(300, TimeUnit.MILLISECONDS);
+      fail("Oversized reservation should wait for the others");
+    } catch (TimeoutException e) {
+      // expected
+    }
+
+    small.release();
+    MemoryGovernor.Reservation oversizedReservation = oversized.get(5, TimeUnit.SECONDS);
+    assertEquals(1000, oversizedReservation.getBytes());
+    oversizedReservation.release();
+
+    assertEquals(0, MemoryGovernor.getReservedBytes());
+  }
+
+  public void testParallelBuilderWithSmallBudget() throws Exception {
+    File sourceDir = createTempDir("source");
+    final File targetDir = createTempDir("target");
+    ImageIO.write(new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB), "png", new File(sourceDir, "a.png"));
+    ImageIO.write(new BufferedImage(300, 400, BufferedImage.TYPE_INT_RGB), "png", new File(sourceDir, "b.png"));
+    try (
+      PDDocument document = new PDDocument()
+    ) {
+      document.addPage(new PDPage(PDRectangle.A6));
+      document.addPage(new PDPage(PDRectangle.A6));
+      document.save(new File(sourceDir, "c.pdf"));
+    }
+
+    // 每張圖片都超過預算，已讀取的圖片保留至 Builder 關閉
+    MemoryGovernor.setBudget(1024);
+
+    final ImageBuilder imageBuilder = ImageUtil.fromSrc(sourceDir).parallel(2);
+    Future<List<File>> wroteFiles = executorService.submit(new Callable<List<File>>() {
+      @Override
+      public List<File> call() throws Exception {
+        return imageBuilder.writeToFiles(targetDir, "PNG", true);
+      }
+    });
+
+    // PDF 每頁各自寫出
+    assertEquals(4, wroteFiles.get(30, TimeUnit.SECONDS).size());
+    assertEquals(0, MemoryGovernor.getReservedBytes());
+  }
+
+  private Future<MemoryGovernor.Reservation> reserveAsync(final Object owner, final String sourceName, final long bytes) {
+    return executorService.submit(new Callable<MemoryGovernor.Reservation>() {
+      @Override
+      public MemoryGovernor.Reservation call() throws Exception {
+        return MemoryGovernor.reserve(owner, sourceName, bytes);
+      }
+    });
+  }
+
+  private static File createTempDir(String prefix) throws Exception {
+    File dir = File.createTempFile(prefix, "");
+    dir.delete();
+    dir.mkdir();
+    dir.deleteOnExit();
+
+    return dir;
+  }
+}
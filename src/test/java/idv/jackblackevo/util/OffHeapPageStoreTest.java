@@ -0,0 +1,145 @@
+package idv.jackblackevo.util;
+
+import junit.framework.TestCase;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.io.File;
+import java.util.List;
+
+public class OffHeapPageStoreTest extends TestCase {
+  private static final int[] IMAGE_TYPES = {
+    BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_3BYTE_BGR,
+    BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_BYTE_BINARY
+  };
+
+  public void testDirectBuffers() throws Exception {
+    try (
+      OffHeapPageStore pageStore = new OffHeapPageStore(false, null)
+    ) {
+      assertStoredPages(pageStore);
+    }
+  }
+
+  public void testSpillFile() throws Exception {
+    File cacheDirectory = TestImages.createTempDir("cache");
+    OffHeapPageStore pageStore = new OffHeapPageStore(true, cacheDirectory);
+    try {
+      assertStoredPages(pageStore);
+      assertEquals(1, cacheDirectory.listFiles().length);
+    } finally {
+      pageStore.close();
+    }
+
+    // 關閉時刪除暫存檔
+    assertEquals(0, cacheDirectory.listFiles().length);
+    assertEquals(0, pageStore.getStoredBytes());
+  }
+
+  public void testUnsupportedLayout() throws Exception {
+    try (
+      OffHeapPageStore pageStore = new OffHeapPageStore(false, null)
+    ) {
+      BufferedImage image = new BufferedImage(20, 10, BufferedImage.TYPE_USHORT_GRAY);
+      assertSame(image, pageStore.store(image));
+
+      // 裁切的頁面不移至 heap 外
+      BufferedImage subimage = TestImages.createImage(20, 10, BufferedImage.TYPE_INT_RGB).getSubimage(2, 2, 5, 5);
+      assertSame(subimage, pageStore.store(subimage));
+      assertEquals(0, pageStore.getStoredBytes());
+    }
+  }
+
+  public void testCopySubimage() throws Exception {
+    BufferedImage image = TestImages.createImage(40, 30, BufferedImage.TYPE_INT_RGB);
+    try (
+      OffHeapPageStore pageStore = new OffHeapPageStore(false, null)
+    ) {
+      BufferedImage storedSubimage = pageStore.store(image).getSubimage(5, 7, 20, 10);
+
+      BufferedImage heapImage = OffHeapPageStore.copyToHeap(storedSubimage);
+      assertEquals(20, heapImage.getWidth());
+      assertEquals(10, heapImage.getHeight());
+      assertEquals(0, TestImages.getMaxDifference(image.getSubimage(5, 7, 20, 10), heapImage));
+    }
+  }
+
+  public void testStoreAfterClose() throws Exception {
+    OffHeapPageStore pageStore = new OffHeapPageStore(false, null);
+    pageStore.close();
+    pageStore.close();
+
+    try {
+      pageStore.store(new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB));
+      fail("Should not store after closed");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+  }
+
+  public void testAccessAfterClose() throws Exception {
+    OffHeapPageStore pageStore = new OffHeapPageStore(false, null);
+    BufferedImage storedImage = pageStore.store(TestImages.createImage(20, 10, BufferedImage.TYPE_INT_RGB));
+    pageStore.close();
+
+    // 緩衝已釋放，存取頁面時丟出例外而不是讀取已釋放的記憶體
+    try {
+      storedImage.getRGB(0, 0);
+      fail("Should not read after closed");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+
+    try {
+      OffHeapPageStore.copyToHeap(storedImage);
+      fail("Should not copy after closed");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+  }
+
+  public void testStorePagesOffHeap() throws Exception {
+    File sourceDir = TestImages.createTempDir("source");
+    TestImages.write(TestImages.createImage(120, 80, BufferedImage.TYPE_INT_RGB), "png", new File(sourceDir, "a.png"));
+    TestImages.write(TestImages.createImage(60, 90, BufferedImage.TYPE_BYTE_GRAY), "png", new File(sourceDir, "b.png"));
+
+    List<File> expectedFiles = ImageUtil.fromSrc(sourceDir).resize(50, 50).writeToFiles(TestImages.createTempDir("target"), "PNG", true);
+    List<File> directFiles = ImageUtil.fromSrc(sourceDir).storePagesOffHeap().resize(50, 50).writeToFiles(TestImages.createTempDir("target"), "PNG", true);
+    List<File> spillFiles = ImageUtil.fromSrc(sourceDir).useDiskCache(true).storePagesOffHeap().resize(50, 50).writeToFiles(TestImages.createTempDir("target"), "PNG", true);
+
+    assertEquals(2, expectedFiles.size());
+    for (int i = 0; i < expectedFiles.size(); i++) {
+      BufferedImage expectedImage = ImageIO.read(expectedFiles.get(i));
+      assertEquals(0, TestImages.getMaxDifference(expectedImage, ImageIO.read(directFiles.get(i))));
+      assertEquals(0, TestImages.getMaxDifference(expectedImage, ImageIO.read(spillFiles.get(i))));
+    }
+  }
+
+  /**
+   * 存放的頁面與複製回 heap 的頁面皆與原頁面相同。
+   */
+  private static void assertStoredPages(OffHeapPageStore pageStore) throws Exception {
+    long storedBytes = 0;
+    for (int i = 0; i < IMAGE_TYPES.length; i++) {
+      BufferedImage image = TestImages.createImage(37, 23, IMAGE_TYPES[i]);
+
+      BufferedImage storedImage = pageStore.store(image);
+      assertNotSame(image, storedImage);
+      assertEquals("type " + IMAGE_TYPES[i], 0, TestImages.getMaxDifference(image, storedImage));
+
+      BufferedImage heapImage = OffHeapPageStore.copyToHeap(storedImage);
+      assertEquals(IMAGE_TYPES[i], heapImage.getType());
+      assertEquals("type " + IMAGE_TYPES[i], 0, TestImages.getMaxDifference(image, heapImage));
+
+      // 複製的頁面可直接修改，不影響存放的頁面
+      heapImage.setRGB(0, 0, ~image.getRGB(0, 0));
+      assertEquals(image.getRGB(0, 0), storedImage.getRGB(0, 0));
+
+      int dataTypeSize = image.getRaster().getDataBuffer().getDataType() == DataBuffer.TYPE_INT ? 4 : 1;
+      storedBytes += (long) image.getRaster().getDataBuffer().getSize() * dataTypeSize;
+    }
+
+    assertEquals(storedBytes, pageStore.getStoredBytes());
+  }
+}
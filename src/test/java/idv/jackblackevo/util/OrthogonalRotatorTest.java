@@ -0,0 +1,162 @@
+package idv.jackblackevo.util;
+
+import junit.framework.TestCase;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
+
+public class OrthogonalRotatorTest extends TestCase {
+  private static final int[] IMAGE_TYPES = {
+    BufferedImage.TYPE_INT_RGB,
+    BufferedImage.TYPE_INT_ARGB,
+    BufferedImage.TYPE_INT_BGR,
+    BufferedImage.TYPE_3BYTE_BGR,
+    BufferedImage.TYPE_4BYTE_ABGR,
+    BufferedImage.TYPE_BYTE_GRAY,
+    BufferedImage.TYPE_USHORT_GRAY,
+    BufferedImage.TYPE_BYTE_BINARY,
+    BufferedImage.TYPE_BYTE_INDEXED
+  };
+
+  public void testAllTypesMatchPixelMapping() {
+    for (int i = 0; i < IMAGE_TYPES.length; i++) {
+      // 寬高不是 8 的倍數，packed 圖片的每列結尾有未使用的 bit
+      BufferedImage image = createImage(37, 21, IMAGE_TYPES[i]);
+      assertRotated("type " + IMAGE_TYPES[i], image);
+    }
+  }
+
+  public void testPackedImagesWithMoreBitsPerPixel() {
+    for (int bits = 2; bits <= 4; bits *= 2) {
+      int mapSize = 1 << bits;
+      byte[] gray = new byte[mapSize];
+      for (int i = 0; i < mapSize; i++) {
+        gray[i] = (byte) (i * 255 / (mapSize - 1));
+      }
+      IndexColorModel colorModel = new IndexColorModel(bits, mapSize, gray, gray, gray);
+      BufferedImage image = new BufferedImage(29, 13, BufferedImage.TYPE_BYTE_BINARY, colorModel);
+      fill(image);
+
+      assertRotated(bits + " bits", image);
+    }
+  }
+
+  public void testSubimagesMatchPixelMapping() {
+    for (int i = 0; i < IMAGE_TYPES.length; i++) {
+      // 子圖片的 Raster 從父圖片的中間開始，且列與列之間有間隔
+      BufferedImage image = createImage(64, 48, IMAGE_TYPES[i]).getSubimage(5, 7, 33, 19);
+      assertRotated("subimage of type " + IMAGE_TYPES[i], image);
+    }
+  }
+
+  public void testMatchesGraphics2DRotation() {
+    BufferedImage image = TestImages.createImage(45, 30, BufferedImage.TYPE_INT_RGB);
+
+    for (int quadrants = 1; quadrants < 4; quadrants++) {
+      BufferedImage expectedImage = rotateWithGraphics2D(image, quadrants);
+
+      assertEquals(0, TestImages.getMaxDifference(expectedImage, OrthogonalRotator.rotate(image, quadrants)));
+    }
+  }
+
+  public void testPooledTargetIsOverwritten() {
+    BufferedImagePool imagePool = new BufferedImagePool();
+    BufferedImage dirtyImage = new BufferedImage(20, 30, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = dirtyImage.createGraphics();
+    g.setColor(Color.MAGENTA);
+    g.fillRect(0, 0, 20, 30);
+    g.dispose();
+    imagePool.release(dirtyImage);
+
+    BufferedImage image = new BufferedImage(30, 20, BufferedImage.TYPE_INT_RGB);
+    BufferedImage rotatedImage = OrthogonalRotator.rotate(image, 1, imagePool);
+
+    assertSame(dirtyImage, rotatedImage);
+    for (int y = 0; y < 30; y++) {
+      for (int x = 0; x < 20; x++) {
+        assertEquals(0xFF000000, rotatedImage.getRGB(x, y));
+      }
+    }
+  }
+
+  public void testZeroQuadrantsReturnsSameImage() {
+    BufferedImage image = createImage(10, 10, BufferedImage.TYPE_INT_RGB);
+
+    assertSame(image, OrthogonalRotator.rotate(image, 0));
+    assertSame(image, OrthogonalRotator.rotate(image, 4));
+  }
+
+  private static void assertRotated(String message, BufferedImage image) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+
+    for (int quadrants = 1; quadrants < 4; quadrants++) {
+      BufferedImage rotatedImage = OrthogonalRotator.rotate(image, quadrants);
+      assertEquals(message, image.getType(), rotatedImage.getType());
+      assertEquals(message, quadrants == 2 ? width : height, rotatedImage.getWidth());
+      assertEquals(message, quadrants == 2 ? height : width, rotatedImage.getHeight());
+
+      for (int y = 0; y < height; y++) {
+        for (int x = 0; x < width; x++) {
+          int rgb;
+          if (quadrants == 1) {
+            rgb = rotatedImage.getRGB(height - 1 - y, x);
+          } else if (quadrants == 2) {
+            rgb = rotatedImage.getRGB(width - 1 - x, height - 1 - y);
+          } else {
+            rgb = rotatedImage.getRGB(y, width - 1 - x);
+          }
+          assertEquals(message + ", quadrants " + quadrants + " at (" + x + ", " + y + ")", image.getRGB(x, y), rgb);
+        }
+      }
+    }
+  }
+
+  private static BufferedImage createImage(int width, int height, int imageType) {
+    BufferedImage image = new BufferedImage(width, height, imageType);
+    fill(image);
+
+    return image;
+  }
+
+  /**
+   * 每個樣本填入不同的值，透明度也各不相同。
+   */
+  private static void fill(BufferedImage image) {
+    WritableRaster raster = image.getRaster();
+    int numBands = raster.getNumBands();
+    int maxSample = (1 << image.getColorModel().getComponentSize(0)) - 1;
+    if (image.getColorModel() instanceof IndexColorModel) {
+      maxSample = ((IndexColorModel) image.getColorModel()).getMapSize() - 1;
+    }
+
+    for (int y = 0; y < raster.getHeight(); y++) {
+      for (int x = 0; x < raster.getWidth(); x++) {
+        for (int b = 0; b < numBands; b++) {
+          raster.setSample(x, y, b, (x * 31 + y * 17 + b * 7) % (maxSample + 1));
+        }
+      }
+    }
+  }
+
+  private static BufferedImage rotateWithGraphics2D(BufferedImage image, int quadrants) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    boolean isTransposed = quadrants % 2 == 1;
+    BufferedImage rotatedImage = new BufferedImage(isTransposed ? height : width, isTransposed ? width : height, image.getType());
+
+    AffineTransform transform = new AffineTransform();
+    transform.translate(rotatedImage.getWidth() / 2.0, rotatedImage.getHeight() / 2.0);
+    transform.quadrantRotate(quadrants);
+    transform.translate(-width / 2.0, -height / 2.0);
+
+    Graphics2D g = rotatedImage.createGraphics();
+    g.drawImage(image, transform, null);
+    g.dispose();
+
+    return rotatedImage;
+  }
+}
@@ -0,0 +1,134 @@
+package idv.jackblackevo.util;
+
+import junit.framework.TestCase;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+public class PDFPageRendererTest extends TestCase {
+  private File pdfFile;
+
+  @Override
+  protected void setUp() throws Exception {
+    pdfFile = new File(TestImages.createTempDir("pdf"), "pages.pdf");
+    try (
+      PDDocument document = new PDDocument()
+    ) {
+      addPage(document, PDRectangle.A6, 0);
+      addPage(document, PDRectangle.A5, 0);
+      addPage(document, PDRectangle.A6, 90);
+      document.save(pdfFile);
+    }
+  }
+
+  public void testPageSize() throws Exception {
+    try (
+      PDFPageRenderer pdfPageRenderer = new PDFPageRenderer(pdfFile, false)
+    ) {
+      assertEquals(3, pdfPageRenderer.getNumPages());
+      assertEquals(new Dimension(Math.round(PDRectangle.A6.getWidth()), Math.round(PDRectangle.A6.getHeight())), pdfPageRenderer.getPageSize(0, 72));
+      assertEquals(new Dimension(Math.round(PDRectangle.A5.getWidth() * 2), Math.round(PDRectangle.A5.getHeight() * 2)), pdfPageRenderer.getPageSize(1, 144));
+
+      // 旋轉 90 度的頁面寬高對調
+      Dimension rotatedSize = pdfPageRenderer.getPageSize(2, 72);
+      assertEquals(Math.round(PDRectangle.A6.getHeight()), rotatedSize.width);
+      assertEquals(Math.round(PDRectangle.A6.getWidth()), rotatedSize.height);
+    }
+  }
+
+  public void testRenderPage() throws Exception {
+    try (
+      PDFPageRenderer pdfPageRenderer = new PDFPageRenderer(pdfFile, false)
+    ) {
+      BufferedImage imagePage = pdfPageRenderer.renderPage(0, 100);
+
+      assertEquals(pdfPageRenderer.getPageSize(0, 100), new Dimension(imagePage.getWidth(), imagePage.getHeight()));
+
+      // 左上角的四分之一為黑色，其餘為白色
+      assertEquals(0xFF000000, imagePage.getRGB(imagePage.getWidth() / 4, imagePage.getHeight() / 4));
+      assertEquals(0xFFFFFFFF, imagePage.getRGB(imagePage.getWidth() * 3 / 4, imagePage.getHeight() * 3 / 4));
+    }
+  }
+
+  public void testRenderRegionMatchesCroppedPage() throws Exception {
+    try (
+      PDFPageRenderer pdfPageRenderer = new PDFPageRenderer(pdfFile, false)
+    ) {
+      BufferedImage imagePage = pdfPageRenderer.renderPage(1, PDFPageRenderer.DEFAULT_DPI);
+      Rectangle region = new Rectangle(imagePage.getWidth() / 4, imagePage.getHeight() / 4, imagePage.getWidth() / 2, imagePage.getHeight() / 2);
+
+      BufferedImage regionPage = pdfPageRenderer.renderPage(1, PDFPageRenderer.DEFAULT_DPI, region);
+
+      assertEquals(region.width, regionPage.getWidth());
+      assertEquals(region.height, regionPage.getHeight());
+      BufferedImage croppedPage = imagePage.getSubimage(region.x, region.y, region.width, region.height);
+      assertTrue(TestImages.getMaxDifference(croppedPage, regionPage) <= 8);
+    }
+  }
+
+  public void testConcurrentRenderingMatchesSerial() throws Exception {
+    try (
+      final PDFPageRenderer pdfPageRenderer = new PDFPageRenderer(pdfFile, false);
+      TaskExecutor executor = new TaskExecutor(3)
+    ) {
+      List<Callable<BufferedImage>> taskList = new ArrayList<>();
+      for (int i = 0; i < 3; i++) {
+        final int pageIndex = i;
+        taskList.add(new Callable<BufferedImage>() {
+          @Override
+          public BufferedImage call() throws Exception {
+            return pdfPageRenderer.renderPage(pageIndex, 72);
+          }
+        });
+      }
+      List<BufferedImage> imagePageList = executor.invokeAll(taskList);
+
+      for (int i = 0; i < 3; i++) {
+        assertEquals(0, TestImages.getMaxDifference(pdfPageRenderer.renderPage(i, 72), imagePageList.get(i)));
+      }
+    }
+  }
+
+  public void testSmallTargetRendersAtLowerDPI() throws Exception {
+    ReservationRecordingOutputStream os = new ReservationRecordingOutputStream();
+    ImageUtil.streamFromSrc(pdfFile).selectPages(1, 1).resize(100, 100).writeTo(os, "PNG", true);
+
+    BufferedImage image = ImageIO.read(new ByteArrayInputStream(os.toByteArray()));
+    assertEquals(100, image.getHeight());
+
+    // 繪製的尺寸為目標尺寸的 SUBSAMPLING_OVERSAMPLE 倍，遠小於預設 DPI 的尺寸
+    long defaultDPIBytes;
+    try (
+      PDFPageRenderer pdfPageRenderer = new PDFPageRenderer(pdfFile, false)
+    ) {
+      Dimension pageSize = pdfPageRenderer.getPageSize(0, PDFPageRenderer.DEFAULT_DPI);
+      defaultDPIBytes = MemoryGovernor.estimatePageBytes(pageSize.width, pageSize.height, 32);
+    }
+    assertTrue(os.getMaxReservedBytes() > 0);
+    assertTrue(os.getMaxReservedBytes() < defaultDPIBytes / 4);
+  }
+
+  private static void addPage(PDDocument document, PDRectangle mediaBox, int rotation) throws Exception {
+    PDPage page = new PDPage(mediaBox);
+    page.setRotation(rotation);
+    document.addPage(page);
+
+    try (
+      PDPageContentStream contentStream = new PDPageContentStream(document, page)
+    ) {
+      contentStream.setNonStrokingColor(Color.BLACK);
+      contentStream.addRect(0, mediaBox.getHeight() / 2, mediaBox.getWidth() / 2, mediaBox.getHeight() / 2);
+      contentStream.fill();
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package idv.jackblackevo.util;
+
+import junit.framework.TestCase;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class PagePipelineTest extends TestCase {
+  public void testRotateOnlyWhenNeeded() {
+    PagePipeline pagePipeline = createPipeline(false, ImageOperation.resize(50, 50, ImageBuilder.QUALITY), ImageOperation.rotate(ImageBuilder.PORTRAIT));
+
+    BufferedImage landscapePage = pagePipeline.process(TestImages.createImage(100, 60, BufferedImage.TYPE_INT_RGB));
+    assertEquals(30, landscapePage.getWidth());
+    assertEquals(50, landscapePage.getHeight());
+
+    // 已是直式時不需旋轉
+    BufferedImage portraitPage = pagePipeline.process(TestImages.createImage(60, 100, BufferedImage.TYPE_INT_RGB));
+    assertEquals(30, portraitPage.getWidth());
+    assertEquals(50, portraitPage.getHeight());
+  }
+
+  public void testOppositeRotationsAreCombined() {
+    BufferedImage imagePage = TestImages.createImage(100, 60, BufferedImage.TYPE_INT_RGB);
+    PagePipeline pagePipeline = createPipeline(false, ImageOperation.rotate(ImageBuilder.PORTRAIT), ImageOperation.rotate(ImageBuilder.LANDSCAPE));
+
+    // 轉為直式再轉為橫式，合併為一次旋轉 180 度
+    BufferedImage resultPage = pagePipeline.process(imagePage);
+    assertEquals(100, resultPage.getWidth());
+    assertEquals(60, resultPage.getHeight());
+    assertEquals(imagePage.getRGB(0, 0), resultPage.getRGB(99, 59));
+    assertEquals(imagePage.getRGB(99, 0), resultPage.getRGB(0, 59));
+  }
+
+  public void testNoOperationReturnsSourcePage() {
+    BufferedImage imagePage = TestImages.createImage(40, 30, BufferedImage.TYPE_INT_RGB);
+
+    assertSame(imagePage, createPipeline(false).process(imagePage));
+  }
+
+  public void testResizeFlattenAndRotateInOnePass() {
+    BufferedImage imagePage = new BufferedImage(100, 60, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = imagePage.createGraphics();
+    g.setColor(Color.RED);
+    g.fillRect(0, 0, 50, 60);
+    g.dispose();
+    int[] originPixels = imagePage.getRGB(0, 0, 100, 60, null, 0, 100);
+
+    PagePipeline pagePipeline = createPipeline(true, ImageOperation.resize(50, 50, ImageBuilder.QUALITY), ImageOperation.rotate(ImageBuilder.PORTRAIT));
+    BufferedImage resultPage = pagePipeline.process(imagePage);
+
+    assertEquals(30, resultPage.getWidth());
+    assertEquals(50, resultPage.getHeight());
+    assertFalse(resultPage.getColorModel().hasAlpha());
+
+    // 順時針旋轉後原本的左半部在上方，透明的右半部合成為白色
+    assertEquals(0xFFFF0000, resultPage.getRGB(15, 5));
+    assertEquals(0xFFFFFFFF, resultPage.getRGB(15, 45));
+
+    // 不會修改原頁面
+    assertTrue(Arrays.equals(originPixels, imagePage.getRGB(0, 0, 100, 60, null, 0, 100)));
+  }
+
+  public void testProcessUsesGivenSourceSize() {
+    // 以一半解析度取得的頁面，依原始尺寸計算結果
+    BufferedImage imagePage = TestImages.createImage(100, 60, BufferedImage.TYPE_INT_RGB);
+    PagePipeline pagePipeline = createPipeline(false, ImageOperation.resize(80, 80, ImageBuilder.QUALITY));
+
+    BufferedImage resultPage = pagePipeline.process(imagePage, new Dimension(200, 120));
+
+    assertEquals(80, resultPage.getWidth());
+    assertEquals(48, resultPage.getHeight());
+  }
+
+  private static PagePipeline createPipeline(boolean isFlattenAlpha, ImageOperation... operations) {
+    List<ImageOperation> operationList = new ArrayList<>();
+    Collections.addAll(operationList, operations);
+
+    return new PagePipeline(operationList, isFlattenAlpha, false, false, new BufferedImagePool());
+  }
+}
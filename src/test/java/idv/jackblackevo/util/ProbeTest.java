@@ -0,0 +1,106 @@
+package idv.jackblackevo.util;
+
+import junit.framework.TestCase;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class ProbeTest extends TestCase {
+  private File sourceDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    sourceDir = TestImages.createTempDir("source");
+  }
+
+  public void testProbeImage() throws Exception {
+    File pngFile = TestImages.write(TestImages.createImage(80, 60, BufferedImage.TYPE_INT_RGB), "png", new File(sourceDir, "a.png"));
+
+    ImageInfo imageInfo = ImageUtil.probe(pngFile);
+    assertEquals(pngFile.getPath(), imageInfo.getSourceName());
+    assertEquals("PNG", imageInfo.getFormat());
+    assertEquals(80, imageInfo.getWidth());
+    assertEquals(60, imageInfo.getHeight());
+    assertEquals(1, imageInfo.getNumPages());
+    assertFalse(imageInfo.isPDF());
+
+    // 路徑與 Path 相同
+    assertEquals(imageInfo.toString(), ImageUtil.probe(pngFile.getPath()).toString());
+    assertEquals(imageInfo.toString(), ImageUtil.probe(pngFile.toPath()).toString());
+  }
+
+  public void testProbeBytes() throws Exception {
+    byte[] jpegBytes = TestImages.toBytes(TestImages.createImage(30, 40, BufferedImage.TYPE_INT_RGB), "jpg");
+
+    ImageInfo imageInfo = ImageUtil.probe(jpegBytes);
+    assertEquals("JPEG", imageInfo.getFormat());
+    assertEquals(30, imageInfo.getWidth());
+    assertEquals(40, imageInfo.getHeight());
+    assertEquals(1, imageInfo.getNumPages());
+  }
+
+  public void testProbeMultipageTIFF() throws Exception {
+    File tiffFile = new File(sourceDir, "a.tiff");
+    ImageWriter imageWriter = ImageIO.getImageWritersByFormatName("tiff").next();
+    try (
+      ImageOutputStream ios = ImageIO.createImageOutputStream(tiffFile)
+    ) {
+      imageWriter.setOutput(ios);
+      imageWriter.prepareWriteSequence(null);
+      imageWriter.writeToSequence(new IIOImage(TestImages.createImage(50, 20, BufferedImage.TYPE_INT_RGB), null, null), null);
+      imageWriter.writeToSequence(new IIOImage(TestImages.createImage(10, 10, BufferedImage.TYPE_INT_RGB), null, null), null);
+      imageWriter.writeToSequence(new IIOImage(TestImages.createImage(10, 10, BufferedImage.TYPE_INT_RGB), null, null), null);
+      imageWriter.endWriteSequence();
+    } finally {
+      imageWriter.dispose();
+    }
+
+    // 尺寸為第一頁
+    ImageInfo imageInfo = ImageUtil.probe(tiffFile);
+    assertEquals("TIFF", imageInfo.getFormat());
+    assertEquals(50, imageInfo.getWidth());
+    assertEquals(20, imageInfo.getHeight());
+    assertEquals(3, imageInfo.getNumPages());
+  }
+
+  public void testProbePDF() throws Exception {
+    File pdfFile = TestImages.writePDF(new File(sourceDir, "a.pdf"), 2);
+
+    Dimension pageSize;
+    try (
+      PDFPageRenderer pdfPageRenderer = new PDFPageRenderer(pdfFile, false)
+    ) {
+      pageSize = pdfPageRenderer.getPageSize(0, PDFPageRenderer.DEFAULT_DPI);
+    }
+
+    ImageInfo imageInfo = ImageUtil.probe(Files.readAllBytes(pdfFile.toPath()));
+    assertTrue(imageInfo.isPDF());
+    assertEquals(pageSize.width, imageInfo.getWidth());
+    assertEquals(pageSize.height, imageInfo.getHeight());
+    assertEquals(2, imageInfo.getNumPages());
+  }
+
+  public void testProbeUnsupported() throws Exception {
+    File textFile = new File(sourceDir, "a.txt");
+    Files.write(textFile.toPath(), "plain text".getBytes(StandardCharsets.US_ASCII));
+    assertNull(ImageUtil.probe(textFile));
+
+    // 無法開啟的 PDF 視為不支援
+    assertNull(ImageUtil.probe("%PDF-1.4\nbroken".getBytes(StandardCharsets.US_ASCII)));
+
+    try {
+      ImageUtil.probe(new File(sourceDir, "missing.png"));
+      fail("Should throw FileNotFoundException");
+    } catch (FileNotFoundException e) {
+      // expected
+    }
+  }
+}
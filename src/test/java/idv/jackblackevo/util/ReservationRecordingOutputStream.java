@@ -0,0 +1,30 @@
+package idv.jackblackevo.util;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * 寫出時記錄 MemoryGovernor 的最大預留量，寫出期間處理後的頁面仍在預留中，可用於確認解碼或繪製的大小。
+ */
+class ReservationRecordingOutputStream extends ByteArrayOutputStream {
+  private long maxReservedBytes = 0;
+
+  @Override
+  public synchronized void write(byte[] b, int off, int len) {
+    record();
+    super.write(b, off, len);
+  }
+
+  @Override
+  public synchronized void write(int b) {
+    record();
+    super.write(b);
+  }
+
+  public synchronized long getMaxReservedBytes() {
+    return maxReservedBytes;
+  }
+
+  private void record() {
+    maxReservedBytes = Math.max(maxReservedBytes, MemoryGovernor.getReservedBytes());
+  }
+}
@@ -0,0 +1,82 @@
+package idv.jackblackevo.util;
+
+import junit.framework.TestCase;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.List;
+
+public class ResizeQualityTest extends TestCase {
+  private static final ImageBuilder.ResizeQuality[] QUALITIES = {ImageBuilder.FAST, ImageBuilder.BALANCED, ImageBuilder.QUALITY};
+
+  private File sourceDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    sourceDir = TestImages.createTempDir("source");
+  }
+
+  public void testQualitiesAreClose() throws Exception {
+    // 平滑的漸層，各種重新取樣方式的結果應接近
+    BufferedImage image = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+    for (int y = 0; y < image.getHeight(); y++) {
+      for (int x = 0; x < image.getWidth(); x++) {
+        image.setRGB(x, y, (x * 255 / 800) << 16 | (y * 255 / 600) << 8 | 128);
+      }
+    }
+    File pngFile = TestImages.write(image, "png", new File(sourceDir, "a.png"));
+
+    BufferedImage[] resizedImages = new BufferedImage[QUALITIES.length];
+    for (int i = 0; i < QUALITIES.length; i++) {
+      resizedImages[i] = resize(pngFile, 100, 100, QUALITIES[i]);
+      assertEquals(QUALITIES[i].name(), 100, resizedImages[i].getWidth());
+      assertEquals(QUALITIES[i].name(), 75, resizedImages[i].getHeight());
+    }
+
+    for (int i = 0; i < QUALITIES.length - 1; i++) {
+      assertTrue(QUALITIES[i].name(), TestImages.getMaxDifference(resizedImages[QUALITIES.length - 1], resizedImages[i]) <= 8);
+    }
+  }
+
+  public void testConstantColor() throws Exception {
+    BufferedImage image = new BufferedImage(640, 480, BufferedImage.TYPE_BYTE_GRAY);
+    for (int y = 0; y < image.getHeight(); y++) {
+      for (int x = 0; x < image.getWidth(); x++) {
+        image.getRaster().setSample(x, y, 0, 90);
+      }
+    }
+    File pngFile = TestImages.write(image, "png", new File(sourceDir, "gray.png"));
+
+    for (int i = 0; i < QUALITIES.length; i++) {
+      BufferedImage resizedImage = resize(pngFile, 70, 70, QUALITIES[i]);
+      assertEquals(70, resizedImage.getWidth());
+      assertEquals(52, resizedImage.getHeight());
+      for (int y = 0; y < resizedImage.getHeight(); y++) {
+        for (int x = 0; x < resizedImage.getWidth(); x++) {
+          assertEquals(QUALITIES[i].name(), 90, resizedImage.getRaster().getSample(x, y, 0));
+        }
+      }
+    }
+  }
+
+  public void testUnsupportedLayoutFallsBack() throws Exception {
+    // 調色盤圖片改以 ResampleOp 處理
+    BufferedImage image = new BufferedImage(300, 200, BufferedImage.TYPE_BYTE_INDEXED);
+    image.getGraphics().drawImage(TestImages.createImage(300, 200, BufferedImage.TYPE_INT_RGB), 0, 0, null);
+    File gifFile = TestImages.write(image, "gif", new File(sourceDir, "a.gif"));
+
+    for (int i = 0; i < QUALITIES.length; i++) {
+      BufferedImage resizedImage = resize(gifFile, 60, 60, QUALITIES[i]);
+      assertEquals(QUALITIES[i].name(), 60, resizedImage.getWidth());
+      assertEquals(QUALITIES[i].name(), 40, resizedImage.getHeight());
+    }
+  }
+
+  private static BufferedImage resize(File imageFile, int width, int height, ImageBuilder.ResizeQuality quality) throws Exception {
+    List<File> wroteFiles = ImageUtil.fromSrc(imageFile).resize(width, height, quality).writeToFiles(TestImages.createTempDir("target"), "PNG", true);
+    assertEquals(1, wroteFiles.size());
+
+    return ImageIO.read(wroteFiles.get(0));
+  }
+}
@@ -0,0 +1,78 @@
+package idv.jackblackevo.util;
+
+import junit.framework.TestCase;
+
+import javax.imageio.ImageIO;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.List;
+
+public class ResizeToSizesTest extends TestCase {
+  private File pngFile;
+
+  @Override
+  protected void setUp() throws Exception {
+    BufferedImage image = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+    for (int y = 0; y < image.getHeight(); y++) {
+      for (int x = 0; x < image.getWidth(); x++) {
+        image.setRGB(x, y, (x * 255 / 800) << 16 | (y * 255 / 600) << 8 | 64);
+      }
+    }
+    pngFile = TestImages.write(image, "png", new File(TestImages.createTempDir("source"), "a.png"));
+  }
+
+  public void testWriteAllSizes() throws Exception {
+    // 依面積由大至小寫出，檔名加上尺寸
+    List<File> wroteFiles = ImageUtil.fromSrc(pngFile)
+      .resizeToSizes(new Dimension(100, 100), new Dimension(400, 400), new Dimension(200, 200))
+      .writeToFiles(TestImages.createTempDir("target"), "PNG", true);
+    assertEquals(3, wroteFiles.size());
+    assertTrue(wroteFiles.get(0).getName().contains("_400x400"));
+    assertTrue(wroteFiles.get(1).getName().contains("_200x200"));
+    assertTrue(wroteFiles.get(2).getName().contains("_100x100"));
+
+    int[] widths = {400, 200, 100};
+    for (int i = 0; i < widths.length; i++) {
+      BufferedImage wroteImage = ImageIO.read(wroteFiles.get(i));
+      assertEquals(widths[i], wroteImage.getWidth());
+      assertEquals(widths[i] * 3 / 4, wroteImage.getHeight());
+
+      // 由前一個尺寸縮小的結果與直接由原圖縮小接近
+      BufferedImage expectedImage = ImageIO.read(ImageUtil.fromSrc(pngFile).resize(widths[i], widths[i]).writeToFiles(TestImages.createTempDir("target"), "PNG", true).get(0));
+      assertTrue("width " + widths[i], TestImages.getMaxDifference(expectedImage, wroteImage) <= 8);
+    }
+  }
+
+  public void testMultiplePages() throws Exception {
+    File pdfFile = TestImages.writePDF(new File(pngFile.getParentFile(), "a.pdf"), 2);
+
+    List<File> wroteFiles = ImageUtil.fromSrc(pdfFile)
+      .resizeToSizes(ImageBuilder.FAST, new Dimension(200, 200), new Dimension(100, 100))
+      .writeToFiles(TestImages.createTempDir("target"), "PNG", true);
+    assertEquals(4, wroteFiles.size());
+  }
+
+  public void testStreamOutputOnlyLargestSize() throws Exception {
+    ByteArrayOutputStream bao = new ByteArrayOutputStream();
+    ImageUtil.fromSrc(pngFile).resizeToSizes(new Dimension(100, 100), new Dimension(400, 400)).writeTo(bao, "PNG", true);
+
+    BufferedImage wroteImage = ImageIO.read(new ByteArrayInputStream(bao.toByteArray()));
+    assertEquals(400, wroteImage.getWidth());
+    assertEquals(300, wroteImage.getHeight());
+  }
+
+  public void testSizesAreSetOnce() throws Exception {
+    ImageBuilder imageBuilder = ImageUtil.fromSrc(pngFile).resizeToSizes(new Dimension(100, 100));
+    try {
+      imageBuilder.resizeToSizes(new Dimension(200, 200));
+      fail("Should reject setting output sizes twice");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    } finally {
+      imageBuilder.close();
+    }
+  }
+}
@@ -0,0 +1,114 @@
+package idv.jackblackevo.util;
+
+import junit.framework.TestCase;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.List;
+
+public class SourceSelectionTest extends TestCase {
+  public void testSelectAll() {
+    SourceSelection sourceSelection = SourceSelection.ALL;
+    assertTrue(sourceSelection.isAll());
+    assertFalse(sourceSelection.hasRegion());
+    assertEquals(0, sourceSelection.getFirstPageIndex());
+    assertEquals(5, sourceSelection.getEndPageIndex(5));
+    assertTrue(sourceSelection.isPageSelected(100));
+    assertEquals(new Rectangle(0, 0, 20, 10), sourceSelection.getRegion(new Dimension(20, 10)));
+  }
+
+  public void testWithPages() {
+    SourceSelection sourceSelection = SourceSelection.ALL.withPages(2, 3);
+    assertFalse(sourceSelection.isAll());
+    assertEquals(1, sourceSelection.getFirstPageIndex());
+    assertEquals(3, sourceSelection.getEndPageIndex(5));
+    // 超過總頁數時至最後一頁
+    assertEquals(2, sourceSelection.getEndPageIndex(2));
+    assertFalse(sourceSelection.isPageSelected(0));
+    assertTrue(sourceSelection.isPageSelected(1));
+    assertTrue(sourceSelection.isPageSelected(2));
+    assertFalse(sourceSelection.isPageSelected(3));
+
+    try {
+      SourceSelection.ALL.withPages(0, 1);
+      fail("Should reject page 0");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+    try {
+      SourceSelection.ALL.withPages(3, 2);
+      fail("Should reject reversed range");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+  }
+
+  public void testWithRegion() {
+    Rectangle region = new Rectangle(10, 5, 30, 30);
+    SourceSelection sourceSelection = SourceSelection.ALL.withPages(2, 2).withRegion(region);
+    assertTrue(sourceSelection.hasRegion());
+    assertEquals(1, sourceSelection.getFirstPageIndex());
+
+    // 修改傳入的 Rectangle 不影響選取範圍
+    region.x = 100;
+    assertEquals(new Rectangle(10, 5, 30, 30), sourceSelection.getRegion(new Dimension(100, 100)));
+
+    // 只取頁面中的部分，不在頁面中時為 null
+    assertEquals(new Rectangle(10, 5, 10, 15), sourceSelection.getRegion(new Dimension(20, 20)));
+    assertNull(sourceSelection.getRegion(new Dimension(10, 10)));
+
+    try {
+      SourceSelection.ALL.withRegion(new Rectangle(0, 0, 0, 10));
+      fail("Should reject empty region");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+  }
+
+  public void testSelectPages() throws Exception {
+    BufferedImage[] pages = {
+      TestImages.createImage(40, 30, BufferedImage.TYPE_INT_RGB),
+      TestImages.createImage(30, 40, BufferedImage.TYPE_INT_RGB),
+      TestImages.createImage(50, 20, BufferedImage.TYPE_INT_RGB)
+    };
+    File sourceDir = TestImages.createTempDir("source");
+    File tiffFile = new File(sourceDir, "a.tiff");
+    ImageWriter imageWriter = ImageIO.getImageWritersByFormatName("tiff").next();
+    try (
+      ImageOutputStream ios = ImageIO.createImageOutputStream(tiffFile)
+    ) {
+      imageWriter.setOutput(ios);
+      imageWriter.prepareWriteSequence(null);
+      for (int i = 0; i < pages.length; i++) {
+        imageWriter.writeToSequence(new IIOImage(pages[i], null, null), null);
+      }
+      imageWriter.endWriteSequence();
+    } finally {
+      imageWriter.dispose();
+    }
+
+    List<File> wroteFiles = ImageUtil.fromSrc(tiffFile).selectPages(2, 10).writeToFiles(TestImages.createTempDir("target"), "PNG", true);
+    assertEquals(2, wroteFiles.size());
+    assertEquals(0, TestImages.getMaxDifference(pages[1], ImageIO.read(wroteFiles.get(0))));
+    assertEquals(0, TestImages.getMaxDifference(pages[2], ImageIO.read(wroteFiles.get(1))));
+
+    // PDF 只繪製選取的頁面
+    File pdfFile = TestImages.writePDF(new File(sourceDir, "a.pdf"), 3);
+    assertEquals(1, ImageUtil.fromSrc(pdfFile).selectPages(3, 3).writeToFiles(TestImages.createTempDir("target"), "PNG", true).size());
+  }
+
+  public void testSelectRegion() throws Exception {
+    BufferedImage image = TestImages.createImage(80, 60, BufferedImage.TYPE_INT_RGB);
+    File pngFile = TestImages.write(image, "png", new File(TestImages.createTempDir("source"), "a.png"));
+
+    List<File> wroteFiles = ImageUtil.fromSrc(pngFile).selectRegion(10, 20, 30, 25).writeToFiles(TestImages.createTempDir("target"), "PNG", true);
+    assertEquals(1, wroteFiles.size());
+    assertEquals(0, TestImages.getMaxDifference(image.getSubimage(10, 20, 30, 25), ImageIO.read(wroteFiles.get(0))));
+  }
+}
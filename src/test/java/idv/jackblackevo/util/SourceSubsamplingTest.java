@@ -0,0 +1,57 @@
+package idv.jackblackevo.util;
+
+import junit.framework.TestCase;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+
+public class SourceSubsamplingTest extends TestCase {
+  public void testSmallTargetDecodesSubsampledPixels() throws Exception {
+    File imageFile = TestImages.write(TestImages.createImage(2000, 1000, BufferedImage.TYPE_INT_RGB), "png", new File(TestImages.createTempDir("source"), "large.png"));
+
+    // 寫出時解碼後的頁面仍在預留中
+    ReservationRecordingOutputStream os = new ReservationRecordingOutputStream();
+    ImageUtil.streamFromSrc(imageFile).resize(100, 50).writeTo(os, "PNG", true);
+
+    long fullDecodedBytes = MemoryGovernor.estimatePageBytes(2000, 1000, 24);
+    assertTrue(os.getMaxReservedBytes() > 0);
+    assertTrue(os.getMaxReservedBytes() <= fullDecodedBytes / 25);
+
+    BufferedImage image = ImageIO.read(new ByteArrayInputStream(os.toByteArray()));
+    assertEquals(100, image.getWidth());
+    assertEquals(50, image.getHeight());
+  }
+
+  public void testSubsampledResultMatchesFullDecode() throws Exception {
+    // 平滑的漸層，取樣不會產生疊影
+    BufferedImage sourceImage = new BufferedImage(1600, 1200, BufferedImage.TYPE_INT_RGB);
+    for (int y = 0; y < 1200; y++) {
+      for (int x = 0; x < 1600; x++) {
+        sourceImage.setRGB(x, y, (x * 255 / 1600) << 16 | (y * 255 / 1200) << 8);
+      }
+    }
+    File imageFile = TestImages.write(sourceImage, "png", new File(TestImages.createTempDir("source"), "large.png"));
+
+    // 一次讀入的 Builder 不會於解碼時取樣
+    ByteArrayOutputStream fullOutput = new ByteArrayOutputStream();
+    ImageUtil.fromSrc(imageFile).resize(80, 60).writeTo(fullOutput, "PNG", true);
+    ByteArrayOutputStream subsampledOutput = new ByteArrayOutputStream();
+    ImageUtil.streamFromSrc(imageFile).resize(80, 60).writeTo(subsampledOutput, "PNG", true);
+
+    BufferedImage fullImage = ImageIO.read(new ByteArrayInputStream(fullOutput.toByteArray()));
+    BufferedImage subsampledImage = ImageIO.read(new ByteArrayInputStream(subsampledOutput.toByteArray()));
+    assertTrue(TestImages.getMaxDifference(fullImage, subsampledImage) <= 16);
+  }
+
+  public void testLargeTargetIsNotSubsampled() throws Exception {
+    File imageFile = TestImages.write(TestImages.createImage(400, 300, BufferedImage.TYPE_INT_RGB), "png", new File(TestImages.createTempDir("source"), "small.png"));
+
+    ReservationRecordingOutputStream os = new ReservationRecordingOutputStream();
+    ImageUtil.streamFromSrc(imageFile).resize(300, 300).writeTo(os, "PNG", true);
+
+    assertEquals(MemoryGovernor.estimatePageBytes(400, 300, 24), os.getMaxReservedBytes());
+  }
+}
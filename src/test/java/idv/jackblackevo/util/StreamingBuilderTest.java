@@ -0,0 +1,61 @@
+package idv.jackblackevo.util;
+
+import junit.framework.TestCase;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+
+public class StreamingBuilderTest extends TestCase {
+  public void testStreamingOutputMatchesEagerOutput() throws Exception {
+    File sourceDir = TestImages.createTempDir("source");
+    TestImages.write(TestImages.createImage(120, 80, BufferedImage.TYPE_INT_RGB), "png", new File(sourceDir, "a.png"));
+    TestImages.write(TestImages.createImage(60, 90, BufferedImage.TYPE_INT_RGB), "bmp", new File(sourceDir, "b.bmp"));
+    TestImages.writePDF(new File(sourceDir, "c.pdf"), 2);
+
+    File eagerDir = TestImages.createTempDir("eager");
+    File streamingDir = TestImages.createTempDir("streaming");
+    List<File> eagerFiles = ImageUtil.fromSrc(sourceDir).resize(50, 50).rotate(ImageBuilder.PORTRAIT).writeToFiles(eagerDir, "PNG", true);
+    ImageBuilder streamingBuilder = ImageUtil.streamFromSrc(sourceDir);
+    assertTrue(streamingBuilder.checkIsStreaming());
+    List<File> streamingFiles = streamingBuilder.resize(50, 50).rotate(ImageBuilder.PORTRAIT).writeToFiles(streamingDir, "PNG", true);
+
+    assertEquals(4, eagerFiles.size());
+    assertEquals(eagerFiles.size(), streamingFiles.size());
+    for (int i = 0; i < eagerFiles.size(); i++) {
+      assertEquals(eagerFiles.get(i).getName(), streamingFiles.get(i).getName());
+
+      BufferedImage eagerImage = ImageIO.read(eagerFiles.get(i));
+      BufferedImage streamingImage = ImageIO.read(streamingFiles.get(i));
+      assertTrue(eagerImage.getWidth() <= eagerImage.getHeight());
+      assertEquals(0, TestImages.getMaxDifference(eagerImage, streamingImage));
+    }
+  }
+
+  public void testStreamingDecodesWhenWriting() throws Exception {
+    File sourceDir = TestImages.createTempDir("source");
+    File imageFile = TestImages.write(TestImages.createImage(40, 30, BufferedImage.TYPE_INT_RGB), "png", new File(sourceDir, "a.png"));
+
+    ImageBuilder streamingBuilder = ImageUtil.streamFromSrc(imageFile);
+
+    // 建立 Builder 後才更換的內容也會被寫出
+    TestImages.write(TestImages.createImage(20, 10, BufferedImage.TYPE_INT_RGB), "png", imageFile);
+    List<File> wroteFiles = streamingBuilder.writeToFiles(TestImages.createTempDir("target"), "PNG", true);
+
+    assertEquals(1, wroteFiles.size());
+    assertEquals(20, ImageIO.read(wroteFiles.get(0)).getWidth());
+    assertTrue(streamingBuilder.checkIsClosed());
+  }
+
+  public void testStreamingSkipsUnreadableFile() throws Exception {
+    File sourceDir = TestImages.createTempDir("source");
+    TestImages.write(TestImages.createImage(40, 30, BufferedImage.TYPE_INT_RGB), "png", new File(sourceDir, "a.png"));
+    Files.write(new File(sourceDir, "b.txt").toPath(), "not an image".getBytes("UTF-8"));
+
+    List<File> wroteFiles = ImageUtil.streamFromSrc(sourceDir).writeToFiles(TestImages.createTempDir("target"), "PNG", true);
+
+    assertEquals(1, wroteFiles.size());
+  }
+}
@@ -0,0 +1,168 @@
+package idv.jackblackevo.util;
+
+import junit.framework.TestCase;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+public class TIFFCompressionSelectorTest extends TestCase {
+  private ImageWriter imageWriter;
+
+  @Override
+  protected void setUp() throws Exception {
+    imageWriter = CodecRegistry.getImageWriter("TIFF", null);
+  }
+
+  @Override
+  protected void tearDown() {
+    imageWriter.dispose();
+  }
+
+  public void testAutoSelection() {
+    BufferedImage bilevelPage = createBlackAndWhitePage(BufferedImage.TYPE_BYTE_BINARY);
+    assertCompression("CCITT T.6", bilevelPage, ImageBuilder.TIFFCompression.Auto);
+
+    // 只有黑白的 RGB 頁面轉換為 1 bit，像素不變
+    BufferedImage rgbPage = createBlackAndWhitePage(BufferedImage.TYPE_INT_RGB);
+    ImageWriteParam writeParam = imageWriter.getDefaultWriteParam();
+    BufferedImage targetPage = TIFFCompressionSelector.apply(rgbPage, ImageBuilder.TIFFCompression.Auto, -1, writeParam);
+    assertEquals("CCITT T.6", writeParam.getCompressionType());
+    assertEquals(BufferedImage.TYPE_BYTE_BINARY, targetPage.getType());
+    assertEquals(0, TestImages.getMaxDifference(rgbPage, targetPage));
+
+    assertCompression("Deflate", createFlatPage(BufferedImage.TYPE_INT_RGB), ImageBuilder.TIFFCompression.Auto);
+    assertCompression("JPEG", TestImages.createImage(100, 80, BufferedImage.TYPE_INT_RGB), ImageBuilder.TIFFCompression.Auto);
+
+    // 有透明度時不使用 JPEG
+    assertCompression("Deflate", TestImages.createImage(100, 80, BufferedImage.TYPE_INT_ARGB), ImageBuilder.TIFFCompression.Auto);
+  }
+
+  public void testExplicitCompression() {
+    BufferedImage photoPage = TestImages.createImage(100, 80, BufferedImage.TYPE_INT_RGB);
+    assertCompression("LZW", photoPage, ImageBuilder.TIFFCompression.LZW);
+    assertCompression("Deflate", photoPage, ImageBuilder.TIFFCompression.Deflate);
+    assertCompression("None", photoPage, ImageBuilder.TIFFCompression.None);
+    assertCompression("JPEG", createFlatPage(BufferedImage.TYPE_INT_RGB), ImageBuilder.TIFFCompression.JPEG);
+
+    // 非黑白的頁面改為自動選擇
+    assertCompression("CCITT T.6", createBlackAndWhitePage(BufferedImage.TYPE_BYTE_GRAY), ImageBuilder.TIFFCompression.CCITT);
+    assertCompression("JPEG", photoPage, ImageBuilder.TIFFCompression.CCITT);
+  }
+
+  public void testNoneOnEveryWriter() {
+    // Java 9 之後內建的 TIFF writer 沒有 None，改為停用壓縮
+    Iterator<ImageWriter> imageWriterIterator = ImageIO.getImageWritersByFormatName("tiff");
+    while (imageWriterIterator.hasNext()) {
+      ImageWriter tiffWriter = imageWriterIterator.next();
+      try {
+        ImageWriteParam writeParam = tiffWriter.getDefaultWriteParam();
+        TIFFCompressionSelector.apply(TestImages.createImage(100, 80, BufferedImage.TYPE_INT_RGB), ImageBuilder.TIFFCompression.None, -1, writeParam);
+        if (writeParam.getCompressionMode() == ImageWriteParam.MODE_EXPLICIT) {
+          assertEquals("None", writeParam.getCompressionType());
+        } else {
+          assertEquals(ImageWriteParam.MODE_DISABLED, writeParam.getCompressionMode());
+        }
+      } finally {
+        tiffWriter.dispose();
+      }
+    }
+  }
+
+  public void testJPEGQuality() {
+    ImageWriteParam writeParam = imageWriter.getDefaultWriteParam();
+    TIFFCompressionSelector.apply(TestImages.createImage(100, 80, BufferedImage.TYPE_INT_RGB), ImageBuilder.TIFFCompression.JPEG, 0.3f, writeParam);
+    assertEquals(0.3f, writeParam.getCompressionQuality(), 0.001f);
+  }
+
+  public void testCompressTIFF() throws Exception {
+    File sourceDir = TestImages.createTempDir("source");
+    BufferedImage blackAndWhitePage = createBlackAndWhitePage(BufferedImage.TYPE_INT_RGB);
+    BufferedImage flatPage = createFlatPage(BufferedImage.TYPE_INT_RGB);
+    TestImages.write(blackAndWhitePage, "png", new File(sourceDir, "a.png"));
+    TestImages.write(flatPage, "png", new File(sourceDir, "b.png"));
+
+    // 多頁 TIFF 每頁各自選擇，無損壓縮的頁面像素不變
+    ByteArrayOutputStream autoBao = new ByteArrayOutputStream();
+    ImageUtil.fromSrc(sourceDir).compressTIFF(ImageBuilder.TIFFCompression.Auto).combineAndWriteToMultipageTIFF(autoBao, true);
+    List<BufferedImage> pageList = readPages(autoBao.toByteArray());
+    assertEquals(2, pageList.size());
+    assertEquals(0, TestImages.getMaxDifference(blackAndWhitePage, pageList.get(0)));
+    assertEquals(0, TestImages.getMaxDifference(flatPage, pageList.get(1)));
+
+    ByteArrayOutputStream noneBao = new ByteArrayOutputStream();
+    ImageUtil.fromSrc(sourceDir).compressTIFF(ImageBuilder.TIFFCompression.None).combineAndWriteToMultipageTIFF(noneBao, true);
+    assertTrue(autoBao.size() < noneBao.size());
+  }
+
+  private void assertCompression(String expected, BufferedImage imagePage, ImageBuilder.TIFFCompression compression) {
+    ImageWriteParam writeParam = imageWriter.getDefaultWriteParam();
+    TIFFCompressionSelector.apply(imagePage, compression, -1, writeParam);
+
+    assertEquals(compression.name(), expected, writeParam.getCompressionType());
+  }
+
+  private static BufferedImage createBlackAndWhitePage(int imageType) {
+    BufferedImage page = new BufferedImage(120, 90, imageType);
+    Graphics2D g = page.createGraphics();
+    try {
+      g.setColor(Color.WHITE);
+      g.fillRect(0, 0, 120, 90);
+      g.setColor(Color.BLACK);
+      g.fillRect(10, 10, 40, 20);
+      g.drawLine(0, 89, 119, 0);
+    } finally {
+      g.dispose();
+    }
+
+    return page;
+  }
+
+  private static BufferedImage createFlatPage(int imageType) {
+    BufferedImage page = new BufferedImage(120, 90, imageType);
+    Graphics2D g = page.createGraphics();
+    try {
+      g.setColor(Color.WHITE);
+      g.fillRect(0, 0, 120, 90);
+      g.setColor(Color.RED);
+      g.fillRect(10, 10, 40, 20);
+      g.setColor(Color.BLUE);
+      g.fillRect(60, 40, 30, 30);
+    } finally {
+      g.dispose();
+    }
+
+    return page;
+  }
+
+  private static List<BufferedImage> readPages(byte[] tiffBytes) throws Exception {
+    List<BufferedImage> pageList = new ArrayList<>();
+    try (
+      ImageInputStream iis = ImageIO.createImageInputStream(new ByteArrayInputStream(tiffBytes))
+    ) {
+      // 與寫出時相同使用 TwelveMonkeys 的 reader
+      ImageReader imageReader = CodecRegistry.getImageReader(iis, "TIFF");
+      try {
+        int numImages = imageReader.getNumImages(true);
+        for (int i = 0; i < numImages; i++) {
+          pageList.add(imageReader.read(i));
+        }
+      } finally {
+        imageReader.dispose();
+      }
+    }
+
+    return pageList;
+  }
+}
@@ -0,0 +1,143 @@
+package idv.jackblackevo.util;
+
+import junit.framework.TestCase;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class TIFFPageAssemblerTest extends TestCase {
+  private List<BufferedImage> pageList;
+
+  @Override
+  protected void setUp() {
+    pageList = new ArrayList<>();
+    pageList.add(TestImages.createImage(40, 30, BufferedImage.TYPE_INT_RGB));
+    pageList.add(TestImages.createImage(25, 50, BufferedImage.TYPE_BYTE_GRAY));
+    pageList.add(TestImages.createImage(60, 20, BufferedImage.TYPE_3BYTE_BGR));
+  }
+
+  public void testAssembledPagesAreReadable() throws Exception {
+    byte[] tiffBytes = assemble(pageList);
+
+    List<BufferedImage> readPageList = readPages(tiffBytes);
+    assertEquals(pageList.size(), readPageList.size());
+    for (int i = 0; i < pageList.size(); i++) {
+      assertEquals("page " + i, 0, TestImages.getMaxDifference(pageList.get(i), readPageList.get(i)));
+    }
+  }
+
+  public void testSameAsWriteToSequence() throws Exception {
+    ByteArrayOutputStream bao = new ByteArrayOutputStream();
+    ImageWriter imageWriter = null;
+    try (
+      ImageOutputStream ios = ImageIO.createImageOutputStream(bao)
+    ) {
+      imageWriter = CodecRegistry.getImageWriter("TIFF", ios);
+      imageWriter.prepareWriteSequence(null);
+      for (int i = 0; i < pageList.size(); i++) {
+        imageWriter.writeToSequence(new IIOImage(pageList.get(i), null, null), null);
+      }
+      imageWriter.endWriteSequence();
+    } finally {
+      if (imageWriter != null) {
+        imageWriter.dispose();
+      }
+    }
+
+    assertTrue(Arrays.equals(bao.toByteArray(), assemble(pageList)));
+  }
+
+  public void testSinglePage() throws Exception {
+    byte[] pageBytes = toTIFFBytes(pageList.get(0));
+
+    assertTrue(Arrays.equals(pageBytes, assemble(pageList.subList(0, 1))));
+  }
+
+  public void testCombineAndWriteToMultipageTIFF() throws Exception {
+    File sourceDir = TestImages.createTempDir("source");
+    for (int i = 0; i < pageList.size(); i++) {
+      TestImages.write(pageList.get(i), "png", new File(sourceDir, "page" + i + ".png"));
+    }
+    TestImages.writePDF(new File(sourceDir, "page3.pdf"), 2);
+
+    ByteArrayOutputStream serialBao = new ByteArrayOutputStream();
+    ImageUtil.fromSrc(sourceDir).combineAndWriteToMultipageTIFF(serialBao, true);
+    ByteArrayOutputStream parallelBao = new ByteArrayOutputStream();
+    ImageUtil.fromSrc(sourceDir).parallel(4).combineAndWriteToMultipageTIFF(parallelBao, true);
+
+    // 平行編碼的頁面依序串接，結果與單一執行緒相同
+    assertTrue(Arrays.equals(serialBao.toByteArray(), parallelBao.toByteArray()));
+
+    List<BufferedImage> readPageList = readPages(parallelBao.toByteArray());
+    assertEquals(5, readPageList.size());
+    for (int i = 0; i < pageList.size(); i++) {
+      assertEquals(pageList.get(i).getWidth(), readPageList.get(i).getWidth());
+      assertEquals(pageList.get(i).getHeight(), readPageList.get(i).getHeight());
+    }
+  }
+
+  private static byte[] assemble(List<BufferedImage> imageList) throws Exception {
+    ByteArrayOutputStream bao = new ByteArrayOutputStream();
+    try (
+      ImageOutputStream ios = ImageIO.createImageOutputStream(bao)
+    ) {
+      TIFFPageAssembler assembler = new TIFFPageAssembler(ios);
+      for (int i = 0; i < imageList.size(); i++) {
+        assembler.append(toTIFFBytes(imageList.get(i)));
+      }
+    }
+
+    return bao.toByteArray();
+  }
+
+  /**
+   * 以寫出多頁 TIFF 時使用的 writer 寫出單頁 TIFF。
+   */
+  private static byte[] toTIFFBytes(BufferedImage image) throws Exception {
+    ByteArrayOutputStream bao = new ByteArrayOutputStream();
+    ImageWriter imageWriter = null;
+    try (
+      ImageOutputStream ios = ImageIO.createImageOutputStream(bao)
+    ) {
+      imageWriter = CodecRegistry.getImageWriter("TIFF", ios);
+      imageWriter.write(image);
+    } finally {
+      if (imageWriter != null) {
+        imageWriter.dispose();
+      }
+    }
+
+    return bao.toByteArray();
+  }
+
+  private static List<BufferedImage> readPages(byte[] tiffBytes) throws Exception {
+    List<BufferedImage> readPageList = new ArrayList<>();
+    try (
+      ImageInputStream iis = ImageIO.createImageInputStream(new ByteArrayInputStream(tiffBytes))
+    ) {
+      // 與寫出時相同使用 TwelveMonkeys 的 reader
+      ImageReader imageReader = CodecRegistry.getImageReader(iis, "TIFF");
+      try {
+        int numImages = imageReader.getNumImages(true);
+        for (int i = 0; i < numImages; i++) {
+          readPageList.add(imageReader.read(i));
+        }
+      } finally {
+        imageReader.dispose();
+      }
+    }
+
+    return readPageList;
+  }
+}
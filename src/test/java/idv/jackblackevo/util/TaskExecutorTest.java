@@ -0,0 +1,200 @@
+package idv.jackblackevo.util;
+
+import junit.framework.TestCase;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class TaskExecutorTest extends TestCase {
+  public void testInvokeAllKeepsTaskOrder() throws Exception {
+    List<Callable<Integer>> taskList = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      final int value = i;
+      taskList.add(new Callable<Integer>() {
+        @Override
+        public Integer call() throws Exception {
+          // 先提交的工作較晚完成
+          Thread.sleep(20 - value);
+
+          return value;
+        }
+      });
+    }
+
+    try (
+      TaskExecutor executor = new TaskExecutor(4)
+    ) {
+      List<Integer> resultList = executor.invokeAll(taskList);
+      for (int i = 0; i < 20; i++) {
+        assertEquals(Integer.valueOf(i), resultList.get(i));
+      }
+    }
+  }
+
+  public void testTasksRunConcurrently() throws Exception {
+    final CountDownLatch latch = new CountDownLatch(2);
+    final Set<String> threadNameSet = Collections.synchronizedSet(new HashSet<String>());
+    List<Callable<Boolean>> taskList = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      taskList.add(new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws Exception {
+          threadNameSet.add(Thread.currentThread().getName());
+          latch.countDown();
+
+          // 兩個工作同時執行時才會都通過
+          return latch.await(5, TimeUnit.SECONDS);
+        }
+      });
+    }
+
+    try (
+      TaskExecutor executor = new TaskExecutor(2)
+    ) {
+      assertTrue(executor.isParallel());
+      List<Boolean> resultList = executor.invokeAll(taskList);
+      assertTrue(resultList.get(0));
+      assertTrue(resultList.get(1));
+    }
+    assertEquals(2, threadNameSet.size());
+  }
+
+  public void testSingleWorkerRunsInCallerThread() throws Exception {
+    try (
+      TaskExecutor executor = new TaskExecutor(1)
+    ) {
+      assertFalse(executor.isParallel());
+
+      Future<Thread> future = executor.submit(new Callable<Thread>() {
+        @Override
+        public Thread call() {
+          return Thread.currentThread();
+        }
+      });
+      assertTrue(future.isDone());
+      assertSame(Thread.currentThread(), future.get());
+    }
+  }
+
+  public void testIOExceptionIsRethrown() throws Exception {
+    List<Callable<Object>> taskList = new ArrayList<>();
+    taskList.add(new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        throw new IOException("Broken page");
+      }
+    });
+
+    try (
+      TaskExecutor executor = new TaskExecutor(2)
+    ) {
+      executor.invokeAll(taskList);
+      fail("IOException should be thrown");
+    } catch (IOException e) {
+      assertEquals("Broken page", e.getMessage());
+    }
+  }
+
+  public void testRunningTasksFinishBeforeRethrow() throws Exception {
+    final CountDownLatch startedLatch = new CountDownLatch(1);
+    final AtomicBoolean isFinished = new AtomicBoolean();
+    List<Callable<Object>> taskList = new ArrayList<>();
+    taskList.add(new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        startedLatch.await(5, TimeUnit.SECONDS);
+
+        throw new IOException("Broken page");
+      }
+    });
+    taskList.add(new Callable<Object>() {
+      @Override
+      public Object call() {
+        startedLatch.countDown();
+        try {
+          // 不理會中斷，模擬無法立即停止的工作
+          long deadline = System.currentTimeMillis() + 200;
+          while (System.currentTimeMillis() < deadline) {
+            Thread.yield();
+          }
+        } finally {
+          isFinished.set(true);
+        }
+
+        return null;
+      }
+    });
+
+    try (
+      TaskExecutor executor = new TaskExecutor(2)
+    ) {
+      executor.invokeAll(taskList);
+      fail("IOException should be thrown");
+    } catch (IOException e) {
+      assertTrue(isFinished.get());
+    }
+  }
+
+  public void testCloseWaitsForRunningTasks() throws Exception {
+    final CountDownLatch startedLatch = new CountDownLatch(1);
+    final AtomicBoolean isFinished = new AtomicBoolean();
+
+    TaskExecutor executor = new TaskExecutor(2);
+    executor.submit(new Callable<Object>() {
+      @Override
+      public Object call() {
+        startedLatch.countDown();
+        try {
+          Thread.sleep(5000);
+        } catch (InterruptedException e) {
+          // 中斷後仍需一段時間才結束
+          long deadline = System.currentTimeMillis() + 200;
+          while (System.currentTimeMillis() < deadline) {
+            Thread.yield();
+          }
+        } finally {
+          isFinished.set(true);
+        }
+
+        return null;
+      }
+    });
+    assertTrue(startedLatch.await(5, TimeUnit.SECONDS));
+
+    executor.close();
+    assertTrue(isFinished.get());
+  }
+
+  public void testGetNumWorkers() {
+    assertEquals(Runtime.getRuntime().availableProcessors(), TaskExecutor.getNumWorkers(0));
+    assertEquals(3, TaskExecutor.getNumWorkers(3));
+  }
+
+  public void testParallelBuilderMatchesSerialBuilder() throws Exception {
+    File sourceDir = TestImages.createTempDir("source");
+    for (int i = 0; i < 6; i++) {
+      TestImages.write(TestImages.createImage(100 + i * 10, 60, BufferedImage.TYPE_INT_RGB), "png", new File(sourceDir, "page" + i + ".png"));
+    }
+
+    List<File> serialFiles = ImageUtil.fromSrc(sourceDir).resize(40, 40).rotate(ImageBuilder.PORTRAIT).writeToFiles(TestImages.createTempDir("serial"), "PNG", true);
+    List<File> parallelFiles = ImageUtil.fromSrc(sourceDir).parallel(4).resize(40, 40).rotate(ImageBuilder.PORTRAIT).writeToFiles(TestImages.createTempDir("parallel"), "PNG", true);
+
+    assertEquals(6, parallelFiles.size());
+    for (int i = 0; i < serialFiles.size(); i++) {
+      assertEquals(serialFiles.get(i).getName(), parallelFiles.get(i).getName());
+      assertEquals(0, TestImages.getMaxDifference(ImageIO.read(serialFiles.get(i)), ImageIO.read(parallelFiles.get(i))));
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package idv.jackblackevo.util;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * 測試用的圖片與暫存目錄，圖片皆於執行時產生。
+ */
+class TestImages {
+  private TestImages() {
+  }
+
+  public static File createTempDir(String prefix) throws IOException {
+    File dir = Files.createTempDirectory(prefix).toFile();
+    dir.deleteOnExit();
+
+    return dir;
+  }
+
+  /**
+   * 每個像素皆不同的漸層圖片。
+   */
+  public static BufferedImage createImage(int width, int height, int imageType) {
+    BufferedImage image = new BufferedImage(width, height, imageType);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        image.setRGB(x, y, 0xFF000000 | (x * 255 / width) << 16 | (y * 255 / height) << 8 | ((x + y) * 7 & 0xFF));
+      }
+    }
+
+    return image;
+  }
+
+  public static byte[] toBytes(BufferedImage image, String formatName) throws IOException {
+    ByteArrayOutputStream bao = new ByteArrayOutputStream();
+    if (!ImageIO.write(image, formatName, bao)) {
+      throw new IOException("No writer for " + formatName);
+    }
+
+    return bao.toByteArray();
+  }
+
+  public static File write(BufferedImage image, String formatName, File file) throws IOException {
+    Files.write(file.toPath(), toBytes(image, formatName));
+
+    return file;
+  }
+
+  /**
+   * 只有空白頁面的 PDF。
+   */
+  public static File writePDF(File file, int numPages) throws IOException {
+    try (
+      PDDocument document = new PDDocument()
+    ) {
+      for (int i = 0; i < numPages; i++) {
+        document.addPage(new PDPage(PDRectangle.A6));
+      }
+      document.save(file);
+    }
+
+    return file;
+  }
+
+  /**
+   * @return 兩張圖片 RGB 各通道的最大差異
+   */
+  public static int getMaxDifference(BufferedImage a, BufferedImage b) {
+    if (a.getWidth() != b.getWidth() || a.getHeight() != b.getHeight()) {
+      return Integer.MAX_VALUE;
+    }
+
+    int maxDifference = 0;
+    for (int y = 0; y < a.getHeight(); y++) {
+      for (int x = 0; x < a.getWidth(); x++) {
+        int rgbA = a.getRGB(x, y);
+        int rgbB = b.getRGB(x, y);
+        for (int shift = 0; shift < 24; shift += 8) {
+          maxDifference = Math.max(maxDifference, Math.abs((rgbA >> shift & 0xFF) - (rgbB >> shift & 0xFF)));
+        }
+      }
+    }
+
+    return maxDifference;
+  }
+}
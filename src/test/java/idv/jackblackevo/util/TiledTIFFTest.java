@@ -0,0 +1,131 @@
+package idv.jackblackevo.util;
+
+import junit.framework.TestCase;
+
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TiledTIFFTest extends TestCase {
+  public void testWritePages() throws Exception {
+    BufferedImage rgbImage = TestImages.createImage(40, 20, BufferedImage.TYPE_INT_RGB);
+    BufferedImage grayImage = TestImages.createImage(17, 33, BufferedImage.TYPE_BYTE_GRAY);
+
+    ByteArrayOutputStream bao = new ByteArrayOutputStream();
+    try (
+      ImageOutputStream ios = ImageIO.createImageOutputStream(bao)
+    ) {
+      TiledTIFFWriter writer = new TiledTIFFWriter(ios, 16);
+      TiledPageProcessor processor = new TiledPageProcessor(writer);
+      processor.writePage(rgbImage);
+      processor.writePage(grayImage);
+      writer.finish();
+    }
+
+    List<BufferedImage> pageList = readPages(bao.toByteArray());
+    assertEquals(2, pageList.size());
+    assertEquals(0, TestImages.getMaxDifference(rgbImage, pageList.get(0)));
+    assertEquals(0, TestImages.getMaxDifference(grayImage, pageList.get(1)));
+  }
+
+  public void testWriteTilesInAnyOrder() throws Exception {
+    ByteArrayOutputStream bao = new ByteArrayOutputStream();
+    try (
+      ImageOutputStream ios = ImageIO.createImageOutputStream(bao)
+    ) {
+      TiledTIFFWriter writer = new TiledTIFFWriter(ios, 16);
+      writer.beginPage(32, 16, 1);
+      // 右邊的 tile 先寫出
+      writer.writeTile(1, 0, createTileData(16, (byte) 200));
+      writer.writeTile(0, 0, createTileData(16, (byte) 50));
+      writer.endPage();
+      writer.finish();
+    }
+
+    BufferedImage page = readPages(bao.toByteArray()).get(0);
+    assertEquals(50, page.getRaster().getSample(0, 0, 0));
+    assertEquals(200, page.getRaster().getSample(31, 15, 0));
+  }
+
+  public void testInvalidUsage() throws Exception {
+    try {
+      new TiledTIFFWriter(ImageIO.createImageOutputStream(new ByteArrayOutputStream()), 20);
+      fail("Should reject tile size which is not a multiple of 16");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+
+    TiledTIFFWriter writer = new TiledTIFFWriter(ImageIO.createImageOutputStream(new ByteArrayOutputStream()), 16);
+    writer.beginPage(32, 16, 1);
+    writer.writeTile(0, 0, createTileData(16, (byte) 0));
+    try {
+      writer.writeTile(0, 0, createTileData(16, (byte) 0));
+      fail("Should reject a tile written twice");
+    } catch (IIOException e) {
+      // expected
+    }
+    try {
+      writer.endPage();
+      fail("Should reject a page with missing tiles");
+    } catch (IIOException e) {
+      // expected
+    }
+    writer.finish();
+  }
+
+  public void testWriteToTiledTIFFFiles() throws Exception {
+    BufferedImage image = TestImages.createImage(300, 200, BufferedImage.TYPE_INT_RGB);
+    File pngFile = TestImages.write(image, "png", new File(TestImages.createTempDir("source"), "a.png"));
+
+    // 旋轉時逐塊寫出的結果與整頁處理相同
+    List<File> tiledFiles = ImageUtil.fromSrc(pngFile).rotate(ImageBuilder.PORTRAIT).writeToTiledTIFFFiles(TestImages.createTempDir("tiled"), true);
+    List<File> wroteFiles = ImageUtil.fromSrc(pngFile).rotate(ImageBuilder.PORTRAIT).writeToFiles(TestImages.createTempDir("target"), "PNG", true);
+    assertEquals(1, tiledFiles.size());
+    BufferedImage tiledImage = ImageIO.read(tiledFiles.get(0));
+    assertEquals(200, tiledImage.getWidth());
+    assertEquals(300, tiledImage.getHeight());
+    assertEquals(0, TestImages.getMaxDifference(ImageIO.read(wroteFiles.get(0)), tiledImage));
+
+    // 縮小時分段重新取樣，接縫處與整頁處理的結果接近
+    List<File> resizedTiledFiles = ImageUtil.streamFromSrc(pngFile).resize(120, 80).writeToTiledTIFFFiles(TestImages.createTempDir("tiled"), true);
+    List<File> resizedFiles = ImageUtil.fromSrc(pngFile).resize(120, 80).writeToFiles(TestImages.createTempDir("target"), "PNG", true);
+    assertTrue(TestImages.getMaxDifference(ImageIO.read(resizedFiles.get(0)), ImageIO.read(resizedTiledFiles.get(0))) <= 8);
+  }
+
+  private static byte[] createTileData(int tileSize, byte value) {
+    byte[] tileData = new byte[tileSize * tileSize];
+    for (int i = 0; i < tileData.length; i++) {
+      tileData[i] = value;
+    }
+
+    return tileData;
+  }
+
+  private static List<BufferedImage> readPages(byte[] tiffBytes) throws Exception {
+    List<BufferedImage> pageList = new ArrayList<>();
+    try (
+      ImageInputStream iis = ImageIO.createImageInputStream(new ByteArrayInputStream(tiffBytes))
+    ) {
+      // 與寫出時相同使用 TwelveMonkeys 的 reader
+      ImageReader imageReader = CodecRegistry.getImageReader(iis, "TIFF");
+      try {
+        int numImages = imageReader.getNumImages(true);
+        for (int i = 0; i < numImages; i++) {
+          pageList.add(imageReader.read(i));
+        }
+      } finally {
+        imageReader.dispose();
+      }
+    }
+
+    return pageList;
+  }
+}